@@ -1,11 +1,11 @@
 package com.marginallyclever.artPipeline;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.WritableRaster;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import com.marginallyclever.artPipeline.imageFilters.ImageFilter;
+import com.marginallyclever.convenience.Histogram;
 
 /**
  * TransformedImage is a BufferedImage, scaled, rotated, and translated
@@ -17,14 +17,40 @@
  *
  */
 public class TransformedImage {
+	// in pixels.  sampled regions that overlap the image by less than this are outside it.
+	private static final double MIN_OVERLAP = 1e-6;
+	
 	private BufferedImage sourceImage;
 	private float scaleX, scaleY;
 	private float translateX, translateY;
 	private float rotationDegrees;
+	// cached from rotationDegrees
+	private double cosRotation = 1, sinRotation = 0;
 	private int colorChannel;
+	private boolean trilinear = true;
+	// built on demand from the source image.  shared by every view of the same source image.
+	private Tables tables;
+
+	/**
+	 * Everything worked out from the pixels of the source image.  Each table is built the first time it is needed,
+	 * while holding the lock on this object.  Finished tables are read without the lock, so many threads can
+	 * sample at once.
+	 */
+	private static class Tables {
+		// built on demand by sample(x0,y0,x1,y1).  one table per color channel.
+		final AtomicReferenceArray<long[]> summedAreaTables = new AtomicReferenceArray<long[]>(4);
+		// built on demand by sample(cx,cy,radius).  one pyramid per color channel.
+		final AtomicReferenceArray<byte[][]> mipmaps = new AtomicReferenceArray<byte[][]>(4);
+		// set before the first mipmap is published.
+		int [] mipmapWidths;
+		int [] mipmapHeights;
+		// built on demand by getHistogram()
+		volatile Histogram histogram;
+	}
 
 	public TransformedImage(BufferedImage src) {
 		sourceImage = src;
+		tables = new Tables();
 		translateX = -src.getWidth() / 2.0f;
 		translateY = -src.getHeight() / 2.0f;
 		scaleX = 1;
@@ -43,17 +69,31 @@ protected BufferedImage deepCopy(BufferedImage bi) {
   
 	public TransformedImage(TransformedImage copy) {
 		sourceImage = deepCopy(copy.sourceImage);
+		tables = new Tables();
 		translateX = copy.translateX;
 		translateY = copy.translateY;
 		scaleX = copy.scaleX;
 		scaleY = copy.scaleY;
 		rotationDegrees = copy.rotationDegrees;
 		colorChannel = copy.colorChannel;
+		updateRotation();
+	}
+
+	/**
+	 * @return a new TransformedImage with the same settings that shares the source image and everything built
+	 * from it.  Changing the settings of the view does not change this image.
+	 */
+	public TransformedImage createView() {
+		TransformedImage view = new TransformedImage(sourceImage);
+		view.tables = tables;
+		view.copySettingsFrom(this);
+		view.trilinear = trilinear;
+		return view;
 	}
 
 	public boolean canSampleAt(double x, double y) {
-		int sampleX = getTransformedX(x);
-		int sampleY = getTransformedY(y);
+		int sampleX = (int)toImageU(x,y);
+		int sampleY = (int)toImageV(x,y);
 
 		if (sampleX < 0 || sampleX >= sourceImage.getWidth ()) return false;
 		if (sampleY < 0 || sampleY >= sourceImage.getHeight()) return false;
@@ -67,6 +107,7 @@ public void copySettingsFrom(TransformedImage other) {
 		translateY = other.translateY;
 		rotationDegrees = other.rotationDegrees;
 		colorChannel = other.colorChannel;
+		updateRotation();
 	}
 
 	public float getRotationDegrees() {
@@ -93,28 +134,262 @@ public BufferedImage getSourceImage() {
 		return sourceImage;
 	}
 
+	/**
+	 * The grey histogram of the source image.  It is made the first time it is needed and then kept, so like
+	 * the summed-area table it assumes the source image does not change.
+	 * @return the histogram, shared.  Do not modify.
+	 */
+	public Histogram getHistogram() {
+		Histogram h = tables.histogram;
+		if(h!=null) return h;
+		synchronized(tables) {
+			if(tables.histogram==null) {
+				h = new Histogram();
+				h.getGreyHistogramOf(sourceImage);
+				tables.histogram = h;
+			}
+			return tables.histogram;
+		}
+	}
+
+	/**
+	 * @return about how many bytes the source image and the tables built from it so far are using.  Views share
+	 * the same memory.
+	 */
+	public long getMemoryUse() {
+		long bytes = (long)sourceImage.getWidth() * sourceImage.getHeight() * 4;
+		for(int c=0;c<4;++c) {
+			long [] table = tables.summedAreaTables.get(c);
+			if(table!=null) bytes += (long)table.length * 8;
+			byte [][] levels = tables.mipmaps.get(c);
+			if(levels==null) continue;
+			for( byte [] plane : levels ) bytes += plane.length;
+		}
+		if(tables.histogram!=null) bytes += 3*256*4;
+		return bytes;
+	}
+
+	/**
+	 * Does not include rotation.  See toImageU() and toImageV().
+	 * @param x paper-space x
+	 * @return the image-space column
+	 */
 	public int getTransformedX(double x) {
 		return (int) ((x / scaleX) - translateX);
 	}
 
+	/**
+	 * Does not include rotation.  See toImageU() and toImageV().
+	 * @param y paper-space y
+	 * @return the image-space row
+	 */
 	public int getTransformedY(double y) {
 		return (int) ((y / scaleY) - translateY);
 	}
 	
+	/**
+	 * The inverse of the image transform: undo the rotation, then the scale, then the translation.
+	 * @param x paper-space x
+	 * @param y paper-space y
+	 * @return image-space x
+	 */
+	protected double toImageU(double x,double y) {
+		return (x*cosRotation + y*sinRotation) / scaleX - translateX;
+	}
+
+	/**
+	 * The inverse of the image transform: undo the rotation, then the scale, then the translation.
+	 * @param x paper-space x
+	 * @param y paper-space y
+	 * @return image-space y
+	 */
+	protected double toImageV(double x,double y) {
+		return (y*cosRotation - x*sinRotation) / scaleY - translateY;
+	}
+	
 	public void rotateAbsolute(float degrees) {
 		rotationDegrees = degrees;
+		updateRotation();
 	}
 
 	public void rotateRelative(float degrees) {
 		rotationDegrees += degrees;
+		updateRotation();
+	}
+	
+	private void updateRotation() {
+		double r = Math.toRadians(rotationDegrees);
+		cosRotation = Math.cos(r);
+		sinRotation = Math.sin(r);
 	}
 
+	/**
+	 * Sample the image around a point.  The mipmap level whose texels are closest to the size of the sample
+	 * is read, so the cost is the same for any radius.
+	 * @param cx paper-space center of the sample
+	 * @param cy paper-space center of the sample
+	 * @param radius paper-space radius of the sample
+	 * @return greyscale intensity in this region. range 0...255 inclusive
+	 */
 	public int sample(double cx, double cy, double radius) {
-		return sample(cx-radius,cy-radius,cx+radius,cy+radius);
+		if(radius<=0) return sample1x1(cx,cy);
+		
+		// paper space to image space
+		double u = toImageU(cx,cy);
+		double v = toImageV(cx,cy);
+		double ru = radius / Math.abs(scaleX);
+		double rv = radius / Math.abs(scaleY);
+		
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		if(u+ru<=0 || u-ru>=w || v+rv<=0 || v-rv>=h) return 255;
+
+		byte [][] levels = getMipmap();
+		int last = levels.length-1;
+		// a bilinear read of texels one radius wide covers about the same area as the sample.
+		double lod = Math.log(Math.max(ru,rv)) / Math.log(2);
+		lod = Math.min(Math.max(lod, 0), last);
+		
+		double result;
+		if(trilinear) {
+			int l0 = (int)lod;
+			int l1 = Math.min(l0+1, last);
+			double t = lod-l0;
+			double a = sampleMipmapLevel(levels,l0,u,v);
+			double b = sampleMipmapLevel(levels,l1,u,v);
+			result = a + (b-a)*t;
+		} else {
+			result = sampleMipmapLevel(levels,(int)Math.round(lod),u,v);
+		}
+		
+		return (int)Math.min( Math.max(result, 0), 255 );
+	}
+	
+	/**
+	 * Bilinear sample of one level of a mipmap, clamped to the edges of the level.
+	 * @param levels the mipmap
+	 * @param level 0 is full size, each level after is half the size of the one before.
+	 * @param u image space x
+	 * @param v image space y
+	 * @return the intensity [0...255]
+	 */
+	private double sampleMipmapLevel(byte [][] levels,int level,double u,double v) {
+		byte [] plane = levels[level];
+		int lw = tables.mipmapWidths[level];
+		int lh = tables.mipmapHeights[level];
+		double s = 1<<level;
+
+		// texel centers are at +0.5
+		double lu = Math.min(Math.max(u/s-0.5, 0), lw-1);
+		double lv = Math.min(Math.max(v/s-0.5, 0), lh-1);
+		int x0 = (int)lu;
+		int y0 = (int)lv;
+		int x1 = Math.min(x0+1, lw-1);
+		int y1 = Math.min(y0+1, lh-1);
+		double fx = lu-x0;
+		double fy = lv-y0;
+		
+		double a = plane[y0*lw+x0] & 0xff;
+		double b = plane[y0*lw+x1] & 0xff;
+		double c = plane[y1*lw+x0] & 0xff;
+		double d = plane[y1*lw+x1] & 0xff;
+		double top    = a + (b-a)*fx;
+		double bottom = c + (d-c)*fx;
+		return top + (bottom-top)*fy;
+	}
+	
+	/**
+	 * Build the mipmap of the current color channel the first time it is needed.  Level 0 is one byte per
+	 * pixel of the source image.  Each level after is the 2x2 box average of the level before, down to 1x1.
+	 * @return the mipmap for the current color channel.
+	 */
+	private byte [][] getMipmap() {
+		int channel = getTableChannel();
+		byte [][] levels = tables.mipmaps.get(channel);
+		if(levels!=null) return levels;
+		synchronized(tables) {
+			levels = tables.mipmaps.get(channel);
+			if(levels==null) {
+				levels = buildMipmap(channel);
+				tables.mipmaps.set(channel, levels);
+			}
+			return levels;
+		}
+	}
+
+	/**
+	 * @return 1, 2, or 3 for one color channel, 0 for grey.  See {@link #channelIntensity(int, int)}.
+	 */
+	private int getTableChannel() {
+		return (colorChannel>=1 && colorChannel<=3) ? colorChannel : 0;
+	}
+
+	private byte [][] buildMipmap(int channel) {
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		int count = 1;
+		for(int lw=w, lh=h; lw>1 || lh>1; count++) {
+			lw = (lw+1)/2;
+			lh = (lh+1)/2;
+		}
+		
+		int [] widths = new int[count];
+		int [] heights = new int[count];
+		byte [][] levels = new byte[count][];
+		
+		widths[0]=w;
+		heights[0]=h;
+		levels[0] = new byte[w*h];
+		int [] row = new int[w];
+		for(int y=0;y<h;++y) {
+			sourceImage.getRGB(0, y, w, 1, row, 0, w);
+			for(int x=0;x<w;++x) {
+				levels[0][y*w+x] = (byte)channelIntensity(row[x],channel);
+			}
+		}
+		
+		for(int i=1;i<count;++i) {
+			int pw = widths[i-1];
+			int ph = heights[i-1];
+			byte [] parent = levels[i-1];
+			int lw = Math.max(1, (pw+1)/2);
+			int lh = Math.max(1, (ph+1)/2);
+			byte [] plane = new byte[lw*lh];
+			for(int y=0;y<lh;++y) {
+				int py0 = y*2;
+				int py1 = Math.min(py0+1, ph-1);
+				for(int x=0;x<lw;++x) {
+					int px0 = x*2;
+					int px1 = Math.min(px0+1, pw-1);
+					int sum = (parent[py0*pw+px0] & 0xff)
+							+ (parent[py0*pw+px1] & 0xff)
+							+ (parent[py1*pw+px0] & 0xff)
+							+ (parent[py1*pw+px1] & 0xff);
+					plane[y*lw+x] = (byte)((sum+2)/4);
+				}
+			}
+			widths[i]=lw;
+			heights[i]=lh;
+			levels[i]=plane;
+		}
+		
+		// every channel has the same sizes.
+		tables.mipmapWidths = widths;
+		tables.mipmapHeights = heights;
+		return levels;
+	}
+	
+	/**
+	 * @param trilinear if true, sample(cx,cy,radius) blends the two nearest mipmap levels.  if false it reads
+	 * only the nearest level.
+	 */
+	public void setTrilinear(boolean trilinear) {
+		this.trilinear = trilinear;
 	}
 	
 	/**
 	 * Sample the image, taking into account fractions of pixels. left must be less than right, bottom must be less than top.
+	 * The area is measured with a summed-area table so the cost does not depend on the size of the region.
 	 *
 	 * @param x0 left
 	 * @param y0 top
@@ -123,79 +398,180 @@ public int sample(double cx, double cy, double radius) {
 	 * @return greyscale intensity in this region. range 0...255 inclusive
 	 */
 	public int sample(double x0, double y0, double x1, double y1) {
-		float sampleValue = 0;
-		float weightedSum = 0;
-		
-		if(x1<x0) {
-			double temp = x1;
-			x1=x0;
-			x0=temp;
-		}
-		if(y1<y0) {
-			double temp = y1;
-			y1=y0;
-			y0=temp;
+		if(x0==x1 || y0==y1) {
+			// no area, nothing to average.
+			return sample1x1(x0,y0);
 		}
+		
+		// paper space to image space.  a rotated region is sampled by its image-space bounds.
+		double cx = (x0+x1)/2;
+		double cy = (y0+y1)/2;
+		double u = toImageU(cx,cy);
+		double v = toImageV(cx,cy);
+		double hu = getHalfSizeU(Math.abs(x1-x0)/2,Math.abs(y1-y0)/2);
+		double hv = getHalfSizeV(Math.abs(x1-x0)/2,Math.abs(y1-y0)/2);
+
+		return sampleSummedArea(getSummedAreaTable(),u-hu,v-hv,u+hu,v+hv);
+	}
+	
+	private double getHalfSizeU(double hx,double hy) {
+		return (Math.abs(cosRotation)*hx + Math.abs(sinRotation)*hy) / Math.abs(scaleX);
+	}
 
-		int left   = (int)Math.floor(x0);
-		int right  = (int)Math.ceil (x1);
-		int bottom = (int)Math.floor(y0);
-		int top    = (int)Math.ceil (y1);
+	private double getHalfSizeV(double hx,double hy) {
+		return (Math.abs(sinRotation)*hx + Math.abs(cosRotation)*hy) / Math.abs(scaleY);
+	}
+	
+	/**
+	 * Average intensity of an image-space rectangle.
+	 * @param table the summed-area table
+	 * @param u0 left, less than u1
+	 * @param v0 top, less than v1
+	 * @param u1 right
+	 * @param v1 bottom
+	 * @return greyscale intensity in this region. range 0...255 inclusive
+	 */
+	private int sampleSummedArea(long [] table,double u0,double v0,double u1,double v1) {
+		// only the part of the region that overlaps the image counts.
+		u0 = Math.max(u0, 0);
+		v0 = Math.max(v0, 0);
+		u1 = Math.min(u1, sourceImage.getWidth());
+		v1 = Math.min(v1, sourceImage.getHeight());
+		// a sliver this thin is only rounding error, and dividing by its area would make noise.
+		if(u1-u0<MIN_OVERLAP || v1-v0<MIN_OVERLAP)
+			return 255;
 
-		// calculate the weight matrix
-		int w = right-left;
-		int h = top-bottom;
+		double sum = summedAreaAt(table,u1,v1)
+				   - summedAreaAt(table,u0,v1)
+				   - summedAreaAt(table,u1,v0)
+				   + summedAreaAt(table,u0,v0);
+		double result = sum / ((u1-u0)*(v1-v0));
 		
-		double [] m = new double[w*h];
-		for(int i=0;i<m.length;++i) {
-			m[i]=1;
-		}
-		// bottom edge
-		if(bottom<y0) {
-			double yWeightStart = y0-bottom;
-			for(int i=0;i<w;++i) {
-				m[i]*=yWeightStart;
-			}
+		return (int)Math.min( Math.max(result, 0), 255 );
+	}
+	
+	/**
+	 * Point sample n evenly spaced places from (x0,y0) to (x1,y1) inclusive.
+	 * @param x0 paper-space start of the line
+	 * @param y0 paper-space start of the line
+	 * @param x1 paper-space end of the line
+	 * @param y1 paper-space end of the line
+	 * @param n number of samples
+	 * @param out receives the intensity [0...255] of each sample, 255 where the image cannot be sampled.
+	 */
+	public void sampleLine(double x0,double y0,double x1,double y1,int n,int [] out) {
+		sampleLine(x0,y0,x1,y1,n,0,out);
+	}
+	
+	/**
+	 * Sample n evenly spaced places from (x0,y0) to (x1,y1) inclusive.  The transform is worked out once
+	 * for the whole line instead of once per sample.
+	 * @param x0 paper-space start of the line
+	 * @param y0 paper-space start of the line
+	 * @param x1 paper-space end of the line
+	 * @param y1 paper-space end of the line
+	 * @param n number of samples
+	 * @param halfSize if greater than zero, each sample is the average of a paper-space square 2*halfSize wide,
+	 *   same as sample(x-halfSize,y-halfSize,x+halfSize,y+halfSize).  Otherwise each sample is one pixel.
+	 * @param out receives the intensity [0...255] of each sample, 255 where the image cannot be sampled.
+	 */
+	public void sampleLine(double x0,double y0,double x1,double y1,int n,double halfSize,int [] out) {
+		if(n<=0) return;
+
+		double u = toImageU(x0,y0);
+		double v = toImageV(x0,y0);
+		double du = 0, dv = 0;
+		if(n>1) {
+			du = (toImageU(x1,y1)-u)/(n-1);
+			dv = (toImageV(x1,y1)-v)/(n-1);
 		}
-		// top edge
-		if(top>y1) {
-			double yWeightEnd = top-y1;
-			for(int i=0;i<w;++i) {
-				m[m.length-w+i]*=yWeightEnd;
+		
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		if(halfSize>0) {
+			long [] table = getSummedAreaTable();
+			double hu = getHalfSizeU(halfSize,halfSize);
+			double hv = getHalfSizeV(halfSize,halfSize);
+			for(int i=0;i<n;++i) {
+				double su = u+du*i;
+				double sv = v+dv*i;
+				out[i] = sampleSummedArea(table,su-hu,sv-hv,su+hu,sv+hv);
 			}
-		}
-		// left edge
-		if(left<x0) {
-			double xWeightStart = x0-left;
-			for(int i=0;i<h;++i) {
-				m[i*w]*=xWeightStart;
+		} else {
+			for(int i=0;i<n;++i) {
+				int su = (int)(u+du*i);
+				int sv = (int)(v+dv*i);
+				if(su<0 || su>=w || sv<0 || sv>=h) out[i]=255;
+				else out[i] = channelIntensity(sourceImage.getRGB(su, sv),colorChannel);
 			}
 		}
-		// right edge
-		if(right>x1) {
-			double xWeightEnd = right-x1;
-			for(int i=0;i<h;++i) {
-				m[(i+1)*w-1]*=xWeightEnd;
+	}
+	
+	/**
+	 * The summed-area table holds the total intensity of every pixel above and to the left of each corner.
+	 * It is (width+1)*(height+1) so that the first row and column are zero. It is built the first time it is
+	 * needed for each color channel.
+	 * @return the table for the current color channel.
+	 */
+	private long [] getSummedAreaTable() {
+		int channel = getTableChannel();
+		long [] table = tables.summedAreaTables.get(channel);
+		if(table!=null) return table;
+		synchronized(tables) {
+			table = tables.summedAreaTables.get(channel);
+			if(table==null) {
+				table = buildSummedAreaTable(channel);
+				tables.summedAreaTables.set(channel, table);
 			}
+			return table;
 		}
+	}
+
+	private long [] buildSummedAreaTable(int channel) {
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		int stride = w+1;
+		long [] table = new long[stride*(h+1)];
+		int [] row = new int[w];
 		
-		int i=0;
-		for(int y=bottom;y<top;++y) {
-			for(int x=left;x<right;++x) {
-				double s = m[i++];
-				if (canSampleAt(x, y)) {
-					sampleValue += sample1x1Unchecked(x,y) * s;
-					weightedSum += s;
-				}
+		for(int y=0;y<h;++y) {
+			sourceImage.getRGB(0, y, w, 1, row, 0, w);
+			long rowSum=0;
+			int above = y*stride;
+			int here = above+stride;
+			for(int x=0;x<w;++x) {
+				rowSum += channelIntensity(row[x],channel);
+				table[here+x+1] = table[above+x+1] + rowSum;
 			}
 		}
+		return table;
+	}
 
-		if (weightedSum == 0)
-			return 255;
-
-		double result = sampleValue / weightedSum;
+	/**
+	 * Total intensity of the image from the origin to (u,v), in image space.  Pixels are constant across
+	 * their area so the total is a bilinear blend of the four nearest corners of the summed-area table.
+	 * @param table the summed-area table
+	 * @param u image space x, 0...width
+	 * @param v image space y, 0...height
+	 * @return the sum
+	 */
+	private double summedAreaAt(long [] table,double u,double v) {
+		int w = sourceImage.getWidth();
+		int h = sourceImage.getHeight();
+		int stride = w+1;
+		int ix = Math.min((int)u, w-1);
+		int iy = Math.min((int)v, h-1);
+		double fx = u-ix;
+		double fy = v-iy;
 		
-		return (int)Math.min( Math.max(result, 0), 255 );
+		int i = iy*stride+ix;
+		double a = table[i];
+		double b = table[i+1];
+		double c = table[i+stride];
+		double d = table[i+stride+1];
+		double top    = a + (b-a)*fx;
+		double bottom = c + (d-c)*fx;
+		return top + (bottom-top)*fy;
 	}
 
 	/**
@@ -218,24 +594,24 @@ public int sample1x1(double x, double y) {
 	 * @return 255 if the image cannot be sampled.  The intensity of the color channel [0...255].  the color channel is selected with
 	 */
 	public int sample1x1Unchecked(double x, double y) {
-		int sampleX = getTransformedX(x);
-		int sampleY = getTransformedY(y);
+		int sampleX = (int)toImageU(x,y);
+		int sampleY = (int)toImageV(x,y);
 
-		Color c = new Color(sourceImage.getRGB(sampleX, sampleY));
-		int colorToBlend=0;
-		
-		switch (colorChannel) {
-		case 1: colorToBlend=c.getRed();  break;
-		case 2: colorToBlend=c.getGreen();  break;
-		case 3: colorToBlend=c.getBlue();  break;
-		default: return ImageFilter.decodeColor(c);
+		return channelIntensity(sourceImage.getRGB(sampleX, sampleY),colorChannel);
+	}
+	
+	/**
+	 * @param rgb a packed ARGB pixel
+	 * @param channel 1 for red, 2 for green, 3 for blue, anything else for grey.
+	 * @return the intensity of the selected color channel [0...255], or the average of all three channels.
+	 */
+	private static int channelIntensity(int rgb,int channel) {
+		switch (channel) {
+		case 1: return (rgb >> 16) & 0xff;
+		case 2: return (rgb >>  8) & 0xff;
+		case 3: return (rgb      ) & 0xff;
+		default: return ( ((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff) ) / 3;
 		}
-		
-		double a = 255.0-c.getAlpha();
-		int c2 = (int)(  (255.0 - (double)colorToBlend) * (a / 255.0) + (double)colorToBlend);
-		if(c2>255) c2=255;
-		else if(c2<0) c2=0;
-		return c2;
 	}
 
 	public int sample3x3(double x, double y) {
@@ -3,6 +3,8 @@
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
 
+import com.marginallyclever.artPipeline.imageFilters.ParallelImageFilter;
+
 /**
  * <p><em>This software has been released into the public domain.
  * <strong>Please read the notes in this source file for additional information.
@@ -10,8 +12,10 @@
  * 
  * <p>This class provides a configurable implementation of the Canny edge
  * detection algorithm. This classic algorithm has a number of shortcomings,
- * but remains an effective tool in many scenarios. <em>This class is designed
- * for single threaded use only.</em></p>
+ * but remains an effective tool in many scenarios. <em>One detector must not
+ * be used by two threads at once.</em> Each call to process() splits the work
+ * into bands of rows that run at the same time, and the working buffers are
+ * kept for the next image of the same size.</p>
  * 
  * <p>Sample usage:</p>
  * 
@@ -59,6 +63,10 @@ public class CannyEdgeDetector {
 	private float[] yConv;
 	private float[] xGradient;
 	private float[] yGradient;
+	// union-find forest of edge candidates, used by hysteresis.
+	private int[] parent;
+	// roots of the candidate groups that touch a strong edge.
+	private boolean[] keep;
 	
 	// constructors
 	
@@ -248,7 +256,6 @@ public void process() {
 		int low = Math.round(lowThreshold * MAGNITUDE_SCALE);
 		int high = Math.round( highThreshold * MAGNITUDE_SCALE);
 		performHysteresis(low, high);
-		thresholdEdges();
 		writeEdges(data);
 	}
  
@@ -263,6 +270,18 @@ private void initArrays() {
 			yConv = new float[picsize];
 			xGradient = new float[picsize];
 			yGradient = new float[picsize];
+			parent = new int[picsize];
+			keep = new boolean[picsize];
+		} else {
+			// the edges of these are read but never written, so they must start empty like new arrays.
+			final int w = width;
+			ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+				Arrays.fill(magnitude, y0 * w, y1 * w, 0);
+				Arrays.fill(xConv, y0 * w, y1 * w, 0);
+				Arrays.fill(yConv, y0 * w, y1 * w, 0);
+				Arrays.fill(xGradient, y0 * w, y1 * w, 0);
+				Arrays.fill(yGradient, y0 * w, y1 * w, 0);
+			});
 		}
 	}
 	
@@ -292,136 +311,144 @@ private void computeGradients(float kernelRadius, int kernelWidth) {
 			diffKernel[kwidth] = g3 - g2;
 		}
 
-		int initX = kwidth - 1;
-		int maxX = width - (kwidth - 1);
-		int initY = width * (kwidth - 1);
-		int maxY = width * (height - (kwidth - 1));
+		final int kw = kwidth;
+		final int initX = kwidth - 1;
+		final int maxX = width - (kwidth - 1);
+		final int initRow = kwidth - 1;
+		final int maxRow = height - (kwidth - 1);
 		
-		//perform convolution in x and y directions
+		//perform convolution in x and y directions.  every pixel is independent, so bands of rows run at once.
+		ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+			for (int row = Math.max(y0, initRow); row < Math.min(y1, maxRow); row++) {
+				convolveRow(row * width, initX, maxX, kw, kernel);
+			}
+		});
+		ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+			for (int row = Math.max(y0, initRow); row < Math.min(y1, maxRow); row++) {
+				gradientRow(row * width, initX, maxX, kw, diffKernel);
+			}
+		});
+		ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+			for (int row = Math.max(y0, kw); row < Math.min(y1, height - kw); row++) {
+				suppressRow(row * width, kw, width - kw);
+			}
+		});
+	}
+
+	private void convolveRow(int y, int initX, int maxX, int kwidth, float[] kernel) {
 		for (int x = initX; x < maxX; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				int index = x + y;
-				float sumX = data[index] * kernel[0];
-				float sumY = sumX;
-				int xOffset = 1;
-				int yOffset = width;
-				for(; xOffset < kwidth ;) {
-					sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
-					sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
-					yOffset += width;
-					xOffset++;
-				}
-				
-				yConv[index] = sumY;
-				xConv[index] = sumX;
+			int index = x + y;
+			float sumX = data[index] * kernel[0];
+			float sumY = sumX;
+			int xOffset = 1;
+			int yOffset = width;
+			for(; xOffset < kwidth ;) {
+				sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
+				sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
+				yOffset += width;
+				xOffset++;
 			}
- 
+			
+			yConv[index] = sumY;
+			xConv[index] = sumX;
 		}
- 
+	}
+
+	private void gradientRow(int y, int initX, int maxX, int kwidth, float[] diffKernel) {
 		for (int x = initX; x < maxX; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				float sum = 0f;
-				int index = x + y;
-				for (int i = 1; i < kwidth; i++)
-					sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
- 
-				xGradient[index] = sum;
-			}
+			float sum = 0f;
+			int index = x + y;
+			for (int i = 1; i < kwidth; i++)
+				sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
  
+			xGradient[index] = sum;
 		}
 
 		for (int x = kwidth; x < width - kwidth; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				float sum = 0.0f;
-				int index = x + y;
-				int yOffset = width;
-				for (int i = 1; i < kwidth; i++) {
-					sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
-					yOffset += width;
-				}
- 
-				yGradient[index] = sum;
+			float sum = 0.0f;
+			int index = x + y;
+			int yOffset = width;
+			for (int i = 1; i < kwidth; i++) {
+				sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
+				yOffset += width;
 			}
  
+			yGradient[index] = sum;
 		}
- 
-		initX = kwidth;
-		maxX = width - kwidth;
-		initY = width * kwidth;
-		maxY = width * (height - kwidth);
+	}
+
+	private void suppressRow(int y, int initX, int maxX) {
 		for (int x = initX; x < maxX; x++) {
-			for (int y = initY; y < maxY; y += width) {
-				int index = x + y;
-				int indexN = index - width;
-				int indexS = index + width;
-				int indexW = index - 1;
-				int indexE = index + 1;
-				int indexNW = indexN - 1;
-				int indexNE = indexN + 1;
-				int indexSW = indexS - 1;
-				int indexSE = indexS + 1;
-				
-				float xGrad = xGradient[index];
-				float yGrad = yGradient[index];
-				float gradMag = hypot(xGrad, yGrad);
+			int index = x + y;
+			int indexN = index - width;
+			int indexS = index + width;
+			int indexW = index - 1;
+			int indexE = index + 1;
+			int indexNW = indexN - 1;
+			int indexNE = indexN + 1;
+			int indexSW = indexS - 1;
+			int indexSE = indexS + 1;
+			
+			float xGrad = xGradient[index];
+			float yGrad = yGradient[index];
+			float gradMag = hypot(xGrad, yGrad);
 
-				//perform non-maximal supression
-				float nMag = hypot(xGradient[indexN], yGradient[indexN]);
-				float sMag = hypot(xGradient[indexS], yGradient[indexS]);
-				float wMag = hypot(xGradient[indexW], yGradient[indexW]);
-				float eMag = hypot(xGradient[indexE], yGradient[indexE]);
-				float neMag = hypot(xGradient[indexNE], yGradient[indexNE]);
-				float seMag = hypot(xGradient[indexSE], yGradient[indexSE]);
-				float swMag = hypot(xGradient[indexSW], yGradient[indexSW]);
-				float nwMag = hypot(xGradient[indexNW], yGradient[indexNW]);
-				float tmp;
-				/*
-				 * An explanation of what's happening here, for those who want
-				 * to understand the source: This performs the "non-maximal
-				 * supression" phase of the Canny edge detection in which we
-				 * need to compare the gradient magnitude to that in the
-				 * direction of the gradient; only if the value is a local
-				 * maximum do we consider the point as an edge candidate.
-				 * 
-				 * We need to break the comparison into a number of different
-				 * cases depending on the gradient direction so that the
-				 * appropriate values can be used. To avoid computing the
-				 * gradient direction, we use two simple comparisons: first we
-				 * check that the partial derivatives have the same sign (1)
-				 * and then we check which is larger (2). As a consequence, we
-				 * have reduced the problem to one of four identical cases that
-				 * each test the central gradient magnitude against the values at
-				 * two points with 'identical support'; what this means is that
-				 * the geometry required to accurately interpolate the magnitude
-				 * of gradient function at those points has an identical
-				 * geometry (upto right-angled-rotation/reflection).
-				 * 
-				 * When comparing the central gradient to the two interpolated
-				 * values, we avoid performing any divisions by multiplying both
-				 * sides of each inequality by the greater of the two partial
-				 * derivatives. The common comparand is stored in a temporary
-				 * variable (3) and reused in the mirror case (4).
-				 * 
-				 */
-				if (xGrad * yGrad <= (float) 0 /*(1)*/
-					? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-						? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
-							&& tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
-						: (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
-							&& tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
-					: Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-						? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
-							&& tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
-						: (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
-							&& tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
-					) {
-					magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
-					//NOTE: The orientation of the edge is not employed by this
-					//implementation. It is a simple matter to compute it at
-					//this point as: Math.atan2(yGrad, xGrad);
-				} else {
-					magnitude[index] = 0;
-				}
+			//perform non-maximal supression
+			float nMag = hypot(xGradient[indexN], yGradient[indexN]);
+			float sMag = hypot(xGradient[indexS], yGradient[indexS]);
+			float wMag = hypot(xGradient[indexW], yGradient[indexW]);
+			float eMag = hypot(xGradient[indexE], yGradient[indexE]);
+			float neMag = hypot(xGradient[indexNE], yGradient[indexNE]);
+			float seMag = hypot(xGradient[indexSE], yGradient[indexSE]);
+			float swMag = hypot(xGradient[indexSW], yGradient[indexSW]);
+			float nwMag = hypot(xGradient[indexNW], yGradient[indexNW]);
+			float tmp;
+			/*
+			 * An explanation of what's happening here, for those who want
+			 * to understand the source: This performs the "non-maximal
+			 * supression" phase of the Canny edge detection in which we
+			 * need to compare the gradient magnitude to that in the
+			 * direction of the gradient; only if the value is a local
+			 * maximum do we consider the point as an edge candidate.
+			 * 
+			 * We need to break the comparison into a number of different
+			 * cases depending on the gradient direction so that the
+			 * appropriate values can be used. To avoid computing the
+			 * gradient direction, we use two simple comparisons: first we
+			 * check that the partial derivatives have the same sign (1)
+			 * and then we check which is larger (2). As a consequence, we
+			 * have reduced the problem to one of four identical cases that
+			 * each test the central gradient magnitude against the values at
+			 * two points with 'identical support'; what this means is that
+			 * the geometry required to accurately interpolate the magnitude
+			 * of gradient function at those points has an identical
+			 * geometry (upto right-angled-rotation/reflection).
+			 * 
+			 * When comparing the central gradient to the two interpolated
+			 * values, we avoid performing any divisions by multiplying both
+			 * sides of each inequality by the greater of the two partial
+			 * derivatives. The common comparand is stored in a temporary
+			 * variable (3) and reused in the mirror case (4).
+			 * 
+			 */
+			if (xGrad * yGrad <= (float) 0 /*(1)*/
+				? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+					? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
+						&& tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
+					: (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
+						&& tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
+				: Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+					? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
+						&& tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
+					: (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
+						&& tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
+				) {
+				magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
+				//NOTE: The orientation of the edge is not employed by this
+				//implementation. It is a simple matter to compute it at
+				//this point as: Math.atan2(yGrad, xGrad);
+			} else {
+				magnitude[index] = 0;
 			}
 		}
 	}
@@ -437,48 +464,104 @@ private float gaussian(float x, float sigma) {
 		return (float) Math.exp(-(x * x) / (2f * sigma * sigma));
 	}
  
+	/**
+	 * Pixels at or above the low threshold are edge candidates.  Candidates that touch are joined into groups
+	 * with a union-find, one band of rows at a time, and then the bands are joined across their seams.  A
+	 * group is kept if any of its pixels reaches the high threshold.
+	 */
 	private void performHysteresis(int low, int high) {
+		final int w = width;
+		// the first row of every band, so the bands can be joined afterwards wherever they were cut.
+		final boolean[] bandStart = new boolean[height];
+		// join candidates inside each band.  links only point to smaller indexes, so a band never leaves itself.
+		ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+			bandStart[y0] = true;
+			for (int y = y0; y < y1; y++) {
+				for (int x = 0; x < w; x++) {
+					int i = y * w + x;
+					parent[i] = i;
+					keep[i] = false;
+					if (!isCandidate(i, low)) continue;
+					if (x > 0 && isCandidate(i - 1, low)) union(i, i - 1);
+					if (y > y0) joinAbove(x, i, low);
+				}
+			}
+		});
+
+		for (int y = 1; y < height; y++) {
+			if (!bandStart[y]) continue;
+			for (int x = 0; x < w; x++) {
+				int i = y * w + x;
+				if (isCandidate(i, low)) joinAbove(x, i, low);
+			}
+		}
+
+		ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+			for (int i = y0 * w; i < y1 * w; i++) {
+				if (isCandidate(i, low) && magnitude[i] >= high) keep[root(i)] = true;
+			}
+		});
+
 		//NOTE: this implementation reuses the data array to store both
 		//luminance data from the image, and edge intensity from the processing.
 		//This is done for memory efficiency, other implementations may wish
 		//to separate these functions.
-		Arrays.fill(data, 0);
- 
-		int offset = 0;
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				if (data[offset] == 0 && magnitude[offset] >= high) {
-					follow(x, y, offset, low);
-				}
-				offset++;
-			}
-		}
- 	}
- 
-	private void follow(int x1, int y1, int i1, int threshold) {
-		int x0 = x1 == 0 ? x1 : x1 - 1;
-		int x2 = x1 == width - 1 ? x1 : x1 + 1;
-		int y0 = y1 == 0 ? y1 : y1 - 1;
-		int y2 = y1 == height -1 ? y1 : y1 + 1;
-		
-		data[i1] = magnitude[i1];
-		for (int x = x0; x <= x2; x++) {
-			for (int y = y0; y <= y2; y++) {
-				int i2 = x + y * width;
-				if ((y != y1 || x != x1)
-					&& data[i2] == 0 
-					&& magnitude[i2] >= threshold) {
-					follow(x, y, i2, threshold);
-					return;
-				}
+		ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+			for (int i = y0 * w; i < y1 * w; i++) {
+				data[i] = isCandidate(i, low) && keep[root(i)] ? -1 : 0xff000000;
 			}
-		}
+		});
 	}
 
-	private void thresholdEdges() {
-		for (int i = 0; i < picsize; i++) {
-			data[i] = data[i] > 0 ? -1 : 0xff000000;
+	/**
+	 * Only the hysteresis step, on a given gradient magnitude.
+	 * @param magnitude of every pixel, row by row.
+	 * @return -1 for every edge pixel and 0xff000000 for the rest, like the edges image.
+	 */
+	int[] hysteresis(int[] magnitude, int width, int height, int low, int high) {
+		this.width = width;
+		this.height = height;
+		picsize = width * height;
+		this.magnitude = magnitude;
+		data = new int[picsize];
+		parent = new int[picsize];
+		keep = new boolean[picsize];
+		performHysteresis(low, high);
+		return data;
+	}
+
+	private boolean isCandidate(int i, int low) {
+		return magnitude[i] >= low && magnitude[i] > 0;
+	}
+
+	// join pixel i at column x to the candidates above it.
+	private void joinAbove(int x, int i, int low) {
+		int n = i - width;
+		if (x > 0 && isCandidate(n - 1, low)) union(i, n - 1);
+		if (isCandidate(n, low)) union(i, n);
+		if (x < width - 1 && isCandidate(n + 1, low)) union(i, n + 1);
+	}
+
+	private void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a < b) parent[b] = a;
+		else if (b < a) parent[a] = b;
+	}
+
+	// find the root of i, halving the path on the way.
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
 		}
+		return i;
+	}
+
+	// find the root of i without changing the forest, so many threads can do it at once.
+	private int root(int i) {
+		while (parent[i] != i) i = parent[i];
+		return i;
 	}
 	
 	private int luminance(float r, float g, float b) {
@@ -487,15 +570,18 @@ private int luminance(float r, float g, float b) {
 	
 	private void readLuminance() {
 		int type = sourceImage.getType();
-		if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
-			int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-			for (int i = 0; i < picsize; i++) {
-				int p = pixels[i];
-				int r = (p & 0xff0000) >> 16;
-				int g = (p & 0xff00) >> 8;
-				int b = p & 0xff;
-				data[i] = luminance(r, g, b);
-			}
+		if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_3BYTE_BGR) {
+			final int[] pixels = ParallelImageFilter.getPixels(sourceImage);
+			final int w = width;
+			ParallelImageFilter.forEachTile(height, (y0, y1) -> {
+				for (int i = y0 * w; i < y1 * w; i++) {
+					int p = pixels[i];
+					int r = (p & 0xff0000) >> 16;
+					int g = (p & 0xff00) >> 8;
+					int b = p & 0xff;
+					data[i] = luminance(r, g, b);
+				}
+			});
 		} else if (type == BufferedImage.TYPE_BYTE_GRAY) {
 			byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
 			for (int i = 0; i < picsize; i++) {
@@ -506,16 +592,7 @@ private void readLuminance() {
 			for (int i = 0; i < picsize; i++) {
 				data[i] = (pixels[i] & 0xffff) / 256;
 			}
-		} else if (type == BufferedImage.TYPE_3BYTE_BGR) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            int offset = 0;
-            for (int i = 0; i < picsize; i++) {
-                int b = pixels[offset++] & 0xff;
-                int g = pixels[offset++] & 0xff;
-                int r = pixels[offset++] & 0xff;
-                data[i] = luminance(r, g, b);
-            }
-        } else {
+		} else {
 			throw new IllegalArgumentException("Unsupported image type: " + type);
 		}
 	}
@@ -546,9 +623,8 @@ private void writeEdges(int pixels[]) {
 		//NOTE: There is currently no mechanism for obtaining the edge data
 		//in any other format other than an INT_ARGB type BufferedImage.
 		//This may be easily remedied by providing alternative accessors.
-		if (edgesImage == null) {
-			edgesImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		}
+		//A new image every time, so an image handed out before is never changed.
+		edgesImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 		edgesImage.getWritableTile(0, 0).setDataElements(0, 0, width, height, pixels);
 	}
  
@@ -1,6 +1,9 @@
 package com.marginallyclever.artPipeline.converters;
 
 
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_CMYK;
 import com.marginallyclever.convenience.ColorRGB;
@@ -46,19 +49,27 @@ public void finish() {
 		
 		turtle = new Turtle();
 		
-		Log.message("Yellow...");		outputChannel(cmyk.getY(),0 ,new ColorRGB(255,255,  0));
-		Log.message("Cyan...");			outputChannel(cmyk.getC(),15,new ColorRGB(  0,255,255));
-		Log.message("Magenta...");		outputChannel(cmyk.getM(),75,new ColorRGB(255,  0,255));
-		Log.message("Black...");		outputChannel(cmyk.getK(),45,new ColorRGB(  0,  0,  0));
+		// all four channels at once, drawn in ink order.
+		Log.message("Yellow, cyan, magenta, and black...");
+		drawInParallel(Arrays.<Callable<Turtle>>asList(
+			()->outputChannel(cmyk.getY(),0 ,new ColorRGB(255,255,  0)),
+			()->outputChannel(cmyk.getC(),15,new ColorRGB(  0,255,255)),
+			()->outputChannel(cmyk.getM(),75,new ColorRGB(255,  0,255)),
+			()->outputChannel(cmyk.getK(),45,new ColorRGB(  0,  0,  0))
+		));
 		Log.message("Finishing...");
 	}
 	
-	protected void outputChannel(TransformedImage img,float angle,ColorRGB newColor) {
+	/**
+	 * @return a new turtle with the lines for this channel.
+	 */
+	protected Turtle outputChannel(TransformedImage img,float angle,ColorRGB newColor) {
 		// The picture might be in color.  Smash it to 255 shades of grey.
 		double dx = Math.cos(Math.toRadians(angle));
 		double dy = Math.sin(Math.toRadians(angle));
 		double [] channelCutoff = {0,153,51,102,204};
 		
+		Turtle turtle = new Turtle();
 		turtle.setColor(newColor);
 
 		// figure out how many lines we're going to have on this image.
@@ -88,11 +99,11 @@ protected void outputChannel(TransformedImage img,float angle,ColorRGB newColor)
 
 			double cutoff=channelCutoff[i%channelCutoff.length];
 			if ((i % 2) == 0) {
-				if(!useError) convertAlongLine(x0,y0,x1,y1,stepSize,cutoff,img);
-				else convertAlongLineErrorTerms(x0,y0,x1,y1,stepSize,cutoff,error0,error1,img);
+				if(!useError) convertAlongLine(x0,y0,x1,y1,stepSize,cutoff,img,turtle);
+				else convertAlongLineErrorTerms(x0,y0,x1,y1,stepSize,cutoff,error0,error1,img,turtle);
 			} else {
-				if(!useError) convertAlongLine(x1,y1,x0,y0,stepSize,cutoff,img);
-				else convertAlongLineErrorTerms(x1,y1,x0,y0,stepSize,cutoff,error0,error1,img);
+				if(!useError) convertAlongLine(x1,y1,x0,y0,stepSize,cutoff,img,turtle);
+				else convertAlongLineErrorTerms(x1,y1,x0,y0,stepSize,cutoff,error0,error1,img,turtle);
 			}
 			
 			for(int j=0;j<error0.length;++j) {
@@ -101,6 +112,7 @@ protected void outputChannel(TransformedImage img,float angle,ColorRGB newColor)
 			}
 			++i;
 		}
+		return turtle;
 	}
 }
 
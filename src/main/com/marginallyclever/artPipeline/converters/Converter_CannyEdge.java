@@ -1,36 +1,40 @@
 package com.marginallyclever.artPipeline.converters;
 
 
-import java.io.IOException;
-import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.artPipeline.imageFilters.Filter_Invert;
+import com.marginallyclever.convenience.turtle.Turtle;
 import com.marginallyclever.makelangelo.Translator;
 
 /**
- * 
+ * Find the edges in the image and draw only the edges.
  * @author Dan Royer
  */
 public class Converter_CannyEdge extends ImageConverter {
+	// put the pen down wherever any part of an edge is under it.  the edge image is only black and white.
+	private static final double EDGE_CUTOFF = 250;
+	
+	// kept so the working buffers are reused when the image is converted again.
+	private CannyEdgeDetector detector = new CannyEdgeDetector();
+
 	@Override
 	public String getName() {
 		return Translator.get("CannyEdgeConverterName");
 	}
 
-
 	/**
-	 * turn the image into a grid of boxes.  box size is affected by source image darkness.
-	 * @param img the image to convert.
+	 * Find the edges, then sweep the paper from side to side one pen width apart.  The pen is only down over an
+	 * edge.
 	 */
-	public boolean convert(TransformedImage img,Writer out) throws IOException {
+	@Override
+	public void finish() {
 		// The picture might be in color.  Smash it to 255 shades of grey.
 		Filter_BlackAndWhite bw = new Filter_BlackAndWhite(255);
-		img = bw.filter(img);
-
-		//create the detector
-		CannyEdgeDetector detector = new CannyEdgeDetector();
+		TransformedImage img = bw.filter(sourceImage);
 
 		//adjust its parameters as desired
 		detector.setLowThreshold(0.5f);
@@ -42,76 +46,29 @@ public boolean convert(TransformedImage img,Writer out) throws IOException {
 		TransformedImage edges = new TransformedImage(detector.getEdgesImage());
 		edges.copySettingsFrom(img);
 		
+		// the edges are white on black.  the pen draws black.
 		Filter_Invert inv = new Filter_Invert();
 		edges = inv.filter(edges);
-		
-		// Now we have a bitmap of the edges.  How to turn that into vectors?
-		
-/*
-		// Set up the conversion from image space to paper space, select the current tool, etc.
-		imageStart(edges, out);
-		// Make sure the pen is up for the first move
-		liftPen(out);
 
-		double pw = machine.getPaperWidth();
-		//double ph = machine.GetPaperHeight();
+		turtle = new Turtle();
 
-		// figure out how many lines we're going to have on this image.
-		float steps = (float) (pw / tool.getDiameter());
-		if (steps < 1) steps = 1;
+		double yBottom = machine.getMarginBottom();
+		double yTop    = machine.getMarginTop();
+		double xLeft   = machine.getMarginLeft();
+		double xRight  = machine.getMarginRight();
+		double stepSize = machine.getPenDiameter();
 
-		float blockSize = (int) (imageWidth / steps);
-		float halfstep = (float) blockSize / 2.0f;
-
-		// from top to bottom of the image...
-		float x, y, z;
-		int i = 0;
-		for (y = 0; y < imageHeight; y += blockSize) {
-			++i;
-			if ((i % 2) == 0) {
-				// every even line move left to right
-				//lineTo(file,x,y,pen up?)]
-				for (x = 0; x < imageWidth - blockSize; x += blockSize) {
-					// read a block of the image and find the average intensity in this block
-					z = takeImageSampleBlock(img, (int) x, (int) (y - halfstep), (int) (x + blockSize), (int) (y + halfstep));
-					// scale the intensity value
-					float scale_z = (255.0f - (float) z) / 255.0f;
-					float pulse_size = (halfstep - 1.0f) * scale_z;
-					if (pulse_size > 0.1f) {
-						// draw a square.  the diameter is relative to the intensity.
-						lineTo(out, x + halfstep - pulse_size, y + halfstep - pulse_size, true);
-						lineTo(out, x + halfstep + pulse_size, y + halfstep - pulse_size, false);
-						lineTo(out, x + halfstep + pulse_size, y + halfstep + pulse_size, false);
-						lineTo(out, x + halfstep - pulse_size, y + halfstep + pulse_size, false);
-						lineTo(out, x + halfstep - pulse_size, y + halfstep - pulse_size, false);
-						lineTo(out, x + halfstep - pulse_size, y + halfstep - pulse_size, true);
-					}
-				}
+		List<double[]> lines = new ArrayList<double[]>();
+		boolean flip = true;
+		for(double y = yBottom; y <= yTop; y += stepSize) {
+			if(flip) {
+				lines.add(new double[] {xLeft, y, xRight, y, EDGE_CUTOFF});
 			} else {
-				// every odd line move right to left
-				//lineTo(file,x,y,pen up?)]
-				for (x = imageWidth - blockSize; x >= 0; x -= blockSize) {
-					// read a block of the image and find the average intensity in this block
-					z = takeImageSampleBlock(img, (int) (x - blockSize), (int) (y - halfstep), (int) x, (int) (y + halfstep));
-					// scale the intensity value
-					float scale_z = (255.0f - (float) z) / 255.0f;
-					float pulse_size = (halfstep - 1.0f) * scale_z;
-					if (pulse_size > 0.1f) {
-						// draw a square.  the diameter is relative to the intensity.
-						lineTo(out, x - halfstep - pulse_size, y + halfstep - pulse_size, true);
-						lineTo(out, x - halfstep + pulse_size, y + halfstep - pulse_size, false);
-						lineTo(out, x - halfstep + pulse_size, y + halfstep + pulse_size, false);
-						lineTo(out, x - halfstep - pulse_size, y + halfstep + pulse_size, false);
-						lineTo(out, x - halfstep - pulse_size, y + halfstep - pulse_size, false);
-						lineTo(out, x - halfstep - pulse_size, y + halfstep - pulse_size, true);
-					}
-				}
+				lines.add(new double[] {xRight, y, xLeft, y, EDGE_CUTOFF});
 			}
-
-			liftPen(out);
-		    moveTo(out, (float)machine.getHomeX(), (float)machine.getHomeY(),true);
-	    }*/
-		return true;
+			flip = !flip;
+		}
+		convertAlongLines(lines,stepSize,edges);
 	}
 }
 
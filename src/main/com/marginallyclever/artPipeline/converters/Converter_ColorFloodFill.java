@@ -1,11 +1,13 @@
 package com.marginallyclever.artPipeline.converters;
 
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.image.BufferedImage;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_GaussianBlur;
@@ -16,15 +18,22 @@
 import com.marginallyclever.makelangelo.Translator;
 
 /**
+ * Cut the paper into cells one pen wide and give each cell the palette color nearest to the image under it.
+ * Then fill each patch of touching cells of the same color with back and forth lines, one color at a time.
+ *
  * @author Dan Royer
  * @since 7.1.4
  */
 public class Converter_ColorFloodFill extends ImageConverter {
+	// the palette index of white.  white is the paper, so it is never filled.  the colors before it are filled in order.
+	private static final int WHITE = 4;
+
 	private ColorPalette palette;
-	private float diameter;
-	private float lastX, lastY;
-	private TransformedImage imgChanged;
-	private TransformedImage imgMask;
+	// the size of one cell, in mm.
+	private double diameter;
+	private int cols, rows;
+	// the palette index of every cell, a row at a time from the bottom.
+	private byte [] cells;
 
 	protected double yBottom , yTop, xLeft, xRight;
 
@@ -43,212 +52,229 @@ public String getName() {
 		return Translator.get("RGBFloodFillName");
 	}
 
+	@Override
+	public ImageConverterPanel getPanel() {
+		return new Converter_ColorFloodFill_Panel(this);
+	}
 
 	/**
-	 * test the mask from x0,y0 (top left) to x1,y1 (bottom right) to see if this region has already been visited
-	 *
-	 * @param x0 left
-	 * @param y0 top
-	 * @return true if all the pixels in this region are zero.
+	 * Find the palette color of every cell.  The rows are done at the same time.
 	 */
-	protected boolean getMaskTouched(float x0, float y0) {
-		float x1 = x0 + diameter;
-		float y1 = y0 + diameter;
-
-		Color value;
-		int sum = 0;
-		for (float y = y0; y < y1; ++y) {
-			for (float x = x0; x < x1; ++x) {
-				if(imgMask.canSampleAt(x, y)) {
-					++sum;
-					value = new Color(imgMask.sample1x1Unchecked(x, y));
-					if (value.getRed() != 0) {
-						return true;
+	protected void quantize(TransformedImage img) {
+		// one view of the image per channel, so each has its own summed-area table.
+		final TransformedImage [] channels = new TransformedImage[3];
+		for(int c=0;c<3;++c) {
+			channels[c] = new TransformedImage(img.getSourceImage());
+			channels[c].copySettingsFrom(img);
+			channels[c].setColorChannel(c+1);
+		}
+
+		List<Callable<byte[]>> reads = new ArrayList<Callable<byte[]>>();
+		for(int y=0;y<rows;++y) {
+			final double y0 = yBottom + y*diameter;
+			reads.add(()->{
+				byte [] row = new byte[cols];
+				for(int x=0;x<cols;++x) {
+					double x0 = xLeft + x*diameter;
+					if(!isInsidePaperMargins(x0+diameter/2, y0+diameter/2)) {
+						row[x] = WHITE;
+						continue;
 					}
+					ColorRGB average = new ColorRGB(
+						channels[0].sample(x0, y0, x0+diameter, y0+diameter),
+						channels[1].sample(x0, y0, x0+diameter, y0+diameter),
+						channels[2].sample(x0, y0, x0+diameter, y0+diameter));
+					row[x] = (byte)palette.quantizeIndex(average);
 				}
-			}
+				return row;
+			});
 		}
 
-		return (sum == 0);
-	}
-
-	protected void setMaskTouched(float x0, float y0, float x1, float y1) {
-		
-		int c = (new ColorRGB(255, 255, 255)).toInt();
-		for (float y = y0; y < y1; ++y) {
-			for (float x = x0; x < x1; ++x) {
-				if(imgMask.canSampleAt(x, y)) {
-					imgMask.getSourceImage().setRGB(imgMask.getTransformedX(x), imgMask.getTransformedY(y), c);
-				}
+		cells = new byte[cols*rows];
+		try {
+			List<Future<byte[]>> results = ForkJoinPool.commonPool().invokeAll(reads);
+			for(int y=0;y<rows;++y) {
+				System.arraycopy(results.get(y).get(), 0, cells, y*cols, cols);
 			}
+		} catch (InterruptedException e) {
+			// the conversion was cancelled.
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
 		}
-		//imgMask.flush();
 	}
 
+	/**
+	 * Use these cells instead of quantizing an image.  For testing.
+	 * @param cells the palette index of every cell, cols*rows.
+	 */
+	void setCells(int cols,int rows,byte [] cells) {
+		this.cols = cols;
+		this.rows = rows;
+		this.cells = cells;
+	}
 
 	/**
-	 * sample the pixels from x0,y0 (top left) to x1,y1 (bottom right) and average the color.
-	 *
-	 * @param x2
-	 * @param y2
-	 * @param f
-	 * @param g
-	 * @return the average color in the region.  if nothing is sampled, return white.
+	 * Fill every patch of one color.  Only reads the cells, so every color can be done at the same time.
+	 * @param colorIndex index into the palette
+	 * @return a new turtle with the fill lines for this color.
 	 */
-	protected ColorRGB takeImageSampleBlock(float x2, float y2, float f, float g) {
-		// point sampling
-		ColorRGB value = new ColorRGB(0, 0, 0);
-		int sum = 0;
-
-		for (float y = y2; y < g; ++y) {
-			for (float x = x2; x < f; ++x) {
-				if(isInsidePaperMargins(x, y) && imgChanged.canSampleAt(x, y)) {
-					value.add(new ColorRGB(imgChanged.sample1x1(x, y)));
-					++sum;
-				}
+	protected Turtle fillColor(int colorIndex) {
+		Turtle turtle = new Turtle();
+		turtle.setColor(palette.getColor(colorIndex));
+
+		// one bit per cell, set once the cell is part of a patch.
+		long [] visited = new long[(cols*rows+63)/64];
+		int patches = 0;
+		for(int y=0;y<rows;++y) {
+			for(int x=0;x<cols;++x) {
+				int i = y*cols+x;
+				if(cells[i]!=colorIndex || isSet(visited,i)) continue;
+				drawPatch(turtle, floodFill(colorIndex, visited, x, y));
+				patches++;
 			}
 		}
-
-		if (sum == 0) return new ColorRGB(255, 255, 255);
-
-		return value.mul(1.0f / sum);
-	}
-
-
-	protected boolean doesQuantizedBlockMatch(int color_index, float x, float y) {
-		ColorRGB original_color = takeImageSampleBlock((int) x, (int) y, (int) (x + diameter), (int) (y + diameter));
-		int quantized_color = palette.quantizeIndex(original_color);
-		return (quantized_color == color_index);
+		turtle.penUp();
+		Log.message("Color " + palette.getColor(colorIndex).toString() + ": " + patches + " patches.");
+		return turtle;
 	}
 
-
 	/**
-	 * queue-based flood fill
-	 *
-	 * @param colorIndex
+	 * Scanline flood fill.  Each step fills the whole run of the row it lands on, then looks for runs in the rows
+	 * above and below it.
+	 * @param visited the cells already filled.  The cells of this patch are added.
+	 * @return the runs of the patch, each packed as (row, first column, last column), sorted.
 	 */
-	protected void floodFillBlob(int colorIndex, float x, float y) {
-		LinkedList<Point> pointsToVisit = new LinkedList<>();
-		pointsToVisit.add(new Point((int)x, (int)y));
-
-		Point a;
-
-		while (!pointsToVisit.isEmpty()) {
-			a = pointsToVisit.removeLast();
-
-			if (getMaskTouched(a.x,a.y)) continue;
-			if (!doesQuantizedBlockMatch(colorIndex, a.x, a.y)) continue;
-			// mark this spot as visited.
-			setMaskTouched(a.x, a.y, (int)(a.x + diameter), (int)(a.y + diameter));
-
-			// if the difference between the last filled pixel and this one is more than diameter*2, pen up, move, pen down.
-			float dx = a.x - lastX;
-			float dy = a.y - lastY;
-			if ((dx * dx + dy * dy) > diameter * diameter * 2.0f) {
-				//Log.message("Jump at "+x+", "+y+"\n");
-				turtle.jumpTo(a.getX(),a.getY());
-			} else {
-				//Log.message("Move to "+x+", "+y+"\n");
-				turtle.moveTo(a.x, a.y);
+	long [] floodFill(int colorIndex, long [] visited, int seedX, int seedY) {
+		int [] stack = new int[64];
+		int stackSize = 0;
+		long [] runs = new long[16];
+		int runCount = 0;
+
+		stack[stackSize++] = seedY*cols+seedX;
+		while(stackSize>0) {
+			int i = stack[--stackSize];
+			if(isSet(visited,i)) continue;
+			int y = i/cols;
+			int x0 = i%cols;
+			int x1 = x0;
+			int row = y*cols;
+			while(x0>0      && cells[row+x0-1]==colorIndex && !isSet(visited,row+x0-1)) x0--;
+			while(x1<cols-1 && cells[row+x1+1]==colorIndex && !isSet(visited,row+x1+1)) x1++;
+			setRange(visited, row+x0, row+x1);
+
+			if(runCount==runs.length) runs = Arrays.copyOf(runs, runCount*2);
+			runs[runCount++] = ((long)y<<42) | ((long)x0<<21) | x1;
+
+			// one seed for each run of matching cells just above and below this one.
+			for(int ny=y-1;ny<=y+1;ny+=2) {
+				if(ny<0 || ny>=rows) continue;
+				int nrow = ny*cols;
+				boolean inRun = false;
+				for(int x=x0;x<=x1;++x) {
+					boolean match = cells[nrow+x]==colorIndex && !isSet(visited,nrow+x);
+					if(match && !inRun) {
+						if(stackSize==stack.length) stack = Arrays.copyOf(stack, stackSize*2);
+						stack[stackSize++] = nrow+x;
+					}
+					inRun = match;
+				}
 			}
-			// update the last position.
-			lastX = a.x;
-			lastY = a.y;
-
-			//      if( !getMaskTouched((int)(a.x + diameter), (int)a.y            ))
-			pointsToVisit.add(new Point((int)(a.x + diameter), a.y                 ));
-			//      if( !getMaskTouched((int)(a.x - diameter), (int)a.y            ))
-			pointsToVisit.add(new Point((int)(a.x - diameter), a.y                 ));
-			//      if( !getMaskTouched((int)a.x             , (int)(a.y + diameter)))
-			pointsToVisit.add(new Point(     a.x             , (int)(a.y + diameter)));
-			//      if( !getMaskTouched((int)a.x             , (int)(a.y - diameter)))
-			pointsToVisit.add(new Point(     a.x             , (int)(a.y - diameter)));
 		}
+		runs = Arrays.copyOf(runs, runCount);
+		Arrays.sort(runs);
+		return runs;
 	}
 
-
 	/**
-	 * find blobs of color in the original image.  Send that to the flood fill system.
-	 *
-	 * @param colorIndex index into the list of colors at the top of the class
+	 * Draw the runs of a patch a row at a time, going back and forth.  The pen stays down from one run to the next
+	 * if they are neighbors.
+	 * @param runs sorted by row, then by column.
 	 */
-	void scanForContiguousBlocks(int colorIndex) {
-		ColorRGB originalColor;
-		int quantized_color;
-
-		float x, y;
-		int z = 0;
-
-		Log.message("Palette color " + palette.getColor(colorIndex).toString() );
-
-		for (y = (int)yBottom; y < yTop; y += diameter) {
-			for (x = (int)xLeft; x < xRight; x += diameter) {
-				if (getMaskTouched(x, y)) continue;
-
-				originalColor = takeImageSampleBlock(x, y, x + diameter, y + diameter);
-				quantized_color = palette.quantizeIndex(originalColor);
-				if (quantized_color == colorIndex) {
-					// found blob
-					floodFillBlob(colorIndex, x, y);
-					z++;
-					//if(z==20)
-					//            return;
+	private void drawPatch(Turtle turtle, long [] runs) {
+		double lastX = Double.MAX_VALUE, lastY = Double.MAX_VALUE;
+		int first = 0;
+		boolean leftToRight = true;
+		while(first<runs.length) {
+			int y = (int)(runs[first]>>>42);
+			int last = first;
+			while(last+1<runs.length && (int)(runs[last+1]>>>42)==y) last++;
+
+			for(int k=0;k<=last-first;++k) {
+				long run = runs[leftToRight ? first+k : last-k];
+				int x0 = (int)((run>>>21) & 0x1FFFFF);
+				int x1 = (int)(run & 0x1FFFFF);
+				double ya = yBottom + (y+0.5)*diameter;
+				double xa = xLeft + ((leftToRight ? x0 : x1)+0.5)*diameter;
+				double xb = xLeft + ((leftToRight ? x1 : x0)+0.5)*diameter;
+
+				// if the last run ended more than a cell away, pen up, move, pen down.
+				double dx = xa - lastX;
+				double dy = ya - lastY;
+				if(dx*dx + dy*dy > diameter*diameter*2.0) {
+					turtle.jumpTo(xa, ya);
+				} else {
+					turtle.moveTo(xa, ya);
 				}
+				turtle.moveTo(xb, ya);
+				lastX = xb;
+				lastY = ya;
 			}
+			leftToRight = !leftToRight;
+			first = last+1;
 		}
-		Log.message("Found " + z + " blobs.");
 	}
 
-	private void scanColor(int i) {
-		// "please change to tool X and press any key to continue"
-		turtle.penUp();
-		turtle.setColor(machine.getPenDownColorDefault());
-		Log.message("Color " + i );
+	static boolean isSet(long [] bits,int i) {
+		return (bits[i>>>6] & (1L<<i)) != 0;
+	}
 
-		scanForContiguousBlocks(i);
+	/**
+	 * Set bits from through to, inclusive.
+	 */
+	private static void setRange(long [] bits,int from,int to) {
+		int w0 = from>>>6;
+		int w1 = to>>>6;
+		long first = -1L << from;
+		long last = -1L >>> (63-(to&63));
+		if(w0==w1) {
+			bits[w0] |= first & last;
+			return;
+		}
+		bits[w0] |= first;
+		for(int w=w0+1;w<w1;++w) bits[w] = -1L;
+		bits[w1] |= last;
 	}
 
 	/**
-	 * create horizontal lines across the image.  Raise and lower the pen to darken the appropriate areas
-	 *
-	 * @param img the image to convert.
+	 * Fill the patches of black, red, green, and then blue.
 	 */
-	public boolean convert(TransformedImage img) {
+	@Override
+	public void finish() {
 		Filter_GaussianBlur blur = new Filter_GaussianBlur(1);
-		img = blur.filter(img);
-		//    Histogram h = new Histogram();
-		//    h.getHistogramOf(img);
-
-		turtle=new Turtle();
-		
-		// create a color mask so we don't repeat any pixels
-		BufferedImage bi = new BufferedImage(img.getSourceImage().getWidth(), img.getSourceImage().getHeight(), BufferedImage.TYPE_INT_RGB);
-		imgMask = new TransformedImage(bi);
-		imgMask.copySettingsFrom(imgChanged);
-		Graphics2D g = bi.createGraphics();
-		g.setPaint(new Color(0, 0, 0));
-		g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+		TransformedImage img = blur.filter(sourceImage);
 
 		yBottom = machine.getMarginBottom();
 		yTop    = machine.getMarginTop();
 		xLeft   = machine.getMarginLeft();
 		xRight  = machine.getMarginRight();
-		
-		diameter = (int)( machine.getPenDiameter() );
 
-		imgChanged = img;
+		diameter = Math.max(machine.getPenDiameter(), 0.1);
+		cols = (int)Math.ceil((xRight-xLeft)/diameter);
+		rows = (int)Math.ceil((yTop-yBottom)/diameter);
 
-		lastX = 0;
-		lastY = 0;
+		quantize(img);
 
-		scanColor(0);  // black
-		scanColor(1);  // red
-		scanColor(2);  // green
-		scanColor(3);  // blue
+		turtle = new Turtle();
 
+		// every color at the same time, drawn in palette order.
+		List<Callable<Turtle>> colors = new ArrayList<Callable<Turtle>>();
+		for(int i=0;i<WHITE;++i) {
+			final int colorIndex = i;
+			colors.add(()->fillColor(colorIndex));
+		}
+		drawInParallel(colors);
 		turtle.penUp();
-		
-		return true;
 	}
 }
 
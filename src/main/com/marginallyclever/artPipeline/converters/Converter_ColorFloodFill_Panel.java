@@ -0,0 +1,22 @@
+package com.marginallyclever.artPipeline.converters;
+
+import com.marginallyclever.makelangelo.Translator;
+import com.marginallyclever.makelangelo.select.SelectReadOnlyText;
+
+/**
+ * GUI for {@link Converter_ColorFloodFill}
+ * @author Dan Royer
+ *
+ */
+public class Converter_ColorFloodFill_Panel extends ImageConverterPanel {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	public Converter_ColorFloodFill_Panel(Converter_ColorFloodFill arg0) {
+		super();
+		add(new SelectReadOnlyText(Translator.get("RGBFloodFillNote")));
+		finish();
+	}
+}
@@ -1,5 +1,8 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.convenience.Histogram;
@@ -46,20 +49,26 @@ public void finish2() {
 
 		turtle = new Turtle();
 		
-		finishPass(new int[]{15* 2,15* 4},0  ,img);
-		finishPass(new int[]{15* 6,15* 8},90 ,img);
-		finishPass(new int[]{15*10,15*12},45 ,img);
-		finishPass(new int[]{15*14,15*15},135,img);
+		// figure out how many lines we're going to have on this image.
+		float stepSize = machine.getPenDiameter()*2;
+		if (stepSize < 1) stepSize = 1;
+
+		// the passes don't depend on each other, so they can all be drawn at once.
+		List<double[]> lines = new ArrayList<double[]>();
+		finishPass(new int[]{15* 2,15* 4},0  ,stepSize,lines);
+		finishPass(new int[]{15* 6,15* 8},90 ,stepSize,lines);
+		finishPass(new int[]{15*10,15*12},45 ,stepSize,lines);
+		finishPass(new int[]{15*14,15*15},135,stepSize,lines);
+		convertAlongLines(lines,stepSize,img);
 	}
 	
-	protected void finishPass(int [] passes,double angleDeg,TransformedImage img) {
+	/**
+	 * @param lines receives the lines of this pass, for {@link #convertAlongLines(List, double, TransformedImage)}.
+	 */
+	protected void finishPass(int [] passes,double angleDeg,double stepSize,List<double[]> lines) {
 		double dx = Math.cos(Math.toRadians(angleDeg));
 		double dy = Math.sin(Math.toRadians(angleDeg));
 
-		// figure out how many lines we're going to have on this image.
-		float stepSize = machine.getPenDiameter()*2;
-		if (stepSize < 1) stepSize = 1;
-
 		// Color values are from 0...255 inclusive.  255 is white, 0 is black.
 		// Lift the pen any time the color value is > level (128 or more).
 
@@ -71,11 +80,7 @@ protected void finishPass(int [] passes,double angleDeg,TransformedImage img) {
 		double height = yTop - yBottom;
 		double width = xRight - xLeft;
 		double maxLen = Math.sqrt(width*width+height*height);
-		double [] error0 = new double[(int)Math.ceil(maxLen)];
-		double [] error1 = new double[(int)Math.ceil(maxLen)];
 
-		boolean useError=false;
-		
 		int i=0;
 		for(double a = -maxLen;a<maxLen;a+=stepSize) {
 			double px = dx * a;
@@ -87,15 +92,9 @@ protected void finishPass(int [] passes,double angleDeg,TransformedImage img) {
 		
 			double l2 = passes[(i % passes.length)];
 			if ((i % 2) == 0) {
-				if(!useError) convertAlongLine(x0, y0, x1, y1, stepSize, l2, img);
-				else convertAlongLineErrorTerms(x0,y0,x1,y1,stepSize,l2,error0,error1,img);
+				lines.add(new double[] {x0,y0,x1,y1,l2});
 			} else {
-				if(!useError) convertAlongLine(x1, y1, x0, y0, stepSize, l2, img);
-				else convertAlongLineErrorTerms(x1,y1,x0,y0,stepSize,l2,error0,error1,img);
-			}
-			for(int j=0;j<error0.length;++j) {
-				error0[j]=error1[error0.length-1-j];
-				error1[error0.length-1-j]=0;
+				lines.add(new double[] {x1,y1,x0,y0,l2});
 			}
 			++i;
 		}
@@ -120,16 +119,7 @@ protected void finish1() {
 		double x, y;
 		boolean flip = true;
 
-		x = xEnd-xStart;
-		y = yEnd-yStart;
-		
-		int maxLen = (int)Math.sqrt(x*x+y*y);
-		
-		double [] error0 = new double[(int)Math.ceil(maxLen)];
-		double [] error1 = new double[(int)Math.ceil(maxLen)];
-		Histogram hist = new Histogram();
-		
-		hist.getGreyHistogramOf(img.getSourceImage());
+		Histogram hist = img.getHistogram();
 		//*
 		double [] levels = hist.getLevelsMapped( new double[] { 192.0/255.0, 128.0/255.0, 64.0/255.0, 32.0/255.0 } );
 		/*/
@@ -140,53 +130,34 @@ protected void finish1() {
 			4*Math.pow(2,2),
 		};//*/
 		
-		boolean useError=false;
+		// the passes don't depend on each other, so every line of every pass is drawn at once.
+		List<double[]> lines = new ArrayList<double[]>();
+		
 		// vertical
 		double level = levels[0];
 
 		for (y = yStart; y <= yEnd; y += stepSize) {
 			if (flip) {
-				if(!useError) convertAlongLine(xStart, y, xEnd, y, stepSize, level,img);
-				else convertAlongLineErrorTerms(xStart, y, xEnd, y, stepSize, level,error0,error1, img);
+				lines.add(new double[] {xStart, y, xEnd, y, level});
 			} else {
-				if(!useError) convertAlongLine(xEnd, y, xStart, y, stepSize, level, img);
-				else convertAlongLineErrorTerms(xEnd, y, xStart, y, stepSize, level,error0,error1, img);
-			}
-			for(int j=0;j<error0.length;++j) {
-				error0[j]=error1[error0.length-1-j];
-				error1[error0.length-1-j]=0;
+				lines.add(new double[] {xEnd, y, xStart, y, level});
 			}
 			flip = !flip;
 		}
 
-		level = levels[1];
-		for(int j=0;j<error0.length;++j) {
-			error0[j]=error1[j]=0;
-		}
-		
 		// horizontal
+		level = levels[1];
 		for (x = xStart; x <= xEnd; x += stepSize) {
 			if (flip) {
-				if(!useError) convertAlongLine(x, yStart, x, yEnd, stepSize, level, img);
-				else convertAlongLineErrorTerms(x, yStart, x, yEnd, stepSize, level,error0,error1, img);
+				lines.add(new double[] {x, yStart, x, yEnd, level});
 			} else {
-				if(!useError) convertAlongLine(x, yEnd, x, yStart, stepSize, level, img);
-				else convertAlongLineErrorTerms(x, yEnd, x, yStart, stepSize, level,error0,error1, img);
-			}
-			for(int j=0;j<error0.length;++j) {
-				error0[j]=error1[error0.length-1-j];
-				error1[error0.length-1-j]=0;
+				lines.add(new double[] {x, yEnd, x, yStart, level});
 			}
 			flip = !flip;
 		}
 
-		level = levels[2];
-		for(int j=0;j<error0.length;++j) {
-			error0[j]=error1[j]=0;
-		}
-
-
 		// diagonal 1
+		level = levels[2];
 		double dy = yEnd - yStart;
 		double dx = xEnd - xStart;
 		double len = dx > dy ? dx : dy;
@@ -215,25 +186,15 @@ protected void finish1() {
 			double y4 = py - len;
 
 			if (flip) {
-				if(!useError) convertAlongLine(x3, y3, x4, y4, stepSize, level, img);
-				else convertAlongLineErrorTerms(x3, y3, x4, y4, stepSize, level,error0,error1, img);
+				lines.add(new double[] {x3, y3, x4, y4, level});
 			} else {
-				if(!useError) convertAlongLine(x4, y4, x3, y3, stepSize, level, img);
-				else convertAlongLineErrorTerms(x4, y4, x3, y3, stepSize, level,error0,error1, img);
-			}
-			for(int j=0;j<error0.length;++j) {
-				error0[j]=error1[error0.length-1-j];
-				error1[error0.length-1-j]=0;
+				lines.add(new double[] {x4, y4, x3, y3, level});
 			}
 			flip = !flip;
 		}
 
-		level = levels[3];
-		for(int j=0;j<error0.length;++j) {
-			error0[j]=error1[j]=0;
-		}
-
 		// diagonal 2
+		level = levels[3];
 
 		x1 = +len;
 		y1 = -len;
@@ -251,18 +212,14 @@ protected void finish1() {
 			double y4 = py - len;
 
 			if (flip) {
-				if(!useError) convertAlongLine(x3, y3, x4, y4, stepSize, level, img);
-				else convertAlongLineErrorTerms(x3, y3, x4, y4, stepSize, level,error0,error1, img);
+				lines.add(new double[] {x3, y3, x4, y4, level});
 			} else {
-				if(!useError) convertAlongLine(x4, y4, x3, y3, stepSize, level, img);
-				else convertAlongLineErrorTerms(x4, y4, x3, y3, stepSize, level,error0,error1, img);
-			}
-			for(int j=0;j<error0.length;++j) {
-				error0[j]=error1[error0.length-1-j];
-				error1[error0.length-1-j]=0;
+				lines.add(new double[] {x4, y4, x3, y3, level});
 			}
 			flip = !flip;
 		}
+		
+		convertAlongLines(lines,stepSize,img);
 	}
 }
 
@@ -1,7 +1,9 @@
 package com.marginallyclever.artPipeline.converters;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
 
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
@@ -54,6 +56,14 @@ public void setDirectionIndex(int value) {
 
 	
 	protected void convertLine(TransformedImage img,float spaceBetweenLines,float halfStep,Point2D a,Point2D b) {
+		convertLine(img,spaceBetweenLines,halfStep,a,b,turtle);
+	}
+	
+	/**
+	 * Same as {@link #convertLine(TransformedImage, float, float, Point2D, Point2D)}, drawn with any turtle.
+	 * @param turtle where to draw
+	 */
+	protected void convertLine(TransformedImage img,float spaceBetweenLines,float halfStep,Point2D a,Point2D b,Turtle turtle) {
 		LineInterpolatorSinCurve line = new LineInterpolatorSinCurve(a,b);
 		line.setAmplitude(0.4);
 		
@@ -140,13 +150,13 @@ protected void convertLine(TransformedImage img,float spaceBetweenLines,float ha
 								zi2 = zList.listIterator(ziStart);
 								for(zc=ziStart; zc<ziEnd; ++zc) {
 									z = zi2.next();
-									lineInternal(maxPulseNow,z,line,zc*iterStepSize);
+									lineInternal(maxPulseNow,z,line,zc*iterStepSize,turtle);
 								}
 							} else {
 								zi2 = zList.listIterator(ziEnd);
 								for(zc=ziEnd-1; zc>=ziStart; --zc) {
 									z = zi2.previous();
-									lineInternal(maxPulseNow,z,line,zc*iterStepSize);
+									lineInternal(maxPulseNow,z,line,zc*iterStepSize,turtle);
 								}
 							}
 							direction=-direction;
@@ -160,6 +170,14 @@ protected void convertLine(TransformedImage img,float spaceBetweenLines,float ha
 	}
 	
 	protected void lineInternal(double maxPulseNow,double z,LineInterpolator line,double t) {
+		lineInternal(maxPulseNow,z,line,t,turtle);
+	}
+	
+	/**
+	 * Same as {@link #lineInternal(double, double, LineInterpolator, double)}, drawn with any turtle.
+	 * @param turtle where to draw
+	 */
+	protected void lineInternal(double maxPulseNow,double z,LineInterpolator line,double t,Turtle turtle) {
 		double pulseSize = maxPulseNow * z;
 		Point2D p = new Point2D();
 		Point2D n = new Point2D();
@@ -187,9 +205,8 @@ public void finish() {
 		float halfStep = machine.getPenDiameter();
 		float spaceBetweenLines = blockScale;
 
-		// from top to bottom of the image...
-		Point2D a = new Point2D();
-		Point2D b = new Point2D();
+		// every line is drawn on its own, so they can all be made at once and then joined in order.
+		List<Callable<Turtle>> lines = new ArrayList<Callable<Turtle>>();
 		
 		turtle = new Turtle();
 		
@@ -199,22 +216,27 @@ public void finish() {
 			yBottom -= h;
 			yTop    += h;
 			for (double y = yBottom; y < yTop; y += spaceBetweenLines) {
-				a.set(xRight,y);
-				b.set(xLeft,y);
-				convertLine(img,spaceBetweenLines,halfStep,a,b);
+				addLine(lines,img,spaceBetweenLines,halfStep,new Point2D(xRight,y),new Point2D(xLeft,y));
 			}
 		} else {
 			// vertical
 			xLeft  -= w;
 			xRight += w;
 			for (double x = xLeft; x < xRight; x += spaceBetweenLines) {
-				a.set(x,yTop);
-				b.set(x,yBottom);
-				convertLine(img,spaceBetweenLines,halfStep,a,b);
+				addLine(lines,img,spaceBetweenLines,halfStep,new Point2D(x,yTop),new Point2D(x,yBottom));
 			}
 		}
+		drawInParallel(lines);
 		Log.message("Moire end");
 	}
+	
+	private void addLine(List<Callable<Turtle>> lines,TransformedImage img,float spaceBetweenLines,float halfStep,Point2D a,Point2D b) {
+		lines.add(()->{
+			Turtle line = new Turtle();
+			convertLine(img,spaceBetweenLines,halfStep,a,b,line);
+			return line;
+		});
+	}
 }
 
 
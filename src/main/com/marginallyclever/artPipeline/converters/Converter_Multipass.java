@@ -1,5 +1,8 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.convenience.turtle.Turtle;
@@ -66,13 +69,11 @@ public void finish() {
 		double height = yTop - yBottom;
 		double width = xRight - xLeft;
 		double maxLen = Math.sqrt(width*width+height*height);
-		double [] error0 = new double[(int)Math.ceil(maxLen)];
-		double [] error1 = new double[(int)Math.ceil(maxLen)];
 
 		turtle = new Turtle();
 		
-		boolean useError=false;
-		
+		// the lines don't depend on each other, so they can all be drawn at once.
+		List<double[]> lines = new ArrayList<double[]>();
 		int i=0;
 		for(double a = -maxLen;a<maxLen;a+=stepSize) {
 			double px = dx * a;
@@ -84,18 +85,13 @@ public void finish() {
 		
 			double l2 = level * (1 + (i % passes));
 			if ((i % 2) == 0) {
-				if(!useError) convertAlongLine(x0, y0, x1, y1, stepSize, l2, img);
-				else convertAlongLineErrorTerms(x0,y0,x1,y1,stepSize,l2,error0,error1,img);
+				lines.add(new double[] {x0,y0,x1,y1,l2});
 			} else {
-				if(!useError) convertAlongLine(x1, y1, x0, y0, stepSize, l2, img);
-				else convertAlongLineErrorTerms(x1,y1,x0,y0,stepSize,l2,error0,error1,img);
-			}
-			for(int j=0;j<error0.length;++j) {
-				error0[j]=error1[error0.length-1-j];
-				error1[error0.length-1-j]=0;
+				lines.add(new double[] {x1,y1,x0,y0,l2});
 			}
 			++i;
 		}
+		convertAlongLines(lines,stepSize,img);
 	}
 }
 
@@ -1,5 +1,9 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.convenience.Point2D;
@@ -45,7 +49,15 @@ public void setDirectionIndex(int value) {
 		direction = value;
 	}
 	
-	protected void convertLine(TransformedImage img,float zigZagSpacing,float halfStep,Point2D a,Point2D b) {		
+	protected void convertLine(TransformedImage img,float zigZagSpacing,float halfStep,Point2D a,Point2D b) {
+		convertLine(img,zigZagSpacing,halfStep,a,b,turtle);
+	}
+	
+	/**
+	 * Same as {@link #convertLine(TransformedImage, float, float, Point2D, Point2D)}, drawn with any turtle.
+	 * @param turtle where to draw
+	 */
+	protected void convertLine(TransformedImage img,float zigZagSpacing,float halfStep,Point2D a,Point2D b,Turtle turtle) {		
 		Point2D dir = new Point2D(b.x-a.x,b.y-a.y);
 		double len = dir.length();
 		dir.scale(1/len);
@@ -98,8 +110,8 @@ public void finish() {
 		double x, y = 0;
 		int i=0;
 
-		Point2D a = new Point2D();
-		Point2D b = new Point2D();
+		// every line is its own zigzag, so they can all be made at once and then joined in order.
+		List<Callable<Turtle>> lines = new ArrayList<Callable<Turtle>>();
 		
 		turtle = new Turtle();
 		
@@ -109,13 +121,9 @@ public void finish() {
 				++i;
 
 				if ((i % 2) == 0) {
-					a.set(xLeft,y);
-					b.set(xRight,y);
-					convertLine(img,zigZagSpacing,halfStep,a,b);
+					addLine(lines,img,zigZagSpacing,halfStep,new Point2D(xLeft,y),new Point2D(xRight,y));
 				} else {
-					a.set(xRight,y);
-					b.set(xLeft,y);
-					convertLine(img,zigZagSpacing,halfStep,a,b);
+					addLine(lines,img,zigZagSpacing,halfStep,new Point2D(xRight,y),new Point2D(xLeft,y));
 				}
 			}
 		} else {
@@ -124,16 +132,21 @@ public void finish() {
 				++i;
 
 				if ((i % 2) == 0) {
-					a.set(x,yBottom);
-					b.set(x,yTop);
-					convertLine(img,zigZagSpacing,halfStep,a,b);
+					addLine(lines,img,zigZagSpacing,halfStep,new Point2D(x,yBottom),new Point2D(x,yTop));
 				} else {
-					a.set(x,yTop);
-					b.set(x,yBottom);
-					convertLine(img,zigZagSpacing,halfStep,a,b);
+					addLine(lines,img,zigZagSpacing,halfStep,new Point2D(x,yTop),new Point2D(x,yBottom));
 				}
 			}
 		}
+		drawInParallel(lines);
+	}
+	
+	private void addLine(List<Callable<Turtle>> lines,TransformedImage img,float zigZagSpacing,float halfStep,Point2D a,Point2D b) {
+		lines.add(()->{
+			Turtle line = new Turtle();
+			convertLine(img,zigZagSpacing,halfStep,a,b,line);
+			return line;
+		});
 	}
 }
 
@@ -1,5 +1,11 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.convenience.log.Log;
@@ -12,6 +18,9 @@
  * @author Dan Royer
  */
 public class Converter_Sandy extends ImageConverter {
+	// the most a line may stray from the circle it stands in for, as a fraction of the pen diameter.
+	private static final double ARC_TOLERANCE = 0.25;
+
 	private static int blockScale=150;
 	private static int direction=0;
 	private String [] directionChoices = new String[]{ 
@@ -81,27 +90,43 @@ public void finish() {
 		double flipSum;
 		double pulseSize = rStep*0.5 - machine.getPenDiameter()/2;//r_step * 0.6 * scale_z;
 
+		// the image under every step of every ring.  This is the slow part and the rings don't depend on each
+		// other, so they are all read at the same time.
+		List<Callable<double[]>> reads = new ArrayList<Callable<double[]>>();
+		for(r=rMin;r<rMax;r+=rStep) {
+			final double ringR = r;
+			final double ringDir = t_dir;
+			reads.add(()->readRing(img,cx,cy,ringR,ringDir,pulseSize));
+			t_dir=-t_dir;
+		}
+		List<Future<double[]>> rings = ForkJoinPool.commonPool().invokeAll(reads);
+		t_dir=1;
+
 		turtle = new Turtle();
 		turtle.lock();
 		Log.message("Sandy started.");
 		//Thread.dumpStack();
 		
+		ArcWriter arc = new ArcWriter(turtle,machine.getPenDiameter()*ARC_TOLERANCE);
 		try {
 			// make concentric circles that get bigger and bigger.
+			int ring=0;
 			for(r=rMin;r<rMax;r+=rStep) {
+				double [] intensity = rings.get(ring++).get();
 				// go around in a circle
-				t=0;
+				int step=0;
 				t_step = machine.getPenDiameter()/r;
 				flipSum=0;
 				// go around the circle
-				for(t=0;t<Math.PI*2;t+=t_step) {
+				for(t=0;t<Math.PI*2;t+=t_step,++step) {
 					dx = Math.cos(t_dir *t);
 					dy = Math.sin(t_dir *t);
 					x = cx + dx * r;
 					y = cy + dy * r;
-					if(!isInsidePaperMargins(x,y)) {
+					z = intensity[step];
+					if(Double.isNaN(z)) {
 						if(wasDrawing) {
-							turtle.jumpTo(last_x,last_y);
+							arc.jumpTo(last_x,last_y);
 							wasDrawing=false;
 						}
 						continue;
@@ -109,39 +134,135 @@ public void finish() {
 	
 					last_x=x;
 					last_y=y;
-					// read a block of the image and find the average intensity in this block
-					z = img.sample( x-pulseSize/2.0, y-pulseSize/2.0,x+pulseSize/2.0,y +pulseSize/2.0 );
 					// scale the intensity value
-					if(z<0) z=0;
-					if(z>255) z=255;
 					scaleZ = (255.0 -  z) / 255.0;
 	
 					if(wasDrawing == false) {
-						turtle.jumpTo(last_x,last_y);
+						arc.jumpTo(last_x,last_y);
 						wasDrawing=true;
 					}
 	
-					turtle.moveTo(	x + dx * pulseSize*pulseFlip,
-									y + dy * pulseSize*pulseFlip);
+					arc.arcTo(	x + dx * pulseSize*pulseFlip,
+								y + dy * pulseSize*pulseFlip,
+								r + pulseSize*pulseFlip,
+								t_step);
 					
 					flipSum+=scaleZ;
 					if(flipSum >= 1) {
 						flipSum-=1;
 						pulseFlip = -pulseFlip;
-						turtle.moveTo(	x + dx * pulseSize*pulseFlip,
-										y + dy * pulseSize*pulseFlip);
+						arc.moveTo(	x + dx * pulseSize*pulseFlip,
+									y + dy * pulseSize*pulseFlip);
 					}
 				}
+				// the next ring is a different circle.
+				arc.flush();
 				t_dir=-t_dir;
 			}
+		} catch(InterruptedException e) {
+			// the conversion was cancelled.
+			Thread.currentThread().interrupt();
 		} catch(Exception e) {
 			e.printStackTrace();
 		} finally {
+			arc.flush();
 			turtle.unlock();
 			Log.message("Sandy finished.");
 		}
 	}
 
+	/**
+	 * Read the image under every step of one ring, the same steps that finish() takes around it.
+	 * @return the intensity [0...255] at each step, or NaN where the step is outside the margins.
+	 */
+	private double [] readRing(TransformedImage img,double cx,double cy,double r,double t_dir,double pulseSize) {
+		double t_step = machine.getPenDiameter()/r;
+		int steps=0;
+		for(double t=0;t<Math.PI*2;t+=t_step) ++steps;
+
+		double [] intensity = new double[steps];
+		int step=0;
+		for(double t=0;t<Math.PI*2;t+=t_step,++step) {
+			double x = cx + Math.cos(t_dir *t) * r;
+			double y = cy + Math.sin(t_dir *t) * r;
+			if(!isInsidePaperMargins(x,y)) {
+				intensity[step] = Double.NaN;
+				continue;
+			}
+			// read a block of the image and find the average intensity in this block
+			double z = img.sample( x-pulseSize/2.0, y-pulseSize/2.0,x+pulseSize/2.0,y +pulseSize/2.0 );
+			if(z<0) z=0;
+			if(z>255) z=255;
+			intensity[step] = z;
+		}
+		return intensity;
+	}
+
+	/**
+	 * Draws along an arc with as few moves as it can.  While the pen stays on one circle, the moves are kept back
+	 * and joined into one straight line until that line would stray more than the tolerance from the circle.
+	 * Any other move first writes out the one kept back.
+	 */
+	private static class ArcWriter {
+		private Turtle turtle;
+		private double tolerance;
+		// the move kept back, if any.
+		private boolean hasPending;
+		private double pendingX, pendingY;
+		// true if the turtle is on the circle of the pending move, and how far around it the pending move is.
+		private boolean onArc;
+		private double angle;
+
+		public ArcWriter(Turtle turtle,double tolerance) {
+			this.turtle = turtle;
+			this.tolerance = tolerance;
+		}
+
+		/**
+		 * Draw to (x,y), which is one more step around a circle.
+		 * @param radius of the circle
+		 * @param step angle from the last move, in radians.
+		 */
+		public void arcTo(double x,double y,double radius,double step) {
+			if(hasPending) {
+				// the middle of the arc is the farthest it gets from a straight line.
+				if(onArc && Math.abs(radius)*(1-Math.cos((angle+step)/2)) <= tolerance) {
+					pendingX = x;
+					pendingY = y;
+					angle += step;
+					return;
+				}
+				turtle.moveTo(pendingX,pendingY);
+				onArc = true;
+			}
+			hasPending = true;
+			pendingX = x;
+			pendingY = y;
+			angle = step;
+		}
+
+		/**
+		 * Draw straight to (x,y), the start of a new circle at the same angle.
+		 */
+		public void moveTo(double x,double y) {
+			flush();
+			turtle.moveTo(x,y);
+			onArc = true;
+		}
+
+		public void jumpTo(double x,double y) {
+			flush();
+			turtle.jumpTo(x,y);
+			onArc = false;
+		}
+
+		public void flush() {
+			if(hasPending) turtle.moveTo(pendingX,pendingY);
+			hasPending = false;
+			onArc = false;
+		}
+	}
+
 	public int getScale() {
 		return blockScale;
 	}
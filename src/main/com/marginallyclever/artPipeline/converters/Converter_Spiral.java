@@ -1,5 +1,9 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.convenience.log.Log;
@@ -44,11 +48,9 @@ public void finish() {
 
 		double toolDiameter = machine.getPenDiameter();
 
-		int i, j;
+		int j;
 		final int steps = 4;
 		double leveladd = 255.0 / (double)(steps+1);
-		double level;
-		int z = 0;
 
 		float maxr;
 		if (convertToCorners) {
@@ -65,41 +67,74 @@ public void finish() {
 
 		turtle = new Turtle();
 		
-		double r = maxr, f;
-		double fx, fy;
-		int numRings = 0;
+		// the rings don't depend on each other, so they can all be drawn at once.
+		List<Callable<Turtle>> rings = new ArrayList<Callable<Turtle>>();
+		// the last place sampled on the ring before, where a dark start to the next ring is drawn from.
+		double lastX = 0, lastY = 0;
+		double r = maxr;
 		j = 0;
 		while (r > toolDiameter) {
 			++j;
-			level = leveladd * (1+(j%steps));
+			final double level = leveladd * (1+(j%steps));
 			// find circumference of current circle
 			float circumference = (float) Math.floor((2.0f * r - toolDiameter) * Math.PI);
 			if (circumference > 360.0f) circumference = 360.0f;
+			// a tiny ring still needs a start and an end.
+			if (circumference < 1.0f) circumference = 1.0f;
 
-			for (i = 0; i <= circumference; ++i) {
-				f = Math.PI * 2.0 * (double)i / (double)circumference;
-				fx = Math.cos(f) * r;
-				fy = Math.sin(f) * r;
-				
-				boolean isInside = isInsidePaperMargins(fx, fy);
-				if(isInside) {
-					try {
-						z = img.sample3x3(fx, fy);
-					} catch(Exception e) {
-						e.printStackTrace();
-					}
-					
-					if(z<level) turtle.penDown();
-					else turtle.penUp();
-				} else turtle.penUp();
-				turtle.moveTo(fx, fy);
-			}
+			final double ringR = r;
+			final int samples = (int)circumference;
+			final double fromX = lastX, fromY = lastY;
+			rings.add(()->drawRing(img, ringR, samples, level, fromX, fromY));
+
+			lastX = ringX(r, samples, samples);
+			lastY = ringY(r, samples, samples);
 			r -= toolDiameter;
-			++numRings;
 		}
+		int numRings = rings.size();
+		drawInParallel(rings);
 
 		Log.message(numRings + " rings.");
 	}
+
+	/**
+	 * Go once around a ring, sampling the image at every step.  Only the dark steps are drawn, and only the moves
+	 * where the pen goes down or is dragged are kept.  A light stretch is one jump to where the next dark step
+	 * starts, no matter how long it is.
+	 * @param samples the ring is cut into this many steps.
+	 * @param fromX where the pen was before the first step, in case the first step is dark.
+	 * @param fromY where the pen was before the first step, in case the first step is dark.
+	 * @return a new turtle with the ring.
+	 */
+	private Turtle drawRing(TransformedImage img,double r,int samples,double level,double fromX,double fromY) {
+		Turtle ring = new Turtle();
+		double px = fromX, py = fromY;
+		// true if the pen is at (px,py) and down.
+		boolean drawing = false;
+		for (int i = 0; i <= samples; ++i) {
+			double fx = ringX(r, i, samples);
+			double fy = ringY(r, i, samples);
+			if (isInsidePaperMargins(fx, fy) && img.sample3x3(fx, fy) < level) {
+				if (!drawing) ring.jumpTo(px, py);
+				ring.moveTo(fx, fy);
+				drawing = true;
+			} else {
+				drawing = false;
+			}
+			px = fx;
+			py = fy;
+		}
+		ring.penUp();
+		return ring;
+	}
+
+	private double ringX(double r,int i,int samples) {
+		return Math.cos(Math.PI * 2.0 * (double)i / (double)samples) * r;
+	}
+
+	private double ringY(double r,int i,int samples) {
+		return Math.sin(Math.PI * 2.0 * (double)i / (double)samples) * r;
+	}
 }
 
 
@@ -1,5 +1,8 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_CMYK;
 import com.marginallyclever.convenience.ColorRGB;
@@ -51,14 +54,22 @@ public void finish() {
 
 		turtle = new Turtle();
 		
-		Log.message("Yellow...");		outputChannel(cmyk.getY(),new ColorRGB(255,255,  0),255.0*1.0,Math.cos(Math.toRadians(45    ))*separation,Math.sin(Math.toRadians(45    ))*separation);
-		Log.message("Cyan...");			outputChannel(cmyk.getC(),new ColorRGB(  0,255,255),255.0*1.0,Math.cos(Math.toRadians(45+ 90))*separation,Math.sin(Math.toRadians(45+ 90))*separation);
-		Log.message("Magenta...");		outputChannel(cmyk.getM(),new ColorRGB(255,  0,255),255.0*1.0,Math.cos(Math.toRadians(45+180))*separation,Math.sin(Math.toRadians(45+180))*separation);
-		Log.message("Black...");		outputChannel(cmyk.getK(),new ColorRGB(  0,  0,  0),255.0*1.0,Math.cos(Math.toRadians(45+270))*separation,Math.sin(Math.toRadians(45+270))*separation);
+		// all four channels at once, drawn in ink order.
+		Log.message("Yellow, cyan, magenta, and black...");
+		drawInParallel(Arrays.<Callable<Turtle>>asList(
+			()->outputChannel(cmyk.getY(),new ColorRGB(255,255,  0),255.0*1.0,Math.cos(Math.toRadians(45    ))*separation,Math.sin(Math.toRadians(45    ))*separation),
+			()->outputChannel(cmyk.getC(),new ColorRGB(  0,255,255),255.0*1.0,Math.cos(Math.toRadians(45+ 90))*separation,Math.sin(Math.toRadians(45+ 90))*separation),
+			()->outputChannel(cmyk.getM(),new ColorRGB(255,  0,255),255.0*1.0,Math.cos(Math.toRadians(45+180))*separation,Math.sin(Math.toRadians(45+180))*separation),
+			()->outputChannel(cmyk.getK(),new ColorRGB(  0,  0,  0),255.0*1.0,Math.cos(Math.toRadians(45+270))*separation,Math.sin(Math.toRadians(45+270))*separation)
+		));
 		Log.message("Finishing...");
 	}
 
-	protected void outputChannel(TransformedImage img,ColorRGB newColor,double cutoff,double cx,double cy) {
+	/**
+	 * @return a new turtle with the spiral for this channel.
+	 */
+	protected Turtle outputChannel(TransformedImage img,ColorRGB newColor,double cutoff,double cx,double cy) {
+		Turtle turtle = new Turtle();
 		turtle.setColor(newColor);
 		
 		double toolDiameter = machine.getPenDiameter();
@@ -131,6 +142,7 @@ protected void outputChannel(TransformedImage img,ColorRGB newColor,double cutof
 
 		Log.message(downMoves + " down moves.");
 		Log.message(numRings + " rings.");
+		return turtle;
 	}
 }
 
@@ -1,22 +1,19 @@
 package com.marginallyclever.artPipeline.converters;
 
-import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.jogamp.opengl.GL2;
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
-import com.marginallyclever.convenience.Point2D;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.convenience.turtle.Turtle;
 import com.marginallyclever.makelangelo.Translator;
 import com.marginallyclever.makelangeloRobot.MakelangeloRobotDecorator;
 import com.marginallyclever.voronoi.VoronoiCell;
-import com.marginallyclever.voronoi.VoronoiGraphEdge;
-import com.marginallyclever.voronoi.VoronoiTesselator;
+import com.marginallyclever.voronoi.VoronoiEdgeBuffer;
 
 
 /**
@@ -28,142 +25,23 @@
  * @since 7.0.0?
  */
 public class Converter_VoronoiStippling extends ImageConverter implements MakelangeloRobotDecorator {
+	// keeps restart() from changing the cells in the middle of an iteration.  render() never takes it.
 	private ReentrantLock lock = new ReentrantLock();
+	// the latest dots and borders, for render().
+	private AtomicReference<PreviewSnapshot> preview = new AtomicReference<PreviewSnapshot>(PreviewSnapshot.EMPTY);
 
-	private VoronoiTesselator voronoiTesselator = new VoronoiTesselator();
+	private VoronoiRelaxation relaxation = new VoronoiRelaxation();
 	private ArrayList<VoronoiCell> cells = new ArrayList<VoronoiCell>();
-	private List<VoronoiGraphEdge> graphEdges = null;
+	private VoronoiEdgeBuffer graphEdges = new VoronoiEdgeBuffer();
 	private static boolean drawBorders = true;
 	private static int numCells = 1000;
 	private static float maxDotSize = 5.0f;
 	private static float minDotSize = 1.0f;
 	private static float cutoff = 0;
-	private double[] xValuesIn = null;
-	private double[] yValuesIn = null;
 	private double yMin, yMax;
 	private double xMin, xMax;
 	private int iterations;
 
-	/**
-	 * @author Dan Royer
-	 */
-	protected class QuadGraph {
-		public Rectangle2D bounds;
-		public ArrayList<VoronoiCell> sites;
-		public QuadGraph[] children;
-		public boolean flag;
-		
-		public QuadGraph(double x,double y,double x2,double y2) {
-			bounds = new Rectangle2D.Double(x,y,0,0);
-			bounds.add(x2,y2);
-			sites = new ArrayList<VoronoiCell>();
-			children=null;
-			flag=false;
-		}
-		
-		public void split(int depth) {
-			if(depth<1) return;
-
-			children = new QuadGraph[4];
-
-		    children[0] = new QuadGraph(bounds.getMinX(), bounds.getMinY(), bounds.getCenterX(),bounds.getCenterY());
-		    children[1] = new QuadGraph(bounds.getMaxX(), bounds.getMinY(), bounds.getCenterX(),bounds.getCenterY());
-		    children[2] = new QuadGraph(bounds.getMaxX(), bounds.getMaxY(), bounds.getCenterX(),bounds.getCenterY());
-		    children[3] = new QuadGraph(bounds.getMinX(), bounds.getMaxY(), bounds.getCenterX(),bounds.getCenterY());
-		    
-			for(int i=0;i<4;++i) {
-				children[i].split(depth-1);
-			}
-		}
-		
-		public boolean insert(VoronoiCell e,int maxDepth) {
-			if(maxDepth>0) {
-				if(children==null) {
-					split(1);
-				}
-				
-				for(int i=0;i<4;++i) {
-					QuadGraph child = children[i]; 
-					if( child.bounds.contains(e.region) ) {
-						// this cell fits entirely within this child
-						if( child.insert(e,maxDepth-1) ) return true;
-					}
-				}
-			}
-			// did not fit in any one child.  add it here.
-			sites.add(e);
-			return true;
-		}
-		
-		public double cellToPointSq(Rectangle2D area,VoronoiCell c) {
-			double x = area.getCenterX() - c.centroid.x;
-			double y = area.getCenterY() - c.centroid.y;
-			return x*x + y*y;
-		}
-		
-		// locate the cell under point x,y
-		public VoronoiCell find(Rectangle2D area) {
-			if(area.intersects(bounds)) {
-				VoronoiCell bestFound = null;
-				
-				if(children!=null) {
-					for(int i=0;i<4;++i) {
-						// look into the children
-						VoronoiCell bestChildFound = children[i].find(area);
-						if(bestChildFound!=null) {
-							if( bestFound==null ||
-								cellToPointSq(area,bestFound) > cellToPointSq(area,bestChildFound) )
-							{
-								bestFound = bestChildFound;
-							}
-						}
-					}
-				}
-				// it wasn't in a child, maybe it's in this node.
-				// Is this target point inside the graph edges?
-				if(!sites.isEmpty()) {
-					double bestD = Double.MAX_VALUE;
-					VoronoiCell bestCell = null;
-					Iterator<VoronoiCell> si = sites.iterator();
-					while(si.hasNext()) {
-						VoronoiCell c = si.next();
-						double d = cellToPointSq(area,c);
-						if(bestD>d) {
-							bestD = d;
-							bestCell = c;
-						}
-					}
-					if( bestFound==null ||
-							cellToPointSq(area,bestFound) > cellToPointSq(area,bestCell) ) {
-						bestFound = bestCell;
-					}
-				}
-				return bestFound;
-			}
-			// nothing found?!
-			return null;
-		}
-		
-		void render(GL2 gl2) {
-			if(children!=null) {
-				for(int i=0;i<4;++i) {
-					children[i].render(gl2);
-				}
-				return;
-			} else {
-				gl2.glColor3f(1, 0, 1);
-				gl2.glBegin(GL2.GL_LINE_LOOP);
-				gl2.glVertex2d(bounds.getMinX(), bounds.getMinY());
-				gl2.glVertex2d(bounds.getMinX(), bounds.getMaxY());
-				gl2.glVertex2d(bounds.getMaxX(), bounds.getMaxY());
-				gl2.glVertex2d(bounds.getMaxX(), bounds.getMinY());
-				gl2.glEnd();
-			}
-		}
-	}
-	
-	protected QuadGraph tree;
-	
 	@Override
 	public String getName() {
 		return Translator.get("voronoiStipplingName");
@@ -202,12 +80,15 @@ public void restart() {
 			return;
 		}
 		
-		while(lock.isLocked());
 		lock.lock();
-		iterations=0;
-		keepIterating=true;
-		initializeCells(0.5);
-		lock.unlock();
+		try {
+			iterations=0;
+			keepIterating=true;
+			initializeCells(0.5);
+			publishPreview();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -220,85 +101,26 @@ public void finish() {
 	public void render(GL2 gl2) {
 		super.render(gl2);
 		
-		while(lock.isLocked());
-		lock.lock();
+		PreviewSnapshot p = preview.get();
 		
 		// draw cell edges
-		if(drawBorders) {/*
-			if(graphEdges != null) {
-				gl2.glColor3f(0.9f, 0.0f, 0.0f);
-				gl2.glBegin(GL2.GL_LINES);
-				for (VoronoiGraphEdge e : graphEdges) {
-					gl2.glVertex2d( e.x1, e.y1 );
-					gl2.glVertex2d( e.x2, e.y2 );
-				}
-				gl2.glEnd();
-			}*/
-			if(tree!=null) tree.render(gl2);
+		if(drawBorders) {
+			gl2.glColor3f(0.9f, 0.0f, 0.0f);
+			p.renderEdges(gl2);
 		}
 
-		//enderPolygons(gl2);
-		//renderFirstCellBounds(gl2);  // bounds of first cell
-		renderDots(gl2);  // dots sized by darkness
-		//renderPoints(gl2);  // tiny points
-		
-		lock.unlock();
+		renderDots(gl2,p);  // dots sized by darkness
+		//gl2.glColor3f(0, 0, 0);
+		//p.renderPoints(gl2);  // tiny points
 	}
 
-	protected void renderPolygons(GL2 gl2) {
-		gl2.glColor4d(1,1,0,0.25);
-		Iterator<VoronoiCell> ci = cells.iterator();
-		while(ci.hasNext()) {
-			VoronoiCell c = ci.next();
-			if(c.region==null) continue;
-			//gl2.glBegin(GL2.GL_TRIANGLE_FAN);
-			gl2.glBegin(GL2.GL_LINE_LOOP);
-			gl2.glVertex2d( c.region.getMinX(),c.region.getMinY());
-			gl2.glVertex2d( c.region.getMaxX(),c.region.getMinY());
-			gl2.glVertex2d( c.region.getMaxX(),c.region.getMaxY());
-			gl2.glVertex2d( c.region.getMinX(),c.region.getMaxY());
-			//for(int i=0;i<c.region.npoints;++i) {
-			//	gl2.glVertex2d( c.region.xpoints[i],c.region.ypoints[i] );
-			//}
-			gl2.glEnd();
-			return;
-		}
-	}
-	
-	protected void renderFirstCellBounds(GL2 gl2) {
-		gl2.glColor3f(1,0,0);
-		gl2.glBegin(GL2.GL_LINE_LOOP);
-		Rectangle2D bounds = cells.get(0).region.getBounds2D();
-		if(bounds!=null) {
-			gl2.glVertex2d( bounds.getMinX(),bounds.getMinY() );
-			gl2.glVertex2d( bounds.getMaxX(),bounds.getMinY() );
-			gl2.glVertex2d( bounds.getMaxX(),bounds.getMaxY() );
-			gl2.glVertex2d( bounds.getMinX(),bounds.getMaxY() );
-		}
-		gl2.glEnd();
-	}
-	
-	protected void renderPoints(GL2 gl2) {
-		gl2.glColor3f(0, 0, 0);
-		gl2.glBegin(GL2.GL_POINTS);
-		Iterator<VoronoiCell> ci = cells.iterator();
-		while(ci.hasNext()) {
-			VoronoiCell c = ci.next();
-			Point2D p = c.centroid;
-			gl2.glVertex2d(p.x,p.y);
-		}
-		gl2.glEnd();
-	}
-	
-	protected void renderDots(GL2 gl2) {
+	protected void renderDots(GL2 gl2,PreviewSnapshot p) {
 		float scale = maxDotSize - minDotSize;
 		gl2.glColor3f(0, 0, 0);
-		Iterator<VoronoiCell> ci = cells.iterator();
-		while(ci.hasNext()) {
-			VoronoiCell c = ci.next();
-			double x = c.centroid.x;
-			double y = c.centroid.y;
-			double val = c.weight/255.0;
+		for(int i=0;i<p.x.length;++i) {
+			double x = p.x[i];
+			double y = p.y[i];
+			double val = p.weight[i]/255.0;
 			if(val>cutoff) {
 				double r = val * scale;
 				gl2.glBegin(GL2.GL_TRIANGLE_FAN);
@@ -315,10 +137,6 @@ protected void renderDots(GL2 gl2) {
 	protected void initializeCells(double minDistanceBetweenSites) {
 		Log.message("Initializing cells");
 
-		// convert the cells to sites used in the Voronoi class.
-		xValuesIn = new double[numCells];
-		yValuesIn = new double[numCells];
-
 		// from top to bottom of the margin area...
 		cells.clear();
 		int used;
@@ -339,7 +157,7 @@ protected void initializeCells(double minDistanceBetweenSites) {
 		}
 
 
-		voronoiTesselator.Init(minDistanceBetweenSites);
+		relaxation.reset();
 	}
 
 
@@ -348,22 +166,40 @@ protected void initializeCells(double minDistanceBetweenSites) {
 	 */
 	protected float evolveCells() {
 		float totalMagnitude=0;
+		lock.lock();
 		try {
-			while(lock.isLocked());
-			lock.lock();
 			tessellateVoronoiDiagram();
 			totalMagnitude=adjustCentroids();
-			lock.unlock();
+			publishPreview();
 		} catch (Exception e) {
 			e.printStackTrace();
-			if(lock.isHeldByCurrentThread() && lock.isLocked()) {
-				lock.unlock();
-			}
+		} finally {
+			lock.unlock();
 		}
 		return totalMagnitude;
 	}
 
 
+	/**
+	 * Copy the dots and borders for render().  The copy is never changed, so render() can draw it while the
+	 * next iteration runs.
+	 */
+	protected void publishPreview() {
+		int n = cells.size();
+		double [] x = new double[n];
+		double [] y = new double[n];
+		double [] weight = new double[n];
+		for(int i=0;i<n;++i) {
+			VoronoiCell c = cells.get(i);
+			x[i] = c.centroid.x;
+			y[i] = c.centroid.y;
+			weight[i] = c.weight;
+		}
+		double [] edges = drawBorders ? PreviewSnapshot.copyEdges(graphEdges) : null;
+		preview.set(new PreviewSnapshot(x,y,weight,edges,false));
+	}
+
+
 	/**
 	 * write cell centroids to gcode.
 	 */
@@ -414,44 +250,21 @@ protected void writeOutCells() {
 	/**
 	 *  I have a set of points.  I want a list of cell borders.
 	 *  cell borders are halfway between any point and it's nearest neighbors.
+	 *  The triangulation from the last iteration is repaired, not built again.
 	 */
 	protected void tessellateVoronoiDiagram() {
 		iterations++;
 
-		int i=0;
-		Iterator<VoronoiCell> ci = cells.iterator();
-		while(ci.hasNext()) {
-			VoronoiCell c = ci.next();
-			xValuesIn[i] = c.centroid.x;
-			yValuesIn[i] = c.centroid.y;
-			i++;
-			c.resetRegion();
-		}
-
-		// scan left to right across the image, building the list of borders as we go.
-		graphEdges = voronoiTesselator.generateVoronoi(xValuesIn, yValuesIn, xMin, xMax, yMin, yMax);
-		
-		Iterator<VoronoiGraphEdge> v = graphEdges.iterator();
-		while(v.hasNext()) {
-			VoronoiGraphEdge e = v.next();
-			VoronoiCell a = cells.get(e.site1);
-			a.addPoint(e.x1, e.y1);
-			a.addPoint(e.x2, e.y2);
-			VoronoiCell b = cells.get(e.site1);
-			b.addPoint(e.x1, e.y1);
-			b.addPoint(e.x2, e.y2);
+		relaxation.update(cells);
+		// the borders are only needed to draw them.
+		if(drawBorders) {
+			relaxation.getEdges(xMin, xMax, yMin, yMax, graphEdges);
+		} else {
+			graphEdges.clear();
 		}
 	}
 
 
-	protected void adjustCell(VoronoiCell c,double x,double y) {
-		c.hits++;
-		double sampleWeight = 255.0 - sourceImage.sample1x1Unchecked( (float)x, (float)y );
-		c.weight += sampleWeight;
-		c.wx += x * sampleWeight;
-		c.wy += y * sampleWeight;
-	}
-
 	/**
 	 * Find the weighted center of each cell.
 	 * weight is based on the intensity of the color of each pixel inside the cell
@@ -459,47 +272,15 @@ protected void adjustCell(VoronoiCell c,double x,double y) {
 	 * @return the total magnitude movement of all centers
 	 */
 	protected float adjustCentroids() {
-		double x, y;
 		float totalMagnitude=0;
-		
-		tree = new QuadGraph(xMin,yMin,xMax,yMax);
-		tree.split(4);
-		
-		int fails=0;
-		Iterator<VoronoiCell> ci = cells.iterator();
-		while(ci.hasNext()) {
-			VoronoiCell c = ci.next();
-			if(c.region==null) continue;
-			boolean ok = tree.insert(c,8);
-			if(!ok) {
-				fails++;
-			}
-		}
-		if( fails>0 ) {
-			Log.message(iterations+" failed "+fails+" times");
-		}
 
-		Rectangle2D test = new Rectangle2D.Double();
-		double v=5;
-		for(y=yMin; y<=yMax; ++y) {			
-			for(x=xMin; x<=xMax; ++x) {
-				if(!sourceImage.canSampleAt((float)x, (float)y)) continue;
-				// binary search over the cells to find the best fit.
-				
-				test.setRect(x-v, y-v, v*2, v*2);
-				VoronoiCell bestCell = tree.find(test);
-				if(bestCell!=null) {
-					adjustCell(bestCell,x,y);
-				} else {
-					// this x,y at an empty quadtree cell.
-				}
-			}
-		}
+		// a pixel is inside the cell of the nearest centroid.
+		relaxation.measure(sourceImage, cells, xMin, xMax, yMin, yMax);
 		
 		double w = Math.pow(iterations,-0.8);
 
 
-		ci = cells.iterator();
+		Iterator<VoronoiCell> ci = cells.iterator();
 		while(ci.hasNext()) {
 			VoronoiCell c = ci.next();
 			
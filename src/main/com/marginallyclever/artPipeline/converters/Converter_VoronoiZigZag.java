@@ -1,7 +1,7 @@
 package com.marginallyclever.artPipeline.converters;
 
-import java.awt.Rectangle;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.jogamp.opengl.GL2;
@@ -9,13 +9,13 @@
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.convenience.turtle.Turtle;
-import com.marginallyclever.convenience.Point2D;
 import com.marginallyclever.convenience.StringHelper;
 import com.marginallyclever.makelangelo.Translator;
 import com.marginallyclever.makelangeloRobot.MakelangeloRobotDecorator;
+import com.marginallyclever.tsp.InitialTour;
+import com.marginallyclever.tsp.ParallelTourOptimizer;
 import com.marginallyclever.voronoi.VoronoiCell;
-import com.marginallyclever.voronoi.VoronoiGraphEdge;
-import com.marginallyclever.voronoi.VoronoiTesselator;
+import com.marginallyclever.voronoi.VoronoiEdgeBuffer;
 
 /**
  * Dithering using a particle system
@@ -25,26 +25,37 @@
  * @since 7.0.0?
  */
 public class Converter_VoronoiZigZag extends ImageConverter implements MakelangeloRobotDecorator {
+	// keeps restart() from changing the cells or the tour in the middle of an iteration.  render() never takes it.
 	private ReentrantLock lock = new ReentrantLock();
+	// time spent on each round of tour optimization, in ns.
+	private static final long ROUND_TIME = 200 * 1000000L;
+	// how often the improvement is checked against the convergence threshold, in ms.
+	private static final long CONVERGENCE_WINDOW = 10 * 1000;
 
-	private VoronoiTesselator voronoiTesselator = new VoronoiTesselator();
+	private VoronoiRelaxation relaxation = new VoronoiRelaxation();
 	private VoronoiCell[] cells = new VoronoiCell[1];
 	private TransformedImage sourceImage;
-	private List<VoronoiGraphEdge> graphEdges = null;
+	private VoronoiEdgeBuffer graphEdges = null;
 	private static int numCells = 3000;
 	private static float minDotSize = 1.0f;
-	private double[] xValuesIn = null;
-	private double[] yValuesIn = null;
 	private int[] solution = null;
+	// the centers of the cells when the tour was started.
+	private double [] xs, ys;
 	private int solutionContains;
-	private int renderMode;
 	private boolean lowNoise;
 
+	// the latest centers or tour, for render().  Only the worker changes the cells and the tour.
+	private AtomicReference<PreviewSnapshot> preview = new AtomicReference<PreviewSnapshot>(PreviewSnapshot.EMPTY);
+	// the borders at the end of the relaxation, shared by every snapshot after it.
+	private double [] previewEdges;
+
 	// processing tools
+	private ParallelTourOptimizer optimizer;
 	private long t_elapsed, t_start;
-	private double progress;
-	private double old_len, len;
-	private long time_limit = 10 * 60 * 1000; // 10 minutes
+	private long windowStart;
+	private double windowLength;
+	private static int timeBudget = 10 * 60; // seconds
+	private static float convergence = 0.1f; // percent per CONVERGENCE_WINDOW
 
 	private double yBottom, yTop, xLeft, xRight;
 	
@@ -71,7 +82,6 @@ public void setImage(TransformedImage img) {
 		
 		keepIterating=true;
 		restart();
-		renderMode = 0;
 	}
 
 	public void restart() {
@@ -79,85 +89,140 @@ public void restart() {
 			loadAndSaveImage.reconvert();
 			return;
 		}
-		lowNoise=false;
-		keepIterating=true;
-		initializeCells(0.5);
+		lock.lock();
+		try {
+			lowNoise=false;
+			optimizer=null;
+			keepIterating=true;
+			initializeCells(0.5);
+			previewEdges=null;
+			publishCenters();
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	@Override
 	public boolean iterate() {
-		if(lowNoise==true) {
-			optimizeTour();
-		} else {
-			double noiseLevel = evolveCells();
-			if( noiseLevel < 2*numCells ) {
-				lowNoise=true;
-				greedyTour();
-				renderMode = 1;
-				Log.message("Running Lin/Kerighan optimization...");
-			}			
+		lock.lock();
+		try {
+			if(lowNoise==true) {
+				optimizeTour();
+			} else {
+				double noiseLevel = evolveCells();
+				if( noiseLevel < 2*numCells ) {
+					lowNoise=true;
+					greedyTour();
+					startOptimizer();
+					publishTour();
+				}			
+			}
+		} finally {
+			lock.unlock();
 		}
 		return keepIterating;
 	}
 
 	@Override
 	public void finish() {
-		keepIterating=false;
-		writeOutCells();
+		lock.lock();
+		try {
+			keepIterating=false;
+			writeOutCells();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public void render(GL2 gl2) {
 		super.render(gl2);
 
-		while(lock.isLocked());
-		lock.lock();
+		PreviewSnapshot p = preview.get();
 
-		int i;
+		// draw cell edges
+		gl2.glColor3f(0.9f, 0.9f, 0.9f);
+		p.renderEdges(gl2);
 
-		if (graphEdges != null) {
-			// draw cell edges
-			gl2.glColor3f(0.9f, 0.9f, 0.9f);
-			gl2.glBegin(GL2.GL_LINES);
-			for (VoronoiGraphEdge e : graphEdges) {
-				gl2.glVertex2d( e.x1, e.y1 );
-				gl2.glVertex2d( e.x2, e.y2 );
-			}
-			gl2.glEnd();
-		}
-		if (renderMode == 0) {
+		gl2.glColor3f(0, 0, 0);
+		if (p.isTour) {
+			p.renderPath(gl2, true);
+		} else {
 			// draw cell centers
 			gl2.glPointSize(3);
-			gl2.glColor3f(0, 0, 0);
-			gl2.glBegin(GL2.GL_POINTS);
-			for (VoronoiCell c : cells) {
-				Point2D p = c.centroid;
-				gl2.glVertex2d(p.x,p.y);
-			}
-			gl2.glEnd();
+			p.renderPoints(gl2);
 		}
-		if (renderMode == 1 && solution != null) {
-			// draw tour
-			gl2.glColor3f(0, 0, 0);
-			gl2.glBegin(GL2.GL_LINE_LOOP);
-			for (i = 0; i < solutionContains; ++i) {
-				VoronoiCell c = cells[solution[i]];
-				gl2.glVertex2d( c.centroid.x, c.centroid.y );
-			}
-			gl2.glEnd();
+	}
+
+	/**
+	 * Copy the cell centers for render().
+	 */
+	private void publishCenters() {
+		double [] x = new double[cells.length];
+		double [] y = new double[cells.length];
+		for (int i = 0; i < cells.length; ++i) {
+			x[i] = cells[i].centroid.x;
+			y[i] = cells[i].centroid.y;
 		}
-		lock.unlock();
+		preview.set(new PreviewSnapshot(x, y, null, previewEdges, false));
 	}
 
-	private void optimizeTour() {
-		old_len = getTourLength(solution);
-		updateProgress(old_len, 2);
+	/**
+	 * Copy the tour for render().  The copy is never changed, so render() can draw it while the flips go on.
+	 */
+	private void publishTour() {
+		double [] x = new double[solutionContains];
+		double [] y = new double[solutionContains];
+		for (int i = 0; i < solutionContains; ++i) {
+			VoronoiCell c = cells[solution[i]];
+			x[i] = c.centroid.x;
+			y[i] = c.centroid.y;
+		}
+		preview.set(new PreviewSnapshot(x, y, null, previewEdges, true));
+	}
+
+	private void startOptimizer() {
+		optimizer = new ParallelTourOptimizer(xs, ys, solution, solutionContains);
+
+		Log.message("Running 2-opt/Or-opt optimization...");
+		t_elapsed = 0;
+		t_start = System.currentTimeMillis();
+		windowStart = 0;
+		windowLength = optimizer.getLength();
+		Log.message("0s: " + StringHelper.formatDouble(windowLength) + "mm");
+	}
 
-		// @TODO: make these optional for the very thorough people
-		// once|=transposeForwardTest();
-		// once|=transposeBackwardTest();
+	/**
+	 * One round of the optimizer.  Stops when the time budget is used up, when the tour got less than
+	 * convergence percent shorter in the last {@link #CONVERGENCE_WINDOW}, or when nothing more can be improved.
+	 */
+	private void optimizeTour() {
+		boolean more = optimizer.improve(ROUND_TIME);
+		optimizer.getTour(solution);
+		publishTour();
 
-		keepIterating = flipTests();
+		t_elapsed = System.currentTimeMillis() - t_start;
+		if (t_elapsed - windowStart >= CONVERGENCE_WINDOW || !more) {
+			double len = optimizer.getLength();
+			// a tour of one point has no length to shorten.
+			double percent = windowLength > 0 ? 100.0 * (windowLength - len) / windowLength : 0;
+			Log.message(formatTime(t_elapsed) + ": " + StringHelper.formatDouble(len) + "mm (-" + StringHelper.formatDouble(percent) + "%)");
+			if (more && percent < convergence) {
+				Log.message("Tour converged.");
+				keepIterating = false;
+			}
+			windowStart = t_elapsed;
+			windowLength = len;
+		}
+		if (!more) {
+			Log.message("Tour can't be improved any more.");
+			keepIterating = false;
+		}
+		if (t_elapsed >= timeBudget * 1000L) {
+			Log.message("Time budget used up.");
+			keepIterating = false;
+		}
+		if (pm != null) pm.setProgress((int) Math.min(100, 100.0 * t_elapsed / (timeBudget * 1000.0)));
 	}
 
 	public String formatTime(long millis) {
@@ -175,162 +240,25 @@ public String formatTime(long millis) {
 		return elapsed;
 	}
 
-	public void updateProgress(double len, int color) {
-		t_elapsed = System.currentTimeMillis() - t_start;
-		double new_progress = 100.0 * (double) t_elapsed / (double) time_limit;
-		if (new_progress > progress + 0.1) {
-			// find the new tour length
-			len = getTourLength(solution);
-			if (old_len > len) {
-				old_len = len;
-				Log.message(formatTime(t_elapsed) + ": " + StringHelper.formatDouble(len) + "mm");
-			}
-			progress = new_progress;
-			pm.setProgress((int) progress);
-		}
-	}
-
-	private int ti(int x) {
-		return (x + solutionContains) % solutionContains;
-	}
-
 	/**
-	 * we have s1,s2...e-1,e.  check if s1,e-1,...s2,e is shorter
-	 * @return true if something was improved.
-	 */
-	// 
-	public boolean flipTests() {
-		boolean once = false;
-		int start, end, j, best_end;
-		double a, b, c, d, temp_diff, best_diff;
-
-		for (start = 0; start < solutionContains * 2 - 2 && !swingWorker.isCancelled() && !pm.isCanceled(); ++start) {
-			a = calculateWeight(solution[ti(start)], solution[ti(start + 1)]);
-			best_end = -1;
-			best_diff = 0;
-
-			for (end = start + 2; end < start + solutionContains && !swingWorker.isCancelled() && !pm.isCanceled(); ++end) {
-				// before
-				b = calculateWeight(solution[ti(end)], solution[ti(end - 1)]);
-				// after
-				c = calculateWeight(solution[ti(start)], solution[ti(end - 1)]);
-				d = calculateWeight(solution[ti(end)], solution[ti(start + 1)]);
-
-				temp_diff = (a + b) - (c + d);
-				if (best_diff < temp_diff) {
-					best_diff = temp_diff;
-					best_end = end;
-				}
-			}
-
-			if (best_end != -1 && !swingWorker.isCancelled() && !pm.isCanceled()) {
-				once = true;
-				// do the flip
-				int begin = start + 1;
-				int finish = best_end;
-				if (best_end < begin)
-					finish += solutionContains;
-				int half = (finish - begin) / 2;
-				int temp;
-				while (lock.isLocked());
-
-				lock.lock();
-				// Makelangelo.getSingleton().Log("<font color='red'>flipping
-				// "+(finish-begin));
-				for (j = 0; j < half; ++j) {
-					temp = solution[ti(begin + j)];
-					solution[ti(begin + j)] = solution[ti(finish - 1 - j)];
-					solution[ti(finish - 1 - j)] = temp;
-				}
-				lock.unlock();
-				updateProgress(len, 1);
-			}
-		}
-		return once;
-	}
-
-	private double calculateLength(int a, int b) {
-		return Math.sqrt(calculateWeight(a, b));
-	}
-
-	/**
-	 * Get the length of a tour segment
-	 * 
-	 * @param list
-	 *            an array of indexes into the point list. the order forms the
-	 *            tour sequence.
-	 * @return the length of the tour
-	 */
-	private double getTourLength(int[] list) {
-		double w = 0;
-		for (int i = 0; i < solutionContains - 1; ++i) {
-			w += calculateLength(list[i], list[i + 1]);
-		}
-		return w;
-	}
-
-	/**
-	 * Starting with point 0, find the next nearest point and repeat until all
-	 * points have been "found".
+	 * Put every cell dark enough to draw in the tour, nearest cells joined first.
 	 */
 	private void greedyTour() {
 		Log.message("Finding greedy tour solution...");
 
-		int i, j;
-		double w, bestw;
-		int besti;
-
+		xs = new double[cells.length];
+		ys = new double[cells.length];
+		solution = new int[cells.length];
 		solutionContains = 0;
-		for (i = 0; i < cells.length; ++i) {
+		for (int i = 0; i < cells.length; ++i) {
 			VoronoiCell c = cells[i];
+			xs[i] = c.centroid.x;
+			ys[i] = c.centroid.y;
 			float v = 1.0f - (float) sourceImage.sample1x1( (int) c.centroid.x, (int) c.centroid.y) / 255.0f;
 			if (v * 5 > minDotSize)
-				solutionContains++;
-		}
-
-		try {
-			solution = new int[solutionContains];
-
-			// put all the points in the solution in no particular order.
-			j = 0;
-			for (i = 0; i < cells.length; ++i) {
-				VoronoiCell c = cells[i];
-				float v = 1.0f - (float) sourceImage.sample1x1( (int) c.centroid.x, (int) c.centroid.y) / 255.0f;
-				if (v * 5 > minDotSize) {
-					solution[j++] = i;
-				}
-			}
-
-			int scount = 0;
-
-			do {
-				// Find the nearest point not already in the line.
-				// Any solution[n] where n>scount is not in the line.
-				bestw = calculateWeight(solution[scount], solution[scount + 1]);
-				besti = scount + 1;
-				for (i = scount + 2; i < solutionContains; ++i) {
-					w = calculateWeight(solution[scount], solution[i]);
-					if (w < bestw) {
-						bestw = w;
-						besti = i;
-					}
-				}
-				i = solution[scount + 1];
-				solution[scount + 1] = solution[besti];
-				solution[besti] = i;
-				scount++;
-			} while (scount < solutionContains - 2);
-		} catch (Exception e) {
-			e.printStackTrace();
+				solution[solutionContains++] = i;
 		}
-	}
-
-	protected double calculateWeight(int a, int b) {
-		assert (a >= 0 && a < cells.length);
-		assert (b >= 0 && b < cells.length);
-		double x = cells[a].centroid.x - cells[b].centroid.x;
-		double y = cells[a].centroid.y - cells[b].centroid.y;
-		return x * x + y * y;
+		InitialTour.greedyEdge(xs, ys, solution, solutionContains);
 	}
 
 	// set some starting points in a grid
@@ -338,9 +266,6 @@ protected void initializeCells(double minDistanceBetweenSites) {
 		Log.message("Initializing cells");
 
 		cells = new VoronoiCell[numCells];
-		// convert the cells to sites used in the Voronoi class.
-		xValuesIn = new double[numCells];
-		yValuesIn = new double[numCells];
 
 		// from top to bottom of the margin area...
 		int used;
@@ -364,7 +289,7 @@ protected void initializeCells(double minDistanceBetweenSites) {
 		}
 
 
-		voronoiTesselator.Init(minDistanceBetweenSites);
+		relaxation.reset();
 	}
 
 	/**
@@ -373,16 +298,11 @@ protected void initializeCells(double minDistanceBetweenSites) {
 	protected double evolveCells() {
 		double totalWeight=0;
 		try {
-			while(lock.isLocked());
-			lock.lock();
 			tessellateVoronoiDiagram();
-			lock.unlock();
 			totalWeight = adjustCentroids();
+			publishCenters();
 		} catch (Exception e) {
 			e.printStackTrace();
-			if(lock.isHeldByCurrentThread() && lock.isLocked()) {
-				lock.unlock();
-			}
 		}
 		return totalWeight;
 	}
@@ -390,7 +310,9 @@ protected double evolveCells() {
 	// write cell centroids to gcode.
 	protected void writeOutCells() {
 		turtle = new Turtle();
-		
+		// a blank image has no cells dark enough to draw.
+		if (solutionContains == 0) return;
+
 		if (graphEdges != null) {
 			// find the tsp point closest to the calibration point
 			int i;
@@ -419,29 +341,14 @@ protected void writeOutCells() {
 
 	// I have a set of points. I want a list of cell borders.
 	// cell borders are halfway between any point and it's nearest neighbors.
+	// The triangulation from the last iteration is repaired, not built again.
 	protected void tessellateVoronoiDiagram() {
-		// convert the cells to sites used in the Voronoi class.
-		int i;
-		for (i = 0; i < numCells; ++i) {
-			xValuesIn[i] = cells[i].centroid.x;
-			yValuesIn[i] = cells[i].centroid.y;
-			cells[i].resetRegion();
-		}
-
-		// scan left to right across the image, building the list of borders as we go.
-		graphEdges = voronoiTesselator.generateVoronoi(xValuesIn, yValuesIn, xLeft, xRight, yBottom, yTop);
-		
-		for (VoronoiGraphEdge e : graphEdges) {
-			try {
-				cells[e.site1].addPoint((float)e.x1, (float)e.y1);
-				cells[e.site1].addPoint((float)e.x2, (float)e.y2);
-				
-				cells[e.site2].addPoint((float)e.x1, (float)e.y1);
-				cells[e.site2].addPoint((float)e.x2, (float)e.y2);
-			} catch(Exception err) {
-				err.printStackTrace();
-			}
+		relaxation.update(Arrays.asList(cells));
+		if (graphEdges == null) {
+			graphEdges = new VoronoiEdgeBuffer();
 		}
+		relaxation.getEdges(xLeft, xRight, yBottom, yTop, graphEdges);
+		previewEdges = PreviewSnapshot.copyEdges(graphEdges);
 	}
 
 
@@ -452,56 +359,17 @@ protected void tessellateVoronoiDiagram() {
 	 * @return the total magnitude movement of all centers
 	 */
 	protected float adjustCentroids() {
-		double totalCellWeight, wx, wy, x, y;
-		double stepSize;
-		double minX,maxX,minY,maxY;
+		double totalCellWeight, wx, wy;
 		float totalMagnitude=0;
 
-		for (VoronoiCell c : cells) {
-			if(c.region==null) { 
-				continue;
-			}
-			Rectangle bounds = c.region.getBounds();
-
-			minX = bounds.getMinX();
-			maxX = bounds.getMaxX();
-			double dx=maxX-minX;
-
-			minY = bounds.getMinY();
-			maxY = bounds.getMaxY();
-			double dy=maxY-minY;
+		// a pixel is inside the cell of the nearest centroid.
+		relaxation.measure(sourceImage, Arrays.asList(cells), xLeft, xRight, yBottom, yTop);
 
-			stepSize=1.0;
-			if(dx<dy) {
-				if(dx<1) {
-					stepSize = dx/3.0;
-				}
-			} else {
-				if(dy<1) {
-					stepSize = dy/3.0;
-				}
-			}
-			
-			int hits = 0;
-			totalCellWeight = 0;
-			wx = 0;
-			wy = 0;
-
-			float sampleWeight;
-			for (y = minY; y <= maxY; y +=stepSize) {
-				for (x = minX; x <= maxX; x +=stepSize) {
-					if (c.region.contains(x,y)) {
-						if(sourceImage.canSampleAt((float)x, (float)y)) 
-						{
-							hits++;
-							sampleWeight = 255.0f - (float)sourceImage.sample1x1Unchecked( (float)x, (float)y );
-							totalCellWeight += sampleWeight;
-							wx += (x) * sampleWeight;
-							wy += (y) * sampleWeight;
-						}
-					}
-				}
-			}
+		for (VoronoiCell c : cells) {
+			int hits = c.hits;
+			totalCellWeight = c.weight;
+			wx = c.wx;
+			wy = c.wy;
 
 			if (totalCellWeight > 0) {
 				wx /= totalCellWeight;
@@ -563,6 +431,28 @@ public void setMinDotSize(float value) {
 	public float getMinDotSize() {
 		return minDotSize;
 	}
+
+	/**
+	 * @param value the most time to spend shortening the tour, in seconds.
+	 */
+	public void setTimeBudget(int value) {
+		if(value<1) value=1;
+		timeBudget = value;
+	}
+	public int getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * @param value stop when the tour gets less than this many percent shorter in ten seconds.  0 to never stop early.
+	 */
+	public void setConvergence(float value) {
+		if(value<0) value=0;
+		convergence = value;
+	}
+	public float getConvergence() {
+		return convergence;
+	}
 }
 
 /**
@@ -2,6 +2,7 @@
 
 import java.beans.PropertyChangeEvent;
 
+import com.marginallyclever.makelangelo.Translator;
 import com.marginallyclever.makelangelo.select.SelectFloat;
 import com.marginallyclever.makelangelo.select.SelectInteger;
 
@@ -17,6 +18,8 @@ public class Converter_VoronoiZigZag_Panel extends ImageConverterPanel {
 	private static final long serialVersionUID = -5791313991426136610L;
 	private SelectInteger numCells;
 	private SelectFloat minDotSize;
+	private SelectInteger timeBudget;
+	private SelectFloat convergence;
 	private Converter_VoronoiZigZag converter;
 	
 	public Converter_VoronoiZigZag_Panel(Converter_VoronoiZigZag converter_VoronoiZigZag) {
@@ -26,6 +29,8 @@ public Converter_VoronoiZigZag_Panel(Converter_VoronoiZigZag converter_VoronoiZi
 		
 		add(numCells = new SelectInteger("voronoiStipplingCellCount",converter.getNumCells()));
 		add(minDotSize = new SelectFloat("voronoiStipplingDotMin",converter.getMinDotSize()));
+		add(timeBudget = new SelectInteger(Translator.get("VoronoiZigZagTimeBudget"),converter.getTimeBudget()));
+		add(convergence = new SelectFloat(Translator.get("VoronoiZigZagConvergence"),converter.getConvergence()));
 		finish();
 	}
 
@@ -33,6 +38,10 @@ public Converter_VoronoiZigZag_Panel(Converter_VoronoiZigZag converter_VoronoiZi
 	public void propertyChange(PropertyChangeEvent evt) {
 		super.propertyChange(evt);
 		
+		// only change when the tour stops, the tour so far is kept.
+		converter.setTimeBudget(timeBudget.getValue());
+		converter.setConvergence(convergence.getValue());
+		
 		if( numCells.getValue() != converter.getNumCells() ||
 			minDotSize.getValue() != converter.getMinDotSize() ) {
 			converter.setNumCells(numCells.getValue());
@@ -1,8 +1,9 @@
 package com.marginallyclever.artPipeline.converters;
 
 
-import java.awt.geom.Point2D;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
@@ -11,6 +12,7 @@
 import com.marginallyclever.convenience.log.Log;
 import com.marginallyclever.convenience.turtle.Turtle;
 import com.marginallyclever.makelangelo.Translator;
+import com.marginallyclever.tsp.GridIndex;
 
 
 /**
@@ -21,20 +23,9 @@ public class Converter_Wander extends ImageConverter {
 	static protected int numLines = 9000;
 	static protected boolean isCMYK = false;
 	
-	class Bucket {
-		public Point2D a,b;
-		public LinkedList<Point2D> unsortedPoints;
-		public LinkedList<Point2D> sortedPoints;
-		
-		public Bucket() {
-			a = new Point2D.Double();
-			b = new Point2D.Double();
-			unsortedPoints = new LinkedList<Point2D>();
-			sortedPoints = new LinkedList<Point2D>();
-		}
-	};
-
-	private LinkedList<Bucket> buckets;
+	// the paper is cut into this many buckets, visited one after another.
+	private static final int BUCKET_COLUMNS = 5;
+	private static final int BUCKET_ROWS = 10;
 	
 	
 	@Override
@@ -56,8 +47,10 @@ public void finish() {
 		}
 	}
 
-	protected int outputChannel(TransformedImage img,ColorRGB newColor,int numberOfLines,double cutoff) {
-		turtle.setColor(newColor);
+	/**
+	 * @return a new turtle with the lines for this channel.
+	 */
+	protected Turtle outputChannel(TransformedImage img,ColorRGB newColor,int numberOfLines,double cutoff) {
 
 		float stepSize = machine.getPenDiameter()*5;
 		if (stepSize < 1) stepSize = 1;
@@ -75,37 +68,19 @@ protected int outputChannel(TransformedImage img,ColorRGB newColor,int numberOfL
 		// find numLines number of random points darker than the cutoff value
 		double height = yTop - yBottom-1;
 		double width = xRight - xLeft-1;
-		Point2D a = null;
-		
-		//Log.message("Creating buckets in a Z pattern...");
-		buckets = new LinkedList<Bucket>();
+		double [] px = new double[numberOfLines];
+		double [] py = new double[numberOfLines];
+		int [] bucketOf = new int[numberOfLines];
 		int actualPoints=0;
-		double wMod = width/5.0;
-		double hMod = height/10.0;
-		double by,bx;
-		for(by=0;by<height;by+=hMod) {
-			for(bx=0;bx<width;bx+=wMod) {
-				Bucket b = new Bucket();
-				b.a.setLocation(xLeft+bx     , yBottom+by     );
-				b.b.setLocation(xLeft+bx+wMod, yBottom+by+hMod);
-				buckets.push(b);
-			}
-			by+=hMod;
-			for(bx=width-wMod;bx>=-1;bx-=wMod) {
-				Bucket b = new Bucket();
-				b.a.setLocation(xLeft+bx     , yBottom+by     );
-				b.b.setLocation(xLeft+bx+wMod, yBottom+by+hMod);
-				buckets.push(b);
-			}
-		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
 
 		//Log.message("Finding points...");
 		for(int i=0;i<numberOfLines;++i) {
 			int v, tries=0;
 			double endPX,endPY; 
 			do {
-				endPX = xLeft   + (Math.random() * width)+0.5; 
-				endPY = yBottom + (Math.random() * height)+0.5; 
+				endPX = xLeft   + (random.nextDouble() * width)+0.5; 
+				endPY = yBottom + (random.nextDouble() * height)+0.5; 
 				v = img.sample(
 						endPX - halfStep, endPY - halfStep, 
 						endPX + halfStep, endPY + halfStep);
@@ -113,69 +88,80 @@ protected int outputChannel(TransformedImage img,ColorRGB newColor,int numberOfL
 			} while(v>cutoff && tries<1000);
 			if(tries==1000) break;  // ran out of points to try?
 
-			int j;
-			for(j=0;j<buckets.size();++j) {
-				Bucket b = buckets.get(j);
-				if( b.a.getX()<=endPX && b.b.getX()>endPX && 
-				    b.a.getY()<=endPY && b.b.getY()>endPY ) {
-					b.unsortedPoints.addLast(new Point2D.Double(endPX,endPY));
-					++actualPoints;
-					break;
-				}
-			}
+			px[actualPoints] = endPX;
+			py[actualPoints] = endPY;
+			bucketOf[actualPoints] = bucket((endPX-xLeft)/width, (endPY-yBottom)/height);
+			++actualPoints;
 		}
 
-		// sort the points by nearest neighbor first.
-		Log.message("Sorting "+actualPoints+" points...");
-		for(int j=0;j<buckets.size();++j) {
-			//Log.message(j+" of "+buckets.size()+ " has "+buckets.get(j).unsortedPoints.size()+" points");
-
-			// assume we start at the center of the image, for those machines with no pen up option.
-			a = new Point2D.Double(0,0);
-			
-			Bucket b = buckets.get(j);
-			if(!b.unsortedPoints.isEmpty()) {
-				while(!b.unsortedPoints.isEmpty()) {
-					double bestLen = Double.MAX_VALUE;
-					int bestI=0;
-					for(int i=0;i<b.unsortedPoints.size();++i) {
-						double len = a.distanceSq(b.unsortedPoints.get(i));
-						if(bestLen > len) {
-							bestLen = len;
-							bestI = i;
-						}
-					}
-					a = b.unsortedPoints.remove(bestI);
-					b.sortedPoints.addLast(a);
-				}
-			}
+		// group the points by bucket.
+		int buckets = BUCKET_COLUMNS*BUCKET_ROWS;
+		int [] bucketStart = new int[buckets+1];
+		for(int i=0;i<actualPoints;++i) bucketStart[bucketOf[i]+1]++;
+		for(int j=0;j<buckets;++j) bucketStart[j+1] += bucketStart[j];
+		double [] bx = new double[actualPoints];
+		double [] by = new double[actualPoints];
+		int [] next = Arrays.copyOf(bucketStart, buckets);
+		for(int i=0;i<actualPoints;++i) {
+			int k = next[bucketOf[i]]++;
+			bx[k] = px[i];
+			by[k] = py[i];
 		}
+
+		// in each bucket go to the nearest point not yet visited.
+		Log.message("Sorting "+actualPoints+" points...");
+		Turtle turtle = new Turtle();
+		turtle.setColor(newColor);
 		
-		
-		// draw the sorted list of points.
-		Log.message("Drawing points...");
-		turtle = new Turtle();
-		
-		for(int j=0;j<buckets.size();++j) {
-			Bucket b = buckets.get(j);
-			while(!b.sortedPoints.isEmpty()) {
-				a = b.sortedPoints.pop();
-				turtle.moveTo(a.getX(),a.getY());
+		// assume we start at the center of the image, for those machines with no pen up option.
+		double ax=0, ay=0;
+		for(int j=0;j<buckets;++j) {
+			int first = bucketStart[j];
+			int count = bucketStart[j+1]-first;
+			if(count==0) continue;
+			double [] x = Arrays.copyOfRange(bx, first, first+count);
+			double [] y = Arrays.copyOfRange(by, first, first+count);
+			GridIndex grid = new GridIndex(x,y,count);
+			while(grid.size()>0) {
+				int i = grid.nearest(ax,ay);
+				grid.remove(i);
+				ax = x[i];
+				ay = y[i];
+				turtle.moveTo(ax,ay);
 				turtle.penDown();
 			}
 		}
 		
-		return actualPoints;
+		return turtle;
+	}
+	
+	/**
+	 * The buckets are visited a row at a time from the top, going back and forth.
+	 * @param u 0...1 across the paper
+	 * @param v 0...1 up the paper
+	 * @return the place of the bucket under (u,v) in the order they are visited.
+	 */
+	private int bucket(double u,double v) {
+		int col = Math.max(0, Math.min(BUCKET_COLUMNS-1, (int)(u*BUCKET_COLUMNS)));
+		int row = Math.max(0, Math.min(BUCKET_ROWS   -1, (int)((1-v)*BUCKET_ROWS)));
+		if(row%2==1) col = BUCKET_COLUMNS-1-col;
+		return row*BUCKET_COLUMNS+col;
 	}
 	
 	protected void finishCMYK() {
 		Filter_CMYK cmyk = new Filter_CMYK();
 		cmyk.filter(sourceImage);
 		
-		Log.message("Yellow...");		outputChannel(cmyk.getY(),new ColorRGB(255,255,  0),numLines/4,255.0*3.0/4.0);
-		Log.message("Cyan...");		outputChannel(cmyk.getC(),new ColorRGB(  0,255,255),numLines/4,128.0);
-		Log.message("Magenta...");		outputChannel(cmyk.getM(),new ColorRGB(255,  0,255),numLines/4,128.0);
-		Log.message("Black...");		outputChannel(cmyk.getK(),new ColorRGB(  0,  0,  0),numLines/4,128.0);
+		turtle = new Turtle();
+		
+		// all four channels at once, drawn in ink order.
+		Log.message("Yellow, cyan, magenta, and black...");
+		drawInParallel(Arrays.<Callable<Turtle>>asList(
+			()->outputChannel(cmyk.getY(),new ColorRGB(255,255,  0),numLines/4,255.0*3.0/4.0),
+			()->outputChannel(cmyk.getC(),new ColorRGB(  0,255,255),numLines/4,128.0),
+			()->outputChannel(cmyk.getM(),new ColorRGB(255,  0,255),numLines/4,128.0),
+			()->outputChannel(cmyk.getK(),new ColorRGB(  0,  0,  0),numLines/4,128.0)
+		));
 		Log.message("Finishing...");
 	}
 	
@@ -184,7 +170,8 @@ protected void finishBlackAndWhite() {
 		Filter_BlackAndWhite bw = new Filter_BlackAndWhite(255);
 		TransformedImage img = bw.filter(sourceImage);
 		
-		outputChannel(img,new ColorRGB(0,0,0),numLines,255.0/4.0);
+		turtle = new Turtle();
+		turtle.append(outputChannel(img,new ColorRGB(0,0,0),numLines,255.0/4.0));
 	}
 	
 
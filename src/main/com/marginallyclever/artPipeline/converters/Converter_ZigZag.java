@@ -1,13 +1,11 @@
 package com.marginallyclever.artPipeline.converters;
 
 
-import java.awt.Point;
-import java.io.IOException;
-import java.io.Writer;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.jogamp.opengl.GL2;
 import com.marginallyclever.artPipeline.TransformedImage;
+import com.marginallyclever.artPipeline.imageFilters.DitherMode;
 import com.marginallyclever.artPipeline.imageFilters.Filter_BlackAndWhite;
 import com.marginallyclever.artPipeline.imageFilters.Filter_DitherFloydSteinberg;
 import com.marginallyclever.convenience.StringHelper;
@@ -15,34 +13,121 @@
 import com.marginallyclever.convenience.turtle.Turtle;
 import com.marginallyclever.makelangelo.Translator;
 import com.marginallyclever.makelangeloRobot.MakelangeloRobotDecorator;
+import com.marginallyclever.tsp.InitialTour;
+import com.marginallyclever.tsp.TourOptimizer;
 
 
 /**
- * Generate a Gcode file from the BufferedImage supplied.<br>
- * Use the filename given in the constructor as a basis for the gcode filename, but change the extension to .ngc
+ * Dither the image, then draw one closed line through every dark dot.  The line is shortened with a
+ * {@link TourOptimizer}, a little more on every iteration, until it stops getting shorter or the time is up.
  *
  * @author Dan
  */
 public class Converter_ZigZag extends ImageConverter implements MakelangeloRobotDecorator {
+	// time spent improving the tour on each iteration, in ns.
+	private static final long ITERATION_TIME = 100 * 1000000L;
+
 	// processing tools
 	long t_elapsed, t_start;
 	double progress;
-	double old_len, len;
-	long time_limit = 10 * 60 * 1000;  // 10 minutes
+	double old_len;
+	private static int timeLimit = 10 * 60;  // seconds
+	// set by the panel while the worker runs.
+	private static volatile DitherMode ditherMode = DitherMode.SERIAL;
+
+	private TransformedImage blackAndWhite;
+	private DitherMode ditheredWith;
 
 	int numPoints;
-	Point[] points = null;
+	double [] xs, ys;
 	int[] solution = null;
-	int scount;
+	private TourOptimizer optimizer;
+
+	// the latest tour, for render().  Only the worker changes the points and the solution.
+	private AtomicReference<PreviewSnapshot> preview = new AtomicReference<PreviewSnapshot>(PreviewSnapshot.EMPTY);
 
-	
-	private ReentrantLock lock = new ReentrantLock();
 
-	
 	public String getName() {
 		return Translator.get("ZigZagName");
 	}
 
+	@Override
+	public ImageConverterPanel getPanel() {
+		return new Converter_ZigZag_Panel(this);
+	}
+
+	@Override
+	public void setImage(TransformedImage img) {
+		// make black & white
+		Filter_BlackAndWhite bw = new Filter_BlackAndWhite(255);
+		blackAndWhite = bw.filter(img);
+		dither();
+		keepIterating=true;
+	}
+
+	/**
+	 * Dither the black and white image with the current mode and forget the old tour.
+	 */
+	private void dither() {
+		ditheredWith = ditherMode;
+		Filter_DitherFloydSteinberg fs = new Filter_DitherFloydSteinberg(ditheredWith);
+		sourceImage = fs.filter(blackAndWhite);
+
+		optimizer = null;
+		solution = null;
+		preview.set(PreviewSnapshot.EMPTY);
+	}
+
+
+	/**
+	 * The first iteration finds the dots and a first tour.  Every iteration after that shortens the tour.
+	 */
+	@Override
+	public boolean iterate() {
+		// the mode changed part way through, start over with the new dots.
+		if(ditheredWith!=ditherMode) dither();
+
+		if(optimizer==null) {
+			// connect the dots
+			connectTheDots(sourceImage);
+			if(numPoints<3) {
+				// too few dots to shorten, visit them in any order.
+				for (int i = 0; i < numPoints; ++i) solution[i] = i;
+				keepIterating=false;
+				return false;
+			}
+			greedyTour();
+			optimizer = new TourOptimizer(xs, ys, solution, numPoints);
+
+			Log.message("Running 2-opt/Or-opt optimization...");
+			old_len = optimizer.getLength();
+			t_elapsed = 0;
+			t_start = System.currentTimeMillis();
+			progress = 0;
+			publishTour();
+			return keepIterating;
+		}
+
+		// Shorten the line that connects the dots
+		boolean more = optimizer.improve(ITERATION_TIME);
+		optimizer.getTour(solution);
+		updateProgress();
+		publishTour();
+		if(!more) {
+			Log.message("Tour converged after "+formatTime(t_elapsed)+": " + StringHelper.formatDouble(optimizer.getLength()) + "mm");
+			keepIterating=false;
+		}
+		if(t_elapsed >= timeLimit*1000L) keepIterating=false;
+		return keepIterating;
+	}
+
+
+	@Override
+	public void finish() {
+		keepIterating=false;
+		convertAndSaveToGCode();
+	}
+
 
 	public String formatTime(long millis) {
 		String elapsed = "";
@@ -58,196 +143,75 @@ public String formatTime(long millis) {
 	}
 
 
-	public void updateProgress(double len, int color) {
+	public void updateProgress() {
 		t_elapsed = System.currentTimeMillis() - t_start;
-		double new_progress = 100.0 * (double) t_elapsed / (double) time_limit;
+		double new_progress = 100.0 * (double) t_elapsed / (double) (timeLimit*1000L);
 		if (new_progress > progress + 0.1) {
 			// find the new tour length
-			len = getTourLength(solution);
+			double len = optimizer.getLength();
 			if (old_len > len) {
 				old_len = len;
 				Log.message(formatTime(t_elapsed) + ": " + StringHelper.formatDouble(len) + "mm");
 			}
 			progress = new_progress;
-			pm.setProgress((int) progress);
-		}
-	}
-
-
-	// we have s1,s2...e-1,e
-	// check if s1,e-1,...s2,e is shorter
-	public int flipTests() {
-		int start, end, j, once = 0;
-
-		for (start = 0; start < numPoints - 2 && !swingWorker.isCancelled() && !pm.isCanceled(); ++start) {
-			float a = calculateWeight(solution[start], solution[start + 1]);
-			int best_end = -1;
-			double best_diff = 0;
-
-			for (end = start + 2; end <= numPoints && !swingWorker.isCancelled() && !pm.isCanceled(); ++end) {
-				// before
-				float b = calculateWeight(solution[end], solution[end - 1]);
-				// after
-				float c = calculateWeight(solution[start], solution[end - 1]);
-				float d = calculateWeight(solution[end], solution[start + 1]);
-
-				double temp_diff = (a + b) - (c + d);
-				if (best_diff < temp_diff) {
-					best_diff = temp_diff;
-					best_end = end;
-				}
-			}
-
-			if (best_end != -1 && !swingWorker.isCancelled() && !pm.isCanceled()) {
-				once = 1;
-				// do the flip
-				int begin = start + 1;
-				int finish = best_end;
-				int half = (finish - begin) / 2;
-				int temp;
-				while (lock.isLocked()) ;
-
-				lock.lock();
-				//Makelangelo.getSingleton().Log("<font color='red'>flipping "+(finish-begin)+"</font>\n");
-				for (j = 0; j < half; ++j) {
-					temp = solution[begin + j];
-					solution[begin + j] = solution[finish - 1 - j];
-					solution[finish - 1 - j] = temp;
-				}
-				lock.unlock();
-				updateProgress(len, 1);
-			}
+			if(pm!=null) pm.setProgress((int) progress);
 		}
-		return once;
 	}
 
 
 	public void render(GL2 gl2) {
-		if (points == null || solution == null) return;
-
-		while (lock.isLocked());
-		lock.lock();
-
 		gl2.glColor3f(0, 0, 0);
-		gl2.glBegin(GL2.GL_LINE_STRIP);
-		for (int i = 0; i < points.length; ++i) {
-			if (points[solution[i]] == null) break;
-			gl2.glVertex2f((points[solution[i]].x) * 0.1f,
-					(points[solution[i]].y) * 0.1f);
-		}
-		gl2.glEnd();
-
-		lock.unlock();
-	}
-
-
-	protected float calculateWeight(int a, int b) {
-		float x = points[a].x - points[b].x;
-		float y = points[a].y - points[b].y;
-		return x * x + y * y;
-	}
-
-
-	private void generateTSP(Writer out) throws IOException {
-		greedyTour();
-
-		Log.message("Running Kernighan–Lin optimization...");
-
-		len = getTourLength(solution);
-		old_len = len;
-
-		t_elapsed = 0;
-		t_start = System.currentTimeMillis();
-		progress = 0;
-		updateProgress(len, 2);
-
-		int once = 1;
-		while (once == 1 && t_elapsed < time_limit && !swingWorker.isCancelled()) {
-			once = 0;
-			//@TODO: make these optional for the very thorough people
-			//once|=transposeForwardTest();
-			//once|=transposeBackwardTest();
-
-			once |= flipTests();
-
-			updateProgress(len, 2);
-		}
-
-		convertAndSaveToGCode(out);
+		preview.get().renderPath(gl2, true);
 	}
 
 
-	private double calculateLength(int a, int b) {
-		return Math.sqrt(calculateWeight(a, b));
-	}
-
 	/**
-	 * Get the length of a tour segment
-	 *
-	 * @param list an array of indexes into the point list.  the order forms the tour sequence.
-	 * @return the length of the tour
+	 * Copy the tour for render().  The copy is never changed, so render() can draw it while the next iteration
+	 * runs.
 	 */
-	private double getTourLength(int[] list) {
-		double w = 0;
-		for (int i = 0; i < numPoints - 1; ++i) {
-			w += calculateLength(list[i], list[i + 1]);
+	private void publishTour() {
+		double [] x = new double[numPoints];
+		double [] y = new double[numPoints];
+		for (int i = 0; i < numPoints; ++i) {
+			x[i] = xs[solution[i]];
+			y[i] = ys[solution[i]];
 		}
-		return w;
+		preview.set(new PreviewSnapshot(x, y, null, null, true));
 	}
 
+
 	/**
-	 * Starting with point 0, find the next nearest point and repeat until all points have been "found".
+	 * Join the nearest dots first, then join up the pieces.  O(n log n), where the old nearest-next-dot search was
+	 * O(n^2).
 	 */
 	private void greedyTour() {
 		Log.message("Finding greedy tour solution...");
 
-		int i;
-		float w, bestw;
-		int besti;
-
-		// put all the points in the solution in no particular order.
-		for (i = 0; i < numPoints; ++i) {
+		for (int i = 0; i < numPoints; ++i) {
 			solution[i] = i;
 		}
-
-
-		int scount = 0;
-		solution[scount] = solution[0];
-
-		do {
-			// Find the nearest point not already in the line.
-			// Any solution[n] where n>scount is not in the line.
-			bestw = calculateWeight(solution[scount], solution[scount + 1]);
-			besti = scount + 1;
-			for (i = scount + 2; i < numPoints; ++i) {
-				w = calculateWeight(solution[scount], solution[i]);
-				if (w < bestw) {
-					bestw = w;
-					besti = i;
-				}
-			}
-			i = solution[scount + 1];
-			solution[scount + 1] = solution[besti];
-			solution[besti] = i;
-			scount++;
-		} while (scount < numPoints);
+		InitialTour.greedyEdge(xs, ys, solution, numPoints);
 	}
 
 
 	/**
-	 * Open a file and write out the edge list as a set of GCode commands.
+	 * Write out the tour as a set of turtle moves.
 	 * Since all the points are connected in a single loop,
 	 * start at the tsp point closest to the calibration point and go around until you get back to the start.
 	 */
-	private void convertAndSaveToGCode(Writer out) throws IOException {
+	private void convertAndSaveToGCode() {
+		turtle = new Turtle();
+		// a blank image has no dots to visit.
+		if (solution == null || numPoints == 0) return;
+
 		// find the tsp point closest to the calibration point
 		int i;
 		int besti = -1;
-		float bestw = 1000000;
-		float x, y, w;
+		double bestw = Double.MAX_VALUE;
+		double x, y, w;
 		for (i = 0; i < numPoints; ++i) {
-			x = points[solution[i]].x;
-			y = points[solution[i]].y;
+			x = xs[solution[i]];
+			y = ys[solution[i]];
 			w = x * x + y * y;
 			if (w < bestw) {
 				bestw = w;
@@ -255,16 +219,15 @@ private void convertAndSaveToGCode(Writer out) throws IOException {
 			}
 		}
 
-		turtle = new Turtle();
 		// jump to first point
-		turtle.jumpTo(points[besti].x, points[besti].y);
+		turtle.jumpTo(xs[solution[besti]], ys[solution[besti]]);
 		// move through entire list
 		for (i = 1; i < numPoints; ++i) {
-			int v = (besti + i) % numPoints;
-			turtle.moveTo(points[v].x, points[v].y);
+			int v = solution[(besti + i) % numPoints];
+			turtle.moveTo(xs[v], ys[v]);
 		}
 		// close the loop
-		turtle.moveTo(points[besti].x, points[besti].y);
+		turtle.moveTo(xs[solution[besti]], ys[solution[besti]]);
 
 		turtle.penUp();
 	}
@@ -276,7 +239,7 @@ protected void connectTheDots(TransformedImage img) {
 		double yTop    = machine.getMarginTop()   ;
 		double xLeft   = machine.getMarginLeft()  ;
 		double xRight  = machine.getMarginRight() ;
-		
+
 		double x, y;
 		int i;
 		// count the points
@@ -291,8 +254,9 @@ protected void connectTheDots(TransformedImage img) {
 		}
 
 		Log.message(numPoints + " points.");
-		points = new Point[numPoints + 1];
-		solution = new int[numPoints + 1];
+		xs = new double[numPoints];
+		ys = new double[numPoints];
+		solution = new int[numPoints];
 
 		// collect the point data
 		numPoints = 0;
@@ -300,34 +264,33 @@ protected void connectTheDots(TransformedImage img) {
 			for (x = xLeft; x < xRight; ++x) {
 				i = img.sample1x1(x, y);
 				if (i == 0) {
-					Point p = new Point();
-					p.setLocation( x, y );
-					points[numPoints++] = p;
+					xs[numPoints] = x;
+					ys[numPoints] = y;
+					numPoints++;
 				}
 			}
 		}
 	}
 
 	/**
-	 * The main entry point
-	 *
-	 * @param img the image to convert.
+	 * @param value the most time to spend shortening the line, in seconds.
 	 */
-	public boolean convert(TransformedImage img,Writer out) throws IOException {
-		// make black & white
-		Filter_BlackAndWhite bw = new Filter_BlackAndWhite(255);
-		img = bw.filter(img);
-
-		// Dither
-		Filter_DitherFloydSteinberg fs = new Filter_DitherFloydSteinberg();
-		img = fs.filter(img);
-
-		// connect the dots
-		connectTheDots(img);
-		// Shorten the line that connects the dots
-		generateTSP(out);
+	public void setTimeLimit(int value) {
+		if(value<1) value=1;
+		timeLimit = value;
+	}
+	public int getTimeLimit() {
+		return timeLimit;
+	}
 
-		return true;
+	/**
+	 * @param mode how the image is turned into dots.  A tour in progress starts over on the next iteration.
+	 */
+	public void setDitherMode(DitherMode mode) {
+		ditherMode = mode;
+	}
+	public DitherMode getDitherMode() {
+		return ditherMode;
 	}
 }
 
@@ -0,0 +1,51 @@
+package com.marginallyclever.artPipeline.converters;
+
+import java.beans.PropertyChangeEvent;
+
+import com.marginallyclever.artPipeline.imageFilters.DitherMode;
+import com.marginallyclever.makelangelo.Translator;
+import com.marginallyclever.makelangelo.select.SelectInteger;
+import com.marginallyclever.makelangelo.select.SelectOneOfMany;
+
+/**
+ * GUI for {@link Converter_ZigZag}
+ * @author Dan Royer
+ *
+ */
+public class Converter_ZigZag_Panel extends ImageConverterPanel {
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+	private SelectInteger timeLimit;
+	private SelectOneOfMany ditherMode;
+	private Converter_ZigZag converter;
+
+	public Converter_ZigZag_Panel(Converter_ZigZag converter_ZigZag) {
+		super();
+
+		converter = converter_ZigZag;
+
+		add(timeLimit = new SelectInteger(Translator.get("ZigZagTimeLimit"),converter.getTimeLimit()));
+
+		DitherMode [] modes = DitherMode.values();
+		String [] modeNames = new String[modes.length];
+		for(int i=0;i<modes.length;++i) modeNames[i] = Translator.get("DitherMode"+modes[i].name());
+		add(ditherMode = new SelectOneOfMany(Translator.get("ZigZagDitherMode"),modeNames,converter.getDitherMode().ordinal()));
+		finish();
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent evt) {
+		super.propertyChange(evt);
+
+		// only changes when to stop, the tour so far is kept.
+		converter.setTimeLimit(timeLimit.getValue());
+
+		DitherMode mode = DitherMode.values()[ditherMode.getSelectedIndex()];
+		if(mode!=converter.getDitherMode()) {
+			converter.setDitherMode(mode);
+			converter.restart();
+		}
+	}
+}
@@ -1,5 +1,11 @@
 package com.marginallyclever.artPipeline.converters;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.util.texture.Texture;
 import com.jogamp.opengl.util.texture.awt.AWTTextureIO;
@@ -8,6 +14,7 @@
 import com.marginallyclever.artPipeline.loadAndSave.LoadAndSaveImage;
 import com.marginallyclever.convenience.Clipper2D;
 import com.marginallyclever.convenience.Point2D;
+import com.marginallyclever.convenience.turtle.Turtle;
 import com.marginallyclever.makelangeloRobot.MakelangeloRobotDecorator;
 
 /**
@@ -23,6 +30,9 @@
  *
  */
 public abstract class ImageConverter extends ImageManipulator implements MakelangeloRobotDecorator {
+	// convertAlongLines() splits its lines into this many runs per core, so a slow run doesn't hold up the rest.
+	private static final int RUNS_PER_CORE = 4;
+	
 	protected TransformedImage sourceImage;
 	protected boolean keepIterating=false;
 	protected Texture texture = null;
@@ -104,6 +114,50 @@ public void render(GL2 gl2) {
 		}	
 	}
 	
+	/**
+	 * Make several turtles at the same time, then add them to {@link #turtle} in the order given, as if they
+	 * had been drawn one after another.  Each part must only draw on its own turtle.  If the thread is
+	 * interrupted every part is still added, and the thread is left interrupted for the caller to see.
+	 * @param parts each makes and returns one turtle.
+	 */
+	protected void drawInParallel(List<Callable<Turtle>> parts) {
+		List<ForkJoinTask<Turtle>> results = new ArrayList<ForkJoinTask<Turtle>>();
+		for( Callable<Turtle> part : parts ) {
+			results.add(ForkJoinPool.commonPool().submit(part));
+		}
+		// join() waits through an interrupt and leaves it set.  ForkJoinPool.invokeAll() would clear it.
+		for( ForkJoinTask<Turtle> f : results ) {
+			turtle.append(f.join());
+		}
+	}
+	
+	/**
+	 * {@link #convertAlongLine(double, double, double, double, double, double, TransformedImage)} for many lines at
+	 * the same time.  The lines are split into runs, each run is drawn on its own turtle, and the turtles are added
+	 * to {@link #turtle} in order, so the result is the same as drawing the lines one after another.
+	 * @param lines each is {x0,y0,x1,y1,channelCutoff}, in the order to draw them.
+	 * @param stepSize mm level of detail for every line.
+	 * @param img the image to sample while converting along the lines.
+	 */
+	protected void convertAlongLines(final List<double[]> lines,final double stepSize,final TransformedImage img) {
+		int runs = Math.min(lines.size(), Runtime.getRuntime().availableProcessors()*RUNS_PER_CORE);
+		List<Callable<Turtle>> parts = new ArrayList<Callable<Turtle>>();
+		for(int r=0;r<runs;++r) {
+			final int first = (int)((long)lines.size()*r/runs);
+			final int last  = (int)((long)lines.size()*(r+1)/runs);
+			parts.add(()->{
+				Turtle t = new Turtle();
+				t.setColor(turtle.getColor());
+				for(int i=first;i<last;++i) {
+					double [] line = lines.get(i);
+					convertAlongLine(line[0],line[1],line[2],line[3],stepSize,line[4],img,t);
+				}
+				return t;
+			});
+		}
+		drawInParallel(parts);
+	}
+	
 	/**
 	 * Drag the pen across the paper from p0 to p1, sampling (p1-p0)/stepSize times.  If the intensity of img
 	 * at a sample location is greater than the channelCutff, raise the pen.  Print the gcode results to out.
@@ -118,6 +172,15 @@ public void render(GL2 gl2) {
 	 * @param img the image to sample while converting along the line.
 	 */
 	protected void convertAlongLine(double x0,double y0,double x1,double y1,double stepSize,double channelCutoff,TransformedImage img) {
+		convertAlongLine(x0,y0,x1,y1,stepSize,channelCutoff,img,turtle);
+	}
+	
+	/**
+	 * Same as {@link #convertAlongLine(double, double, double, double, double, double, TransformedImage)}, drawn
+	 * with any turtle.
+	 * @param turtle where to draw
+	 */
+	protected void convertAlongLine(double x0,double y0,double x1,double y1,double stepSize,double channelCutoff,TransformedImage img,Turtle turtle) {
 		Point2D P0 = new Point2D(x0,y0);
 		Point2D P1 = new Point2D(x1,y1);
 
@@ -128,21 +191,24 @@ protected void convertAlongLine(double x0,double y0,double x1,double y1,double s
 			return;
 		}
 		
-		double b;
 		double dx=P1.x-P0.x;
 		double dy=P1.y-P0.y;
 		double halfStep = stepSize/2.0;
 		double distance = Math.sqrt(dx*dx+dy*dy);
 
-		double n,x,y,v;
-		
-		for( b = 0; b <= distance; b+=stepSize ) {
-			n = b / distance;
+		// one sample every stepSize from P0, not past P1.
+		int steps = (int)Math.floor(distance/stepSize)+1;
+		double n = distance>0 ? (steps-1)*stepSize/distance : 0;
+		int [] v = new int[steps];
+		img.sampleLine(P0.x, P0.y, P0.x+dx*n, P0.y+dy*n, steps, halfStep, v);
+
+		double x,y;
+		for(int i=0; i<steps; ++i ) {
+			n = distance>0 ? i*stepSize / distance : 0;
 			x = dx * n + P0.x;
 			y = dy * n + P0.y;
 			
-			v = img.sample( x - halfStep, y - halfStep, x + halfStep, y + halfStep);
-			if(v<channelCutoff) turtle.penDown();
+			if(v[i]<channelCutoff) turtle.penDown();
 			else turtle.penUp();
 			turtle.moveTo(x,y);
 		}
@@ -163,26 +229,42 @@ protected void convertAlongLine(double x0,double y0,double x1,double y1,double s
 	 * @param img the image to sample while converting along the line.
 	 */
 	protected void convertAlongLineErrorTerms(double x0,double y0,double x1,double y1,double stepSize,double channelCutoff,double [] error0,double [] error1,TransformedImage img) {
+		convertAlongLineErrorTerms(x0,y0,x1,y1,stepSize,channelCutoff,error0,error1,img,turtle);
+	}
+	
+	/**
+	 * Same as {@link #convertAlongLineErrorTerms(double, double, double, double, double, double, double[], double[], TransformedImage)},
+	 * drawn with any turtle.
+	 * @param turtle where to draw
+	 */
+	protected void convertAlongLineErrorTerms(double x0,double y0,double x1,double y1,double stepSize,double channelCutoff,double [] error0,double [] error1,TransformedImage img,Turtle turtle) {
 		double b;
 		double dx=x1-x0;
 		double dy=y1-y0;
 		double halfStep = stepSize/2.0;
 		double distance = Math.sqrt(dx*dx+dy*dy);
 
-		double n,x,y,oldPixel,newPixel;
+		// one sample every stepSize from (x0,y0), not past (x1,y1).
+		int count = (int)Math.floor(distance/stepSize)+1;
+		double n = distance>0 ? (count-1)*stepSize/distance : 0;
+		int [] v = new int[count];
+		img.sampleLine(x0, y0, x0+dx*n, y0+dy*n, count, halfStep, v);
+
+		double x,y,oldPixel,newPixel;
 
 		boolean wasInside = false;
 		boolean isInside;
 		boolean penUp;
 		int steps=0;
 
-		for (b = 0; b <= distance; b+=stepSize) {
-			n = b / distance;
+		for(int i=0; i<count; ++i) {
+			b = i*stepSize;
+			n = distance>0 ? b / distance : 0;
 			x = dx * n + x0;
 			y = dy * n + y0;
 			isInside=isInsidePaperMargins(x, y);
 			if(isInside) {
-				oldPixel = img.sample( x - halfStep, y - halfStep, x + halfStep, y + halfStep);
+				oldPixel = v[i];
 				int b2 = (int)b;
 				oldPixel += error0[b2];
 				newPixel = oldPixel>=channelCutoff? 255:0;
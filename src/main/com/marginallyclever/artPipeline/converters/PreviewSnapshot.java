@@ -0,0 +1,84 @@
+package com.marginallyclever.artPipeline.converters;
+
+import com.jogamp.opengl.GL2;
+import com.marginallyclever.voronoi.VoronoiEdgeBuffer;
+
+/**
+ * What an iterative converter shows in its live preview.  The worker copies what it has so far into a new
+ * snapshot and publishes it through an {@link java.util.concurrent.atomic.AtomicReference}.  The render thread
+ * draws whichever snapshot is newest.  Neither thread waits for the other, and a snapshot never changes after
+ * it is made.
+ *
+ * @author Dan Royer
+ */
+public class PreviewSnapshot {
+	public static final PreviewSnapshot EMPTY = new PreviewSnapshot(new double[0],new double[0],null,null,false);
+
+	// the points.  in order along the path when isTour is true.
+	public final double [] x, y;
+	// one per point, or null.
+	public final double [] weight;
+	// x1,y1,x2,y2 of each edge, or null.
+	public final double [] edges;
+	public final boolean isTour;
+
+	/**
+	 * The arrays become part of the snapshot, so the caller must not change them afterwards.
+	 * @param x point x values
+	 * @param y point y values
+	 * @param weight one per point, or null
+	 * @param edges x1,y1,x2,y2 of each edge, or null.  See {@link #copyEdges(VoronoiEdgeBuffer)}.
+	 * @param isTour true if the points are in order along a closed path.
+	 */
+	public PreviewSnapshot(double [] x,double [] y,double [] weight,double [] edges,boolean isTour) {
+		this.x = x;
+		this.y = y;
+		this.weight = weight;
+		this.edges = edges;
+		this.isTour = isTour;
+	}
+
+	/**
+	 * @return x1,y1,x2,y2 of each edge in a new array.
+	 */
+	public static double [] copyEdges(VoronoiEdgeBuffer buffer) {
+		double [] edges = new double[buffer.size()*4];
+		for(int i=0;i<buffer.size();++i) {
+			edges[i*4  ] = buffer.x1[i];
+			edges[i*4+1] = buffer.y1[i];
+			edges[i*4+2] = buffer.x2[i];
+			edges[i*4+3] = buffer.y2[i];
+		}
+		return edges;
+	}
+
+	public void renderEdges(GL2 gl2) {
+		if(edges==null) return;
+		gl2.glBegin(GL2.GL_LINES);
+		for(int i=0;i<edges.length;i+=4) {
+			gl2.glVertex2d( edges[i  ], edges[i+1] );
+			gl2.glVertex2d( edges[i+2], edges[i+3] );
+		}
+		gl2.glEnd();
+	}
+
+	public void renderPoints(GL2 gl2) {
+		gl2.glBegin(GL2.GL_POINTS);
+		for(int i=0;i<x.length;++i) {
+			gl2.glVertex2d( x[i], y[i] );
+		}
+		gl2.glEnd();
+	}
+
+	/**
+	 * Connect the points in order.
+	 * @param closed true to go back to the first point at the end.
+	 */
+	public void renderPath(GL2 gl2,boolean closed) {
+		gl2.glBegin(closed ? GL2.GL_LINE_LOOP : GL2.GL_LINE_STRIP);
+		for(int i=0;i<x.length;++i) {
+			gl2.glVertex2d( x[i], y[i] );
+		}
+		gl2.glEnd();
+	}
+}
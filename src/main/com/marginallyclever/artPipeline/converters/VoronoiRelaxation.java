@@ -0,0 +1,146 @@
+package com.marginallyclever.artPipeline.converters;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.marginallyclever.artPipeline.TransformedImage;
+import com.marginallyclever.convenience.ParallelHelper;
+import com.marginallyclever.voronoi.DelaunayTriangulation;
+import com.marginallyclever.voronoi.VoronoiCell;
+import com.marginallyclever.voronoi.VoronoiEdgeBuffer;
+
+/**
+ * Lloyd relaxation for the Voronoi converters.  Keeps one {@link DelaunayTriangulation} of the cell centroids
+ * from one iteration to the next.  The sites only move a little each time, so the triangulation is repaired with
+ * a few edge flips instead of building the whole diagram again.
+ *
+ * A pixel belongs to the cell of the nearest centroid, so the cells are measured by walking the triangulation
+ * from the cell of the last pixel to the cell of the next.  The cell polygons are never built.
+ * <em>One relaxation must not be used by two threads at once.</em>
+ *
+ * @author Dan Royer
+ */
+public class VoronoiRelaxation {
+	private DelaunayTriangulation triangulation = new DelaunayTriangulation();
+	private double [] xs = new double[0];
+	private double [] ys = new double[0];
+	private boolean isBuilt;
+	// one for each worker in measure(), kept for the next call.
+	private Sums [] sums = new Sums[0];
+
+	/**
+	 * What one worker has found so far in {@link VoronoiRelaxation#measure(TransformedImage, List, double, double, double, double)}.
+	 */
+	private static class Sums {
+		final double [] weight;
+		final double [] wx;
+		final double [] wy;
+		final int [] hits;
+
+		Sums(int n) {
+			weight = new double[n];
+			wx = new double[n];
+			wy = new double[n];
+			hits = new int[n];
+		}
+
+		void clear() {
+			Arrays.fill(weight, 0);
+			Arrays.fill(wx, 0);
+			Arrays.fill(wy, 0);
+			Arrays.fill(hits, 0);
+		}
+	}
+
+	/**
+	 * Forget the sites.  The next {@link #update(List)} builds the triangulation from scratch.
+	 */
+	public void reset() {
+		isBuilt=false;
+	}
+
+	/**
+	 * Move the sites to the centroids of the cells.
+	 * @param cells the cells, in the same order every time.
+	 */
+	public void update(List<VoronoiCell> cells) {
+		int count = cells.size();
+		if(xs.length!=count) {
+			xs = new double[count];
+			ys = new double[count];
+			isBuilt=false;
+		}
+		for(int i=0;i<count;++i) {
+			VoronoiCell c = cells.get(i);
+			xs[i] = c.centroid.x;
+			ys[i] = c.centroid.y;
+		}
+		if(isBuilt) {
+			triangulation.moveSites(xs, ys);
+		} else {
+			triangulation.build(xs, ys, count);
+			isBuilt=true;
+		}
+	}
+
+	/**
+	 * Visit every whole-numbered point in the bounds and add it to the cell of the nearest site.  Sets hits,
+	 * weight, wx, and wy of each cell to the sum over its pixels of 1, 255-grey, x*(255-grey), and y*(255-grey).
+	 * Each core measures a share of the rows.
+	 * @param img the image to sample
+	 * @param cells the same cells as the last {@link #update(List)}
+	 * @param xMin bounds of the area to measure
+	 * @param xMax bounds of the area to measure
+	 * @param yMin bounds of the area to measure
+	 * @param yMax bounds of the area to measure
+	 */
+	public void measure(TransformedImage img,List<VoronoiCell> cells,double xMin,double xMax,double yMin,double yMax) {
+		final int n = cells.size();
+		final int rows = (int)Math.floor(yMax-yMin)+1;
+		final int workers = Math.max(1, Math.min(rows, Runtime.getRuntime().availableProcessors()));
+		if(sums.length!=workers) sums = new Sums[workers];
+
+		// each worker measures its own share of the rows into its own sums.
+		ParallelHelper.forEachIndex(workers,(k)->{
+			if(sums[k]==null || sums[k].hits.length!=n) sums[k] = new Sums(n);
+			Sums sum = sums[k];
+			sum.clear();
+			int r0 = (int)((long)rows*k/workers);
+			int r1 = (int)((long)rows*(k+1)/workers);
+			int i = -1;
+			for(int r=r0;r<r1;++r) {
+				double y = yMin+r;
+				for(double x=xMin; x<=xMax; ++x) {
+					if(!img.canSampleAt(x, y)) continue;
+					// the next pixel is almost always in the same cell or the one beside it.
+					i = triangulation.nearest(x, y, i);
+					double sampleWeight = 255.0 - img.sample1x1Unchecked(x, y);
+					sum.hits[i]++;
+					sum.weight[i] += sampleWeight;
+					sum.wx[i] += x * sampleWeight;
+					sum.wy[i] += y * sampleWeight;
+				}
+			}
+		});
+
+		// add up the workers once, always in the same order.
+		for(int i=0;i<n;++i) {
+			VoronoiCell c = cells.get(i);
+			c.resetRegion();
+			for(int k=0;k<workers;++k) {
+				Sums sum = sums[k];
+				c.hits += sum.hits[i];
+				c.weight += sum.weight[i];
+				c.wx += sum.wx[i];
+				c.wy += sum.wy[i];
+			}
+		}
+	}
+
+	/**
+	 * @param out cleared, then filled with the borders between cells, clipped to the bounds.
+	 */
+	public void getEdges(double xMin,double xMax,double yMin,double yMax,VoronoiEdgeBuffer out) {
+		triangulation.getVoronoiEdges(xMin, xMax, yMin, yMax, out);
+	}
+}
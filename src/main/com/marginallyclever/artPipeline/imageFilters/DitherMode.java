@@ -0,0 +1,26 @@
+package com.marginallyclever.artPipeline.imageFilters;
+
+/**
+ * How the dithering filters choose which pixels are on.
+ *
+ * @author Dan Royer
+ */
+public enum DitherMode {
+	/**
+	 * Floyd/Steinberg error diffusion, one row at a time, alternating direction.  The classic look.
+	 */
+	SERIAL,
+	/**
+	 * Floyd/Steinberg error diffusion, every row left to right.  Many rows are worked on at once, each a little
+	 * behind the row above, and the result is the same for any number of threads.
+	 */
+	WAVEFRONT,
+	/**
+	 * Compare each pixel to an 8x8 Bayer matrix.  Regular cross-hatch pattern, every pixel at the same time.
+	 */
+	ORDERED,
+	/**
+	 * Compare each pixel to a 64x64 blue noise matrix.  Looks like error diffusion, every pixel at the same time.
+	 */
+	BLUE_NOISE;
+}
@@ -0,0 +1,140 @@
+package com.marginallyclever.artPipeline.imageFilters;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.marginallyclever.artPipeline.TransformedImage;
+
+/**
+ * Remembers the results of recent filters so that running the same filter with the same settings on the same
+ * picture again is free.  Every time a converter restarts it filters the source image again, so while the user
+ * is moving sliders only the converter-specific work is repeated.
+ *
+ * Results are found by the identity of the source pixels (not the TransformedImage, whose scale may change
+ * between runs) and the filter's {@link ImageFilter#getCacheKey()}.  The least recently used results are
+ * dropped when the total size goes over {@link #getMaxBytes()}.  The size includes the tables that are built later
+ * from each result, such as summed-area tables and mipmaps, so it is measured again every time the cache is used.
+ * The cache does not keep source images alive.
+ *
+ * Filters with a cache key assume the source image is not changed after it has been filtered.
+ *
+ * @author Dan Royer
+ */
+public class FilterCache {
+	private static class Key {
+		final WeakReference<BufferedImage> source;
+		final int sourceHash;
+		final String filterKey;
+
+		Key(BufferedImage source,String filterKey) {
+			this.source = new WeakReference<BufferedImage>(source);
+			this.sourceHash = System.identityHashCode(source);
+			this.filterKey = filterKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return sourceHash*31 + filterKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) return false;
+			Key other = (Key)obj;
+			BufferedImage s = source.get();
+			return s!=null && s==other.source.get() && filterKey.equals(other.filterKey);
+		}
+	}
+
+	private static class Entry {
+		final TransformedImage [] results;
+		long bytes;
+
+		Entry(TransformedImage [] results) {
+			this.results = results;
+			measure();
+		}
+
+		/**
+		 * The results grow as tables are built from them, so measure again.
+		 */
+		void measure() {
+			long sum=0;
+			for( TransformedImage r : results ) {
+				sum += r.getMemoryUse();
+			}
+			bytes = sum;
+		}
+	}
+
+	// access ordered, so the first entry is the least recently used.
+	private static final LinkedHashMap<Key,Entry> cache = new LinkedHashMap<Key,Entry>(16,0.75f,true);
+	private static long totalBytes = 0;
+	private static long maxBytes = Runtime.getRuntime().maxMemory()/4;
+
+	/**
+	 * @param source the image that was filtered
+	 * @param filterKey see {@link ImageFilter#getCacheKey()}
+	 * @return the remembered results, or null.  The results are shared, do not modify them.
+	 */
+	public static synchronized TransformedImage [] get(BufferedImage source,String filterKey) {
+		trim();
+		Entry e = cache.get(new Key(source,filterKey));
+		return e==null ? null : e.results;
+	}
+
+	/**
+	 * Remember the results of a filter.  Results bigger than the whole cache are not kept.
+	 * @param source the image that was filtered
+	 * @param filterKey see {@link ImageFilter#getCacheKey()}
+	 * @param results the output of the filter
+	 */
+	public static synchronized void put(BufferedImage source,String filterKey,TransformedImage ... results) {
+		Entry e = new Entry(results);
+		if(e.bytes>maxBytes) return;
+
+		cache.put(new Key(source,filterKey), e);
+		trim();
+	}
+
+	/**
+	 * Forget everything.
+	 */
+	public static synchronized void clear() {
+		cache.clear();
+		totalBytes = 0;
+	}
+
+	public static synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param bytes the most memory the cached results may use.  0 turns the cache off.
+	 */
+	public static synchronized void setMaxBytes(long bytes) {
+		maxBytes = bytes;
+		trim();
+	}
+
+	private static void trim() {
+		totalBytes = 0;
+		for( Entry e : cache.values() ) {
+			e.measure();
+			totalBytes += e.bytes;
+		}
+
+		Iterator<Map.Entry<Key,Entry>> i = cache.entrySet().iterator();
+		while(i.hasNext()) {
+			Map.Entry<Key,Entry> me = i.next();
+			// results of images that no longer exist can never be found again.
+			if(totalBytes>maxBytes || me.getKey().source.get()==null) {
+				totalBytes -= me.getValue().bytes;
+				i.remove();
+			}
+		}
+	}
+}
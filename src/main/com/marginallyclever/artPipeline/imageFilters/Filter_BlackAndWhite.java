@@ -1,28 +1,32 @@
 package com.marginallyclever.artPipeline.imageFilters;
 
-import java.awt.image.BufferedImage;
-
 import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.convenience.log.Log;
 
 /**
- * Converts an image to N shades of grey.
+ * Converts an image to N shades of grey.  The tone curve is a lookup table, so more steps can be chained
+ * on with the methods of {@link Filter_PointOperations} and still cost one pass over the image.
  *
  * @author Dan
  */
-public class Filter_BlackAndWhite extends ImageFilter {
+public class Filter_BlackAndWhite extends Filter_PointOperations {
+	private static final int MODE_LEVELS = 0;
+	private static final int MODE_TONE = 1;
+	private static final int MODE_SIMPLE = 2;
+	
 	double levels = 2;
+	private int mode = MODE_TONE;
 
 	public Filter_BlackAndWhite(int _levels) {
 		levels = (double) _levels;
+		tone();
 	}
 
 	public TransformedImage filter(TransformedImage img) {
-		int mode = 1;
 		switch (mode) {
-		case 0:	return filterLevels(img);
-		case 1:	return filterTone(img);
-		case 2:	return filterSimple(img);
+		case MODE_LEVELS:	return filterLevels(img);
+		case MODE_TONE:		return filterTone(img);
+		case MODE_SIMPLE:	return filterSimple(img);
 		}
 		return null;
 	}
@@ -30,94 +34,43 @@ public TransformedImage filter(TransformedImage img) {
 	protected TransformedImage filterLevels(TransformedImage img) {
 		int h = img.getSourceImage().getHeight();
 		int w = img.getSourceImage().getWidth();
-		int x, y, i;
-
-		double max_intensity = -1000;
-		double min_intensity = 1000;
-
-		BufferedImage bi = img.getSourceImage();
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				i = decode32bit(bi.getRGB(x, y));
-				if (max_intensity < i) max_intensity = i;
-				if (min_intensity > i) min_intensity = i;
+		int [] src = getPixels(img.getSourceImage());
+
+		// find the range of intensities, one band of rows at a time.
+		int [] range = { 255, 0 };
+		forEachTile(h, (y0,y1)->{
+			int min=255, max=0;
+			for(int i=y0*w;i<y1*w;++i) {
+				int v = decode32bit(src[i]);
+				if(min>v) min=v;
+				if(max<v) max=v;
 			}
-		}
-		double intensity_range = max_intensity - min_intensity;
-
-		double ilevels = 1;
-		if (levels != 0)
-			ilevels = 1.0 / levels;
-
-		// Log.message("min_intensity="+min_intensity);
-		// Log.message("max_intensity="+max_intensity);
-		// Log.message("levels="+levels);
-		// Log.message("inverse="+ilevels);
-
-		double pixel;
-
-		TransformedImage after = new TransformedImage(img);
-		BufferedImage afterBI = after.getSourceImage();
-
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				pixel = decode32bit(bi.getRGB(x, y));
-
-				double a = (pixel - min_intensity) / intensity_range;
-				double c = a * levels * ilevels;
-				int b = (int) Math.max(Math.min(c * 255.0, 255), 0);
-				// if(b==255) Log.message(x+"\t"+y+"\t"+i+"\t"+b);
-				afterBI.setRGB(x, y, ImageFilter.encode32bit(b));
+			synchronized(range) {
+				range[0] = Math.min(range[0], min);
+				range[1] = Math.max(range[1], max);
 			}
-		}
-
-		return after;
-	}
-
-	// accepts and returns a number between 0 and 255, inclusive.
-	double toneControl(double v) {
-		v /= 255.0;
-		v = 0.017 * Math.exp(3.29 * v) + 0.005 * Math.exp(7.27 * v);
-		return Math.min(1, Math.max(0, v)) * 255.0;
+		});
+		double minIntensity = range[0];
+		double intensityRange = range[1] - range[0];
+		final double ilevels = (levels != 0) ? 1.0 / levels : 1;
+
+		return new Filter_PointOperations().then(v->{
+			double a = (v - minIntensity) / intensityRange;
+			double c = a * levels * ilevels;
+			return (int) Math.max(Math.min(c * 255.0, 255), 0);
+		}).filter(img);
 	}
 
+	/**
+	 * @param img the image to convert
+	 * @return the tone curve, and any steps chained on after it, applied to a grey copy of img.
+	 */
 	public TransformedImage filterTone(TransformedImage img) {
-		int h = img.getSourceImage().getHeight();
-		int w = img.getSourceImage().getWidth();
-
-		BufferedImage bi = img.getSourceImage();
-		TransformedImage after = new TransformedImage(img);
-		BufferedImage afterBI = after.getSourceImage();
-
-		int x, y;
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				double pixel = decode32bit(bi.getRGB(x, y));
-				double v2 = toneControl(pixel);
-				int rgb = (int) Math.min(255, Math.max(0, v2));
-				afterBI.setRGB(x, y, ImageFilter.encode32bit(rgb));
-			}
-		}
-		return after;
+		return super.filter(img);
 	}
 
 	public TransformedImage filterSimple(TransformedImage img) {
-		int h = img.getSourceImage().getHeight();
-		int w = img.getSourceImage().getWidth();
-
-		BufferedImage bi = img.getSourceImage();
-		TransformedImage after = new TransformedImage(img);
-		BufferedImage afterBI = after.getSourceImage();
-
-		int x, y;
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				double pixel = decode32bit(bi.getRGB(x, y));
-				int rgb = (int) Math.min(255, Math.max(0, pixel));
-				afterBI.setRGB(x, y, ImageFilter.encode32bit(rgb));
-			}
-		}
-		return after;
+		return new Filter_PointOperations().filter(img);
 	}
 
 	/**
@@ -18,7 +18,7 @@
  *
  * @author Dan
  */
-public class Filter_CMYK extends ImageFilter {
+public class Filter_CMYK extends ParallelImageFilter {
   protected static double levels = 2;
     
   protected TransformedImage channelCyan;
@@ -36,49 +36,79 @@ public Filter_CMYK() {}
   public TransformedImage getK() {  return channelBlack;  }
   
   
+  @Override
+  public String getCacheKey() {
+    return "Filter_CMYK";
+  }
+
+
   // http://www.rapidtables.com/convert/color/rgb-to-cmyk.htm
   public TransformedImage filter(TransformedImage img) {
-    int h = img.getSourceImage().getHeight();
-    int w = img.getSourceImage().getWidth();
-    int px, py;
-
     BufferedImage bi = img.getSourceImage();
-    channelCyan = new TransformedImage(img);
-    channelMagenta = new TransformedImage(img);
-    channelYellow = new TransformedImage(img);
-    channelBlack = new TransformedImage(img);
+    TransformedImage [] cached = FilterCache.get(bi, getCacheKey());
+    if(cached!=null) {
+      // views, so the settings of the cached channels never change.
+      channelCyan = cached[0].createView();
+      channelMagenta = cached[1].createView();
+      channelYellow = cached[2].createView();
+      channelBlack = cached[3].createView();
+      channelCyan.copySettingsFrom(img);
+      channelMagenta.copySettingsFrom(img);
+      channelYellow.copySettingsFrom(img);
+      channelBlack.copySettingsFrom(img);
+      return img;
+    }
+
+    int h = bi.getHeight();
+    int w = bi.getWidth();
+
+    BufferedImage cc = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage cm = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage cy = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage ck = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
     
-    BufferedImage cc = channelCyan.getSourceImage();
-    BufferedImage cm = channelMagenta.getSourceImage();
-    BufferedImage cy = channelYellow.getSourceImage();
-    BufferedImage ck = channelBlack.getSourceImage();
-    double r,g,b,k,ik,c,m,y;
-    int pixel;
+    int [] src = getPixels(bi);
+    int [] pc = getPixels(cc);
+    int [] pm = getPixels(cm);
+    int [] py = getPixels(cy);
+    int [] pk = getPixels(ck);
     
-    for (py = 0; py < h; ++py) {
-      for (px = 0; px < w; ++px) {
-    	pixel = bi.getRGB(px,py);
-    	//double a = 255-((pixel>>24) & 0xff);
-		r = 1.0-(double)((pixel >> 16) & 0xff) / 255.0;
-		g = 1.0-(double)((pixel >>  8) & 0xff) / 255.0;
-		b = 1.0-(double)((pixel      ) & 0xff) / 255.0;
-		// now convert to cmyk
-		k = Math.min(Math.min(r,g),b);   // should be Math.max(Math.max(r,g),b) but colors are inverted.
-		ik = 1.0 - k;
-		
-//		if(ik<1.0/255.0) {
-//			c1=m1=y1=0;
-//		} else {
-			c = (r-k) / ik;
-			m = (g-k) / ik;
-			y = (b-k) / ik;
-		//}
-        cc.setRGB(px, py, ImageFilter.encode32bit(255-(int)(c*255.0)));
-        cm.setRGB(px, py, ImageFilter.encode32bit(255-(int)(m*255.0)));
-        cy.setRGB(px, py, ImageFilter.encode32bit(255-(int)(y*255.0)));
-        ck.setRGB(px, py, ImageFilter.encode32bit(255-(int)(k*255.0)));
+    forEachTile(h, (y0,y1)->{
+      double r,g,b,k,ik,c,m,y;
+      int pixel;
+      for(int i=y0*w;i<y1*w;++i) {
+        pixel = src[i];
+        //double a = 255-((pixel>>24) & 0xff);
+        r = 1.0-(double)((pixel >> 16) & 0xff) / 255.0;
+        g = 1.0-(double)((pixel >>  8) & 0xff) / 255.0;
+        b = 1.0-(double)((pixel      ) & 0xff) / 255.0;
+        // now convert to cmyk
+        k = Math.min(Math.min(r,g),b);   // should be Math.max(Math.max(r,g),b) but colors are inverted.
+        ik = 1.0 - k;
+        
+//        if(ik<1.0/255.0) {
+//          c1=m1=y1=0;
+//        } else {
+          c = (r-k) / ik;
+          m = (g-k) / ik;
+          y = (b-k) / ik;
+        //}
+        pc[i] = ImageFilter.encode32bit(255-(int)(c*255.0));
+        pm[i] = ImageFilter.encode32bit(255-(int)(m*255.0));
+        py[i] = ImageFilter.encode32bit(255-(int)(y*255.0));
+        pk[i] = ImageFilter.encode32bit(255-(int)(k*255.0));
       }
-    }
+    });
+
+    channelCyan = new TransformedImage(cc);
+    channelMagenta = new TransformedImage(cm);
+    channelYellow = new TransformedImage(cy);
+    channelBlack = new TransformedImage(ck);
+    channelCyan.copySettingsFrom(img);
+    channelMagenta.copySettingsFrom(img);
+    channelYellow.copySettingsFrom(img);
+    channelBlack.copySettingsFrom(img);
+    FilterCache.put(bi, getCacheKey(), channelCyan, channelMagenta, channelYellow, channelBlack);
 
     return img;
   }
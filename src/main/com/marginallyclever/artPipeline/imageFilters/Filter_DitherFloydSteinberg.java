@@ -1,8 +1,6 @@
 package com.marginallyclever.artPipeline.imageFilters;
 
-import java.awt.image.BufferedImage;
-
-import com.marginallyclever.artPipeline.TransformedImage;
+import java.util.Arrays;
 
 /**
  * Floyd/Steinberg dithering
@@ -10,20 +8,43 @@
  * @author Dan
  * See <a href="http://en.literateprograms.org/Floyd-Steinberg_dithering_%28C%29">http://en.literateprograms.org/Floyd-Steinberg_dithering_%28C%29</a> and <a href="http://www.home.unix-ag.org/simon/gimp/fsdither.c">http://www.home.unix-ag.org/simon/gimp/fsdither.c</a>
  */
-public class Filter_DitherFloydSteinberg extends ImageFilter {
-  private long tone;
+public class Filter_DitherFloydSteinberg extends ParallelImageFilter {
+  private DitherMode mode = DitherMode.SERIAL;
+
+
+  public Filter_DitherFloydSteinberg() {}
+
+
+  public Filter_DitherFloydSteinberg(DitherMode mode) {
+    this.mode = mode;
+  }
+
+
+  public DitherMode getMode() {
+    return mode;
+  }
 
 
-  private int quantizeColor(int original) {
+  public void setMode(DitherMode mode) {
+    this.mode = mode;
+  }
+
+
+  @Override
+  public String getCacheKey() {
+    return "Filter_DitherFloydSteinberg " + mode;
+  }
+
+
+  private int quantizeColor(int original, long tone) {
     int i = (int) Math.min(Math.max(original, 0), 255);
     return (i > tone) ? 255 : 0;
   }
 
 
-  private void ditherDirection(TransformedImage img, BufferedImage after, int y, int[] error, int[] nexterror, int direction) {
-    int w = img.getSourceImage().getWidth();
+  private void ditherDirection(int[] grey, int[] dest, int w, int y, long tone, int[] error, int[] nexterror, int direction) {
     int oldPixel, newPixel, quant_error;
-    int start, end, x;
+    int start, end, x, row = y * w;
 
     for (x = 0; x < w; ++x) nexterror[x] = 0;
 
@@ -38,11 +59,11 @@ private void ditherDirection(TransformedImage img, BufferedImage after, int y, i
     // for each x from left to right
     for (x = start; x != end; x += direction) {
       // oldpixel := pixel[x][y]
-      oldPixel = decode32bit(img.getSourceImage().getRGB(x, y)) + error[x];
+      oldPixel = grey[row + x] + error[x];
       // newpixel := find_closest_palette_color(oldpixel)
-      newPixel = quantizeColor(oldPixel);
+      newPixel = quantizeColor(oldPixel, tone);
       // pixel[x][y] := newpixel
-      after.setRGB(x, y, ImageFilter.encode32bit(newPixel));
+      dest[row + x] = ImageFilter.encode32bit(newPixel);
       // quant_error := oldpixel - newpixel
       quant_error = oldPixel - newPixel;
       // pixel[x+1][y  ] += 7/16 * quant_error
@@ -60,43 +81,100 @@ private void ditherDirection(TransformedImage img, BufferedImage after, int y, i
     }
   }
 
-  
-  public TransformedImage filter(TransformedImage img) {
-    int y, x;
-    int h = img.getSourceImage().getHeight();
-    int w = img.getSourceImage().getWidth();
-    int direction = 1;
-    int[] error = new int[w];
-    int[] nexterror = new int[w];
-
-    for (y = 0; y < w; ++y) {
-      error[y] = nexterror[y] = 0;
-    }
 
-    // find the average color of the system
-    for (y = 0; y < h; ++y) {
-      for (x = 0; x < w; ++x) {
-        tone += decode32bit(img.getSourceImage().getRGB(x, y));
+  @Override
+  protected void filterImage(int[] src, int[] dest, int w, int h) {
+    int[] grey = new int[w * h];
+    // sum of every grey level
+    long[] total = new long[1];
+    forEachTile(h, (y0, y1) -> {
+      long sum = 0;
+      for (int i = y0 * w; i < y1 * w; ++i) {
+        grey[i] = decode32bit(src[i]);
+        sum += grey[i];
+      }
+      synchronized (total) {
+        total[0] += sum;
       }
+    });
+
+    // the average color of the system
+    long tone = total[0] / (w * h);
+
+    switch (mode) {
+    case WAVEFRONT:   ditherWavefront(grey, dest, w, h, tone);  break;
+    case ORDERED:     ditherMatrix(grey, dest, w, h, ThresholdMatrix.getBayer());  break;
+    case BLUE_NOISE:  ditherMatrix(grey, dest, w, h, ThresholdMatrix.getBlueNoise());  break;
+    default:          ditherSerial(grey, dest, w, h, tone);  break;
     }
+  }
 
-    tone /= (w * h);
 
+  private void ditherSerial(int[] grey, int[] dest, int w, int h, long tone) {
+    int direction = 1;
+    int[] error = new int[w];
+    int[] nexterror = new int[w];
 
-    TransformedImage after = new TransformedImage(img);
-    BufferedImage afterBI = after.getSourceImage();
-    
     // for each y from top to bottom
-    for (y = 0; y < h; ++y) {
-      ditherDirection(img, afterBI, y, error, nexterror, direction);
+    for (int y = 0; y < h; ++y) {
+      ditherDirection(grey, dest, w, y, tone, error, nexterror, direction);
 
       direction = direction > 0 ? -1 : 1;
       int[] tmp = error;
       error = nexterror;
       nexterror = tmp;
     }
+  }
+
 
-    return after;
+  /**
+   * Same weights as {@link #ditherDirection(int[], int[], int, int, long, int[], int[], int)}, every row left
+   * to right.  A pixel needs the error from the three pixels above it, so each row stays two pixels behind
+   * the row above.  The error pushed right along a row is kept in a local instead of the row's error buffer,
+   * which the row above may still be writing.
+   */
+  private void ditherWavefront(int[] grey, int[] dest, int w, int h, long tone) {
+    int threads = getWavefrontThreads(h);
+    // error for each row in progress, plus the row each of them writes to.
+    int slots = threads + 2;
+    int[][] errors = new int[slots][w];
+    // error pushed right from the last pixel of the chunk before.
+    int[] carry = new int[slots];
+
+    forEachWavefront(w, h, 1, threads, (y, x0, x1) -> {
+      int slot = y % slots;
+      int[] error = errors[slot];
+      int[] nexterror = errors[(y + 1) % slots];
+      if (x0 == 0) {
+        Arrays.fill(nexterror, 0);
+        carry[slot] = 0;
+      }
+
+      int quant_error = carry[slot];
+      int row = y * w;
+      for (int x = x0; x < x1; ++x) {
+        int oldPixel = grey[row + x] + (int) (error[x] + 7.0 / 16.0 * quant_error);
+        int newPixel = quantizeColor(oldPixel, tone);
+        dest[row + x] = ImageFilter.encode32bit(newPixel);
+        quant_error = oldPixel - newPixel;
+        nexterror[x] += 5.0 / 16.0 * quant_error;
+        if (x + 1 < w) nexterror[x + 1] += 1.0 / 16.0 * quant_error;
+        if (x - 1 >= 0) nexterror[x - 1] += 3.0 / 16.0 * quant_error;
+      }
+      carry[slot] = quant_error;
+    });
+  }
+
+
+  private void ditherMatrix(int[] grey, int[] dest, int w, int h, ThresholdMatrix matrix) {
+    forEachTile(h, (y0, y1) -> {
+      for (int y = y0; y < y1; ++y) {
+        int row = y * w;
+        for (int x = 0; x < w; ++x) {
+          dest[row + x] = ImageFilter.encode32bit(grey[row + x] > matrix.get(x, y) * 255 ? 255 : 0);
+        }
+      }
+    });
   }
 }
 
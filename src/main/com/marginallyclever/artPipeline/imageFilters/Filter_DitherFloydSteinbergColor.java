@@ -1,8 +1,7 @@
 package com.marginallyclever.artPipeline.imageFilters;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
-import com.marginallyclever.artPipeline.TransformedImage;
 import com.marginallyclever.convenience.ColorPalette;
 import com.marginallyclever.convenience.ColorRGB;
 
@@ -13,8 +12,9 @@
  * @author Dan
  * See <a href="http://stackoverflow.com/questions/5940188/how-to-convert-a-24-bit-png-to-3-bit-png-using-floyd-steinberg-dithering">http://stackoverflow.com/questions/5940188/how-to-convert-a-24-bit-png-to-3-bit-png-using-floyd-steinberg-dithering</a>
  */
-public class Filter_DitherFloydSteinbergColor extends ImageFilter {
+public class Filter_DitherFloydSteinbergColor extends ParallelImageFilter {
   public ColorPalette palette;
+  private DitherMode mode = DitherMode.SERIAL;
 
   public Filter_DitherFloydSteinbergColor() {
     palette = new ColorPalette();
@@ -24,14 +24,55 @@ public Filter_DitherFloydSteinbergColor() {
   }
 
 
-  private void ditherDirection(TransformedImage img, BufferedImage after, int y, ColorRGB[] error, ColorRGB[] nexterror, int direction) {
-    int w = after.getWidth();
-    ColorRGB oldPixel = new ColorRGB(0, 0, 0);
-    ColorRGB newPixel = new ColorRGB(0, 0, 0);
-    ColorRGB quant_error = new ColorRGB(0, 0, 0);
-    int start, end, x;
+  public DitherMode getMode() {
+    return mode;
+  }
+
+
+  public void setMode(DitherMode mode) {
+    this.mode = mode;
+  }
+
+
+  /**
+   * The palette is public, so the key is read from it every time.
+   */
+  @Override
+  public String getCacheKey() {
+    StringBuilder sb = new StringBuilder("Filter_DitherFloydSteinbergColor " + mode);
+    for (int i = 0; i < palette.numColors(); ++i) {
+      ColorRGB c = palette.getColor(i);
+      sb.append(' ').append(c.red).append(',').append(c.green).append(',').append(c.blue);
+    }
+    return sb.toString();
+  }
+
 
-    for (x = 0; x < w; ++x) nexterror[x].set(0, 0, 0);
+  /**
+   * @return the index of the palette color nearest to (r,g,b).  Same as {@link ColorPalette#quantizeIndex(ColorRGB)}.
+   */
+  private int quantize(int[] paletteRGB, int r, int g, int b) {
+    int nearest = 0;
+    float nearestDiff = Float.MAX_VALUE;
+    for (int i = 0; i < paletteRGB.length; i += 3) {
+      int dr = paletteRGB[i] - r;
+      int dg = paletteRGB[i + 1] - g;
+      int db = paletteRGB[i + 2] - b;
+      float diff = (float) Math.sqrt(dr * dr + dg * dg + db * db);
+      if (i == 0 || diff < nearestDiff) {
+        nearestDiff = diff;
+        nearest = i;
+      }
+    }
+    return nearest;
+  }
+
+
+  private void ditherDirection(int[] src, int[] dest, int w, int y, int[] paletteRGB, int[] error, int[] nexterror, int direction) {
+    int oldR, oldG, oldB, qr, qg, qb, p;
+    int start, end, x, i, row = y * w;
+
+    for (x = 0; x < w * 3; ++x) nexterror[x] = 0;
 
     if (direction > 0) {
       start = 0;
@@ -44,56 +85,192 @@ private void ditherDirection(TransformedImage img, BufferedImage after, int y, C
     // for each x from left to right
     for (x = start; x != end; x += direction) {
       // oldpixel := pixel[x][y]
-      oldPixel.set(new ColorRGB(img.getSourceImage().getRGB(x, y)).add(error[x]));
+      int pixel = src[row + x];
+      i = x * 3;
+      oldR = ((pixel >> 16) & 0xff) + error[i];
+      oldG = ((pixel >>  8) & 0xff) + error[i + 1];
+      oldB = ((pixel      ) & 0xff) + error[i + 2];
       // newpixel := find_closest_palette_color(oldpixel)
-      newPixel = palette.quantize(oldPixel);
+      p = quantize(paletteRGB, oldR, oldG, oldB);
       // pixel[x][y] := newpixel
-      after.setRGB(x, y, newPixel.toInt());
+      dest[row + x] = 0xff000000 | ((paletteRGB[p] & 0xff) << 16) | ((paletteRGB[p + 1] & 0xff) << 8) | (paletteRGB[p + 2] & 0xff);
       // quant_error := oldpixel - newpixel
-      quant_error.set(oldPixel.sub(newPixel));
+      qr = oldR - paletteRGB[p];
+      qg = oldG - paletteRGB[p + 1];
+      qb = oldB - paletteRGB[p + 2];
       // pixel[x+1][y  ] += 7/16 * quant_error
       // pixel[x-1][y+1] += 3/16 * quant_error
       // pixel[x  ][y+1] += 5/16 * quant_error
       // pixel[x+1][y+1] += 1/16 * quant_error
-      nexterror[x].add(quant_error.mul(5.0 / 16.0));
+      // each weight scales what is left of quant_error after the weight before it.
+      qr *= 5.0 / 16.0;
+      qg *= 5.0 / 16.0;
+      qb *= 5.0 / 16.0;
+      nexterror[i] += qr;
+      nexterror[i + 1] += qg;
+      nexterror[i + 2] += qb;
       if (x + direction >= 0 && x + direction < w) {
-        error[x + direction].add(quant_error.mul(7.0 / 16.0));
-        nexterror[x + direction].add(quant_error.mul(1.0 / 16.0));
+        int j = (x + direction) * 3;
+        qr *= 7.0 / 16.0;
+        qg *= 7.0 / 16.0;
+        qb *= 7.0 / 16.0;
+        error[j] += qr;
+        error[j + 1] += qg;
+        error[j + 2] += qb;
+        qr *= 1.0 / 16.0;
+        qg *= 1.0 / 16.0;
+        qb *= 1.0 / 16.0;
+        nexterror[j] += qr;
+        nexterror[j + 1] += qg;
+        nexterror[j + 2] += qb;
       }
       if (x - direction >= 0 && x - direction < w) {
-        nexterror[x - direction].add(quant_error.mul(3.0 / 16.0));
+        int j = (x - direction) * 3;
+        qr *= 3.0 / 16.0;
+        qg *= 3.0 / 16.0;
+        qb *= 3.0 / 16.0;
+        nexterror[j] += qr;
+        nexterror[j + 1] += qg;
+        nexterror[j + 2] += qb;
       }
     }
   }
 
-  
-  public TransformedImage filter(TransformedImage img) {
-    int y;
-    int h = img.getSourceImage().getHeight();
-    int w = img.getSourceImage().getWidth();
-    int direction = 1;
-    ColorRGB[] error = new ColorRGB[w];
-    ColorRGB[] nexterror = new ColorRGB[w];
 
-    for (y = 0; y < w; ++y) {
-      error[y] = new ColorRGB(0, 0, 0);
-      nexterror[y] = new ColorRGB(0, 0, 0);
+  @Override
+  protected void filterImage(int[] src, int[] dest, int w, int h) {
+    int[] paletteRGB = new int[palette.numColors() * 3];
+    for (int i = 0; i < palette.numColors(); ++i) {
+      ColorRGB c = palette.getColor(i);
+      paletteRGB[i * 3] = c.red;
+      paletteRGB[i * 3 + 1] = c.green;
+      paletteRGB[i * 3 + 2] = c.blue;
     }
 
-    TransformedImage after = new TransformedImage(img);
-    BufferedImage afterBI = after.getSourceImage();
-    
+    switch (mode) {
+    case WAVEFRONT:   ditherWavefront(src, dest, w, h, paletteRGB);  break;
+    case ORDERED:     ditherMatrix(src, dest, w, h, paletteRGB, ThresholdMatrix.getBayer());  break;
+    case BLUE_NOISE:  ditherMatrix(src, dest, w, h, paletteRGB, ThresholdMatrix.getBlueNoise());  break;
+    default:          ditherSerial(src, dest, w, h, paletteRGB);  break;
+    }
+  }
+
+
+  /**
+   * Error diffusion runs in order, so the whole image is done in one pass.
+   */
+  private void ditherSerial(int[] src, int[] dest, int w, int h, int[] paletteRGB) {
+    int y;
+    int direction = 1;
+    // red, green, and blue error for each column
+    int[] error = new int[w * 3];
+    int[] nexterror = new int[w * 3];
+
     // for each y from top to bottom
     for (y = 0; y < h; ++y) {
-      ditherDirection(img, afterBI, y, error, nexterror, direction);
+      ditherDirection(src, dest, w, y, paletteRGB, error, nexterror, direction);
 
       direction = -direction;
-      ColorRGB[] tmp = error;
+      int[] tmp = error;
       error = nexterror;
       nexterror = tmp;
     }
+  }
+
+
+  /**
+   * Same weights as {@link #ditherDirection(int[], int[], int, int, int[], int[], int[], int)}, every row left
+   * to right.  Each row stays two pixels behind the row above.  The error pushed right along a row is kept in
+   * locals instead of the row's error buffer, which the row above may still be writing.
+   */
+  private void ditherWavefront(int[] src, int[] dest, int w, int h, int[] paletteRGB) {
+    int threads = getWavefrontThreads(h);
+    // error for each row in progress, plus the row each of them writes to.
+    int slots = threads + 2;
+    int[][] errors = new int[slots][w * 3];
+    // red, green, and blue error pushed right from the last pixel of the chunk before.
+    int[] carry = new int[slots * 3];
 
-    return after;
+    forEachWavefront(w, h, 1, threads, (y, x0, x1) -> {
+      int slot = y % slots;
+      int[] error = errors[slot];
+      int[] nexterror = errors[(y + 1) % slots];
+      if (x0 == 0) {
+        Arrays.fill(nexterror, 0);
+        Arrays.fill(carry, slot * 3, slot * 3 + 3, 0);
+      }
+
+      int carryR = carry[slot * 3];
+      int carryG = carry[slot * 3 + 1];
+      int carryB = carry[slot * 3 + 2];
+      int row = y * w;
+      for (int x = x0; x < x1; ++x) {
+        int pixel = src[row + x];
+        int i = x * 3;
+        int oldR = ((pixel >> 16) & 0xff) + error[i] + carryR;
+        int oldG = ((pixel >>  8) & 0xff) + error[i + 1] + carryG;
+        int oldB = ((pixel      ) & 0xff) + error[i + 2] + carryB;
+        int p = quantize(paletteRGB, oldR, oldG, oldB);
+        dest[row + x] = 0xff000000 | ((paletteRGB[p] & 0xff) << 16) | ((paletteRGB[p + 1] & 0xff) << 8) | (paletteRGB[p + 2] & 0xff);
+        int qr = oldR - paletteRGB[p];
+        int qg = oldG - paletteRGB[p + 1];
+        int qb = oldB - paletteRGB[p + 2];
+        qr *= 5.0 / 16.0;
+        qg *= 5.0 / 16.0;
+        qb *= 5.0 / 16.0;
+        nexterror[i] += qr;
+        nexterror[i + 1] += qg;
+        nexterror[i + 2] += qb;
+        carryR = carryG = carryB = 0;
+        if (x + 1 < w) {
+          qr *= 7.0 / 16.0;
+          qg *= 7.0 / 16.0;
+          qb *= 7.0 / 16.0;
+          carryR = qr;
+          carryG = qg;
+          carryB = qb;
+          qr *= 1.0 / 16.0;
+          qg *= 1.0 / 16.0;
+          qb *= 1.0 / 16.0;
+          nexterror[i + 3] += qr;
+          nexterror[i + 4] += qg;
+          nexterror[i + 5] += qb;
+        }
+        if (x - 1 >= 0) {
+          qr *= 3.0 / 16.0;
+          qg *= 3.0 / 16.0;
+          qb *= 3.0 / 16.0;
+          nexterror[i - 3] += qr;
+          nexterror[i - 2] += qg;
+          nexterror[i - 1] += qb;
+        }
+      }
+      carry[slot * 3] = carryR;
+      carry[slot * 3 + 1] = carryG;
+      carry[slot * 3 + 2] = carryB;
+    });
+  }
+
+
+  /**
+   * Push each pixel up or down by its threshold, about one palette step, then take the nearest color.
+   */
+  private void ditherMatrix(int[] src, int[] dest, int w, int h, int[] paletteRGB, ThresholdMatrix matrix) {
+    // the distance between neighboring levels of one channel, if the palette were spread evenly.
+    int n = paletteRGB.length / 3;
+    float spread = (float) Math.min(255.0, 255.0 / (Math.cbrt(n) - 1));
+
+    forEachTile(h, (y0, y1) -> {
+      for (int y = y0; y < y1; ++y) {
+        int row = y * w;
+        for (int x = 0; x < w; ++x) {
+          int pixel = src[row + x];
+          int offset = (int) ((matrix.get(x, y) - 0.5f) * spread);
+          int p = quantize(paletteRGB, ((pixel >> 16) & 0xff) + offset, ((pixel >> 8) & 0xff) + offset, (pixel & 0xff) + offset);
+          dest[row + x] = 0xff000000 | ((paletteRGB[p] & 0xff) << 16) | ((paletteRGB[p + 1] & 0xff) << 8) | (paletteRGB[p + 2] & 0xff);
+        }
+      }
+    });
   }
 }
 
@@ -1,119 +1,233 @@
 package com.marginallyclever.artPipeline.imageFilters;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
-
-import com.marginallyclever.artPipeline.TransformedImage;
-import com.marginallyclever.convenience.ColorRGB;
-
-
 /**
- * Converts an image to N shades of grey.
+ * Gaussian blur.  The blur is separable, so each color channel is blurred across every row and then down every
+ * column.  Each pass is split into bands that run at the same time.  Very wide blurs can use three box blurs
+ * instead, which look almost the same and cost the same for any radius.
  *
  * @author Dan
  */
-public class Filter_GaussianBlur extends ImageFilter {
+public class Filter_GaussianBlur extends ParallelImageFilter {
+	/**
+	 * At or above this radius the box blur approximation is used.
+	 */
+	public static final int BOX_BLUR_RADIUS = 16;
+	
 	int radius = 1;
+	private double sigma;
+	private boolean useBoxBlur;
+	// kernel[radius] is the center tap.  sums to 1.
+	private float[] kernel;
+
 
+	// the standard deviation that makes the taps beside the center half as heavy, the classic 1-2-1 kernel.
+	private static final double SIGMA_121 = Math.sqrt(0.5 / Math.log(2));
 
+	/**
+	 * @param _radius the blur reaches this many pixels in each direction.  The standard deviation is half the
+	 * radius, but never less than the classic 1-2-1 kernel, so radius 1 is exactly 1-2-1.
+	 */
 	public Filter_GaussianBlur(int _radius) {
-		assert (radius > 0);
-		radius = _radius;
+		this(_radius, Math.max(_radius / 2.0, SIGMA_121));
 	}
 
+	/**
+	 * @param _radius the blur reaches this many pixels in each direction.
+	 * @param _sigma the standard deviation of the gaussian, in pixels.
+	 */
+	public Filter_GaussianBlur(int _radius, double _sigma) {
+		assert (_radius > 0);
+		radius = Math.max(1, _radius);
+		sigma = _sigma;
+		useBoxBlur = (radius >= BOX_BLUR_RADIUS);
+		kernel = makeKernel(radius, sigma);
+	}
+	
+	/**
+	 * @param useBoxBlur true to approximate the gaussian with three box blurs, false for the exact kernel.
+	 */
+	public void setUseBoxBlur(boolean useBoxBlur) {
+		this.useBoxBlur = useBoxBlur;
+	}
 
-	public TransformedImage filter(TransformedImage img) {
-		int h = img.getSourceImage().getHeight();
-		int w = img.getSourceImage().getWidth();
-		int x, y;
-
-		BufferedImage dest = new BufferedImage(img.getSourceImage().getWidth(), img.getSourceImage().getHeight(), img.getSourceImage().getType());
-
-	    TransformedImage after = new TransformedImage(img);
-	    BufferedImage afterBI = after.getSourceImage();
-	    
-		// scales could be filled with a gaussian curve: float[] scales = new float[radius];
-		float[] scales = new float[3];
-		scales[0] = 1.0f / 4.0f;
-		scales[1] = 1.0f / 2.0f;
-		scales[2] = 1.0f / 4.0f;
-
-		ColorRGB pixel = new ColorRGB(0, 0, 0);
-		ColorRGB p;
-		double sum;
-
-		// horizontal blur
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				pixel.set(0, 0, 0);
-				sum = 0;
-				if (x - 1 >= 0) {
-					p = new ColorRGB(img.getSourceImage().getRGB(x - 1, y));
-					p.mul(scales[0]);
-					pixel.add(p);
-					sum += scales[0];
-				}
+	@Override
+	public String getCacheKey() {
+		return "Filter_GaussianBlur " + radius + " " + sigma + " " + useBoxBlur;
+	}
 
-				p = new ColorRGB(img.getSourceImage().getRGB(x, y));
-				p.mul(scales[1]);
-				pixel.add(p);
-				sum += scales[1];
+	private static float[] makeKernel(int radius, double sigma) {
+		float[] k = new float[radius * 2 + 1];
+		double sum = 0;
+		for (int i = -radius; i <= radius; ++i) {
+			double v = Math.exp(-(i * i) / (2 * sigma * sigma));
+			k[i + radius] = (float) v;
+			sum += v;
+		}
+		for (int i = 0; i < k.length; ++i) {
+			k[i] /= sum;
+		}
+		return k;
+	}
 
-				if (x + 1 < w) {
-					p = new ColorRGB(img.getSourceImage().getRGB(x + 1, y));
-					p.mul(scales[2]);
-					pixel.add(p);
-					sum += scales[2];
-				}
 
-				//pixel.mul(1.0/sum);
-				//if(b==255) Log.message(x+"\t"+y+"\t"+i+"\t"+b);
-				dest.setRGB(x, y, pixel.toInt());
+	@Override
+	protected void filterImage(int[] src, int[] dest, int w, int h) {
+		// one channel at a time.  the result of each channel always ends up back in a.
+		float[] a = new float[w * h];
+		float[] b = new float[w * h];
+		int[] boxes = boxSizesForGauss(sigma, 3);
+
+		for (int shift = 0; shift <= 16; shift += 8) {
+			final int channel = shift;
+			forEachTile(h, (y0, y1) -> {
+				for (int i = y0 * w; i < y1 * w; ++i) a[i] = (src[i] >> channel) & 0xff;
+			});
+
+			if (useBoxBlur) {
+				for (int box : boxes) {
+					int r = (box - 1) / 2;
+					forEachTile(h, (y0, y1) -> boxBlurRows(a, b, w, y0, y1, r));
+					forEachTile(w, (x0, x1) -> boxBlurColumns(b, a, w, h, x0, x1, r));
+				}
+			} else {
+				forEachTile(h, (y0, y1) -> blurRows(a, b, w, y0, y1));
+				forEachTile(w, (x0, x1) -> blurColumns(b, a, w, h, x0, x1));
 			}
+
+			// pack the channel into the result.  alpha is not blurred.
+			forEachTile(h, (y0, y1) -> {
+				for (int i = y0 * w; i < y1 * w; ++i) {
+					int v = Math.round(a[i]);
+					if (v < 0) v = 0;
+					else if (v > 255) v = 255;
+					if (channel == 0) dest[i] = src[i] & 0xff000000;
+					dest[i] |= v << channel;
+				}
+			});
 		}
+	}
+
 
-		// vertical blur
-		for (x = 0; x < w; ++x) {
-			for (y = 0; y < h; ++y) {
-				pixel.set(0, 0, 0);
-				sum = 0;
-				if (y - 1 >= 0) {
-					p = new ColorRGB(dest.getRGB(x, y - 1));
-					p.mul(scales[0]);
-					pixel.add(p);
-					sum += scales[0];
+	/**
+	 * Blur rows [y0,y1) of in across.  At the edges only the taps inside the image are used.
+	 */
+	private void blurRows(float[] in, float[] out, int w, int y0, int y1) {
+		for (int y = y0; y < y1; ++y) {
+			int row = y * w;
+			for (int x = 0; x < w; ++x) {
+				int k0 = Math.max(-radius, -x);
+				int k1 = Math.min(radius, w - 1 - x);
+				float sum = 0, weight = 0;
+				for (int k = k0; k <= k1; ++k) {
+					float kv = kernel[k + radius];
+					sum += in[row + x + k] * kv;
+					weight += kv;
 				}
+				out[row + x] = sum / weight;
+			}
+		}
+	}
 
-				p = new ColorRGB(dest.getRGB(x, y));
-				p.mul(scales[1]);
-				pixel.add(p);
-				sum += scales[1];
 
-				if (y + 1 < h) {
-					p = new ColorRGB(dest.getRGB(x, y + 1));
-					p.mul(scales[2]);
-					pixel.add(p);
-					sum += scales[2];
+	/**
+	 * Blur columns [x0,x1) of in downwards.  At the edges only the taps inside the image are used.
+	 */
+	private void blurColumns(float[] in, float[] out, int w, int h, int x0, int x1) {
+		for (int y = 0; y < h; ++y) {
+			int k0 = Math.max(-radius, -y);
+			int k1 = Math.min(radius, h - 1 - y);
+			float weight = 0;
+			for (int k = k0; k <= k1; ++k) weight += kernel[k + radius];
+
+			int row = y * w;
+			for (int x = x0; x < x1; ++x) out[row + x] = 0;
+			for (int k = k0; k <= k1; ++k) {
+				float kv = kernel[k + radius] / weight;
+				int tapRow = (y + k) * w;
+				for (int x = x0; x < x1; ++x) {
+					out[row + x] += in[tapRow + x] * kv;
 				}
+			}
+		}
+	}
+
 
-				pixel.mul(1.0 / sum);
-				//if(b==255) Log.message(x+"\t"+y+"\t"+i+"\t"+b);
-				afterBI.setRGB(x, y, pixel.toInt());
+	/**
+	 * Running-sum box blur of rows [y0,y1), 2r+1 wide.  At the edges only the pixels inside the image are used.
+	 */
+	private static void boxBlurRows(float[] in, float[] out, int w, int y0, int y1, int r) {
+		for (int y = y0; y < y1; ++y) {
+			int row = y * w;
+			float sum = 0;
+			int count = 0;
+			for (int x = 0; x < Math.min(r, w); ++x) {
+				sum += in[row + x];
+				count++;
+			}
+			for (int x = 0; x < w; ++x) {
+				int add = x + r;
+				int remove = x - r - 1;
+				if (add < w) {
+					sum += in[row + add];
+					count++;
+				}
+				if (remove >= 0) {
+					sum -= in[row + remove];
+					count--;
+				}
+				out[row + x] = sum / count;
 			}
 		}
+	}
 
-		try {
-			// save image
-			File outputfile = new File("saved.png");
-			ImageIO.write(img.getSourceImage(), "png", outputfile);
-		} catch (IOException e) {
-			e.printStackTrace();
+
+	/**
+	 * Running-sum box blur of columns [x0,x1), 2r+1 tall.  At the edges only the pixels inside the image are used.
+	 */
+	private static void boxBlurColumns(float[] in, float[] out, int w, int h, int x0, int x1, int r) {
+		int n = x1 - x0;
+		float[] sum = new float[n];
+		int count = 0;
+		for (int y = 0; y < Math.min(r, h); ++y) {
+			for (int x = 0; x < n; ++x) sum[x] += in[y * w + x0 + x];
+			count++;
+		}
+		for (int y = 0; y < h; ++y) {
+			int add = y + r;
+			int remove = y - r - 1;
+			if (add < h) {
+				for (int x = 0; x < n; ++x) sum[x] += in[add * w + x0 + x];
+				count++;
+			}
+			if (remove >= 0) {
+				for (int x = 0; x < n; ++x) sum[x] -= in[remove * w + x0 + x];
+				count--;
+			}
+			int row = y * w + x0;
+			for (int x = 0; x < n; ++x) out[row + x] = sum[x] / count;
 		}
+	}
+
 
-		return after;
+	/**
+	 * Widths of n box blurs that together approximate a gaussian.
+	 * See <a href="http://blog.ivank.net/fastest-gaussian-blur.html">http://blog.ivank.net/fastest-gaussian-blur.html</a>
+	 * @param sigma standard deviation of the gaussian
+	 * @param n number of boxes
+	 * @return odd box widths
+	 */
+	private static int[] boxSizesForGauss(double sigma, int n) {
+		double wIdeal = Math.sqrt((12 * sigma * sigma / n) + 1);
+		int wl = (int) Math.floor(wIdeal);
+		if (wl % 2 == 0) wl--;
+		int wu = wl + 2;
+
+		double mIdeal = (12 * sigma * sigma - n * wl * wl - 4 * n * wl - 3 * n) / (-4 * wl - 4);
+		long m = Math.round(mIdeal);
+
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; ++i) sizes[i] = (i < m ? wl : wu);
+		return sizes;
 	}
 }
 
@@ -1,36 +1,20 @@
 package com.marginallyclever.artPipeline.imageFilters;
 
-import java.awt.image.BufferedImage;
-
-import com.marginallyclever.artPipeline.TransformedImage;
-import com.marginallyclever.convenience.ColorRGB;
-
-
 /**
  * Inverts the colors in an image.
  *
  * @author Dan
  */
-public class Filter_Invert extends ImageFilter {
-  public TransformedImage filter(TransformedImage img) {
-    int h = img.getSourceImage().getHeight();
-    int w = img.getSourceImage().getWidth();
-    int x, y;
-
-    TransformedImage after = new TransformedImage(img);
-    BufferedImage afterBI = after.getSourceImage();
-    
-    for (y = 0; y < h; ++y) {
-      for (x = 0; x < w; ++x) {
-        ColorRGB color = new ColorRGB(img.getSourceImage().getRGB(x, y));
-        color.red   = 255 - color.red;
-        color.green = 255 - color.green;
-        color.blue  = 255 - color.blue;
-        afterBI.setRGB(x, y, color.toInt());
-      }
-    }
+public class Filter_Invert extends ParallelImageFilter {
+  @Override
+  public String getCacheKey() {
+    return "Filter_Invert";
+  }
 
-    return after;
+  @Override
+  protected int filterPixel(int argb) {
+    // keep the alpha, invert red, green, and blue.
+    return argb ^ 0x00ffffff;
   }
 }
 
@@ -0,0 +1,142 @@
+package com.marginallyclever.artPipeline.imageFilters;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import com.marginallyclever.convenience.Histogram;
+
+/**
+ * Converts an image to grey and then runs a chain of per-pixel operations on it.  Every step only depends on
+ * the grey level of one pixel, so the whole chain is folded into one 256 entry lookup table as it is built.
+ * Filtering is then one pass over the image no matter how many steps there are.
+ *
+ * <pre>
+ * TransformedImage after = new Filter_PointOperations().tone().invert().threshold(128).filter(before);
+ * </pre>
+ *
+ * @author Dan Royer
+ */
+public class Filter_PointOperations extends ParallelImageFilter {
+	// grey level in, grey level out
+	private int [] lut = new int[256];
+	// grey level in, ARGB pixel out
+	private int [] lutARGB = new int[256];
+
+	public Filter_PointOperations() {
+		clear();
+	}
+
+	/**
+	 * Forget every step.  The filter only converts to grey.
+	 * @return this
+	 */
+	public Filter_PointOperations clear() {
+		for(int i=0;i<256;++i) lut[i]=i;
+		updateARGB();
+		return this;
+	}
+
+	/**
+	 * Add a step to the end of the chain.
+	 * @param op accepts a grey level 0...255.  The result is clamped to 0...255.
+	 * @return this
+	 */
+	public Filter_PointOperations then(IntUnaryOperator op) {
+		for(int i=0;i<256;++i) {
+			lut[i] = Math.min(255, Math.max(0, op.applyAsInt(lut[i])));
+		}
+		updateARGB();
+		return this;
+	}
+
+	/**
+	 * Darken the mid tones, same curve as {@link Filter_BlackAndWhite}.
+	 * @return this
+	 */
+	public Filter_PointOperations tone() {
+		return then(v -> (int)toneControl(v));
+	}
+
+	/**
+	 * Stretch [min,max] to fill [0,255].
+	 * @param min becomes 0
+	 * @param max becomes 255
+	 * @return this
+	 */
+	public Filter_PointOperations levels(int min,int max) {
+		final double range = max-min;
+		return then(v -> (int)Math.max(Math.min((v-min)/range * 255.0, 255), 0));
+	}
+
+	/**
+	 * Spread the grey levels coming out of the chain so far so that each is used about as often.  The histogram
+	 * of the source image is pushed through the chain first, so no extra pass over the image is needed.
+	 * <pre>
+	 * TransformedImage after = new Filter_PointOperations().equalize(before.getHistogram()).filter(before);
+	 * </pre>
+	 * @param histogram the grey histogram of the image that will be filtered.
+	 *  See {@link com.marginallyclever.artPipeline.TransformedImage#getHistogram()}.
+	 * @return this
+	 */
+	public Filter_PointOperations equalize(Histogram histogram) {
+		Histogram mapped = new Histogram();
+		for(int i=0;i<256;++i) {
+			mapped.red[lut[i]] += histogram.red[i];
+		}
+		final int [] table = mapped.getEqualization();
+		return then(v -> table[v]);
+	}
+
+	/**
+	 * @return this
+	 */
+	public Filter_PointOperations invert() {
+		return then(v -> 255-v);
+	}
+
+	/**
+	 * @param cutoff grey levels below this become 0, the rest become 255.
+	 * @return this
+	 */
+	public Filter_PointOperations threshold(int cutoff) {
+		return then(v -> v<cutoff ? 0 : 255);
+	}
+
+	/**
+	 * @param v the grey level in
+	 * @return the grey level out
+	 */
+	public int apply(int v) {
+		return lut[v & 0xff];
+	}
+
+	/**
+	 * Accepts and returns a number between 0 and 255, inclusive.
+	 * @param v a grey level
+	 * @return the toned grey level
+	 */
+	public static double toneControl(double v) {
+		v /= 255.0;
+		v = 0.017 * Math.exp(3.29 * v) + 0.005 * Math.exp(7.27 * v);
+		return Math.min(1, Math.max(0, v)) * 255.0;
+	}
+
+	private void updateARGB() {
+		for(int i=0;i<256;++i) {
+			lutARGB[i] = ImageFilter.encode32bit(lut[i]);
+		}
+	}
+
+	/**
+	 * Two chains with the same table give the same picture, however they were built.
+	 */
+	@Override
+	public String getCacheKey() {
+		return "Filter_PointOperations "+Arrays.toString(lut);
+	}
+
+	@Override
+	protected int filterPixel(int argb) {
+		return lutARGB[decode32bit(argb)];
+	}
+}
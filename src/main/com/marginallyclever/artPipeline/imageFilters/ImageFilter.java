@@ -11,10 +11,13 @@
  */
 public class ImageFilter {
 	public static int decode32bit(int pixel) {
-		double a = 255-((pixel>>24) & 0xff);
 		int r = ((pixel >> 16) & 0xff);
 		int g = ((pixel >> 8) & 0xff);
 		int b = ((pixel) & 0xff);
+		// opaque pixels don't blend with white.
+		if((pixel>>>24) == 0xff) return (r + g + b) / 3;
+
+		double a = 255-((pixel>>24) & 0xff);
 
 		int r2 = (int)((255 - r) * (a / 255.0) + r);
 		int g2 = (int)((255 - g) * (a / 255.0) + g);
@@ -49,4 +52,12 @@ public static int encode32bit(int i) {
 	public TransformedImage filter(TransformedImage img) {
 		return img;
 	}
+
+	/**
+	 * @return a name for this filter and every setting that changes its output, or null if the output should
+	 * not be kept in the {@link FilterCache}.
+	 */
+	public String getCacheKey() {
+		return null;
+	}
 }
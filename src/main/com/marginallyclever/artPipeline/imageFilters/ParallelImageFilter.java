@@ -0,0 +1,408 @@
+package com.marginallyclever.artPipeline.imageFilters;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.marginallyclever.artPipeline.TransformedImage;
+
+/**
+ * A filter that works on the raw ARGB pixels of an image instead of calling getRGB() and setRGB() for every
+ * pixel.  The image is cut into bands of rows and the bands are filtered at the same time on a
+ * {@link ForkJoinPool}.
+ *
+ * Point filters only need to override {@link #filterPixel(int)}.  Neighborhood filters override
+ * {@link #filterTile(int[], int[], int, int, int, int)}, which can read any source pixel but must only write
+ * the rows it was given.  Filters that cannot be split by rows override
+ * {@link #filterImage(int[], int[], int, int)}.
+ *
+ * @author Dan Royer
+ */
+public abstract class ParallelImageFilter extends ImageFilter {
+	/**
+	 * Rows in each band of work.  Small enough to balance across cores, big enough that the task overhead
+	 * doesn't matter.
+	 */
+	public static final int TILE_ROWS = 32;
+
+	/**
+	 * Do something with rows [y0,y1) of an image.
+	 */
+	public interface TileTask {
+		void run(int y0,int y1);
+	}
+
+	/**
+	 * Pixels in each step of a wavefront.  See {@link #forEachWavefront(int, int, int, int, WavefrontTask)}.
+	 */
+	public static final int WAVEFRONT_CHUNK = 64;
+
+	/**
+	 * Do something with pixels [x0,x1) of row y.
+	 */
+	public interface WavefrontTask {
+		void run(int y,int x0,int x1);
+	}
+
+	/**
+	 * If {@link #getCacheKey()} is not null and this image has been filtered the same way before, the result
+	 * is taken from the {@link FilterCache}.  Each call returns its own TransformedImage, but the pixels may be
+	 * shared, so do not modify them.
+	 */
+	@Override
+	public TransformedImage filter(TransformedImage img) {
+		BufferedImage bi = img.getSourceImage();
+		String key = getCacheKey();
+		if(key!=null) {
+			TransformedImage [] cached = FilterCache.get(bi, key);
+			if(cached!=null) {
+				TransformedImage view = cached[0].createView();
+				view.copySettingsFrom(img);
+				return view;
+			}
+		}
+
+		int w = bi.getWidth();
+		int h = bi.getHeight();
+
+		int [] src = getPixels(bi);
+		BufferedImage afterBI = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		int [] dest = getPixels(afterBI);
+
+		filterImage(src,dest,w,h);
+
+		TransformedImage after = new TransformedImage(afterBI);
+		after.copySettingsFrom(img);
+		if(key!=null) FilterCache.put(bi, key, after);
+		return after;
+	}
+
+	/**
+	 * Filter a whole image.  By default the rows are split into bands and each band is sent to
+	 * {@link #filterTile(int[], int[], int, int, int, int)} in parallel.
+	 * @param src the ARGB source pixels, w*h.  Do not modify.
+	 * @param dest the ARGB destination pixels, w*h.
+	 * @param w width of the image
+	 * @param h height of the image
+	 */
+	protected void filterImage(int [] src,int [] dest,int w,int h) {
+		forEachTile(h, (y0,y1)->filterTile(src,dest,w,h,y0,y1));
+	}
+
+	/**
+	 * Filter rows [y0,y1) of an image.  By default calls {@link #filterPixel(int)} on every pixel.
+	 * @param src the ARGB source pixels, w*h.  Do not modify.
+	 * @param dest the ARGB destination pixels, w*h.  Only write to rows [y0,y1).
+	 * @param w width of the image
+	 * @param h height of the image
+	 * @param y0 first row, inclusive
+	 * @param y1 last row, exclusive
+	 */
+	protected void filterTile(int [] src,int [] dest,int w,int h,int y0,int y1) {
+		int end = y1*w;
+		for(int i=y0*w;i<end;++i) {
+			dest[i] = filterPixel(src[i]);
+		}
+	}
+
+	/**
+	 * @param argb the source pixel
+	 * @return the filtered pixel
+	 */
+	protected int filterPixel(int argb) {
+		return argb;
+	}
+
+	/**
+	 * Run a task on every band of {@link #TILE_ROWS} rows in [0,h).  Returns when all bands are done.
+	 * When called from inside a {@link ForkJoinPool} the work stays in that pool, otherwise it goes to the
+	 * common pool.
+	 * @param h the number of rows
+	 * @param task the work
+	 */
+	public static void forEachTile(int h,TileTask task) {
+		if(h<=TILE_ROWS) {
+			task.run(0, h);
+			return;
+		}
+		TileAction action = new TileAction(0,h,task);
+		if(ForkJoinTask.inForkJoinPool()) action.invoke();
+		else ForkJoinPool.commonPool().invoke(action);
+	}
+
+	@SuppressWarnings("serial")
+	private static class TileAction extends RecursiveAction {
+		private int y0, y1;
+		private TileTask task;
+
+		public TileAction(int y0,int y1,TileTask task) {
+			this.y0=y0;
+			this.y1=y1;
+			this.task=task;
+		}
+
+		@Override
+		protected void compute() {
+			if(y1-y0<=TILE_ROWS) {
+				task.run(y0, y1);
+				return;
+			}
+			int mid = y0 + ((y1-y0)/TILE_ROWS/2)*TILE_ROWS;
+			if(mid==y0) mid+=TILE_ROWS;
+			invokeAll(new TileAction(y0,mid,task),new TileAction(mid,y1,task));
+		}
+	}
+
+	/**
+	 * @param h the number of rows
+	 * @return how many threads {@link #forEachWavefront(int, int, int, int, WavefrontTask)} should use.
+	 */
+	public static int getWavefrontThreads(int h) {
+		return Math.max(1, Math.min(h, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Run a task on every row in [0,h), left to right, {@link #WAVEFRONT_CHUNK} pixels at a time.  Row y may do
+	 * pixels [x0,x1) once row y-1 has finished pixel x1+lag-1 (or the whole row, if that is shorter), so
+	 * error diffusion and other work that reads the row above can run on many rows at once.  The work moves
+	 * down and to the right like a wave.
+	 *
+	 * The rows are handed out in order to at most threads workers, one row each at a time.  A row can't finish
+	 * before the row above it, so once row y has started every row before y-threads is finished.  Rows run one
+	 * at a time when threads is 1, which gives the same result.  The workers run on a {@link ForkJoinPool} like
+	 * {@link #forEachTile(int, TileTask)} and sleep while they wait for the row above, so the pool can add a
+	 * thread in their place.
+	 * @param w the number of pixels in a row
+	 * @param h the number of rows
+	 * @param lag how far row y-1 must be ahead of row y, in pixels
+	 * @param threads see {@link #getWavefrontThreads(int)}
+	 * @param task the work
+	 */
+	public static void forEachWavefront(int w,int h,int lag,int threads,WavefrontTask task) {
+		if(h<=0) return;
+		Wavefront wave = new Wavefront(w,h,lag,task);
+		WavefrontAction action = new WavefrontAction(wave,Math.max(1, Math.min(threads, h)));
+		if(ForkJoinTask.inForkJoinPool()) action.invoke();
+		else ForkJoinPool.commonPool().invoke(action);
+		if(wave.failure.get()!=null) throw new RuntimeException(wave.failure.get());
+	}
+
+	/**
+	 * Everything the workers of one {@link ParallelImageFilter#forEachWavefront(int, int, int, int, WavefrontTask)}
+	 * share.
+	 */
+	private static class Wavefront {
+		final int w, h, lag;
+		final WavefrontTask task;
+		// the next row to start.
+		final AtomicInteger nextRow = new AtomicInteger();
+		// how many pixels of each row are finished.
+		final AtomicIntegerArray done;
+		// the worker sleeping until more of each row is finished, if any.
+		final AtomicReferenceArray<Thread> waiting;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Wavefront(int w,int h,int lag,WavefrontTask task) {
+			this.w=w;
+			this.h=h;
+			this.lag=lag;
+			this.task=task;
+			done = new AtomicIntegerArray(h);
+			waiting = new AtomicReferenceArray<Thread>(h);
+		}
+
+		void finished(int y,int x1) {
+			done.set(y, x1);
+			Thread t = waiting.get(y);
+			if(t!=null) LockSupport.unpark(t);
+		}
+
+		void fail(Throwable t) {
+			failure.compareAndSet(null, t);
+			// anyone waiting on a row will never be woken otherwise.
+			for(int y=0;y<h;++y) {
+				Thread sleeper = waiting.get(y);
+				if(sleeper!=null) LockSupport.unpark(sleeper);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class WavefrontAction extends RecursiveAction implements ForkJoinPool.ManagedBlocker {
+		private Wavefront wave;
+		private int workers;
+		// while blocked, waiting for row waitRow to finish waitNeed pixels.
+		private int waitRow, waitNeed;
+
+		public WavefrontAction(Wavefront wave,int workers) {
+			this.wave=wave;
+			this.workers=workers;
+		}
+
+		@Override
+		protected void compute() {
+			if(workers>1) {
+				int half = workers/2;
+				invokeAll(new WavefrontAction(wave,half),new WavefrontAction(wave,workers-half));
+				return;
+			}
+			try {
+				int y;
+				while(wave.failure.get()==null && (y=wave.nextRow.getAndIncrement())<wave.h) {
+					for(int x0=0;x0<wave.w;x0+=WAVEFRONT_CHUNK) {
+						int x1 = Math.min(wave.w, x0+WAVEFRONT_CHUNK);
+						if(y>0 && !waitFor(y-1, Math.min(wave.w, x1+wave.lag))) return;
+						wave.task.run(y, x0, x1);
+						wave.finished(y, x1);
+					}
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				wave.fail(e);
+			} catch(Throwable t) {
+				wave.fail(t);
+			}
+		}
+
+		/**
+		 * @return false if another row failed and this one will never be ready.
+		 */
+		private boolean waitFor(int row,int need) throws InterruptedException {
+			if(wave.done.get(row)<need) {
+				waitRow=row;
+				waitNeed=need;
+				ForkJoinPool.managedBlock(this);
+			}
+			return wave.failure.get()==null;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return wave.done.get(waitRow)>=waitNeed || wave.failure.get()!=null;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			// say where to find this thread before looking again, so the row above can't finish unseen.
+			wave.waiting.set(waitRow, Thread.currentThread());
+			try {
+				while(!isReleasable()) {
+					LockSupport.park(this);
+					if(Thread.interrupted()) throw new InterruptedException();
+				}
+			} finally {
+				wave.waiting.set(waitRow, null);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Get the pixels of an image as packed ARGB, the same values getRGB() would return.  A TYPE_INT_ARGB
+	 * image returns its own buffer, so writing to the array changes the image.  Other common layouts are
+	 * unpacked straight from their data buffer, in parallel.  Anything else goes through getRGB().
+	 * @param bi the image
+	 * @return w*h ARGB pixels
+	 */
+	public static int [] getPixels(BufferedImage bi) {
+		int w = bi.getWidth();
+		int h = bi.getHeight();
+		Raster raster = bi.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+
+		if(isPacked(bi)) {
+			if(bi.getType()==BufferedImage.TYPE_INT_ARGB) {
+				return ((DataBufferInt)buffer).getData();
+			}
+
+			int [] pixels = new int[w*h];
+			switch(bi.getType()) {
+			case BufferedImage.TYPE_INT_RGB: {
+				int [] data = ((DataBufferInt)buffer).getData();
+				forEachTile(h,(y0,y1)->{
+					for(int i=y0*w;i<y1*w;++i) pixels[i] = 0xff000000 | data[i];
+				});
+				return pixels;
+			}
+			case BufferedImage.TYPE_3BYTE_BGR: {
+				byte [] data = ((DataBufferByte)buffer).getData();
+				forEachTile(h,(y0,y1)->{
+					for(int i=y0*w, j=i*3;i<y1*w;++i, j+=3) {
+						pixels[i] = 0xff000000
+								| ((data[j+2] & 0xff) << 16)
+								| ((data[j+1] & 0xff) <<  8)
+								|  (data[j  ] & 0xff);
+					}
+				});
+				return pixels;
+			}
+			case BufferedImage.TYPE_4BYTE_ABGR: {
+				byte [] data = ((DataBufferByte)buffer).getData();
+				forEachTile(h,(y0,y1)->{
+					for(int i=y0*w, j=i*4;i<y1*w;++i, j+=4) {
+						pixels[i] = ((data[j  ] & 0xff) << 24)
+								| ((data[j+3] & 0xff) << 16)
+								| ((data[j+2] & 0xff) <<  8)
+								|  (data[j+1] & 0xff);
+					}
+				});
+				return pixels;
+			}
+			case BufferedImage.TYPE_BYTE_GRAY: {
+				byte [] data = ((DataBufferByte)buffer).getData();
+				// every grey level maps to one ARGB value, so ask getRGB() once per level instead of once per pixel.
+				int [] lut = new int[256];
+				BufferedImage one = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+				for(int v=0;v<256;++v) {
+					one.getRaster().setSample(0, 0, 0, v);
+					lut[v] = one.getRGB(0, 0);
+				}
+				forEachTile(h,(y0,y1)->{
+					for(int i=y0*w;i<y1*w;++i) pixels[i] = lut[data[i] & 0xff];
+				});
+				return pixels;
+			}
+			default: break;
+			}
+		}
+
+		return bi.getRGB(0, 0, w, h, null, 0, w);
+	}
+
+	/**
+	 * @param bi the image
+	 * @return true if the pixels are one tightly packed row after another at the start of a single bank.
+	 */
+	private static boolean isPacked(BufferedImage bi) {
+		Raster raster = bi.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+		if(buffer.getNumBanks()!=1 || buffer.getOffset()!=0) return false;
+		if(raster.getSampleModelTranslateX()!=0 || raster.getSampleModelTranslateY()!=0) return false;
+		if(raster.getParent()!=null) return false;
+
+		switch(bi.getType()) {
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_RGB:
+			return buffer.getSize() == bi.getWidth()*bi.getHeight();
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_BYTE_GRAY:
+			if(!(raster.getSampleModel() instanceof ComponentSampleModel)) return false;
+			ComponentSampleModel sm = (ComponentSampleModel)raster.getSampleModel();
+			return sm.getScanlineStride() == sm.getPixelStride()*bi.getWidth();
+		default:
+			return false;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.marginallyclever.artPipeline.imageFilters;
+
+import java.util.Random;
+
+/**
+ * A square of thresholds for ordered dithering.  The square is repeated across the image and each pixel is
+ * compared to its own threshold, so every pixel can be done at the same time.
+ *
+ * @author Dan Royer
+ */
+public class ThresholdMatrix {
+	private static ThresholdMatrix bayer;
+	private static ThresholdMatrix blueNoise;
+
+	// a power of two
+	private final int size;
+	// size*size thresholds, each in (0,1)
+	private final float [] values;
+
+	/**
+	 * @param size width and height, a power of two.
+	 * @param rank every number from 0 to size*size-1 once.  Low ranks get low thresholds.
+	 */
+	private ThresholdMatrix(int size,int [] rank) {
+		this.size = size;
+		values = new float[size*size];
+		for(int i=0;i<values.length;++i) {
+			values[i] = (rank[i]+0.5f) / values.length;
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @param x any column
+	 * @param y any row
+	 * @return the threshold for that pixel, in (0,1).
+	 */
+	public float get(int x,int y) {
+		return values[(y & (size-1))*size + (x & (size-1))];
+	}
+
+	/**
+	 * @return an 8x8 Bayer matrix.
+	 */
+	public static synchronized ThresholdMatrix getBayer() {
+		if(bayer==null) {
+			// each doubling puts the old matrix in all four corners, interleaved.
+			int [] rank = { 0 };
+			for(int s=1;s<8;s*=2) {
+				int [] next = new int[s*s*4];
+				for(int y=0;y<s;++y) {
+					for(int x=0;x<s;++x) {
+						int r = rank[y*s+x]*4;
+						next[ y   *s*2 + x  ] = r;
+						next[ y   *s*2 + x+s] = r+2;
+						next[(y+s)*s*2 + x  ] = r+3;
+						next[(y+s)*s*2 + x+s] = r+1;
+					}
+				}
+				rank = next;
+			}
+			bayer = new ThresholdMatrix(8,rank);
+		}
+		return bayer;
+	}
+
+	/**
+	 * Built the first time it is needed, with the void-and-cluster method.  Takes a fraction of a second.
+	 * See <a href="https://doi.org/10.1117/12.152707">Ulichney, "The void-and-cluster method for dither array generation"</a>
+	 * @return a 64x64 blue noise matrix.
+	 */
+	public static synchronized ThresholdMatrix getBlueNoise() {
+		if(blueNoise==null) {
+			blueNoise = new ThresholdMatrix(64,voidAndCluster(64,1.5,1234));
+		}
+		return blueNoise;
+	}
+
+	/**
+	 * @param size width and height, a power of two.
+	 * @param sigma how far each pixel pushes the others away.
+	 * @param seed for the starting pattern
+	 * @return the rank of every pixel.
+	 */
+	private static int [] voidAndCluster(int size,double sigma,long seed) {
+		int n = size*size;
+		int mask = size-1;
+
+		// how much a pixel at (0,0) crowds every other pixel.  the matrix wraps around at the edges.
+		double [] kernel = new double[n];
+		for(int y=0;y<size;++y) {
+			int dy = Math.min(y, size-y);
+			for(int x=0;x<size;++x) {
+				int dx = Math.min(x, size-x);
+				kernel[y*size+x] = Math.exp(-(dx*dx+dy*dy)/(2*sigma*sigma));
+			}
+		}
+
+		boolean [] on = new boolean[n];
+		double [] energy = new double[n];
+
+		// start with a random tenth of the pixels on.
+		Random random = new Random(seed);
+		int ones=0;
+		while(ones<n/10) {
+			int p = random.nextInt(n);
+			if(on[p]) continue;
+			toggle(on,energy,kernel,size,mask,p);
+			ones++;
+		}
+
+		// move the most crowded pixel into the biggest gap until it is already in the biggest gap.
+		while(true) {
+			int cluster = find(on,energy,true,true);
+			toggle(on,energy,kernel,size,mask,cluster);
+			int gap = find(on,energy,false,false);
+			toggle(on,energy,kernel,size,mask,gap);
+			if(gap==cluster) break;
+		}
+
+		int [] rank = new int[n];
+
+		// the pixels that are on get the low ranks, most crowded last.
+		boolean [] on2 = on.clone();
+		double [] energy2 = energy.clone();
+		for(int r=ones-1;r>=0;--r) {
+			int cluster = find(on2,energy2,true,true);
+			toggle(on2,energy2,kernel,size,mask,cluster);
+			rank[cluster] = r;
+		}
+
+		// the rest fill the biggest gap, one at a time.
+		for(int r=ones;r<n;++r) {
+			int gap = find(on,energy,false,false);
+			toggle(on,energy,kernel,size,mask,gap);
+			rank[gap] = r;
+		}
+
+		return rank;
+	}
+
+	private static void toggle(boolean [] on,double [] energy,double [] kernel,int size,int mask,int p) {
+		on[p] = !on[p];
+		double sign = on[p] ? 1 : -1;
+		int px = p & mask;
+		int py = p / size;
+		for(int y=0;y<size;++y) {
+			int row = ((y-py) & mask)*size;
+			for(int x=0;x<size;++x) {
+				energy[y*size+x] += sign * kernel[row + ((x-px) & mask)];
+			}
+		}
+	}
+
+	/**
+	 * @param on which pixels are on
+	 * @param energy how crowded each pixel is
+	 * @param state only look at pixels that are on (true) or off (false)
+	 * @param most find the most crowded (true) or least crowded (false)
+	 * @return the index of the first pixel found
+	 */
+	private static int find(boolean [] on,double [] energy,boolean state,boolean most) {
+		int best=-1;
+		for(int i=0;i<on.length;++i) {
+			if(on[i]!=state) continue;
+			if(best==-1 || (most ? energy[i]>energy[best] : energy[i]<energy[best])) best=i;
+		}
+		return best;
+	}
+}
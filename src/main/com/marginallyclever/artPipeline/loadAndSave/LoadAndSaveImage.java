@@ -8,6 +8,7 @@
 import java.awt.Insets;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
@@ -22,6 +23,9 @@
 import java.util.prefs.Preferences;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -78,6 +82,11 @@ public class LoadAndSaveImage extends ImageManipulator implements LoadAndSaveFil
 	private ArrayList<String> imageConverterNames = new ArrayList<String>();
 	private String[] imageFillNames;
 	
+	/**
+	 * Pixels kept across each pen diameter when a big image is read.  Fewer would lose detail the pen could draw.
+	 */
+	public static final int PIXELS_PER_PEN = 2;
+	
 	private ArrayList<SwingWorker<Void, Void>> workerList = new ArrayList<SwingWorker<Void, Void>>();
 	private int workerCount = 0;
 
@@ -252,7 +261,12 @@ private ImageConverter getConverter(int arg0) throws IndexOutOfBoundsException {
 	@Override
 	public boolean load(InputStream in,MakelangeloRobot robot) {
 		try {
-			img = new TransformedImage( ImageIO.read(in) );
+			BufferedImage bi = readImage(in,robot.getSettings());
+			if(bi==null) {
+				Log.error("No reader for this image.");
+				return false;
+			}
+			img = new TransformedImage( bi );
 		} catch (IOException e1) {
 			e1.printStackTrace();
 			return false;
@@ -271,6 +285,56 @@ public boolean load(InputStream in,MakelangeloRobot robot) {
 		return true;
 	}
 
+	/**
+	 * Read an image, skipping pixels the robot could never draw.  Once the image is scaled onto the paper each
+	 * pixel must be at most 1/{@link #PIXELS_PER_PEN} of the pen diameter, so big photos are decoded with
+	 * source subsampling.  The header is read first, so the full size image is never in memory.
+	 * @param in the image file
+	 * @param s the size of the paper and the pen
+	 * @return the image, or null if no reader understands the file.
+	 * @throws IOException if the file cannot be read
+	 */
+	protected static BufferedImage readImage(InputStream in,MakelangeloRobotSettings s) throws IOException {
+		try(ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+			if(iis==null) return null;
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if(!readers.hasNext()) return null;
+	
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis, true, true);
+				int w = reader.getWidth(0);
+				int h = reader.getHeight(0);
+				int step = getSubsampling(w,h,s);
+	
+				ImageReadParam param = reader.getDefaultReadParam();
+				if(step>1) {
+					Log.message("Image is "+w+"x"+h+", reading every "+step+" pixels.");
+					param.setSourceSubsampling(step, step, 0, 0);
+				}
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Fill and fit scale the image by the paper width or height, whichever is bigger or smaller.  Assume the
+	 * choice that makes each pixel cover the most paper, so switching between them never needs more pixels
+	 * than were read.
+	 * @param w image width in pixels
+	 * @param h image height in pixels
+	 * @param s the size of the paper and the pen
+	 * @return read one pixel in this many, across and down.  1 reads every pixel.
+	 */
+	protected static int getSubsampling(int w,int h,MakelangeloRobotSettings s) {
+		double mmPerPixel = Math.max(s.getMarginWidth() / w, s.getMarginHeight() / h);
+		double wanted = s.getPenDiameter() / PIXELS_PER_PEN;
+		if(!(mmPerPixel>0) || !(wanted>0)) return 1;
+		return (int)Math.max(1, Math.floor(wanted / mmPerPixel));
+	}
+
 	// adjust image to fill the paper
 	public void scaleToFillPaper() {
 		MakelangeloRobotSettings s = chosenRobot.getSettings();
@@ -1,41 +1,33 @@
 package com.marginallyclever.convenience;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.security.InvalidParameterException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * Histogram of an image with 8 bits red, 8 bits green, and 8 bits blue.
+ * Histogram of an image with 8 bits red, 8 bits green, and 8 bits blue.  The image is split into bands of
+ * rows that are counted at the same time, then the counts are added together.
  *
  * @author Dan Royer
  * @since 7.1.4-SNAPSHOT?
  */
 public class Histogram {
-	public char[] red = new char[256];
-	public char[] green = new char[256];
-	public char[] blue = new char[256];
+	// rows in each band of work.
+	private static final int BAND_ROWS = 64;
+
+	public int[] red = new int[256];
+	public int[] green = new int[256];
+	public int[] blue = new int[256];
 
 	public Histogram() {}
 
 	public void getRGBHistogramOf(BufferedImage img) {
-		int w = img.getWidth();
-		int h = img.getHeight();
-		int x, y;
-
-		for (y = 0; y < 255; ++y) {
-			red[y] = 0;
-			green[y] = 0;
-			blue[y] = 0;
-		}
-		
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				Color c = new Color(img.getRGB(x, y));
-				red[c.getRed()]++;
-				green[c.getGreen()]++;
-				blue[c.getBlue()]++;
-			}
-		}
+		int [][] counts = count(img,false);
+		red = counts[0];
+		green = counts[1];
+		blue = counts[2];
 	}
 
 	/**
@@ -43,27 +35,118 @@ public void getRGBHistogramOf(BufferedImage img) {
 	 * @param img
 	 */
 	public void getGreyHistogramOf(BufferedImage img) {
-		int w = img.getWidth();
-		int h = img.getHeight();
-		int x, y;
+		red = count(img,true)[0];
+	}
+
+	private static int [][] count(BufferedImage img,boolean grey) {
+		CountTask task = new CountTask(img,grey,0,img.getHeight());
+		if(ForkJoinTask.inForkJoinPool()) return task.invoke();
+		return ForkJoinPool.commonPool().invoke(task);
+	}
+
+	/**
+	 * Counts rows [y0,y1) of an image.  Big jobs are split in two and the two counts are added.
+	 */
+	@SuppressWarnings("serial")
+	private static class CountTask extends RecursiveTask<int[][]> {
+		private BufferedImage img;
+		private boolean grey;
+		private int y0, y1;
 
-		for (y = 0; y < 255; ++y) {
-			red[y]=0;
+		public CountTask(BufferedImage img,boolean grey,int y0,int y1) {
+			this.img=img;
+			this.grey=grey;
+			this.y0=y0;
+			this.y1=y1;
 		}
-		
-		for (y = 0; y < h; ++y) {
-			for (x = 0; x < w; ++x) {
-				Color c = new Color(img.getRGB(x, y));
-				int v = (c.getRed()+c.getGreen()+c.getBlue())/3;
-				v = Math.min(Math.max(0, v), 255);
-				red[v]++;
+
+		@Override
+		protected int[][] compute() {
+			if(y1-y0>BAND_ROWS) {
+				int mid = (y0+y1)/2;
+				CountTask top = new CountTask(img,grey,y0,mid);
+				top.fork();
+				int [][] a = new CountTask(img,grey,mid,y1).compute();
+				int [][] b = top.join();
+				for(int c=0;c<a.length;++c) {
+					for(int i=0;i<256;++i) a[c][i] += b[c][i];
+				}
+				return a;
+			}
+
+			int w = img.getWidth();
+			int [][] counts = new int[grey ? 1 : 3][256];
+			if(w==0 || y1<=y0) return counts;
+			int [] pixels = img.getRGB(0, y0, w, y1-y0, null, 0, w);
+			if(grey) {
+				int [] v = counts[0];
+				for( int p : pixels ) {
+					v[(((p>>16)&0xff) + ((p>>8)&0xff) + (p&0xff))/3]++;
+				}
+			} else {
+				int [] r = counts[0];
+				int [] g = counts[1];
+				int [] b = counts[2];
+				for( int p : pixels ) {
+					r[(p>>16)&0xff]++;
+					g[(p>> 8)&0xff]++;
+					b[(p    )&0xff]++;
+				}
 			}
+			return counts;
+		}
+	}
+
+	/**
+	 * @return the number of pixels counted in the red[] channel.
+	 */
+	public long getTotal() {
+		long total=0;
+		for( int v : red ) total+=v;
+		return total;
+	}
+
+	/**
+	 * @return for each level of the red[] channel, the fraction of pixels at or below that level.
+	 */
+	public double[] getCumulative() {
+		double[] cdf = new double[256];
+		long total = getTotal();
+		if(total==0) return cdf;
+
+		long sum=0;
+		for(int i=0;i<256;++i) {
+			sum+=red[i];
+			cdf[i] = (double)sum/(double)total;
+		}
+		return cdf;
+	}
+
+	/**
+	 * Histogram equalization of the red[] channel.  The darkest level in use becomes 0, the brightest becomes 255,
+	 * and the levels between are spread so each is used about as often.
+	 * @return a table from each old level to its new level.
+	 */
+	public int[] getEqualization() {
+		int[] table = new int[256];
+		long total = getTotal();
+
+		// the pixels at the darkest level in use.
+		long first = 0;
+		for(int i=0;i<256 && first==0;++i) first=red[i];
+
+		long sum=0;
+		for(int i=0;i<256;++i) {
+			sum+=red[i];
+			if(total==first) table[i]=i;
+			else table[i] = (int)Math.round(Math.max(0,sum-first) * 255.0 / (double)(total-first));
 		}
+		return table;
 	}
 
 	public void reportGrey() {
 		for( int i=0;i<256;++i ) {
-			System.out.println(i+"="+(int)red[i]);
+			System.out.println(i+"="+red[i]);
 		}
 	}
 
@@ -0,0 +1,58 @@
+package com.marginallyclever.convenience;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many pieces of work at the same time on a {@link ForkJoinPool}.
+ *
+ * @author Dan Royer
+ */
+public class ParallelHelper {
+	/**
+	 * Do something with item k of many.
+	 */
+	public interface IndexTask {
+		void run(int k);
+	}
+
+	/**
+	 * Run a task on every k in [0,n), each k on its own.  For a few big pieces of work, such as the strips of a
+	 * picture or the stretches of a tour.  Returns when all are done.  When called from inside a
+	 * {@link ForkJoinPool} the work stays in that pool, otherwise it goes to the common pool.
+	 * @param n the number of items
+	 * @param task the work
+	 */
+	public static void forEachIndex(int n,IndexTask task) {
+		if(n<=1) {
+			if(n==1) task.run(0);
+			return;
+		}
+		IndexAction action = new IndexAction(0,n,task);
+		if(ForkJoinTask.inForkJoinPool()) action.invoke();
+		else ForkJoinPool.commonPool().invoke(action);
+	}
+
+	@SuppressWarnings("serial")
+	private static class IndexAction extends RecursiveAction {
+		private int k0, k1;
+		private IndexTask task;
+
+		public IndexAction(int k0,int k1,IndexTask task) {
+			this.k0=k0;
+			this.k1=k1;
+			this.task=task;
+		}
+
+		@Override
+		protected void compute() {
+			if(k1-k0==1) {
+				task.run(k0);
+				return;
+			}
+			int mid = (k0+k1)/2;
+			invokeAll(new IndexAction(k0,mid,task),new IndexAction(mid,k1,task));
+		}
+	}
+}
@@ -265,6 +265,31 @@ public void translate(double dx, double dy) {
 		}
 	}
 
+	/**
+	 * Add the moves of another turtle to the end of this one, as if this turtle had made them.  Tool changes
+	 * with no moves between them are merged into the last one, so a new turtle that changes color right away
+	 * adds only that color.  Useful for drawing parts of a picture at the same time and joining them in order.
+	 * @param t the turtle to copy from
+	 */
+	public void append(Turtle t) {
+		TurtleMove pendingColor = null;
+		for( TurtleMove m : t.history ) {
+			if(m.type == TurtleMoveType.TOOL_CHANGE) {
+				pendingColor = m;
+				continue;
+			}
+			if(pendingColor!=null) {
+				setColor(pendingColor.getColor());
+				pendingColor = null;
+			}
+			history.add(new TurtleMove(m));
+		}
+		setColor(pendingColor!=null ? pendingColor.getColor() : t.color);
+		turtleX = t.turtleX;
+		turtleY = t.turtleY;
+		isUp = t.isUp;
+	}
+
 	/**
 	 * Log smallest bounding rectangle for Turtle path.
 	 */
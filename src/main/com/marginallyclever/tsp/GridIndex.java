@@ -0,0 +1,152 @@
+package com.marginallyclever.tsp;
+
+/**
+ * Sites sorted into a grid of square cells, for walks that go to the nearest site not yet visited.  Visited sites
+ * are removed, so each query only looks at the sites that are left.  With about two sites per cell a query looks
+ * at a few cells, as long as the sites left are not too far apart.
+ *
+ * @author Dan Royer
+ */
+public class GridIndex {
+	// sites per cell, on average.
+	private static final int SITES_PER_CELL = 2;
+
+	private double [] px;
+	private double [] py;
+	private double xMin, yMin;
+	private double cellSize;
+	private int cols, rows;
+	// the sites in each cell are in items[cellStart[c], cellStart[c]+cellCount[c]).  removed sites are moved past
+	// the end of their cell.
+	private int [] cellStart;
+	private int [] cellCount;
+	private int [] items;
+	// where each site is in items.
+	private int [] place;
+	private int left;
+
+	/**
+	 * @param xs site x values
+	 * @param ys site y values
+	 * @param count the number of sites to use from xs and ys.
+	 */
+	public GridIndex(double [] xs,double [] ys,int count) {
+		this.px = xs;
+		this.py = ys;
+		this.left = count;
+
+		double xMax=-Double.MAX_VALUE, yMax=-Double.MAX_VALUE;
+		xMin=Double.MAX_VALUE;
+		yMin=Double.MAX_VALUE;
+		for(int i=0;i<count;++i) {
+			xMin = Math.min(xMin, xs[i]);
+			xMax = Math.max(xMax, xs[i]);
+			yMin = Math.min(yMin, ys[i]);
+			yMax = Math.max(yMax, ys[i]);
+		}
+		double w = Math.max(xMax-xMin, 1e-9);
+		double h = Math.max(yMax-yMin, 1e-9);
+		cellSize = Math.sqrt(w*h*SITES_PER_CELL/Math.max(count,1));
+		// a long thin box would have a lot of empty cells otherwise.
+		cellSize = Math.max(cellSize, Math.max(w,h)/Math.max(count,1));
+		cols = (int)(w/cellSize)+1;
+		rows = (int)(h/cellSize)+1;
+
+		// counting sort of the sites by cell.
+		cellStart = new int[cols*rows+1];
+		cellCount = new int[cols*rows];
+		int [] cellOf = new int[count];
+		for(int i=0;i<count;++i) {
+			cellOf[i] = cell(col(xs[i]),row(ys[i]));
+			cellCount[cellOf[i]]++;
+		}
+		for(int c=0;c<cols*rows;++c) {
+			cellStart[c+1] = cellStart[c]+cellCount[c];
+		}
+		items = new int[count];
+		place = new int[count];
+		int [] next = new int[cols*rows];
+		for(int i=0;i<count;++i) {
+			int c = cellOf[i];
+			int p = cellStart[c] + next[c]++;
+			items[p] = i;
+			place[i] = p;
+		}
+	}
+
+	private int col(double x) {
+		return Math.max(0, Math.min(cols-1, (int)((x-xMin)/cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows-1, (int)((y-yMin)/cellSize)));
+	}
+
+	private int cell(int col,int row) {
+		return row*cols+col;
+	}
+
+	/**
+	 * @return the number of sites not yet removed.
+	 */
+	public int size() {
+		return left;
+	}
+
+	/**
+	 * Take a site out of the grid.  Removing it twice does nothing.
+	 */
+	public void remove(int site) {
+		int c = cell(col(px[site]),row(py[site]));
+		int p = place[site];
+		int last = cellStart[c]+cellCount[c]-1;
+		if(p>last) return;
+		// swap it with the last site in its cell, then shorten the cell.
+		int other = items[last];
+		items[last] = site;
+		items[p] = other;
+		place[other] = p;
+		place[site] = last;
+		cellCount[c]--;
+		left--;
+	}
+
+	/**
+	 * @return the site nearest to (x,y) that has not been removed, or -1 if there are none.
+	 */
+	public int nearest(double x,double y) {
+		if(left==0) return -1;
+		int cx = col(x);
+		int cy = row(y);
+		int best=-1;
+		double bestD = Double.MAX_VALUE;
+		int maxRing = Math.max(cols, rows);
+		for(int r=0;r<=maxRing;++r) {
+			// every site in ring r or further out is at least r-1 cells away.
+			double near = (r-1)*cellSize;
+			if(best>=0 && bestD <= near*near) break;
+			int x0=cx-r, x1=cx+r, y0=cy-r, y1=cy+r;
+			for(int j=Math.max(0,y0);j<=Math.min(rows-1,y1);++j) {
+				// the top and bottom rows of the ring are whole, the rows between are only the two ends.
+				boolean edge = (j==y0 || j==y1);
+				int step = edge ? 1 : Math.max(1,x1-x0);
+				for(int i=x0;i<=x1;i+=step) {
+					if(i<0 || i>=cols) continue;
+					int c = cell(i,j);
+					int end = cellStart[c]+cellCount[c];
+					for(int p=cellStart[c];p<end;++p) {
+						int s = items[p];
+						double dx = px[s]-x;
+						double dy = py[s]-y;
+						double d = dx*dx+dy*dy;
+						if(bestD>d) {
+							bestD=d;
+							best=s;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,187 @@
+package com.marginallyclever.tsp;
+
+import java.util.Arrays;
+
+/**
+ * Quick first tours for a {@link TourOptimizer} to start from.  Both take O(n log n) time.
+ *
+ * @author Dan Royer
+ */
+public class InitialTour {
+	// nearest neighbours of each point that greedyEdge() will join it to.
+	private static final int GREEDY_NEIGHBOURS = 10;
+	// bits per axis of the Hilbert curve.  the place along the curve and a site's index fit in one long.
+	private static final int HILBERT_ORDER = 15;
+
+	/**
+	 * Put the sites in the order they are visited by a Hilbert curve over their bounding box.  The tour is usually
+	 * about 35% longer than the best tour.
+	 * @param xs x of every site
+	 * @param ys y of every site
+	 * @param order the site numbers to put in order.  Sorted in place.
+	 * @param count the number of sites to use from order.
+	 */
+	public static void hilbert(double [] xs,double [] ys,int [] order,int count) {
+		long [] keys = hilbertKeys(xs,ys,order,count);
+		for(int i=0;i<count;++i) keys[i] = (keys[i]<<32) | i;
+		Arrays.sort(keys);
+		int [] sorted = new int[count];
+		for(int i=0;i<count;++i) sorted[i] = order[(int)keys[i]];
+		System.arraycopy(sorted, 0, order, 0, count);
+	}
+
+	/**
+	 * Join the closest pairs of sites first, never giving a site more than two neighbours or closing a loop.  Only
+	 * pairs from the nearest neighbours of each site are tried.  The pieces left over are joined end to end in
+	 * Hilbert curve order.  The tour is usually about 20% longer than the best tour.
+	 * @param xs x of every site
+	 * @param ys y of every site
+	 * @param order the site numbers to put in order.  Rewritten in place.
+	 * @param count the number of sites to use from order.
+	 */
+	public static void greedyEdge(double [] xs,double [] ys,int [] order,int count) {
+		if(count<3) return;
+		double [] x = new double[count];
+		double [] y = new double[count];
+		for(int i=0;i<count;++i) {
+			x[i] = xs[order[i]];
+			y[i] = ys[order[i]];
+		}
+		int k = Math.min(GREEDY_NEIGHBOURS, count-1);
+		int [] neighbours = new KDTree(x,y,count).neighbours(k);
+
+		// every candidate pair, shortest first.  a float length sorts the same as its bits.
+		long [] edges = new long[count*k];
+		int edgeCount=0;
+		for(int i=0;i<count*k;++i) {
+			int a = i/k;
+			int b = neighbours[i];
+			if(b<0) continue;
+			float d = (float)Math.hypot(x[a]-x[b], y[a]-y[b]);
+			edges[edgeCount++] = ((long)Float.floatToIntBits(d)<<32) | i;
+		}
+		Arrays.sort(edges, 0, edgeCount);
+
+		// the two neighbours of each point, or -1.
+		int [] link = new int[count*2];
+		Arrays.fill(link, -1);
+		int [] parent = new int[count];
+		for(int i=0;i<count;++i) parent[i]=i;
+		for(int e=0;e<edgeCount;++e) {
+			int i = (int)edges[e];
+			int a = i/k;
+			int b = neighbours[i];
+			if(link[a*2+1]>=0 || link[b*2+1]>=0) continue;
+			int ra = find(parent,a);
+			int rb = find(parent,b);
+			if(ra==rb) continue;
+			parent[ra] = rb;
+			link[a*2 + (link[a*2]<0 ? 0 : 1)] = b;
+			link[b*2 + (link[b*2]<0 ? 0 : 1)] = a;
+		}
+
+		// the pieces, each by one end.  in Hilbert order of that end.
+		int [] ends = new int[count];
+		int endCount=0;
+		for(int i=0;i<count;++i) {
+			if(link[i*2+1]<0) ends[endCount++]=i;
+		}
+		hilbert(x,y,ends,endCount);
+
+		// walk each piece from whichever of its ends is closer to where the last piece stopped.
+		boolean [] used = new boolean[count];
+		int [] tour = new int[count];
+		int size=0;
+		for(int e=0;e<endCount;++e) {
+			int a = ends[e];
+			if(used[a]) continue;
+			int b = otherEnd(link,a);
+			if(size>0) {
+				int last = tour[size-1];
+				if(Math.hypot(x[b]-x[last], y[b]-y[last]) < Math.hypot(x[a]-x[last], y[a]-y[last])) a=b;
+			}
+			int prev=-1;
+			while(a>=0) {
+				used[a]=true;
+				tour[size++]=a;
+				int next = link[a*2]!=prev ? link[a*2] : link[a*2+1];
+				prev=a;
+				a=next;
+			}
+		}
+
+		int [] sites = new int[count];
+		for(int i=0;i<count;++i) sites[i] = order[tour[i]];
+		System.arraycopy(sites, 0, order, 0, count);
+	}
+
+	private static int find(int [] parent,int a) {
+		while(parent[a]!=a) {
+			parent[a] = parent[parent[a]];
+			a = parent[a];
+		}
+		return a;
+	}
+
+	/**
+	 * @return the far end of the piece that starts at end a.
+	 */
+	private static int otherEnd(int [] link,int a) {
+		int prev=-1;
+		while(true) {
+			int next = link[a*2]!=prev ? link[a*2] : link[a*2+1];
+			if(next<0) return a;
+			prev=a;
+			a=next;
+		}
+	}
+
+	/**
+	 * @return the place of each site along a Hilbert curve over the bounding box of the sites.
+	 */
+	private static long [] hilbertKeys(double [] xs,double [] ys,int [] order,int count) {
+		double xMin=Double.MAX_VALUE, xMax=-Double.MAX_VALUE;
+		double yMin=Double.MAX_VALUE, yMax=-Double.MAX_VALUE;
+		for(int i=0;i<count;++i) {
+			int s = order[i];
+			xMin = Math.min(xMin, xs[s]);
+			xMax = Math.max(xMax, xs[s]);
+			yMin = Math.min(yMin, ys[s]);
+			yMax = Math.max(yMax, ys[s]);
+		}
+		int n = 1<<HILBERT_ORDER;
+		// the same scale on both axes, so the curve is square.
+		double size = Math.max(xMax-xMin, yMax-yMin);
+		double scale = size>0 ? (n-1)/size : 0;
+		long [] keys = new long[count];
+		for(int i=0;i<count;++i) {
+			int s = order[i];
+			keys[i] = hilbertIndex(n, (int)((xs[s]-xMin)*scale), (int)((ys[s]-yMin)*scale));
+		}
+		return keys;
+	}
+
+	/**
+	 * @param n the width of the grid, a power of two
+	 * @return the place of grid cell (x,y) along the Hilbert curve.
+	 */
+	private static long hilbertIndex(int n,int x,int y) {
+		long d=0;
+		for(int s=n/2;s>0;s/=2) {
+			int rx = (x & s)>0 ? 1 : 0;
+			int ry = (y & s)>0 ? 1 : 0;
+			d += (long)s*s*((3*rx)^ry);
+			// rotate the quadrant
+			if(ry==0) {
+				if(rx==1) {
+					x = n-1-x;
+					y = n-1-y;
+				}
+				int t=x;
+				x=y;
+				y=t;
+			}
+		}
+		return d;
+	}
+}
@@ -0,0 +1,167 @@
+package com.marginallyclever.tsp;
+
+import java.util.Arrays;
+
+import com.marginallyclever.convenience.ParallelHelper;
+
+/**
+ * A 2D tree of sites for finding the sites nearest to a point.
+ *
+ * The tree is kept in one array.  The node for a range [lo,hi) of the array is the site at (lo+hi)/2.  Sites on
+ * one side of it along its axis are in [lo,mid) and the rest are in [mid+1,hi).  Each node splits on the axis
+ * where its sites are spread out the most.
+ *
+ * @author Dan Royer
+ */
+public class KDTree {
+	// sites per task in neighbours()
+	private static final int SITES_PER_TASK = 1024;
+
+	private double [] px;
+	private double [] py;
+	private int count;
+	// the site at each node
+	private int [] order;
+	// true if the node at this position splits on x, false for y.
+	private boolean [] splitX;
+
+	/**
+	 * @param xs site x values
+	 * @param ys site y values
+	 * @param count the number of sites to use from xs and ys.
+	 */
+	public KDTree(double [] xs,double [] ys,int count) {
+		this.px = xs;
+		this.py = ys;
+		this.count = count;
+		order = new int[count];
+		splitX = new boolean[count];
+		for(int i=0;i<count;++i) order[i]=i;
+		build(0,count);
+	}
+
+	private void build(int lo,int hi) {
+		while(hi-lo>1) {
+			double xMin=Double.MAX_VALUE, xMax=-Double.MAX_VALUE;
+			double yMin=Double.MAX_VALUE, yMax=-Double.MAX_VALUE;
+			for(int i=lo;i<hi;++i) {
+				int s = order[i];
+				if(xMin>px[s]) xMin=px[s];
+				if(xMax<px[s]) xMax=px[s];
+				if(yMin>py[s]) yMin=py[s];
+				if(yMax<py[s]) yMax=py[s];
+			}
+			boolean isX = (xMax-xMin) >= (yMax-yMin);
+			int mid = (lo+hi)>>>1;
+			select(lo,hi,mid,isX ? px : py);
+			splitX[mid] = isX;
+			// the smaller half by recursion, the bigger half by looping.
+			if(mid-lo < hi-mid-1) {
+				build(lo,mid);
+				lo=mid+1;
+			} else {
+				build(mid+1,hi);
+				hi=mid;
+			}
+		}
+	}
+
+	/**
+	 * Rearrange order[lo,hi) so order[k] is the site that would be there if the range were sorted by v.
+	 */
+	private void select(int lo,int hi,int k,double [] v) {
+		hi--;
+		while(hi>lo) {
+			double pivot = v[order[(lo+hi)>>>1]];
+			int i=lo, j=hi;
+			while(i<=j) {
+				while(v[order[i]]<pivot) i++;
+				while(v[order[j]]>pivot) j--;
+				if(i<=j) {
+					int t = order[i];
+					order[i] = order[j];
+					order[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if(k<=j) hi=j;
+			else if(k>=i) lo=i;
+			else return;
+		}
+	}
+
+	/**
+	 * Find the k sites nearest to (x,y), closest first.
+	 * @param skip a site to leave out, or -1.
+	 * @param out filled with up to k sites.
+	 * @return the number of sites found.  Less than k only when there are not enough sites.
+	 */
+	public int nearest(double x,double y,int k,int skip,int [] out) {
+		return nearest(x,y,k,skip,out,new double[k]);
+	}
+
+	/**
+	 * @param dist scratch space, at least k long.  Filled with the squared distance to each site found.
+	 */
+	private int nearest(double x,double y,int k,int skip,int [] out,double [] dist) {
+		Arrays.fill(dist, 0, k, Double.MAX_VALUE);
+		return search(0,count,x,y,k,skip,out,dist,0);
+	}
+
+	private int search(int lo,int hi,double x,double y,int k,int skip,int [] out,double [] dist,int found) {
+		while(lo<hi) {
+			int mid = (lo+hi)>>>1;
+			int s = order[mid];
+			double dx = px[s]-x;
+			double dy = py[s]-y;
+			if(s!=skip) {
+				double d = dx*dx+dy*dy;
+				if(d<dist[k-1]) {
+					// insert in order, the farthest falls off the end.
+					int i = found<k ? found++ : k-1;
+					while(i>0 && dist[i-1]>d) {
+						dist[i] = dist[i-1];
+						out[i] = out[i-1];
+						i--;
+					}
+					dist[i] = d;
+					out[i] = s;
+				}
+			}
+			double diff = splitX[mid] ? -dx : -dy;
+			// the near side first, then the far side only if it could be closer than the worst so far.
+			if(diff<0) {
+				found = search(lo,mid,x,y,k,skip,out,dist,found);
+				if(diff*diff >= dist[k-1]) return found;
+				lo = mid+1;
+			} else {
+				found = search(mid+1,hi,x,y,k,skip,out,dist,found);
+				if(diff*diff >= dist[k-1]) return found;
+				hi = mid;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find the k nearest other sites of every site.  Blocks of sites are searched at the same time.
+	 * @return k entries for each site, closest first, -1 where there are fewer than k other sites.
+	 */
+	public int [] neighbours(final int k) {
+		final int [] result = new int[count*k];
+		int blocks = (count+SITES_PER_TASK-1)/SITES_PER_TASK;
+		ParallelHelper.forEachIndex(blocks,(b)->{
+			int s0 = b*SITES_PER_TASK;
+			int s1 = Math.min(s0+SITES_PER_TASK, count);
+			int [] out = new int[k];
+			double [] dist = new double[k];
+			for(int s=s0;s<s1;++s) {
+				int found = nearest(px[s],py[s],k,s,out,dist);
+				System.arraycopy(out, 0, result, s*k, found);
+				Arrays.fill(result, s*k+found, s*k+k, -1);
+			}
+		});
+		return result;
+	}
+}
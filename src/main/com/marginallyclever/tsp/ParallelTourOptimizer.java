@@ -0,0 +1,175 @@
+package com.marginallyclever.tsp;
+
+import java.util.Arrays;
+
+import com.marginallyclever.convenience.ParallelHelper;
+
+/**
+ * A {@link TourOptimizer} that uses every core.  Each call to {@link #improve(long)} is one round:
+ * <ol>
+ * <li>The tour is cut into one stretch per thread.  The stretches are shortened at the same time, each as an open
+ * path with its ends fixed, so they still join up.</li>
+ * <li>The stretches are put back together.  One optimizer of the whole tour looks for moves between stretches.  It
+ * only looks again at points that have a new tour neighbour.</li>
+ * </ol>
+ * The cuts move by half a stretch every round, so no cut stays in the same place.  Once two rounds in a row find
+ * nothing in the stretches, only the whole tour is worked on until it finds something.
+ * <em>One optimizer must not be used by two threads at once.</em>
+ *
+ * @author Dan Royer
+ */
+public class ParallelTourOptimizer {
+	// fewer points than this in a stretch are not worth a thread.
+	public static final int MIN_POINTS_PER_STRETCH = 500;
+
+	private int n;
+	private int threads;
+	// the points, in the order of the first tour, and the caller's number for each.
+	private double [] x;
+	private double [] y;
+	private int [] site;
+	private int [] neighbours;
+	// the tour, as points
+	private int [] order;
+	private TourOptimizer whole;
+	private int round;
+	// rounds in a row that found nothing in the stretches
+	private int idleRounds;
+	// the stretch of each point and its place in the stretch, for this round.
+	private int [] stretchOf;
+	private int [] placeOf;
+
+	/**
+	 * @param xs x of every site
+	 * @param ys y of every site
+	 * @param order the first tour, as site numbers.  Not every site has to be on it.
+	 * @param count the length of the tour in order.
+	 */
+	public ParallelTourOptimizer(double [] xs,double [] ys,int [] order,int count) {
+		this(xs,ys,order,count,Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads the most stretches to shorten at the same time.
+	 */
+	public ParallelTourOptimizer(double [] xs,double [] ys,int [] order,int count,int threads) {
+		this.n = count;
+		this.threads = threads;
+		x = new double[n];
+		y = new double[n];
+		site = new int[n];
+		this.order = new int[n];
+		for(int i=0;i<n;++i) {
+			site[i] = order[i];
+			x[i] = xs[order[i]];
+			y[i] = ys[order[i]];
+			this.order[i] = i;
+		}
+		neighbours = new KDTree(x,y,n).neighbours(TourOptimizer.NEIGHBOURS);
+		whole = new TourOptimizer(x,y,this.order,n,false,neighbours);
+		stretchOf = new int[n];
+		placeOf = new int[n];
+	}
+
+	/**
+	 * Do one round.  Call again to carry on.
+	 * @param nanoseconds about the most time to spend.
+	 * @return false once nothing more can be improved.
+	 */
+	public boolean improve(long nanoseconds) {
+		long end = System.nanoTime()+nanoseconds;
+		int stretches = Math.min(threads, n/MIN_POINTS_PER_STRETCH);
+		boolean changed = false;
+		if(stretches>1 && idleRounds<2) {
+			changed = improveStretches(stretches,nanoseconds/2);
+			if(changed) {
+				whole.setTour(order);
+				idleRounds=0;
+			} else {
+				idleRounds++;
+			}
+		}
+		double before = whole.getLength();
+		whole.improve(Math.max(end-System.nanoTime(), nanoseconds/4));
+		whole.getTour(order);
+		// the whole tour changed, so the stretches might find something new.
+		if(whole.getLength()<before) idleRounds=0;
+		round++;
+		return changed || !whole.isDone();
+	}
+
+	/**
+	 * Shorten each stretch of the tour at the same time and put them back in order.
+	 * @return true if any stretch got shorter.
+	 */
+	private boolean improveStretches(final int stretches,final long nanoseconds) {
+		// every other round the cuts are half a stretch along.
+		final int offset = (round%2==0) ? 0 : n/stretches/2;
+		for(int k=0;k<stretches;++k) {
+			int p0 = offset + (int)((long)n*k/stretches);
+			int p1 = offset + (int)((long)n*(k+1)/stretches);
+			for(int p=p0;p<p1;++p) {
+				int c = order[p%n];
+				stretchOf[c] = k;
+				placeOf[c] = p-p0;
+			}
+		}
+
+		final boolean [] changed = new boolean[stretches];
+		ParallelHelper.forEachIndex(stretches,(k)->{
+			int p0 = offset + (int)((long)n*k/stretches);
+			int p1 = offset + (int)((long)n*(k+1)/stretches);
+			int len = p1-p0;
+			int [] path = new int[len];
+			for(int i=0;i<len;++i) path[i] = order[(p0+i)%n];
+
+			// the neighbours in the same stretch, by place in the stretch.
+			int [] local = new int[len*TourOptimizer.NEIGHBOURS];
+			for(int i=0;i<len;++i) {
+				int j = i*TourOptimizer.NEIGHBOURS;
+				int c = path[i];
+				for(int m=c*TourOptimizer.NEIGHBOURS;m<c*TourOptimizer.NEIGHBOURS+TourOptimizer.NEIGHBOURS;++m) {
+					int t = neighbours[m];
+					if(t<0) break;
+					if(stretchOf[t]==k) local[j++] = placeOf[t];
+				}
+				Arrays.fill(local, j, i*TourOptimizer.NEIGHBOURS+TourOptimizer.NEIGHBOURS, -1);
+			}
+
+			TourOptimizer optimizer = new TourOptimizer(x,y,path,len,true,local);
+			double before = optimizer.getLength();
+			optimizer.improve(nanoseconds);
+			if(optimizer.getLength()<before) {
+				optimizer.getPath(path);
+				// each stretch writes only its own part of the tour.
+				for(int i=0;i<len;++i) order[(p0+i)%n] = path[i];
+				changed[k]=true;
+			}
+		});
+
+		for(boolean b : changed) {
+			if(b) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param out filled with the site numbers in tour order.  At least as long as the tour.
+	 */
+	public void getTour(int [] out) {
+		for(int i=0;i<n;++i) {
+			out[i] = site[order[i]];
+		}
+	}
+
+	/**
+	 * @return the length of the closed tour.
+	 */
+	public double getLength() {
+		return whole.getLength();
+	}
+
+	public int getSize() {
+		return n;
+	}
+}
@@ -0,0 +1,373 @@
+package com.marginallyclever.tsp;
+
+/**
+ * Shortens a closed tour through a set of points with 2-opt and Or-opt moves.
+ *
+ * Only moves that join a point to one of its nearest neighbours are tried.  Each point has a "don't look" bit:
+ * once no move around a point helps it is left alone until one of its tour neighbours changes.  Points waiting to
+ * be looked at are kept in a queue.
+ *
+ * The tour is kept in two arrays, the point at each position and the position of each point, so a 2-opt move
+ * reverses part of an array.  The shorter side of the tour is always the one reversed.  An Or-opt move (take up to
+ * {@link #MAX_SEGMENT} points and put them somewhere else) is done as two or three 2-opt moves.
+ *
+ * An open path with fixed ends is optimized as a loop where the edge from the last point back to the first is
+ * never removed.
+ * <em>One optimizer must not be used by two threads at once.</em>
+ *
+ * @author Dan Royer
+ */
+public class TourOptimizer {
+	// nearest neighbours of each point to try
+	public static final int NEIGHBOURS = 8;
+	// longest run of points moved by one Or-opt move
+	public static final int MAX_SEGMENT = 3;
+	// smallest gain that counts as an improvement.
+	private static final double EPSILON = 1e-9;
+	// points looked at between checks of the clock
+	private static final int POINTS_PER_CHECK = 256;
+
+	private int n;
+	// the points, in the order of the first tour.
+	private double [] x;
+	private double [] y;
+	// the caller's number for each point.
+	private int [] site;
+	private int [] neighbours;
+	// the point at each position and the position of each point.
+	private int [] tour;
+	private int [] pos;
+	// points waiting to be looked at, a ring.
+	private int [] queue;
+	private int queueHead, queueSize;
+	private boolean [] isQueued;
+	// the ends of an open path, or -1.
+	private int fixedA=-1, fixedB=-1;
+	// the point of each site, made by the first setTour().
+	private int [] cityOf;
+	private int siteCount;
+
+	/**
+	 * @param xs x of every site
+	 * @param ys y of every site
+	 * @param order the first tour, as site numbers.  Not every site has to be on it.
+	 * @param count the length of the tour in order.
+	 */
+	public TourOptimizer(double [] xs,double [] ys,int [] order,int count) {
+		this(xs,ys,order,count,false);
+	}
+
+	/**
+	 * @param isPath true to keep order[0] and order[count-1] at the ends of an open path.
+	 */
+	public TourOptimizer(double [] xs,double [] ys,int [] order,int count,boolean isPath) {
+		this(xs,ys,order,count,isPath,null);
+	}
+
+	/**
+	 * @param neighbours {@link #NEIGHBOURS} for each point on the tour, by place in order, closest first, -1 where
+	 * there are fewer.  null to find them here.
+	 */
+	TourOptimizer(double [] xs,double [] ys,int [] order,int count,boolean isPath,int [] neighbours) {
+		n = count;
+		siteCount = xs.length;
+		if(isPath && n>1) {
+			fixedA = 0;
+			fixedB = n-1;
+		}
+		x = new double[n];
+		y = new double[n];
+		site = new int[n];
+		tour = new int[n];
+		pos = new int[n];
+		for(int i=0;i<n;++i) {
+			site[i] = order[i];
+			x[i] = xs[order[i]];
+			y[i] = ys[order[i]];
+			tour[i] = i;
+			pos[i] = i;
+		}
+		this.neighbours = neighbours!=null ? neighbours : new KDTree(x,y,n).neighbours(NEIGHBOURS);
+
+		queue = new int[n];
+		isQueued = new boolean[n];
+		for(int i=0;i<n;++i) push(i);
+	}
+
+	/**
+	 * Make moves until nothing more helps or the time is up.  Call again to carry on.
+	 * @param nanoseconds the most time to spend.
+	 * @return true if there are still points to look at.
+	 */
+	public boolean improve(long nanoseconds) {
+		if(n<5) return false;
+		long end = System.nanoTime()+nanoseconds;
+		int looked=0;
+		while(queueSize>0) {
+			int a = queue[queueHead];
+			queueHead = (queueHead+1)%n;
+			queueSize--;
+			isQueued[a]=false;
+
+			if(improve2opt(a,true) || improve2opt(a,false) || improveOrOpt(a,true) || improveOrOpt(a,false)) {
+				// a might not be done yet.
+				push(a);
+			}
+			if(++looked%POINTS_PER_CHECK==0 && System.nanoTime()>end) break;
+		}
+		return queueSize>0;
+	}
+
+	/**
+	 * @return true if the tour can't be shortened by any move this optimizer tries.
+	 */
+	public boolean isDone() {
+		// improve() makes no moves on fewer than five points.
+		return n<5 || queueSize==0;
+	}
+
+	/**
+	 * @param out filled with the site numbers in tour order.  At least as long as the tour.
+	 */
+	public void getTour(int [] out) {
+		for(int i=0;i<n;++i) {
+			out[i] = site[tour[i]];
+		}
+	}
+
+	/**
+	 * @param out filled with the site numbers of the open path, from the first end to the last.
+	 */
+	public void getPath(int [] out) {
+		int a = fixedA<0 ? tour[0] : fixedA;
+		// walk away from the edge that joins the ends.
+		boolean forward = fixedA<0 || next(a)!=fixedB;
+		for(int i=0;i<n;++i) {
+			out[i] = site[a];
+			a = step(a,forward);
+		}
+	}
+
+	/**
+	 * Start again from a new tour of the same sites.  Only the points with a new tour neighbour are looked at
+	 * again.
+	 * @param order the same sites as the first tour, in a new order.
+	 */
+	public void setTour(int [] order) {
+		if(cityOf==null) {
+			cityOf = new int[siteCount];
+			for(int i=0;i<n;++i) cityOf[site[i]] = i;
+		}
+		int [] newTour = new int[n];
+		int [] newPos = new int[n];
+		for(int i=0;i<n;++i) {
+			int c = cityOf[order[i]];
+			newTour[i] = c;
+			newPos[c] = i;
+		}
+		for(int c=0;c<n;++c) {
+			int a = next(c);
+			int b = prev(c);
+			int i = newPos[c];
+			int a2 = newTour[i+1==n ? 0 : i+1];
+			int b2 = newTour[i==0 ? n-1 : i-1];
+			if(!((a==a2 && b==b2) || (a==b2 && b==a2))) push(c);
+		}
+		tour = newTour;
+		pos = newPos;
+	}
+
+	/**
+	 * @return the length of the closed tour.
+	 */
+	public double getLength() {
+		double sum=0;
+		for(int i=0;i<n;++i) {
+			sum += dist(tour[i],tour[(i+1)%n]);
+		}
+		return sum;
+	}
+
+	public int getSize() {
+		return n;
+	}
+
+	private void push(int a) {
+		if(isQueued[a]) return;
+		isQueued[a]=true;
+		queue[(queueHead+queueSize)%n] = a;
+		queueSize++;
+	}
+
+	private boolean isFixed(int a,int b) {
+		return (a==fixedA && b==fixedB) || (a==fixedB && b==fixedA);
+	}
+
+	private double dist(int a,int b) {
+		double dx = x[a]-x[b];
+		double dy = y[a]-y[b];
+		return Math.sqrt(dx*dx+dy*dy);
+	}
+
+	private int next(int a) {
+		int i = pos[a]+1;
+		return tour[i==n ? 0 : i];
+	}
+
+	private int prev(int a) {
+		int i = pos[a]-1;
+		return tour[i<0 ? n-1 : i];
+	}
+
+	private int step(int a,boolean forward) {
+		return forward ? next(a) : prev(a);
+	}
+
+	/**
+	 * Replace the edges a-b and c-d with a-c and b-d.  Going one way around the tour, b follows a and d follows c.
+	 */
+	private void move2opt(int a,int b,int c,int d) {
+		if(next(a)==b) reverse(b,c);
+		else reverse(c,b);
+	}
+
+	/**
+	 * Reverse the tour from point "from" forward to point "to".  If that is more than half of the tour, reverse
+	 * the rest of the tour instead.  It makes the same loop.
+	 */
+	private void reverse(int from,int to) {
+		int i = pos[from];
+		int j = pos[to];
+		int len = j-i;
+		if(len<0) len+=n;
+		len++;
+		if(len*2>n) {
+			i = pos[to]+1;
+			if(i==n) i=0;
+			j = pos[from]-1;
+			if(j<0) j=n-1;
+			len = n-len;
+		}
+		for(int k=len/2;k>0;--k) {
+			int a = tour[i];
+			int b = tour[j];
+			tour[i] = b;
+			pos[b] = i;
+			tour[j] = a;
+			pos[a] = j;
+			if(++i==n) i=0;
+			if(--j<0) j=n-1;
+		}
+	}
+
+	/**
+	 * Look for a 2-opt move that replaces the edge from a to the next point with an edge from a to a neighbour.
+	 * @param forward which way around the tour "next" is.
+	 * @return true if the tour was changed.
+	 */
+	private boolean improve2opt(int a,boolean forward) {
+		int b = step(a,forward);
+		if(isFixed(a,b)) return false;
+		double ab = dist(a,b);
+		for(int i=a*NEIGHBOURS;i<a*NEIGHBOURS+NEIGHBOURS;++i) {
+			int c = neighbours[i];
+			if(c<0) break;
+			double g1 = ab-dist(a,c);
+			// neighbours are closest first, the rest can only be worse.
+			if(g1<=EPSILON) break;
+			int d = step(c,forward);
+			if(c==b || d==a || isFixed(c,d)) continue;
+			if(g1+dist(c,d)-dist(b,d) > EPSILON) {
+				move2opt(a,b,c,d);
+				push(b);
+				push(c);
+				push(d);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Look for an Or-opt move of the run of points that starts at a, into the gap between a neighbour of either
+	 * end of the run and the point beside it.
+	 * @param forward which way around the tour the run goes from a.
+	 * @return true if the tour was changed.
+	 */
+	private boolean improveOrOpt(int a,boolean forward) {
+		int s1 = a;
+		int s2 = a;
+		int p = step(s1,!forward);
+		for(int len=1;len<=MAX_SEGMENT && len+4<=n;++len) {
+			if(len>1) s2 = step(s2,forward);
+			int nx = step(s2,forward);
+			if(isFixed(p,s1) || isFixed(s2,nx)) continue;
+			// what is saved by taking the run out.
+			double g1 = dist(p,s1)+dist(s2,nx)-dist(p,nx);
+			if(g1<=EPSILON) continue;
+			if(tryInsert(s1,s1,s2,p,nx,len,forward,g1)) return true;
+			if(len>1 && tryInsert(s2,s1,s2,p,nx,len,forward,g1)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Try to put the run s1...s2 in the gap beside a neighbour of end.
+	 * @return true if the tour was changed.
+	 */
+	private boolean tryInsert(int end,int s1,int s2,int p,int nx,int len,boolean forward,double g1) {
+		for(int i=end*NEIGHBOURS;i<end*NEIGHBOURS+NEIGHBOURS;++i) {
+			int c = neighbours[i];
+			if(c<0) break;
+			if(dist(end,c)>=g1) break;
+			if(isInRun(c,s1,s2,len,forward)) continue;
+			// the gap after c and the gap before c.
+			for(int side=0;side<2;++side) {
+				int e1 = side==0 ? c : step(c,!forward);
+				int e2 = side==0 ? step(c,forward) : c;
+				if(isInRun(e1,s1,s2,len,forward) || isInRun(e2,s1,s2,len,forward) || isFixed(e1,e2)) continue;
+				double gap = dist(e1,e2);
+				double keep = dist(e1,s1)+dist(s2,e2)-gap;
+				double flip = dist(e1,s2)+dist(s1,e2)-gap;
+				if(g1-Math.min(keep,flip) > EPSILON) {
+					moveRun(p,s1,s2,nx,e1,e2,keep<=flip);
+					push(p);
+					push(nx);
+					push(s1);
+					push(s2);
+					push(e1);
+					push(e2);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean isInRun(int c,int s1,int s2,int len,boolean forward) {
+		if(c==s1 || c==s2) return true;
+		// runs are at most 3 long, so only the middle is left.
+		return len==3 && c==step(s1,forward);
+	}
+
+	/**
+	 * Take the run s1...s2 out from between p and nx and put it between c and d.  Going one way around the tour
+	 * p, s1, s2, nx, c, d come in that order.
+	 * @param keep true for c,s1...s2,d and false for c,s2...s1,d.
+	 */
+	private void moveRun(int p,int s1,int s2,int nx,int c,int d,boolean keep) {
+		if(d==p) {
+			// the same move going the other way around the tour, where c is nx.
+			int t;
+			t=p;  p=nx;  nx=t;
+			t=s1; s1=s2; s2=t;
+			t=c;  c=d;   d=t;
+		}
+		// p,c...nx,s2...s1,d
+		move2opt(p,s1,c,d);
+		// p,nx...c,s2...s1,d
+		if(c!=nx) move2opt(p,c,nx,s2);
+		// c,s1...s2,d
+		if(keep) move2opt(c,s2,s1,d);
+	}
+}
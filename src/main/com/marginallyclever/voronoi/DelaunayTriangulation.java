@@ -0,0 +1,880 @@
+package com.marginallyclever.voronoi;
+
+import java.util.Arrays;
+
+/**
+ * Delaunay triangulation of a set of sites that can be moved a little at a time.  The Voronoi diagram is the dual
+ * of the triangulation: two sites share a Voronoi edge when they share a Delaunay edge.
+ *
+ * Sites are added one at a time and the triangulation is repaired with edge flips (Lawson's algorithm).  When the
+ * sites move, every triangle that is still the right way around is kept and only the edges that are no longer
+ * Delaunay are flipped, so the work depends on how far the sites moved.  A site that would turn a triangle inside
+ * out waits for its neighbors to move, or moves in steps.  Only when the sites move about as far as the distance
+ * between them is the triangulation built again.
+ *
+ * The outside of the convex hull is covered by "ghost" triangles that share one imaginary vertex at infinity.
+ * That keeps the hull edges exact without a giant super-triangle.
+ *
+ * Triangles are kept in primitive arrays.  Triangle t has corners v[3t], v[3t+1], v[3t+2] counter-clockwise, and
+ * n[3t+i] is the triangle across the edge from corner i to corner i+1.
+ *
+ * @author Dan Royer
+ */
+public class DelaunayTriangulation {
+	// flips to allow per triangle before giving up and building from scratch.
+	private static final int MAX_FLIPS_PER_TRIANGLE = 20;
+	// the most steps one site may take when it moves.
+	private static final int MAX_STEPS = 16;
+	// build from scratch if more than 1/MAX_HELD_BACK of the sites cannot move straight to their new place.
+	private static final int MAX_HELD_BACK = 8;
+	// times to try again with the sites that were held back, while some of them get free each time.
+	private static final int MAX_ROUNDS = 4;
+
+	private int count;
+	private double [] px = new double[0];
+	private double [] py = new double[0];
+	// the vertex at infinity
+	private int ghost;
+
+	private int [] v = new int[0];
+	private int [] n = new int[0];
+	private int triangleCount;
+	// one triangle touching each vertex, or -1 if the vertex is not in the triangulation.
+	private int [] vertexTriangle = new int[0];
+	// sites at exactly the same place as an earlier site are left out.
+	private int duplicates;
+	// every site is on one line, there are no triangles.
+	private boolean isFlat;
+
+	// edges waiting to be checked, as 3*triangle+edge
+	private int [] stack = new int[0];
+	private int stackSize;
+	private int lastTriangle;
+	// sites that moveSites() could not move straight to their new place.
+	private int [] heldBack = new int[0];
+	// sites close together in this list are close together in the triangle arrays, too.
+	private int [] insertionOrder = new int[0];
+	// scratch space for getVoronoiEdges()
+	private double [] center0 = new double[2];
+	private double [] center1 = new double[2];
+	private double [] segment = new double[4];
+
+	/**
+	 * Triangulate a new set of sites.
+	 * @param xs site x values
+	 * @param ys site y values
+	 * @param count the number of sites to use from xs and ys.
+	 * @throws IllegalStateException if rounding error stops the triangulation from settling.
+	 */
+	public void build(double [] xs,double [] ys,int count) {
+		this.count = count;
+		ghost = count;
+		if(px.length<count) {
+			px = new double[count];
+			py = new double[count];
+		}
+		System.arraycopy(xs, 0, px, 0, count);
+		System.arraycopy(ys, 0, py, 0, count);
+		rebuild();
+	}
+
+	/**
+	 * Move every site and repair the triangulation.  A site that can go straight to its new place without turning a
+	 * triangle around it inside out is moved in one go.  A site that would cross a neighbor is held back until the
+	 * sites around it have moved and the edges that are no longer Delaunay have been flipped.  That is usually
+	 * enough to clear its way.  The few sites still held back after that are moved in small steps.
+	 *
+	 * When sites move further than about the distance to their neighbors most of them are held back, and the
+	 * triangulation is built again straight away instead of flipping its way there.
+	 * @param xs new site x values, same count as the last {@link #build(double[], double[], int)}
+	 * @param ys new site y values
+	 * @return true if the triangulation was repaired, false if it had to be built again.
+	 */
+	public boolean moveSites(double [] xs,double [] ys) {
+		if(!isFlat && duplicates==0 && repair(xs,ys)) return true;
+		build(xs,ys,count);
+		return false;
+	}
+
+	private boolean repair(double [] xs,double [] ys) {
+		if(heldBack.length<count) heldBack = new int[count];
+		int held=0;
+		for( int i : insertionOrder ) {
+			if(tryMove(i,xs[i],ys[i])) continue;
+			// the sites moved too far.  stop before wasting any more time.
+			if(held==count/MAX_HELD_BACK) return false;
+			heldBack[held++]=i;
+		}
+
+		stackSize=0;
+		for(int i=0;i<triangleCount*3;++i) push(i);
+		if(!legalize(MAX_FLIPS_PER_TRIANGLE*triangleCount)) return false;
+
+		for(int round=0;round<MAX_ROUNDS && held>0;++round) {
+			int left=0;
+			stackSize=0;
+			for(int k=0;k<held;++k) {
+				int i = heldBack[k];
+				if(tryMove(i,xs[i],ys[i])) pushStar(i);
+				else heldBack[left++]=i;
+			}
+			if(left==held) break;
+			held=left;
+			if(!legalize(MAX_FLIPS_PER_TRIANGLE*triangleCount)) return false;
+		}
+
+		if(held==0) return isEveryTriangleCounterClockwise();
+		for(int k=0;k<held;++k) {
+			int i = heldBack[k];
+			if(!moveSite(i,xs[i],ys[i])) return false;
+		}
+		stackSize=0;
+		for(int i=0;i<triangleCount*3;++i) push(i);
+		return legalize(MAX_FLIPS_PER_TRIANGLE*triangleCount) && isEveryTriangleCounterClockwise();
+	}
+
+	/**
+	 * Put site i at (x,y) if that does not turn any triangle around it inside out.
+	 * @return true if the site moved.
+	 */
+	private boolean tryMove(int i,double x,double y) {
+		double oldX = px[i];
+		double oldY = py[i];
+		px[i] = x;
+		py[i] = y;
+		if(isStarValid(i)) return true;
+		px[i] = oldX;
+		py[i] = oldY;
+		return false;
+	}
+
+	/**
+	 * Move one site without turning any triangle inside out.  A triangle only turns inside out after it has
+	 * stopped being Delaunay, so the site goes half way to the first triangle that would go flat and the edges
+	 * around it are flipped.  When the triangle in the way is still Delaunay it stays Delaunay until it is flat.
+	 * That happens when three sites are almost in a line or when a site crosses the hull.  Then the site goes all
+	 * the way to where the triangle is flat and the longest edge is flipped.
+	 * @return false if the site could not be moved.
+	 */
+	private boolean moveSite(int i,double x,double y) {
+		double startX = px[i];
+		double startY = py[i];
+		if(startX==x && startY==y) return true;
+
+		double done=0;
+		for(int attempt=0;attempt<MAX_STEPS;++attempt) {
+			int t = firstToGoFlat(i,startX,startY,x,y,done);
+			if(t==-1) {
+				placeSite(i,startX,startY,x,y,1);
+				stackSize=0;
+				pushStar(i);
+				return legalize(MAX_FLIPS_PER_TRIANGLE*triangleCount);
+			}
+			int a = v[t*3];
+			int b = v[t*3+1];
+			int c = v[t*3+2];
+			double half = (done+flatAt)/2;
+			placeSite(i,startX,startY,x,y,half);
+			stackSize=0;
+			pushStar(i);
+			if(!legalize(MAX_FLIPS_PER_TRIANGLE*triangleCount)) return false;
+			if(v[t*3]!=a || v[t*3+1]!=b || v[t*3+2]!=c || firstToGoFlat(i,startX,startY,x,y,half)!=t) {
+				// the flips took it out of the way.
+				done=half;
+				continue;
+			}
+			placeSite(i,startX,startY,x,y,flatAt);
+			if(!flipLongestEdge(t) || !isStarValid(i)) return false;
+			done=flatAt;
+		}
+		return false;
+	}
+
+	// set by firstToGoFlat()
+	private double flatAt;
+
+	/**
+	 * Site i is part of the way from (x0,y0) to (x1,y1).  The area of each triangle around it changes in a
+	 * straight line as it goes.
+	 * @param done how far along the site is now
+	 * @return the first triangle around site i that would go flat before the end, or -1.  {@link #flatAt} is set
+	 * to how far along that happens.
+	 */
+	private int firstToGoFlat(int i,double x0,double y0,double x1,double y1,double done) {
+		int first=-1;
+		flatAt=1;
+		int start = vertexTriangle[i];
+		int t = start;
+		do {
+			if(!isGhost(t)) {
+				placeSite(i,x0,y0,x1,y1,1);
+				double end = orient(v[t*3],v[t*3+1],v[t*3+2]);
+				if(end<=0) {
+					placeSite(i,x0,y0,x1,y1,done);
+					double now = orient(v[t*3],v[t*3+1],v[t*3+2]);
+					double when = done + (1-done)*now/(now-end);
+					if(when<flatAt || first==-1) {
+						flatAt=when;
+						first=t;
+					}
+				}
+			}
+			t = n[t*3+(cornerOf(t,i)+2)%3];
+		} while(t!=start);
+		placeSite(i,x0,y0,x1,y1,done);
+		return first;
+	}
+
+	/**
+	 * Flip the edge across from the widest corner of flat triangle t.  If the edge is on the hull the site at that
+	 * corner joins the hull.
+	 * @return false if the flip would leave a triangle inside out.
+	 */
+	private boolean flipLongestEdge(int t) {
+		int e = (widestCorner(t)+1)%3;
+		int u = n[t*3+e];
+		if(isGhost(u)) {
+			// a site with two edges on the hull would be left with no triangles.
+			if(isGhost(n[t*3+(e+1)%3]) || isGhost(n[t*3+(e+2)%3])) return false;
+		} else {
+			int a = v[t*3+e];
+			int b = v[t*3+(e+1)%3];
+			int p = v[t*3+(e+2)%3];
+			int d = v[u*3+(edgeTo(u,t)+2)%3];
+			if(orient(p,a,d)<=0 || orient(d,b,p)<=0) return false;
+		}
+		flip(t,e);
+		return true;
+	}
+
+	private int widestCorner(int t) {
+		int best=0;
+		double bestCos=Double.MAX_VALUE;
+		for(int k=0;k<3;++k) {
+			int m = v[t*3+k];
+			int a = v[t*3+(k+1)%3];
+			int b = v[t*3+(k+2)%3];
+			double ax = px[a]-px[m], ay = py[a]-py[m];
+			double bx = px[b]-px[m], by = py[b]-py[m];
+			double cos = (ax*bx+ay*by)/Math.sqrt((ax*ax+ay*ay)*(bx*bx+by*by));
+			if(cos<bestCos) {
+				bestCos=cos;
+				best=k;
+			}
+		}
+		return best;
+	}
+
+	private boolean isEveryTriangleCounterClockwise() {
+		for(int t=0;t<triangleCount;++t) {
+			if(!isGhost(t) && orient(v[t*3],v[t*3+1],v[t*3+2])<=0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Put site i part of the way from (x0,y0) to (x1,y1).
+	 * @param fraction 0 for the start, 1 for the end.
+	 */
+	private void placeSite(int i,double x0,double y0,double x1,double y1,double fraction) {
+		if(fraction==1) {
+			px[i] = x1;
+			py[i] = y1;
+		} else {
+			px[i] = x0 + (x1-x0)*fraction;
+			py[i] = y0 + (y1-y0)*fraction;
+		}
+	}
+
+	/**
+	 * @return true if none of the triangles around site i is flat or inside out.
+	 */
+	private boolean isStarValid(int i) {
+		int start = vertexTriangle[i];
+		int t = start;
+		do {
+			if(!isGhost(t) && orient(v[t*3],v[t*3+1],v[t*3+2])<=0) return false;
+			t = n[t*3+(cornerOf(t,i)+2)%3];
+		} while(t!=start);
+		return true;
+	}
+
+	// every edge of every triangle around site i.
+	private void pushStar(int i) {
+		int start = vertexTriangle[i];
+		int t = start;
+		do {
+			push(t*3);
+			push(t*3+1);
+			push(t*3+2);
+			t = n[t*3+(cornerOf(t,i)+2)%3];
+		} while(t!=start);
+	}
+
+	/**
+	 * @return the number of sites
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Walk from site to site until no neighbor is closer.  In a Delaunay triangulation that always ends at the
+	 * nearest site.  Starting near the answer (the answer for the last pixel, say) makes the walk very short.
+	 * @param x point to test
+	 * @param y point to test
+	 * @param hint a site to start from
+	 * @return the index of the site whose Voronoi cell contains (x,y), or -1 if there are no sites.
+	 */
+	public int nearest(double x,double y,int hint) {
+		if(count==0) return -1;
+		if(isFlat || hint<0 || hint>=count || vertexTriangle[hint]==-1) {
+			hint = nearestByScan(x,y);
+			if(isFlat) return hint;
+		}
+
+		int best = hint;
+		double bestD = distanceSq(best,x,y);
+		boolean moved;
+		do {
+			moved=false;
+			int start = vertexTriangle[best];
+			int t = start;
+			int center = best;
+			do {
+				int k = cornerOf(t,center);
+				int w = v[t*3+(k+1)%3];
+				if(w!=ghost) {
+					double d = distanceSq(w,x,y);
+					if(d<bestD) {
+						bestD = d;
+						best = w;
+						moved = true;
+					}
+				}
+				t = n[t*3+(k+2)%3];
+			} while(t!=start);
+		} while(moved);
+		return best;
+	}
+
+	/**
+	 * The Voronoi edges between the sites, clipped to a rectangle.
+	 * @param xMin bounds
+	 * @param xMax bounds
+	 * @param yMin bounds
+	 * @param yMax bounds
+	 * @param out cleared, then filled with one edge for each pair of neighbors whose shared edge is inside the rectangle.
+	 */
+	public void getVoronoiEdges(double xMin,double xMax,double yMin,double yMax,VoronoiEdgeBuffer out) {
+		out.clear();
+		if(isFlat) return;
+
+		double reach = 2*(Math.abs(xMax-xMin)+Math.abs(yMax-yMin));
+		double [] c0 = center0;
+		double [] c1 = center1;
+		for(int t=0;t<triangleCount;++t) {
+			if(isGhost(t)) continue;
+			circumcenter(t,c0);
+			for(int e=0;e<3;++e) {
+				int u = n[t*3+e];
+				int a = v[t*3+e];
+				int b = v[t*3+(e+1)%3];
+				if(isGhost(u)) {
+					// a hull edge.  the Voronoi edge runs away from the hull forever.
+					double dx = px[b]-px[a];
+					double dy = py[b]-py[a];
+					double len = Math.sqrt(dx*dx+dy*dy);
+					if(len==0) continue;
+					c1[0] = c0[0] + dy/len*reach;
+					c1[1] = c0[1] - dx/len*reach;
+				} else {
+					// each shared edge once.
+					if(u<t) continue;
+					circumcenter(u,c1);
+				}
+				segment[0]=c0[0];
+				segment[1]=c0[1];
+				segment[2]=c1[0];
+				segment[3]=c1[1];
+				if(!clip(segment,xMin,xMax,yMin,yMax)) continue;
+
+				out.add(segment[0], segment[1], segment[2], segment[3], a, b);
+			}
+		}
+	}
+
+	private void rebuild() {
+		int maxTriangles = Math.max(2*count,4);
+		if(v.length<maxTriangles*3) {
+			v = new int[maxTriangles*3];
+			n = new int[maxTriangles*3];
+		}
+		if(vertexTriangle.length<count+1) {
+			vertexTriangle = new int[count+1];
+		}
+		Arrays.fill(vertexTriangle, 0, count+1, -1);
+		triangleCount = 0;
+		duplicates = 0;
+		isFlat = true;
+
+		insertionOrder = spatialOrder();
+		if(!makeFirstTriangle(insertionOrder)) return;
+		isFlat = false;
+
+		for( int i : insertionOrder ) {
+			if(vertexTriangle[i]==-1) insert(i);
+		}
+	}
+
+	/**
+	 * Sites close together in the list are close together on the paper, so each walk to find the next site is
+	 * short.  Rows of a grid, alternating left to right and right to left.
+	 */
+	private int [] spatialOrder() {
+		double xMin=Double.MAX_VALUE, xMax=-Double.MAX_VALUE;
+		double yMin=Double.MAX_VALUE, yMax=-Double.MAX_VALUE;
+		for(int i=0;i<count;++i) {
+			xMin = Math.min(xMin, px[i]);
+			xMax = Math.max(xMax, px[i]);
+			yMin = Math.min(yMin, py[i]);
+			yMax = Math.max(yMax, py[i]);
+		}
+		int side = Math.max(1, (int)Math.sqrt(count/4.0));
+		double w = Math.max(xMax-xMin, 1e-9);
+		double h = Math.max(yMax-yMin, 1e-9);
+
+		long [] keys = new long[count];
+		for(int i=0;i<count;++i) {
+			int col = Math.min(side-1, (int)((px[i]-xMin)/w*side));
+			int row = Math.min(side-1, (int)((py[i]-yMin)/h*side));
+			if((row&1)==1) col = side-1-col;
+			keys[i] = ((long)(row*side+col) << 32) | i;
+		}
+		Arrays.sort(keys);
+		int [] order = new int[count];
+		for(int i=0;i<count;++i) {
+			order[i] = (int)keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Start with the first three sites (in order) that are not on one line, and the three ghost triangles around
+	 * them.
+	 * @return false if every site is on one line.
+	 */
+	private boolean makeFirstTriangle(int [] order) {
+		if(count<3) return false;
+		int a = order[0];
+		int b = -1, c = -1;
+		for(int i=1;i<count && b==-1;++i) {
+			if(px[order[i]]!=px[a] || py[order[i]]!=py[a]) b = order[i];
+		}
+		if(b==-1) return false;
+		for(int i=1;i<count && c==-1;++i) {
+			if(orient(a,b,order[i])!=0) c = order[i];
+		}
+		if(c==-1) return false;
+		if(orient(a,b,c)<0) {
+			int temp=b;
+			b=c;
+			c=temp;
+		}
+
+		int t = newTriangle(a,b,c);
+		int g0 = newTriangle(b,a,ghost);
+		int g1 = newTriangle(c,b,ghost);
+		int g2 = newTriangle(a,c,ghost);
+		setNeighbors(t ,g0,g1,g2);
+		setNeighbors(g0,t ,g2,g1);
+		setNeighbors(g1,t ,g0,g2);
+		setNeighbors(g2,t ,g1,g0);
+		vertexTriangle[a]=t;
+		vertexTriangle[b]=t;
+		vertexTriangle[c]=t;
+		vertexTriangle[ghost]=g0;
+		lastTriangle=t;
+		return true;
+	}
+
+	private void insert(int p) {
+		int t = locate(p);
+		if(t<0) {
+			// same place as an existing site.
+			duplicates++;
+			return;
+		}
+
+		stackSize=0;
+		int edge = locatedEdge;
+		if(edge==-1) splitTriangle(t,p);
+		else splitEdge(t,edge,p);
+		// each flip makes the triangulation better, so this always ends.  the limit only guards against rounding.
+		if(!legalize(MAX_FLIPS_PER_TRIANGLE*triangleCount)) {
+			throw new IllegalStateException("Flips around site "+p+" did not stop");
+		}
+	}
+
+	// set by locate(): -1 if the site is inside the triangle, else the edge it is on.
+	private int locatedEdge;
+
+	/**
+	 * Walk across the triangles toward p.
+	 * @return the triangle that contains p, or -1 if p is at the same place as a vertex.
+	 */
+	private int locate(int p) {
+		int t = lastTriangle;
+		int limit = triangleCount*4+100;
+		for(int step=0;step<limit;++step) {
+			int result = locateStep(t,p,step);
+			if(result==-2) {
+				// p is in t or on its edge.
+				return t;
+			}
+			if(result==-3) return -1;
+			t = result;
+		}
+		// rounding made the walk go around in circles.  look at every triangle.
+		for(t=0;t<triangleCount;++t) {
+			int result = locateStep(t,p,0);
+			if(result==-2) return t;
+			if(result==-3) return -1;
+		}
+		throw new IllegalStateException("No triangle contains site "+p);
+	}
+
+	/**
+	 * @return the next triangle toward p, -2 if p is in t, or -3 if p is at the same place as a vertex.
+	 */
+	private int locateStep(int t,int p,int step) {
+		int g = cornerOf(t,ghost);
+		if(g==-1) {
+			// start at a different edge each step so that rounding cannot trap the walk in a loop.
+			int zeroEdge = -1;
+			for(int i=0;i<3;++i) {
+				int e = (i+step)%3;
+				int a = v[t*3+e];
+				int b = v[t*3+(e+1)%3];
+				double o = orient(a,b,p);
+				if(o<0) return n[t*3+e];
+				if(o==0) {
+					if(isSamePlace(a,p) || isSamePlace(b,p)) return -3;
+					zeroEdge = e;
+				}
+			}
+			locatedEdge = zeroEdge;
+			return -2;
+		}
+
+		// the outside of the hull edge x->y
+		int e = (g+1)%3;
+		int x = v[t*3+e];
+		int y = v[t*3+(e+1)%3];
+		double o = orient(x,y,p);
+		if(o>0) {
+			locatedEdge = -1;
+			return -2;
+		}
+		if(o<0) return n[t*3+e];
+		if(isSamePlace(x,p) || isSamePlace(y,p)) return -3;
+		double dx = px[y]-px[x];
+		double dy = py[y]-py[x];
+		double s = (px[p]-px[x])*dx + (py[p]-py[x])*dy;
+		if(s<=0) {
+			// in line with the hull edge, past x.  follow the hull.
+			return n[t*3+g];
+		}
+		if(s>=dx*dx+dy*dy) {
+			// past y
+			return n[t*3+(e+1)%3];
+		}
+		// on the hull edge.  the triangle inside will split it.
+		return n[t*3+e];
+	}
+
+	/**
+	 * Split triangle t into three around p.
+	 */
+	private void splitTriangle(int t,int p) {
+		int a = v[t*3  ];
+		int b = v[t*3+1];
+		int c = v[t*3+2];
+		int nab = n[t*3  ];
+		int nbc = n[t*3+1];
+		int nca = n[t*3+2];
+
+		int t1 = newTriangle(b,c,p);
+		int t2 = newTriangle(c,a,p);
+		setTriangle(t,a,b,p);
+		setNeighbors(t ,nab,t1,t2);
+		setNeighbors(t1,nbc,t2,t );
+		setNeighbors(t2,nca,t ,t1);
+		replaceNeighbor(nbc,t,t1);
+		replaceNeighbor(nca,t,t2);
+
+		touch(t);
+		touch(t1);
+		touch(t2);
+		push(t*3);
+		push(t1*3);
+		push(t2*3);
+	}
+
+	/**
+	 * Split edge e of triangle t, and the triangle on the other side, into four triangles around p.
+	 */
+	private void splitEdge(int t,int e,int p) {
+		int a = v[t*3+e];
+		int b = v[t*3+(e+1)%3];
+		int c = v[t*3+(e+2)%3];
+		int u = n[t*3+e];
+		int f = edgeTo(u,t);
+		int d = v[u*3+(f+2)%3];
+		int nbc = n[t*3+(e+1)%3];
+		int nca = n[t*3+(e+2)%3];
+		int nad = n[u*3+(f+1)%3];
+		int ndb = n[u*3+(f+2)%3];
+
+		int t1 = newTriangle(b,c,p);
+		int u1 = newTriangle(d,b,p);
+		setTriangle(t,c,a,p);
+		setTriangle(u,a,d,p);
+		setNeighbors(t ,nca,u ,t1);
+		setNeighbors(t1,nbc,t ,u1);
+		setNeighbors(u ,nad,u1,t );
+		setNeighbors(u1,ndb,t1,u );
+		replaceNeighbor(nbc,t,t1);
+		replaceNeighbor(ndb,u,u1);
+
+		touch(t);
+		touch(t1);
+		touch(u);
+		touch(u1);
+		push(t*3);
+		push(t1*3);
+		push(u*3);
+		push(u1*3);
+	}
+
+	/**
+	 * Flip every edge on the stack that is not Delaunay, and check the edges around each flip.
+	 * @return false if the limit was reached.
+	 */
+	private boolean legalize(int limit) {
+		int flips=0;
+		while(stackSize>0) {
+			int code = stack[--stackSize];
+			int t = code/3;
+			int e = code%3;
+			if(!shouldFlip(t,e)) continue;
+			if(++flips>limit) return false;
+			flip(t,e);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the vertex across edge e of t is inside the circumcircle of t.
+	 */
+	private boolean shouldFlip(int t,int e) {
+		int u = n[t*3+e];
+		int d = v[u*3+(edgeTo(u,t)+2)%3];
+		int g = cornerOf(t,ghost);
+		if(d==ghost) {
+			// t is on the hull.  if a site moved across the hull, or onto it, t must go.
+			return orient(v[t*3],v[t*3+1],v[t*3+2]) <= 0;
+		}
+		if(g==-1) {
+			return inCircle(v[t*3],v[t*3+1],v[t*3+2],d) > 0;
+		}
+		// the circle through a hull edge and infinity is everything outside the edge.
+		int x = v[t*3+(g+1)%3];
+		int y = v[t*3+(g+2)%3];
+		if(e==(g+1)%3) {
+			// a site moved across the hull edge, or onto it.  the triangle inside must go.
+			return orient(x,y,d) >= 0;
+		}
+		// points in line with the hull are left alone, so no triangle is ever flat.
+		return orient(x,y,d) > 0;
+	}
+
+	/**
+	 * t=(a,b,p) and u=(b,a,d) become (p,a,d) and (d,b,p).
+	 */
+	private void flip(int t,int e) {
+		int a = v[t*3+e];
+		int b = v[t*3+(e+1)%3];
+		int p = v[t*3+(e+2)%3];
+		int u = n[t*3+e];
+		int f = edgeTo(u,t);
+		int d = v[u*3+(f+2)%3];
+		int nbp = n[t*3+(e+1)%3];
+		int npa = n[t*3+(e+2)%3];
+		int nad = n[u*3+(f+1)%3];
+		int ndb = n[u*3+(f+2)%3];
+
+		setTriangle(t,p,a,d);
+		setTriangle(u,d,b,p);
+		setNeighbors(t,npa,nad,u);
+		setNeighbors(u,ndb,nbp,t);
+		replaceNeighbor(nad,u,t);
+		replaceNeighbor(nbp,t,u);
+		touch(t);
+		touch(u);
+
+		// the edges that were across from the flipped edge
+		push(t*3+1);
+		push(u*3);
+		push(t*3);
+		push(u*3+1);
+	}
+
+	private int newTriangle(int a,int b,int c) {
+		int t = triangleCount++;
+		setTriangle(t,a,b,c);
+		return t;
+	}
+
+	private void setTriangle(int t,int a,int b,int c) {
+		v[t*3  ]=a;
+		v[t*3+1]=b;
+		v[t*3+2]=c;
+	}
+
+	private void setNeighbors(int t,int nab,int nbc,int nca) {
+		n[t*3  ]=nab;
+		n[t*3+1]=nbc;
+		n[t*3+2]=nca;
+	}
+
+	private void replaceNeighbor(int t,int from,int to) {
+		for(int i=0;i<3;++i) {
+			if(n[t*3+i]==from) {
+				n[t*3+i]=to;
+				return;
+			}
+		}
+	}
+
+	// remember that these vertices are in t.
+	private void touch(int t) {
+		for(int i=0;i<3;++i) {
+			vertexTriangle[v[t*3+i]]=t;
+		}
+		lastTriangle = isGhost(t) ? lastTriangle : t;
+	}
+
+	private void push(int code) {
+		if(stackSize==stack.length) {
+			stack = Arrays.copyOf(stack, Math.max(64, stack.length*2));
+		}
+		stack[stackSize++]=code;
+	}
+
+	private boolean isGhost(int t) {
+		return v[t*3]==ghost || v[t*3+1]==ghost || v[t*3+2]==ghost;
+	}
+
+	private int cornerOf(int t,int vertex) {
+		for(int i=0;i<3;++i) {
+			if(v[t*3+i]==vertex) return i;
+		}
+		return -1;
+	}
+
+	// the edge of t that is shared with u.
+	private int edgeTo(int t,int u) {
+		for(int i=0;i<3;++i) {
+			if(n[t*3+i]==u) return i;
+		}
+		throw new IllegalStateException("Triangles "+t+" and "+u+" are not neighbors");
+	}
+
+	private boolean isSamePlace(int a,int b) {
+		return px[a]==px[b] && py[a]==py[b];
+	}
+
+	private double distanceSq(int i,double x,double y) {
+		double dx = px[i]-x;
+		double dy = py[i]-y;
+		return dx*dx+dy*dy;
+	}
+
+	private int nearestByScan(double x,double y) {
+		int best=-1;
+		double bestD=Double.MAX_VALUE;
+		for(int i=0;i<count;++i) {
+			// duplicates are not in the triangulation.
+			if(!isFlat && vertexTriangle[i]==-1) continue;
+			double d = distanceSq(i,x,y);
+			if(d<bestD) {
+				bestD=d;
+				best=i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return positive if a,b,c turn left (counter-clockwise), negative if they turn right, zero if in line.
+	 */
+	private double orient(int a,int b,int c) {
+		return (px[b]-px[a])*(py[c]-py[a]) - (py[b]-py[a])*(px[c]-px[a]);
+	}
+
+	/**
+	 * @return positive if d is inside the circle through counter-clockwise a,b,c.
+	 */
+	private double inCircle(int a,int b,int c,int d) {
+		double adx = px[a]-px[d], ady = py[a]-py[d];
+		double bdx = px[b]-px[d], bdy = py[b]-py[d];
+		double cdx = px[c]-px[d], cdy = py[c]-py[d];
+		double ad = adx*adx + ady*ady;
+		double bd = bdx*bdx + bdy*bdy;
+		double cd = cdx*cdx + cdy*cdy;
+		return adx*(bdy*cd - bd*cdy)
+			 - ady*(bdx*cd - bd*cdx)
+			 + ad *(bdx*cdy - bdy*cdx);
+	}
+
+	private void circumcenter(int t,double [] out) {
+		int a = v[t*3], b = v[t*3+1], c = v[t*3+2];
+		double bx = px[b]-px[a], by = py[b]-py[a];
+		double cx = px[c]-px[a], cy = py[c]-py[a];
+		double d = 2*(bx*cy - by*cx);
+		double b2 = bx*bx+by*by;
+		double c2 = cx*cx+cy*cy;
+		out[0] = px[a] + (cy*b2 - by*c2)/d;
+		out[1] = py[a] + (bx*c2 - cx*b2)/d;
+	}
+
+	/**
+	 * Liang-Barsky clipping of segment {x1,y1,x2,y2} in place.
+	 * @return false if none of the segment is inside the rectangle.
+	 */
+	private static boolean clip(double [] s,double xMin,double xMax,double yMin,double yMax) {
+		double dx = s[2]-s[0];
+		double dy = s[3]-s[1];
+		double [] p = { -dx, dx, -dy, dy };
+		double [] q = { s[0]-xMin, xMax-s[0], s[1]-yMin, yMax-s[1] };
+		double t0=0, t1=1;
+		for(int i=0;i<4;++i) {
+			if(p[i]==0) {
+				if(q[i]<0) return false;
+				continue;
+			}
+			double r = q[i]/p[i];
+			if(p[i]<0) t0 = Math.max(t0, r);
+			else       t1 = Math.min(t1, r);
+			if(t0>t1) return false;
+		}
+		double x0 = s[0];
+		double y0 = s[1];
+		s[0] = x0 + t0*dx;
+		s[1] = y0 + t0*dy;
+		s[2] = x0 + t1*dx;
+		s[3] = y0 + t1*dy;
+		return true;
+	}
+}
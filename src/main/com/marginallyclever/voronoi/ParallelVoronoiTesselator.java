@@ -0,0 +1,292 @@
+package com.marginallyclever.voronoi;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import com.marginallyclever.convenience.ParallelHelper;
+
+/**
+ * Makes the Voronoi diagram of many sites in vertical strips at the same time.  Each strip runs its own
+ * {@link VoronoiTesselator} on the sites in the strip plus a margin of sites on either side, and keeps the edges
+ * inside the strip.
+ *
+ * A site outside the margin could be closer to some part of the strip than the sites that were used.  If so,
+ * the margin is doubled and the strip is done again.  An edge crossed by the line between two strips comes back
+ * from both strips in two pieces, and the pieces are joined back into one edge.
+ *
+ * The edges are the same as one {@link VoronoiTesselator} would make, in a different order.  With the same
+ * number of strips the order is always the same.  One tesselator must not be used by two threads at once.
+ * When called from inside a {@link ForkJoinPool} the strips run in that pool, otherwise they go to the common pool.
+ *
+ * @author Dan Royer
+ */
+public class ParallelVoronoiTesselator {
+	// fewer sites than this in a strip are not worth a thread.
+	private static final int MIN_SITES_PER_STRIP = 5000;
+	// the first margin, in average distances between sites.
+	private static final double FIRST_MARGIN = 3;
+
+	private int maxStrips;
+	private double minDistanceBetweenSites;
+	private Strip [] strips = new Strip[0];
+	private double [] sortedX = new double[0];
+
+	/**
+	 * One strip per processor.
+	 */
+	public ParallelVoronoiTesselator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param maxStrips the most strips to use.  Fewer are used when there are not many sites.
+	 */
+	public ParallelVoronoiTesselator(int maxStrips) {
+		this.maxStrips = Math.max(1, maxStrips);
+	}
+
+	/**
+	 * @param minDistanceBetweenSites same as {@link VoronoiTesselator#Init(double)}
+	 */
+	public void Init(double minDistanceBetweenSites) {
+		this.minDistanceBetweenSites = minDistanceBetweenSites;
+	}
+
+	/**
+	 * Same as {@link VoronoiTesselator#generateVoronoi(double[], double[], int, double, double, double, double, VoronoiEdgeBuffer)}.
+	 * @param xValuesIn Array of X values for each site.
+	 * @param yValuesIn Array of Y values for each site.
+	 * @param count     The number of sites to use from xValuesIn and yValuesIn.
+	 * @param minX      The minimum X of the bounding box around the voronoi
+	 * @param maxX      The maximum X of the bounding box around the voronoi
+	 * @param minY      The minimum Y of the bounding box around the voronoi
+	 * @param maxY      The maximum Y of the bounding box around the voronoi
+	 * @param out       cleared, then filled with the edges.  site1 and site2 are indexes into xValuesIn.
+	 */
+	public void generateVoronoi(double [] xValuesIn,double [] yValuesIn,int count,
+								double minX,double maxX,double minY,double maxY,VoronoiEdgeBuffer out) {
+		out.clear();
+		if(count==0) return;
+		if(minX>maxX) {
+			double temp = minX;
+			minX = maxX;
+			maxX = temp;
+		}
+		if(minY>maxY) {
+			double temp = minY;
+			minY = maxY;
+			maxY = temp;
+		}
+
+		int stripCount = Math.max(1, Math.min(maxStrips, count/MIN_SITES_PER_STRIP));
+		if(strips.length<stripCount) {
+			strips = Arrays.copyOf(strips, stripCount);
+			for(int k=0;k<stripCount;++k) {
+				if(strips[k]==null) strips[k] = new Strip();
+			}
+		}
+
+		// put the same number of sites in each strip.
+		if(sortedX.length<count) sortedX = new double[count];
+		System.arraycopy(xValuesIn, 0, sortedX, 0, count);
+		Arrays.sort(sortedX, 0, count);
+		double spacing = Math.sqrt(Math.max((maxX-minX)*(maxY-minY), 1e-12) / count);
+		double left = minX;
+		for(int k=0;k<stripCount;++k) {
+			double right = (k==stripCount-1) ? maxX : Math.min(maxX, Math.max(left, sortedX[(int)((long)count*(k+1)/stripCount)]));
+			strips[k].set(left,right,FIRST_MARGIN*spacing);
+			left = right;
+		}
+
+		final double y0 = minY, y1 = maxY;
+		final int n = stripCount;
+		ParallelHelper.forEachIndex(n,(k)->strips[k].tesselate(xValuesIn, yValuesIn, count, sortedX[0], sortedX[count-1], y0, y1, minDistanceBetweenSites));
+
+		stitch(stripCount,out);
+	}
+
+	/**
+	 * Copy the edges of every strip to out, in strip order.  Pieces of one edge that meet at the line between two
+	 * strips become one edge.  Two sites share at most one edge, so pieces with the same sites are the same edge.
+	 */
+	private void stitch(int stripCount,VoronoiEdgeBuffer out) {
+		Map<Long,Integer> seamEdges = new LinkedHashMap<Long,Integer>();
+		for(int k=0;k<stripCount;++k) {
+			Strip s = strips[k];
+			VoronoiEdgeBuffer edges = s.edges;
+			for(int i=0;i<edges.size();++i) {
+				double x1 = edges.x1[i], x2 = edges.x2[i];
+				boolean onSeam = (k>0 && (x1==s.left || x2==s.left))
+						|| (k<stripCount-1 && (x1==s.right || x2==s.right));
+				if(!onSeam) {
+					out.add(x1, edges.y1[i], x2, edges.y2[i], edges.site1[i], edges.site2[i]);
+					continue;
+				}
+				long a = Math.min(edges.site1[i], edges.site2[i]);
+				long b = Math.max(edges.site1[i], edges.site2[i]);
+				Long key = (a<<32) | b;
+				Integer j = seamEdges.get(key);
+				if(j==null) {
+					seamEdges.put(key, out.size());
+					out.add(x1, edges.y1[i], x2, edges.y2[i], edges.site1[i], edges.site2[i]);
+				} else {
+					join(out,j,x1,edges.y1[i],x2,edges.y2[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grow edge j of out to cover the segment (x1,y1)-(x2,y2) as well.  Both are on one line and touch, so the
+	 * result runs between the two end points furthest apart.  Edge j keeps its direction.
+	 */
+	private static void join(VoronoiEdgeBuffer out,int j,double x1,double y1,double x2,double y2) {
+		double [] px = { out.x1[j], out.x2[j], x1, x2 };
+		double [] py = { out.y1[j], out.y2[j], y1, y2 };
+		int bestA=0, bestB=1;
+		double bestD=-1;
+		for(int a=0;a<4;++a) {
+			for(int b=a+1;b<4;++b) {
+				double d = (px[b]-px[a])*(px[b]-px[a]) + (py[b]-py[a])*(py[b]-py[a]);
+				if(d>bestD) {
+					bestD = d;
+					bestA = a;
+					bestB = b;
+				}
+			}
+		}
+		double dx = out.x2[j]-out.x1[j];
+		double dy = out.y2[j]-out.y1[j];
+		if((px[bestB]-px[bestA])*dx + (py[bestB]-py[bestA])*dy < 0) {
+			int temp = bestA;
+			bestA = bestB;
+			bestB = temp;
+		}
+		out.x1[j] = px[bestA];
+		out.y1[j] = py[bestA];
+		out.x2[j] = px[bestB];
+		out.y2[j] = py[bestB];
+	}
+
+	/**
+	 * The working memory of one strip, kept from one call to the next.
+	 */
+	private static class Strip {
+		private VoronoiTesselator tesselator = new VoronoiTesselator();
+		private VoronoiEdgeBuffer local = new VoronoiEdgeBuffer();
+		// the edges of this strip, with the caller's site numbers.
+		private VoronoiEdgeBuffer edges = new VoronoiEdgeBuffer();
+		private double [] x = new double[0];
+		private double [] y = new double[0];
+		private int [] siteNbr = new int[0];
+		private double left, right, firstMargin, lastMargin;
+		// open if no sites were left out on that side.
+		private boolean loOpen, hiOpen;
+
+		public void set(double left,double right,double firstMargin) {
+			this.left = left;
+			this.right = right;
+			this.firstMargin = firstMargin;
+		}
+
+		public void tesselate(double [] xs,double [] ys,int count,double siteMinX,double siteMaxX,
+							  double minY,double maxY,double minDistanceBetweenSites) {
+			edges.clear();
+			if(left>=right) return;
+			if(x.length<count) {
+				x = new double[count];
+				y = new double[count];
+				siteNbr = new int[count];
+			}
+
+			int n;
+			// sites move a little between calls, so the margin that worked last time is a good place to start.
+			double margin = Math.max(firstMargin, lastMargin);
+			while(true) {
+				double lo = left-margin;
+				double hi = right+margin;
+				loOpen = lo<=siteMinX;
+				hiOpen = hi>=siteMaxX;
+				n=0;
+				for(int i=0;i<count;++i) {
+					if(xs[i]>=lo && xs[i]<=hi) {
+						x[n] = xs[i];
+						y[n] = ys[i];
+						siteNbr[n] = i;
+						n++;
+					}
+				}
+				// short edges are left out after the check, so the check sees every edge.
+				tesselator.Init(0);
+				tesselator.generateVoronoi(x, y, n, left, right, minY, maxY, local);
+				if(loOpen && hiOpen) break;
+				if(n==0) {
+					margin*=2;
+					continue;
+				}
+				double needed = neededMargin(n,minY,maxY);
+				if(needed<=margin) break;
+				// the cells at the edge of the margin are too big without their neighbors, so this is more than enough.
+				margin = Math.max(margin*2, needed);
+			}
+			lastMargin = margin;
+
+			for(int i=0;i<local.size();++i) {
+				int a = local.site1[i];
+				int b = local.site2[i];
+				double dx = x[b]-x[a];
+				double dy = y[b]-y[a];
+				if(Math.sqrt(dx*dx+dy*dy) < minDistanceBetweenSites) continue;
+				edges.add(local.x1[i], local.y1[i], local.x2[i], local.y2[i], siteNbr[a], siteNbr[b]);
+			}
+		}
+
+		/**
+		 * A site left out can only change the strip if it is nearer to some point in the strip than that point's
+		 * nearest site.  The distance from a point to its nearest site, plus how far left or right the point is,
+		 * is most at a corner of a cell.  The corners of cells in the strip are the ends of edges and the corners
+		 * of the strip, so only they are tested.
+		 * @return the smallest margin that leaves out no site that could change the strip.
+		 */
+		private double neededMargin(int n,double minY,double maxY) {
+			double needed = 0;
+			for(int i=0;i<local.size();++i) {
+				int s = local.site1[i];
+				needed = Math.max(needed, neededMargin(local.x1[i],local.y1[i],s));
+				needed = Math.max(needed, neededMargin(local.x2[i],local.y2[i],s));
+			}
+			needed = Math.max(needed, neededMargin(left,minY,nearest(n,left,minY)));
+			needed = Math.max(needed, neededMargin(left,maxY,nearest(n,left,maxY)));
+			needed = Math.max(needed, neededMargin(right,minY,nearest(n,right,minY)));
+			needed = Math.max(needed, neededMargin(right,maxY,nearest(n,right,maxY)));
+			return needed;
+		}
+
+		/**
+		 * @return how far past the strip the circle around (px,py) through site s reaches on a side that has sites
+		 * left out.
+		 */
+		private double neededMargin(double px,double py,int s) {
+			double d = Math.sqrt((px-x[s])*(px-x[s]) + (py-y[s])*(py-y[s]));
+			double needed = 0;
+			if(!loOpen) needed = Math.max(needed, left-(px-d));
+			if(!hiOpen) needed = Math.max(needed, px+d-right);
+			return needed;
+		}
+
+		private int nearest(int n,double px,double py) {
+			int best=0;
+			double bestD = Double.MAX_VALUE;
+			for(int i=0;i<n;++i) {
+				double d = (px-x[i])*(px-x[i]) + (py-y[i])*(py-y[i]);
+				if(d<bestD) {
+					bestD = d;
+					best = i;
+				}
+			}
+			return best;
+		}
+	}
+}
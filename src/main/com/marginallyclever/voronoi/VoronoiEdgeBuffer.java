@@ -0,0 +1,72 @@
+package com.marginallyclever.voronoi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A list of Voronoi edges kept in primitive arrays.  Clear it and fill it again every iteration.  The arrays only
+ * grow, so once they are big enough nothing more is allocated.
+ *
+ * Edge i runs from (x1[i],y1[i]) to (x2[i],y2[i]) and is the border between site1[i] and site2[i].
+ *
+ * @author Dan Royer
+ */
+public class VoronoiEdgeBuffer {
+	public double [] x1 = new double[0];
+	public double [] y1 = new double[0];
+	public double [] x2 = new double[0];
+	public double [] y2 = new double[0];
+	public int [] site1 = new int[0];
+	public int [] site2 = new int[0];
+	private int size;
+
+	public void clear() {
+		size=0;
+	}
+
+	/**
+	 * @return the number of edges.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void add(double x1,double y1,double x2,double y2,int site1,int site2) {
+		if(size==this.x1.length) grow(Math.max(16, size*2));
+		this.x1[size] = x1;
+		this.y1[size] = y1;
+		this.x2[size] = x2;
+		this.y2[size] = y2;
+		this.site1[size] = site1;
+		this.site2[size] = site2;
+		size++;
+	}
+
+	private void grow(int capacity) {
+		x1 = Arrays.copyOf(x1, capacity);
+		y1 = Arrays.copyOf(y1, capacity);
+		x2 = Arrays.copyOf(x2, capacity);
+		y2 = Arrays.copyOf(y2, capacity);
+		site1 = Arrays.copyOf(site1, capacity);
+		site2 = Arrays.copyOf(site2, capacity);
+	}
+
+	/**
+	 * @return a copy of every edge as a {@link VoronoiGraphEdge}.
+	 */
+	public List<VoronoiGraphEdge> toList() {
+		List<VoronoiGraphEdge> list = new ArrayList<VoronoiGraphEdge>(size);
+		for(int i=0;i<size;++i) {
+			VoronoiGraphEdge e = new VoronoiGraphEdge();
+			e.x1 = x1[i];
+			e.y1 = y1[i];
+			e.x2 = x2[i];
+			e.y2 = y2[i];
+			e.site1 = site1[i];
+			e.site2 = site2[i];
+			list.add(e);
+		}
+		return list;
+	}
+}
@@ -42,39 +42,71 @@
  * OF THIS SOFTWARE OR ITS FITNESS FOR ANY PARTICULAR PURPOSE.
  */
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
-import java.awt.Point;
-
 
+/**
+ * Fortune's sweep line Voronoi diagram.  Sites, edges, half edges and vertices are kept in primitive arrays that
+ * are reused from one call to the next, and the edges are written to a {@link VoronoiEdgeBuffer} supplied by the
+ * caller.  Once the arrays are big enough for the number of sites nothing more is allocated.
+ * One tesselator must not be used by two threads at once.
+ */
 public class VoronoiTesselator {
   // ************* Private members ******************
+  private final static int LE = 0;
+  private final static int RE = 1;
+  // a null link between half edges, edges, sites, or vertices.
+  private final static int NONE = -1;
+
   private double borderMinX, borderMaxX, borderMinY, borderMaxY;
   private int siteidx;
   private double xmin, xmax, ymin, ymax, deltax, deltay;
-  private int nvertices;
-  private int nedges;
   private int nsites;
-  private VoronoiSite[] sites;
-  private VoronoiSite bottomsite;
   private int sqrt_nsites;
   private double minDistanceBetweenSites;
+
+  // sites sorted bottom to top, then left to right.  siteNbr is the index the caller used.
+  private double[] siteX = new double[0];
+  private double[] siteY = new double[0];
+  private int[] siteNbr = new int[0];
+  private int bottomsite;
+
+  // points where three or more cells meet.
+  private int nvertices;
+  private double[] vertexX = new double[0];
+  private double[] vertexY = new double[0];
+
+  // edge e is the line a*x+b*y=c that bisects sites edgeReg[2e] and edgeReg[2e+1].
+  // its end points are the vertices edgeEp[2e] and edgeEp[2e+1].
+  private int nedges;
+  private double[] edgeA = new double[0];
+  private double[] edgeB = new double[0];
+  private double[] edgeC = new double[0];
+  private int[] edgeReg = new int[0];
+  private int[] edgeEp = new int[0];
+
+  // half edges
+  private int nhalfedges;
+  private int[] heLeft = new int[0];
+  private int[] heRight = new int[0];
+  private int[] heEdge = new int[0];
+  private int[] hePm = new int[0];
+  private int[] heVertex = new int[0];
+  private int[] hePQnext = new int[0];
+  private double[] heYstar = new double[0];
+  private boolean[] heDeleted = new boolean[0];
+
   private int PQcount;
   private int PQmin;
   private int PQhashsize;
-  private VoronoiHalfEdge[] PQhash;
-
-  private final static int LE = 0;
-  private final static int RE = 1;
+  private int[] PQhash = new int[0];
+  private double PQminX, PQminY;
 
   private int ELhashsize;
-  private VoronoiHalfEdge ELhash[];
-  private VoronoiHalfEdge ELleftend, ELrightend;
-  private List<VoronoiGraphEdge> allEdges;
+  private int[] ELhash = new int[0];
+  private int ELleftend, ELrightend;
+  private VoronoiEdgeBuffer allEdges;
 
 
   /*********************************************************
@@ -86,8 +118,6 @@ public VoronoiTesselator() {
 
   public void Init(double minDistanceBetweenSites) {
     siteidx = 0;
-    this.sites = null;
-    this.allEdges = null;
     this.minDistanceBetweenSites = minDistanceBetweenSites;
   }
 
@@ -102,7 +132,29 @@ public void Init(double minDistanceBetweenSites) {
    */
   public List<VoronoiGraphEdge> generateVoronoi(double[] xValuesIn, double[] yValuesIn,
                                                 double minX, double maxX, double minY, double maxY) {
-    sort(xValuesIn, yValuesIn, xValuesIn.length);
+    VoronoiEdgeBuffer edges = new VoronoiEdgeBuffer();
+    generateVoronoi(xValuesIn, yValuesIn, xValuesIn.length, minX, maxX, minY, maxY, edges);
+    return edges.toList();
+  }
+
+  /**
+   * Same as {@link #generateVoronoi(double[], double[], double, double, double, double)} without allocating.
+   * @param xValuesIn Array of X values for each site.
+   * @param yValuesIn Array of Y values for each site.
+   * @param count     The number of sites to use from xValuesIn and yValuesIn.
+   * @param minX      The minimum X of the bounding box around the voronoi
+   * @param maxX      The maximum X of the bounding box around the voronoi
+   * @param minY      The minimum Y of the bounding box around the voronoi
+   * @param maxY      The maximum Y of the bounding box around the voronoi
+   * @param out       cleared, then filled with the edges.  site1 and site2 are indexes into xValuesIn.
+   */
+  public void generateVoronoi(double[] xValuesIn, double[] yValuesIn, int count,
+                              double minX, double maxX, double minY, double maxY, VoronoiEdgeBuffer out) {
+    out.clear();
+    if (count == 0) {
+      return;
+    }
+    sort(xValuesIn, yValuesIn, count);
 
     // Check bounding box inputs - if mins are bigger than maxes, swap them
     double temp = 0;
@@ -122,9 +174,9 @@ public List<VoronoiGraphEdge> generateVoronoi(double[] xValuesIn, double[] yValu
     borderMaxY = maxY;
 
     siteidx = 0;
+    allEdges = out;
     voronoi_bd();
-
-    return allEdges;
+    allEdges = null;
   }
 
 
@@ -133,68 +185,96 @@ public List<VoronoiGraphEdge> generateVoronoi(double[] xValuesIn, double[] yValu
    ********************************************************/
 
   private void sort(double[] xValuesIn, double[] yValuesIn, int count) {
-    sites = null;
-    allEdges = new LinkedList<>();
-
     nsites = count;
     nvertices = 0;
     nedges = 0;
+    nhalfedges = 0;
 
     double sn = (double) nsites + 4;
     sqrt_nsites = (int) Math.sqrt(sn);
 
     // Copy the inputs so we don't modify the originals
-    double[] xValues = new double[count];
-    double[] yValues = new double[count];
-    for (int i = 0; i < count; i++) {
-      xValues[i] = xValuesIn[i];
-      yValues[i] = yValuesIn[i];
+    if (siteX.length < count) {
+      siteX = new double[count];
+      siteY = new double[count];
+      siteNbr = new int[count];
+    }
+    sortNode(xValuesIn, yValuesIn, count);
+  }
+
+  // sort the sites in [lo,hi) bottom to top, then left to right.
+  private void qsort(int lo, int hi) {
+    while (hi - lo > 16) {
+      // median of three
+      int mid = (lo + hi) >>> 1;
+      if (siteLess(mid, lo)) siteSwap(mid, lo);
+      if (siteLess(hi - 1, lo)) siteSwap(hi - 1, lo);
+      if (siteLess(hi - 1, mid)) siteSwap(hi - 1, mid);
+      double px = siteX[mid], py = siteY[mid];
+      int pn = siteNbr[mid];
+
+      int i = lo, j = hi - 1;
+      while (i <= j) {
+        while (siteCompare(i, px, py, pn) < 0) i++;
+        while (siteCompare(j, px, py, pn) > 0) j--;
+        if (i <= j) {
+          siteSwap(i, j);
+          i++;
+          j--;
+        }
+      }
+      // recurse into the smaller part, loop on the bigger part.
+      if (j - lo < hi - i) {
+        qsort(lo, j + 1);
+        lo = i;
+      } else {
+        qsort(i, hi);
+        hi = j + 1;
+      }
+    }
+    for (int i = lo + 1; i < hi; i++) {
+      for (int j = i; j > lo && siteLess(j, j - 1); j--) {
+        siteSwap(j, j - 1);
+      }
     }
-    sortNode(xValues, yValues, count);
   }
 
-  private void qsort(VoronoiSite[] sites) {
-    List<VoronoiSite> listSites = new ArrayList<>(sites.length);
-    Collections.addAll(listSites, sites);
+  // ties go to the site the caller listed first, same as a stable sort.
+  private int siteCompare(int i, double x, double y, int nbr) {
+    if (siteY[i] < y) return -1;
+    if (siteY[i] > y) return 1;
+    if (siteX[i] < x) return -1;
+    if (siteX[i] > x) return 1;
+    return Integer.compare(siteNbr[i], nbr);
+  }
 
-    Collections.sort(listSites, new Comparator<VoronoiSite>() {
-      @Override
-      public final int compare(VoronoiSite p1, VoronoiSite p2) {
-        Point s1 = p1.coord, s2 = p2.coord;
-        if (s1.y < s2.y) {
-          return (-1);
-        }
-        if (s1.y > s2.y) {
-          return (1);
-        }
-        if (s1.getX() < s2.getX()) {
-          return (-1);
-        }
-        if (s1.getX() > s2.getX()) {
-          return (1);
-        }
-        return (0);
-      }
-    });
+  private boolean siteLess(int i, int j) {
+    return siteCompare(i, siteX[j], siteY[j], siteNbr[j]) < 0;
+  }
 
-    // Copy back into the array
-    for (int i = 0; i < sites.length; i++) {
-      sites[i] = listSites.get(i);
-    }
+  private void siteSwap(int i, int j) {
+    double tx = siteX[i];
+    siteX[i] = siteX[j];
+    siteX[j] = tx;
+    double ty = siteY[i];
+    siteY[i] = siteY[j];
+    siteY[j] = ty;
+    int tn = siteNbr[i];
+    siteNbr[i] = siteNbr[j];
+    siteNbr[j] = tn;
   }
 
   private void sortNode(double xValues[], double yValues[], int numPoints) {
     int i;
     nsites = numPoints;
-    sites = new VoronoiSite[nsites];
     xmin = xValues[0];
     ymin = yValues[0];
     xmax = xValues[0];
     ymax = yValues[0];
     for (i = 0; i < nsites; i++) {
-      sites[i] = new VoronoiSite();
-      sites[i].coord.setLocation( xValues[i], yValues[i] );
-      sites[i].sitenbr = i;
+      siteX[i] = xValues[i];
+      siteY[i] = yValues[i];
+      siteNbr[i] = i;
 
       if (xValues[i] < xmin) {
         xmin = xValues[i];
@@ -208,83 +288,123 @@ private void sortNode(double xValues[], double yValues[], int numPoints) {
         ymax = yValues[i];
       }
     }
-    qsort(sites);
+    qsort(0, nsites);
+    // a site on top of another has no edge between them, and the sweep can't make one.  the site listed first
+    // is sorted first and keeps the cell.
+    int kept = 1;
+    for (i = 1; i < nsites; i++) {
+      if (siteX[i] == siteX[kept - 1] && siteY[i] == siteY[kept - 1]) {
+        continue;
+      }
+      siteX[kept] = siteX[i];
+      siteY[kept] = siteY[i];
+      siteNbr[kept] = siteNbr[i];
+      kept++;
+    }
+    nsites = kept;
     deltay = ymax - ymin;
     deltax = xmax - xmin;
   }
 
+  // the arena only grows, so after the first few calls of the same size nothing is allocated.
+  private int newVertex(double x, double y) {
+    if (nvertices == vertexX.length) {
+      int capacity = Math.max(16, nvertices * 2);
+      vertexX = Arrays.copyOf(vertexX, capacity);
+      vertexY = Arrays.copyOf(vertexY, capacity);
+    }
+    vertexX[nvertices] = x;
+    vertexY[nvertices] = y;
+    return nvertices++;
+  }
+
+  private int newEdge() {
+    if (nedges == edgeA.length) {
+      int capacity = Math.max(16, nedges * 2);
+      edgeA = Arrays.copyOf(edgeA, capacity);
+      edgeB = Arrays.copyOf(edgeB, capacity);
+      edgeC = Arrays.copyOf(edgeC, capacity);
+      edgeReg = Arrays.copyOf(edgeReg, capacity * 2);
+      edgeEp = Arrays.copyOf(edgeEp, capacity * 2);
+    }
+    return nedges++;
+  }
+
+  private int newHalfEdge() {
+    if (nhalfedges == heLeft.length) {
+      int capacity = Math.max(16, nhalfedges * 2);
+      heLeft = Arrays.copyOf(heLeft, capacity);
+      heRight = Arrays.copyOf(heRight, capacity);
+      heEdge = Arrays.copyOf(heEdge, capacity);
+      hePm = Arrays.copyOf(hePm, capacity);
+      heVertex = Arrays.copyOf(heVertex, capacity);
+      hePQnext = Arrays.copyOf(hePQnext, capacity);
+      heYstar = Arrays.copyOf(heYstar, capacity);
+      heDeleted = Arrays.copyOf(heDeleted, capacity);
+    }
+    return nhalfedges++;
+  }
+
   /* return a single in-storage site */
-  private VoronoiSite nextone() {
-    VoronoiSite s;
+  private int nextone() {
     if (siteidx < nsites) {
-      s = sites[siteidx];
-      siteidx += 1;
-      return (s);
+      return siteidx++;
     } else {
-      return (null);
+      return NONE;
     }
   }
 
-  private VoronoiEdge bisect(VoronoiSite s1, VoronoiSite s2) {
+  private int bisect(int s1, int s2) {
     double dx, dy, adx, ady;
-    VoronoiEdge newedge;
-
-    newedge = new VoronoiEdge();
+    int newedge = newEdge();
 
     // store the sites that this edge is bisecting
-    newedge.reg[0] = s1;
-    newedge.reg[1] = s2;
+    edgeReg[newedge * 2] = s1;
+    edgeReg[newedge * 2 + 1] = s2;
     // to begin with, there are no endpoints on the bisector - it goes to
     // infinity
-    newedge.ep[0] = null;
-    newedge.ep[1] = null;
+    edgeEp[newedge * 2] = NONE;
+    edgeEp[newedge * 2 + 1] = NONE;
 
     // get the difference in x dist between the sites
-    dx = s2.coord.getX() - s1.coord.getX();
-    dy = s2.coord.y - s1.coord.y;
+    dx = siteX[s2] - siteX[s1];
+    dy = siteY[s2] - siteY[s1];
     // make sure that the difference in positive
     adx = dx > 0 ? dx : -dx;
     ady = dy > 0 ? dy : -dy;
-    newedge.c = (double) (s1.coord.getX() * dx + s1.coord.y * dy + (dx * dx + dy
-        * dy) * 0.5);// get the slope of the line
+    double c = siteX[s1] * dx + siteY[s1] * dy + (dx * dx + dy * dy) * 0.5;// get the slope of the line
 
     if (adx > ady) {
-      newedge.a = 1.0f;
-      newedge.b = dy / dx;
-      newedge.c /= dx;// set formula of line, with x fixed to 1
+      edgeA[newedge] = 1.0;
+      edgeB[newedge] = dy / dx;
+      edgeC[newedge] = c / dx;// set formula of line, with x fixed to 1
     } else {
-      newedge.b = 1.0f;
-      newedge.a = dx / dy;
-      newedge.c /= dy;// set formula of line, with y fixed to 1
+      edgeB[newedge] = 1.0;
+      edgeA[newedge] = dx / dy;
+      edgeC[newedge] = c / dy;// set formula of line, with y fixed to 1
     }
-
-    newedge.edgenbr = nedges;
-
-    nedges += 1;
     return (newedge);
   }
 
-  private void makevertex(VoronoiSite v) {
-    v.sitenbr = nvertices;
-    nvertices += 1;
-  }
-
   private boolean PQinitialize() {
     PQcount = 0;
     PQmin = 0;
     PQhashsize = 4 * sqrt_nsites;
-    PQhash = new VoronoiHalfEdge[PQhashsize];
+    if (PQhash.length < PQhashsize) {
+      PQhash = new int[PQhashsize];
+    }
 
+    // each bucket starts with an empty half edge.
     for (int i = 0; i < PQhashsize; i += 1) {
-      PQhash[i] = new VoronoiHalfEdge();
+      PQhash[i] = HEcreate(NONE, 0);
     }
     return true;
   }
 
-  private int PQbucket(VoronoiHalfEdge he) {
+  private int PQbucket(int he) {
     int bucket;
 
-    bucket = (int) ((he.ystar - ymin) / deltay * PQhashsize);
+    bucket = (int) ((heYstar[he] - ymin) / deltay * PQhashsize);
     if (bucket < 0) {
       bucket = 0;
     }
@@ -298,34 +418,34 @@ private int PQbucket(VoronoiHalfEdge he) {
   }
 
   // push the HalfEdge into the ordered linked list of vertices
-  private void PQinsert(VoronoiHalfEdge he, VoronoiSite v, double offset) {
-    VoronoiHalfEdge last, next;
+  private void PQinsert(int he, int v, double offset) {
+    int last, next;
 
-    he.vertex = v;
-    he.ystar = (double) (v.coord.y + offset);
+    heVertex[he] = v;
+    heYstar[he] = vertexY[v] + offset;
     last = PQhash[PQbucket(he)];
-    while ((next = last.PQnext) != null
-        && (he.ystar > next.ystar || (he.ystar == next.ystar && v.coord.getX() > next.vertex.coord.getX()))) {
+    while ((next = hePQnext[last]) != NONE
+        && (heYstar[he] > heYstar[next] || (heYstar[he] == heYstar[next] && vertexX[v] > vertexX[heVertex[next]]))) {
       last = next;
     }
-    he.PQnext = last.PQnext;
-    last.PQnext = he;
+    hePQnext[he] = hePQnext[last];
+    hePQnext[last] = he;
     PQcount += 1;
   }
 
   // remove the HalfEdge from the list of vertices
-  private void PQdelete(VoronoiHalfEdge he) {
-    VoronoiHalfEdge last;
+  private void PQdelete(int he) {
+    int last;
 
-    if (he.vertex != null) {
+    if (heVertex[he] != NONE) {
       last = PQhash[PQbucket(he)];
-      while (last.PQnext != he) {
-        last = last.PQnext;
+      while (hePQnext[last] != he) {
+        last = hePQnext[last];
       }
 
-      last.PQnext = he.PQnext;
+      hePQnext[last] = hePQnext[he];
       PQcount -= 1;
-      he.vertex = null;
+      heVertex[he] = NONE;
     }
   }
 
@@ -333,113 +453,114 @@ private boolean PQempty() {
     return (PQcount == 0);
   }
 
-  private Point PQ_min() {
-    Point answer = new Point();
-
-    while (PQhash[PQmin].PQnext == null) {
+  // sets PQminX and PQminY to the lowest vertex event.
+  private void PQ_min() {
+    while (hePQnext[PQhash[PQmin]] == NONE) {
       PQmin += 1;
     }
-    answer.setLocation( PQhash[PQmin].PQnext.vertex.coord.x, 
-    					PQhash[PQmin].PQnext.ystar );
-    return (answer);
+    int he = hePQnext[PQhash[PQmin]];
+    PQminX = vertexX[heVertex[he]];
+    PQminY = heYstar[he];
   }
 
-  private VoronoiHalfEdge PQextractmin() {
-    VoronoiHalfEdge curr;
+  private int PQextractmin() {
+    int curr;
 
-    curr = PQhash[PQmin].PQnext;
-    PQhash[PQmin].PQnext = curr.PQnext;
+    curr = hePQnext[PQhash[PQmin]];
+    hePQnext[PQhash[PQmin]] = hePQnext[curr];
     PQcount -= 1;
     return (curr);
   }
 
-  private VoronoiHalfEdge HEcreate(VoronoiEdge e, int pm) {
-    VoronoiHalfEdge answer;
-    answer = new VoronoiHalfEdge();
-    answer.ELedge = e;
-    answer.ELpm = pm;
-    answer.PQnext = null;
-    answer.vertex = null;
+  private int HEcreate(int e, int pm) {
+    int answer = newHalfEdge();
+    heEdge[answer] = e;
+    hePm[answer] = pm;
+    hePQnext[answer] = NONE;
+    heVertex[answer] = NONE;
+    heLeft[answer] = NONE;
+    heRight[answer] = NONE;
+    heYstar[answer] = 0;
+    heDeleted[answer] = false;
     return (answer);
   }
 
   private boolean ELinitialize() {
-    int i;
     ELhashsize = 2 * sqrt_nsites;
-    ELhash = new VoronoiHalfEdge[ELhashsize];
-
-    for (i = 0; i < ELhashsize; i += 1) {
-      ELhash[i] = null;
+    if (ELhash.length < ELhashsize) {
+      ELhash = new int[ELhashsize];
     }
-    ELleftend = HEcreate(null, 0);
-    ELrightend = HEcreate(null, 0);
-    ELleftend.ELleft = null;
-    ELleftend.ELright = ELrightend;
-    ELrightend.ELleft = ELleftend;
-    ELrightend.ELright = null;
+    Arrays.fill(ELhash, 0, ELhashsize, NONE);
+
+    ELleftend = HEcreate(NONE, 0);
+    ELrightend = HEcreate(NONE, 0);
+    heLeft[ELleftend] = NONE;
+    heRight[ELleftend] = ELrightend;
+    heLeft[ELrightend] = ELleftend;
+    heRight[ELrightend] = NONE;
     ELhash[0] = ELleftend;
     ELhash[ELhashsize - 1] = ELrightend;
 
     return true;
   }
 
-  private VoronoiHalfEdge ELright(VoronoiHalfEdge he) {
-    return (he.ELright);
+  private int ELright(int he) {
+    return (heRight[he]);
   }
 
-  private VoronoiHalfEdge ELleft(VoronoiHalfEdge he) {
-    return (he.ELleft);
+  private int ELleft(int he) {
+    return (heLeft[he]);
   }
 
-  private VoronoiSite leftreg(VoronoiHalfEdge he) {
-    if (he.ELedge == null) {
+  private int leftreg(int he) {
+    if (heEdge[he] == NONE) {
       return (bottomsite);
     }
-    return (he.ELpm == LE ? he.ELedge.reg[LE] : he.ELedge.reg[RE]);
+    return (hePm[he] == LE ? edgeReg[heEdge[he] * 2 + LE] : edgeReg[heEdge[he] * 2 + RE]);
   }
 
-  private void ELinsert(VoronoiHalfEdge lb, VoronoiHalfEdge newHe) {
-    newHe.ELleft = lb;
-    newHe.ELright = lb.ELright;
-    (lb.ELright).ELleft = newHe;
-    lb.ELright = newHe;
+  private void ELinsert(int lb, int newHe) {
+    heLeft[newHe] = lb;
+    heRight[newHe] = heRight[lb];
+    heLeft[heRight[lb]] = newHe;
+    heRight[lb] = newHe;
   }
 
   /*
    * This delete routine can't reclaim node, since pointers from hash table
    * may be present.
    */
-  private void ELdelete(VoronoiHalfEdge he) {
-    (he.ELleft).ELright = he.ELright;
-    (he.ELright).ELleft = he.ELleft;
-    he.deleted = true;
+  private void ELdelete(int he) {
+    heRight[heLeft[he]] = heRight[he];
+    heLeft[heRight[he]] = heLeft[he];
+    heDeleted[he] = true;
   }
 
   /* Get entry from hash table, pruning any deleted nodes */
-  private VoronoiHalfEdge ELgethash(int b) {
-    VoronoiHalfEdge he;
+  private int ELgethash(int b) {
+    int he;
 
     if (b < 0 || b >= ELhashsize) {
-      return (null);
+      return (NONE);
     }
     he = ELhash[b];
-    if (he == null || !he.deleted) {
+    if (he == NONE || !heDeleted[he]) {
       return (he);
     }
 
         /* Hash table points to deleted half edge. Patch as necessary. */
-    ELhash[b] = null;
-    return (null);
+    ELhash[b] = NONE;
+    return (NONE);
   }
 
-  private VoronoiHalfEdge ELleftbnd(Point p) {
+  private int ELleftbnd(double px, double py) {
     int i, bucket;
-    VoronoiHalfEdge he;
+    int he;
 
         /* Use hash table to get close to desired halfedge */
     // use the hash function to find the place in the hash map that this
     // HalfEdge should be
-    bucket = (int) ((p.getX() - xmin) / deltax * ELhashsize);
+    bucket = (int) ((px - xmin) / deltax * ELhashsize);
 
     // make sure that the bucket position in within the range of the hash
     // array
@@ -451,34 +572,34 @@ private VoronoiHalfEdge ELleftbnd(Point p) {
     }
 
     he = ELgethash(bucket);
-    if (he == null)
+    if (he == NONE)
     // if the HE isn't found, search backwards and forwards in the hash map
     // for the first non-null entry
     {
       for (i = 1; i < ELhashsize; i += 1) {
-        if ((he = ELgethash(bucket - i)) != null) {
+        if ((he = ELgethash(bucket - i)) != NONE) {
           break;
         }
-        if ((he = ELgethash(bucket + i)) != null) {
+        if ((he = ELgethash(bucket + i)) != NONE) {
           break;
         }
       }
     }
         /* Now search linear list of halfedges for the correct one */
-    if (he == ELleftend || (he != ELrightend && right_of(he, p))) {
+    if (he == ELleftend || (he != ELrightend && right_of(he, px, py))) {
       // keep going right on the list until either the end is reached, or
       // you find the 1st edge which the point isn't to the right of
       do {
-        he = he.ELright;
-      } while (he != ELrightend && right_of(he, p));
-      he = he.ELleft;
+        he = heRight[he];
+      } while (he != ELrightend && right_of(he, px, py));
+      he = heLeft[he];
     } else
     // if the point is to the left of the HalfEdge, then search left for
     // the HE just to the left of the point
     {
       do {
-        he = he.ELleft;
-      } while (he != ELleftend && !right_of(he, p));
+        he = heLeft[he];
+      } while (he != ELleftend && !right_of(he, px, py));
     }
 
         /* Update hash table and reference counts */
@@ -488,27 +609,21 @@ private VoronoiHalfEdge ELleftbnd(Point p) {
     return (he);
   }
 
-  private void pushGraphEdge(VoronoiSite leftSite, VoronoiSite rightSite, double x1, double y1, double x2, double y2) {
-    VoronoiGraphEdge newEdge = new VoronoiGraphEdge();
-    allEdges.add(newEdge);
-    newEdge.x1 = x1;
-    newEdge.y1 = y1;
-    newEdge.x2 = x2;
-    newEdge.y2 = y2;
-
-    newEdge.site1 = leftSite.sitenbr;
-    newEdge.site2 = rightSite.sitenbr;
+  private void pushGraphEdge(int leftSite, int rightSite, double x1, double y1, double x2, double y2) {
+    allEdges.add(x1, y1, x2, y2, siteNbr[leftSite], siteNbr[rightSite]);
   }
 
-  private void clip_line(VoronoiEdge e) {
+  private void clip_line(int e) {
     double pxmin, pxmax, pymin, pymax;
-    VoronoiSite s1, s2;
+    int s1, s2;
     double x1 = 0, x2 = 0, y1 = 0, y2 = 0;
+    double a = edgeA[e], b = edgeB[e], c = edgeC[e];
+    int reg0 = edgeReg[e * 2], reg1 = edgeReg[e * 2 + 1];
 
-    x1 = e.reg[0].coord.getX();
-    x2 = e.reg[1].coord.getX();
-    y1 = e.reg[0].coord.y;
-    y2 = e.reg[1].coord.y;
+    x1 = siteX[reg0];
+    x2 = siteX[reg1];
+    y1 = siteY[reg0];
+    y2 = siteY[reg1];
 
     // if the distance between the two points this line was created from is
     // less than the square root of 2, then ignore it
@@ -520,132 +635,141 @@ private void clip_line(VoronoiEdge e) {
     pymin = borderMinY;
     pymax = borderMaxY;
 
-    if (e.a == 1.0 && e.b >= 0.0) {
-      s1 = e.ep[1];
-      s2 = e.ep[0];
+    if (a == 1.0 && b >= 0.0) {
+      s1 = edgeEp[e * 2 + 1];
+      s2 = edgeEp[e * 2];
     } else {
-      s1 = e.ep[0];
-      s2 = e.ep[1];
+      s1 = edgeEp[e * 2];
+      s2 = edgeEp[e * 2 + 1];
     }
 
-    if (e.a == 1.0) {
+    if (a == 1.0) {
+      // the whole edge is above or below the box.  clamping would leave a point on the line past its end.
+      if ((s1 != NONE && vertexY[s1] > pymax) || (s2 != NONE && vertexY[s2] < pymin)) {
+        return;
+      }
       y1 = pymin;
-      if (s1 != null && s1.coord.y > pymin) {
-        y1 = s1.coord.y;
+      if (s1 != NONE && vertexY[s1] > pymin) {
+        y1 = vertexY[s1];
       }
       if (y1 > pymax) {
         y1 = pymax;
       }
-      x1 = e.c - e.b * y1;
+      x1 = c - b * y1;
       y2 = pymax;
-      if (s2 != null && s2.coord.y < pymax) {
-        y2 = s2.coord.y;
+      if (s2 != NONE && vertexY[s2] < pymax) {
+        y2 = vertexY[s2];
       }
 
       if (y2 < pymin) {
         y2 = pymin;
       }
-      x2 = (e.c) - (e.b) * y2;
+      x2 = c - b * y2;
       if (((x1 > pxmax) & (x2 > pxmax)) | ((x1 < pxmin) & (x2 < pxmin))) {
         return;
       }
       if (x1 > pxmax) {
         x1 = pxmax;
-        y1 = (e.c - x1) / e.b;
+        y1 = (c - x1) / b;
       }
       if (x1 < pxmin) {
         x1 = pxmin;
-        y1 = (e.c - x1) / e.b;
+        y1 = (c - x1) / b;
       }
       if (x2 > pxmax) {
         x2 = pxmax;
-        y2 = (e.c - x2) / e.b;
+        y2 = (c - x2) / b;
       }
       if (x2 < pxmin) {
         x2 = pxmin;
-        y2 = (e.c - x2) / e.b;
+        y2 = (c - x2) / b;
       }
     } else {
+      // the whole edge is left or right of the box.
+      if ((s1 != NONE && vertexX[s1] > pxmax) || (s2 != NONE && vertexX[s2] < pxmin)) {
+        return;
+      }
       x1 = pxmin;
-      if (s1 != null && s1.coord.getX() > pxmin) {
-        x1 = s1.coord.getX();
+      if (s1 != NONE && vertexX[s1] > pxmin) {
+        x1 = vertexX[s1];
       }
       if (x1 > pxmax) {
         x1 = pxmax;
       }
-      y1 = e.c - e.a * x1;
+      y1 = c - a * x1;
       x2 = pxmax;
-      if (s2 != null && s2.coord.getX() < pxmax) {
-        x2 = s2.coord.getX();
+      if (s2 != NONE && vertexX[s2] < pxmax) {
+        x2 = vertexX[s2];
       }
       if (x2 < pxmin) {
         x2 = pxmin;
       }
-      y2 = e.c - e.a * x2;
+      y2 = c - a * x2;
       if (((y1 > pymax) & (y2 > pymax)) | ((y1 < pymin) & (y2 < pymin))) {
         return;
       }
       if (y1 > pymax) {
         y1 = pymax;
-        x1 = (e.c - y1) / e.a;
+        x1 = (c - y1) / a;
       }
       if (y1 < pymin) {
         y1 = pymin;
-        x1 = (e.c - y1) / e.a;
+        x1 = (c - y1) / a;
       }
       if (y2 > pymax) {
         y2 = pymax;
-        x2 = (e.c - y2) / e.a;
+        x2 = (c - y2) / a;
       }
       if (y2 < pymin) {
         y2 = pymin;
-        x2 = (e.c - y2) / e.a;
+        x2 = (c - y2) / a;
       }
     }
 
-    pushGraphEdge(e.reg[0], e.reg[1], x1, y1, x2, y2);
+    pushGraphEdge(reg0, reg1, x1, y1, x2, y2);
   }
 
-  private void endpoint(VoronoiEdge e, int lr, VoronoiSite s) {
-    e.ep[lr] = s;
-    if (e.ep[RE - lr] == null) {
+  private void endpoint(int e, int lr, int s) {
+    edgeEp[e * 2 + lr] = s;
+    if (edgeEp[e * 2 + RE - lr] == NONE) {
       return;
     }
     clip_line(e);
   }
 
   /* returns 1 if p is to right of halfedge e */
-  private boolean right_of(VoronoiHalfEdge el, Point p) {
-    VoronoiEdge e;
-    VoronoiSite topsite;
+  private boolean right_of(int el, double px, double py) {
+    int e;
+    int topsite;
     boolean right_of_site;
     boolean above, fast;
     double dxp, dyp, dxs, t1, t2, t3, yl;
 
-    e = el.ELedge;
-    topsite = e.reg[1];
-    if (p.getX() > topsite.coord.getX()) {
+    e = heEdge[el];
+    topsite = edgeReg[e * 2 + 1];
+    if (px > siteX[topsite]) {
       right_of_site = true;
     } else {
       right_of_site = false;
     }
-    if (right_of_site && el.ELpm == LE) {
+    if (right_of_site && hePm[el] == LE) {
       return (true);
     }
-    if (!right_of_site && el.ELpm == RE) {
+    if (!right_of_site && hePm[el] == RE) {
       return (false);
     }
 
-    if (e.a == 1.0) {
-      dyp = p.y - topsite.coord.y;
-      dxp = p.getX() - topsite.coord.getX();
+    double a = edgeA[e], b = edgeB[e], c = edgeC[e];
+    if (a == 1.0) {
+      dyp = py - siteY[topsite];
+      dxp = px - siteX[topsite];
       fast = false;
-      if ((!right_of_site & (e.b < 0.0)) | (right_of_site & (e.b >= 0.0))) {
-        above = dyp >= e.b * dxp;
+      if ((!right_of_site & (b < 0.0)) | (right_of_site & (b >= 0.0))) {
+        above = dyp >= b * dxp;
         fast = above;
       } else {
-        above = p.getX() + p.y * e.b > e.c;
-        if (e.b < 0.0) {
+        above = px + py * b > c;
+        if (b < 0.0) {
           above = !above;
         }
         if (!above) {
@@ -653,27 +777,27 @@ private boolean right_of(VoronoiHalfEdge el, Point p) {
         }
       }
       if (!fast) {
-        dxs = topsite.coord.getX() - (e.reg[0]).coord.getX();
-        above = e.b * (dxp * dxp - dyp * dyp) < dxs * dyp
-            * (1.0 + 2.0 * dxp / dxs + e.b * e.b);
-        if (e.b < 0.0) {
+        dxs = siteX[topsite] - siteX[edgeReg[e * 2]];
+        above = b * (dxp * dxp - dyp * dyp) < dxs * dyp
+            * (1.0 + 2.0 * dxp / dxs + b * b);
+        if (b < 0.0) {
           above = !above;
         }
       }
     } else /* e.b==1.0 */
 
     {
-      yl = e.c - e.a * p.getX();
-      t1 = p.y - yl;
-      t2 = p.getX() - topsite.coord.getX();
-      t3 = yl - topsite.coord.y;
+      yl = c - a * px;
+      t1 = py - yl;
+      t2 = px - siteX[topsite];
+      t3 = yl - siteY[topsite];
       above = t1 * t1 > t2 * t2 + t3 * t3;
     }
-    return (el.ELpm == LE ? above : !above);
+    return (hePm[el] == LE ? above : !above);
   }
 
-  private VoronoiSite rightreg(VoronoiHalfEdge he) {
-    if (he.ELedge == (VoronoiEdge) null)
+  private int rightreg(int he) {
+    if (heEdge[he] == NONE)
     // if this halfedge has no edge, return the bottom site (whatever
     // that is)
     {
@@ -682,46 +806,47 @@ private VoronoiSite rightreg(VoronoiHalfEdge he) {
 
     // if the ELpm field is zero, return the site 0 that this edge bisects,
     // otherwise return site number 1
-    return (he.ELpm == LE ? he.ELedge.reg[RE] : he.ELedge.reg[LE]);
+    return (hePm[he] == LE ? edgeReg[heEdge[he] * 2 + RE] : edgeReg[heEdge[he] * 2 + LE]);
   }
 
-  private double dist(VoronoiSite s, VoronoiSite t) {
+  // distance from vertex v to site s
+  private double dist(int v, int s) {
     double dx, dy;
-    dx = s.coord.getX() - t.coord.getX();
-    dy = s.coord.y - t.coord.y;
-    return (double) (Math.sqrt(dx * dx + dy * dy));
+    dx = vertexX[v] - siteX[s];
+    dy = vertexY[v] - siteY[s];
+    return Math.sqrt(dx * dx + dy * dy);
   }
 
-  // create a new site where the HalfEdges el1 and el2 intersect - note that
-  // the Point in the argument list is not used, don't know why it's there
-  private VoronoiSite intersect(VoronoiHalfEdge el1, VoronoiHalfEdge el2) {
-    VoronoiEdge e1, e2, e;
-    VoronoiHalfEdge el;
+  // create a new vertex where the HalfEdges el1 and el2 intersect, or NONE if they don't.
+  private int intersect(int el1, int el2) {
+    int e1, e2, e;
+    int el;
     double d, xint, yint;
     boolean right_of_site;
-    VoronoiSite v;
 
-    e1 = el1.ELedge;
-    e2 = el2.ELedge;
-    if (e1 == null || e2 == null) {
-      return null;
+    e1 = heEdge[el1];
+    e2 = heEdge[el2];
+    if (e1 == NONE || e2 == NONE) {
+      return NONE;
     }
 
     // if the two edges bisect the same parent, return null
-    if (e1.reg[1] == e2.reg[1]) {
-      return null;
+    if (edgeReg[e1 * 2 + 1] == edgeReg[e2 * 2 + 1]) {
+      return NONE;
     }
 
-    d = e1.a * e2.b - e1.b * e2.a;
+    d = edgeA[e1] * edgeB[e2] - edgeB[e1] * edgeA[e2];
     if (-1.0e-10 < d && d < 1.0e-10) {
-      return null;
+      return NONE;
     }
 
-    xint = (e1.c * e2.b - e2.c * e1.b) / d;
-    yint = (e2.c * e1.a - e1.c * e2.a) / d;
+    xint = (edgeC[e1] * edgeB[e2] - edgeC[e2] * edgeB[e1]) / d;
+    yint = (edgeC[e2] * edgeA[e1] - edgeC[e1] * edgeA[e2]) / d;
 
-    if ((e1.reg[1].coord.y < e2.reg[1].coord.y)
-        || (e1.reg[1].coord.y == e2.reg[1].coord.y && e1.reg[1].coord.getX() < e2.reg[1].coord.getX())) {
+    int top1 = edgeReg[e1 * 2 + 1];
+    int top2 = edgeReg[e2 * 2 + 1];
+    if ((siteY[top1] < siteY[top2])
+        || (siteY[top1] == siteY[top2] && siteX[top1] < siteX[top2])) {
       el = el1;
       e = e1;
     } else {
@@ -729,17 +854,15 @@ private VoronoiSite intersect(VoronoiHalfEdge el1, VoronoiHalfEdge el2) {
       e = e2;
     }
 
-    right_of_site = xint >= e.reg[1].coord.getX();
-    if ((right_of_site && el.ELpm == LE)
-        || (!right_of_site && el.ELpm == RE)) {
-      return null;
+    right_of_site = xint >= siteX[edgeReg[e * 2 + 1]];
+    if ((right_of_site && hePm[el] == LE)
+        || (!right_of_site && hePm[el] == RE)) {
+      return NONE;
     }
 
-    // create a new site at the point of intersection - this is a new vector
+    // create a new vertex at the point of intersection - this is a new vector
     // event waiting to happen
-    v = new VoronoiSite();
-    v.coord.setLocation( xint, yint );
-    return (v);
+    return newVertex(xint, yint);
   }
 
   /*
@@ -748,12 +871,11 @@ private VoronoiSite intersect(VoronoiHalfEdge el1, VoronoiHalfEdge el2) {
    * better to make nsites, deltax, and deltay too big than too small. (?)
    */
   private boolean voronoi_bd() {
-    VoronoiSite newsite, bot, top, temp, p;
-    VoronoiSite v;
-    Point newintstar = null;
+    int newsite, bot, top, temp, p;
+    int v;
     int pm;
-    VoronoiHalfEdge lbnd, rbnd, llbnd, rrbnd, bisector;
-    VoronoiEdge e;
+    int lbnd, rbnd, llbnd, rrbnd, bisector;
+    int e;
 
     PQinitialize();
     ELinitialize();
@@ -762,17 +884,17 @@ private boolean voronoi_bd() {
     newsite = nextone();
     while (true) {
       if (!PQempty()) {
-        newintstar = PQ_min();
+        PQ_min();
       }
       // if the lowest site has a smaller y value than the lowest vector
       // intersection,
       // process the site otherwise process the vector intersection
 
-      if (newsite != null
-          && (PQempty() || newsite.coord.y < newintstar.y || (newsite.coord.y == newintstar.y && newsite.coord.getX() < newintstar.getX()))) {
+      if (newsite != NONE
+          && (PQempty() || siteY[newsite] < PQminY || (siteY[newsite] == PQminY && siteX[newsite] < PQminX))) {
                 /* new site is smallest -this is a site event */
         // get the first HalfEdge to the LEFT of the new site
-        lbnd = ELleftbnd((newsite.coord));
+        lbnd = ELleftbnd(siteX[newsite], siteY[newsite]);
         // get the first HalfEdge to the RIGHT of the new site
         rbnd = ELright(lbnd);
         // if this halfedge has no edge,bot =bottom site (whatever that
@@ -789,7 +911,7 @@ private boolean voronoi_bd() {
 
         // if the new bisector intersects with the left edge,
         // remove the left edge's vertex, and put in the new one
-        if ((p = intersect(lbnd, bisector)) != null) {
+        if ((p = intersect(lbnd, bisector)) != NONE) {
           PQdelete(lbnd);
           PQinsert(lbnd, p, dist(p, newsite));
         }
@@ -801,7 +923,7 @@ private boolean voronoi_bd() {
         ELinsert(lbnd, bisector);
 
         // if this new bisector intersects with the new HalfEdge
-        if ((p = intersect(bisector, rbnd)) != null) {
+        if ((p = intersect(bisector, rbnd)) != NONE) {
           // push the HE into the ordered linked list of vertices
           PQinsert(bisector, p, dist(p, newsite));
         }
@@ -823,13 +945,11 @@ private boolean voronoi_bd() {
         // get the Site to the right of the right HE which it bisects
         top = rightreg(rbnd);
 
-        v = lbnd.vertex; // get the vertex that caused this event
-        makevertex(v); // set the vertex number - couldn't do this
-        // earlier since we didn't know when it would be processed
-        endpoint(lbnd.ELedge, lbnd.ELpm, v);
+        v = heVertex[lbnd]; // get the vertex that caused this event
+        endpoint(heEdge[lbnd], hePm[lbnd], v);
         // set the endpoint of
         // the left HalfEdge to be this vector
-        endpoint(rbnd.ELedge, rbnd.ELpm, v);
+        endpoint(heEdge[rbnd], hePm[rbnd], v);
         // set the endpoint of the right HalfEdge to
         // be this vector
         ELdelete(lbnd); // mark the lowest HE for
@@ -842,7 +962,7 @@ private boolean voronoi_bd() {
         // to it in Hash Map
         pm = LE; // set the pm variable to zero
 
-        if (bot.coord.y > top.coord.y)
+        if (siteY[bot] > siteY[top])
         // if the site to the left of the event is higher than the
         // Site
         { // to the right of it, then swap them and set the 'pm'
@@ -868,14 +988,14 @@ private boolean voronoi_bd() {
 
         // if left HE and the new bisector intersect, then delete
         // the left HE, and reinsert it
-        if ((p = intersect(llbnd, bisector)) != null) {
+        if ((p = intersect(llbnd, bisector)) != NONE) {
           PQdelete(llbnd);
           PQinsert(llbnd, p, dist(p, bot));
         }
 
         // if right HE and the new bisector intersect, then
         // reinsert it
-        if ((p = intersect(bisector, rrbnd)) != null) {
+        if ((p = intersect(bisector, rrbnd)) != NONE) {
           PQinsert(bisector, p, dist(p, bot));
         }
       } else {
@@ -884,7 +1004,7 @@ private boolean voronoi_bd() {
     }
 
     for (lbnd = ELright(ELleftend); lbnd != ELrightend; lbnd = ELright(lbnd)) {
-      e = lbnd.ELedge;
+      e = heEdge[lbnd];
       clip_line(e);
     }
 
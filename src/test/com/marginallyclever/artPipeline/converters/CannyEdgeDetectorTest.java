@@ -0,0 +1,69 @@
+package com.marginallyclever.artPipeline.converters;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CannyEdgeDetectorTest {
+	/**
+	 * Hysteresis joins candidates in bands of rows and then across the seams.  It must keep the same pixels as a
+	 * plain breadth first search of the eight neighbors, started from every pixel above the high threshold.
+	 */
+	@Test
+	public void testHysteresisMatchesBreadthFirstSearch() {
+		Random r = new Random(7);
+		CannyEdgeDetector detector = new CannyEdgeDetector();
+		int low = 100;
+		int high = 300;
+
+		for(int trial=0;trial<100;++trial) {
+			// tall enough for several bands, so lines cross the seams.
+			int width = 1+r.nextInt(80);
+			int height = 1+r.nextInt(200);
+			int [] magnitude = new int[width*height];
+			for(int i=0;i<magnitude.length;++i) {
+				// mostly below the low threshold, with long runs of candidates and a few strong pixels.
+				int m = r.nextInt(100);
+				if(i>0 && magnitude[i-1]>=low && r.nextInt(10)<8) m = low+r.nextInt(100);
+				else if(r.nextInt(10)==0) m = low+r.nextInt(300);
+				magnitude[i] = m;
+			}
+			boolean [] expected = breadthFirst(magnitude,width,height,low,high);
+			int [] edges = detector.hysteresis(magnitude, width, height, low, high);
+
+			for(int i=0;i<edges.length;++i) {
+				assertEquals("trial "+trial+" pixel "+i, expected[i] ? -1 : 0xff000000, edges[i]);
+			}
+		}
+	}
+
+	private boolean [] breadthFirst(int [] magnitude,int width,int height,int low,int high) {
+		boolean [] edge = new boolean[magnitude.length];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for(int i=0;i<magnitude.length;++i) {
+			if(magnitude[i]>=high) {
+				edge[i] = true;
+				queue.add(i);
+			}
+		}
+		while(!queue.isEmpty()) {
+			int i = queue.poll();
+			int x = i%width;
+			int y = i/width;
+			for(int ny=y-1;ny<=y+1;++ny) {
+				for(int nx=x-1;nx<=x+1;++nx) {
+					if(nx<0 || nx>=width || ny<0 || ny>=height) continue;
+					int j = ny*width+nx;
+					if(!edge[j] && magnitude[j]>=low) {
+						edge[j] = true;
+						queue.add(j);
+					}
+				}
+			}
+		}
+		return edge;
+	}
+}
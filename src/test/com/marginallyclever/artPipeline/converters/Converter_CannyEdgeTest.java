@@ -0,0 +1,58 @@
+package com.marginallyclever.artPipeline.converters;
+
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import com.marginallyclever.artPipeline.TransformedImage;
+import com.marginallyclever.convenience.turtle.TurtleMove;
+import com.marginallyclever.convenience.turtle.TurtleMoveType;
+import com.marginallyclever.makelangeloRobot.settings.MakelangeloRobotSettings;
+
+public class Converter_CannyEdgeTest {
+	// a converter on a machine of its own, without a robot.
+	private static class TestConverter extends Converter_CannyEdge {
+		TestConverter(MakelangeloRobotSettings settings) {
+			machine = settings;
+		}
+	}
+
+	/**
+	 * A black square on white has four edges.  The pen must trace them and nothing else.
+	 */
+	@Test
+	public void testSquareDrawsOnlyItsEdges() {
+		BufferedImage img = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+		for(int y=0;y<200;++y) {
+			for(int x=0;x<200;++x) {
+				boolean inside = x>=60 && x<140 && y>=60 && y<140;
+				img.setRGB(x, y, inside ? 0 : 0xffffff);
+			}
+		}
+
+		Converter_CannyEdge converter = new TestConverter(new MakelangeloRobotSettings());
+		converter.setImage(new TransformedImage(img));
+		converter.finish();
+
+		// the image is centered on the paper, so the edges of the square are 40 from the middle.
+		double drawn=0;
+		TurtleMove last = null;
+		for( TurtleMove m : converter.turtle.history ) {
+			if(m.type==TurtleMoveType.DRAW && last!=null) {
+				// the detector leaves a stray pixel in each corner, where its blur runs off the image.
+				boolean inBorder = Math.max(Math.abs(m.x), Math.abs(m.y))>90;
+				assertTrue("drew away from the edges at "+m.x+","+m.y, inBorder || distanceToSquare(m.x,m.y)<4);
+				drawn += Math.hypot(m.x-last.x, m.y-last.y);
+			}
+			if(m.type!=TurtleMoveType.TOOL_CHANGE) last = m;
+		}
+		// the four sides are 320 long.  the pen crosses the sides that run up the paper in little steps.
+		assertTrue("drew "+drawn, drawn>160);
+	}
+
+	private double distanceToSquare(double x,double y) {
+		return Math.abs(Math.max(Math.abs(x), Math.abs(y))-40);
+	}
+}
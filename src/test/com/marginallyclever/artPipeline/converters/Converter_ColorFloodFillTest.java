@@ -0,0 +1,89 @@
+package com.marginallyclever.artPipeline.converters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Converter_ColorFloodFillTest {
+	/**
+	 * The scanline fill must find the same patches as a plain breadth first search of the four neighbors.
+	 */
+	@Test
+	public void testFloodFillMatchesBreadthFirstSearch() {
+		Random r = new Random(3);
+		Converter_ColorFloodFill converter = new Converter_ColorFloodFill();
+
+		for(int trial=0;trial<300;++trial) {
+			int cols = 1+r.nextInt(150);
+			int rows = 1+r.nextInt(40);
+			int colors = 2+r.nextInt(3);
+			byte [] cells = new byte[cols*rows];
+			for(int i=0;i<cells.length;++i) {
+				// mostly runs of the same color, so the patches have some shape.
+				cells[i] = (byte)((i>0 && r.nextInt(10)<7) ? cells[i-1] : r.nextInt(colors));
+			}
+			converter.setCells(cols, rows, cells);
+
+			for(int color=0;color<colors;++color) {
+				long [] visited = new long[(cols*rows+63)/64];
+				boolean [] filled = new boolean[cells.length];
+				for(int seed=0;seed<cells.length;++seed) {
+					if(cells[seed]!=color || Converter_ColorFloodFill.isSet(visited, seed)) continue;
+					long [] runs = converter.floodFill(color, visited, seed%cols, seed/cols);
+					boolean [] patch = breadthFirst(cells, cols, rows, seed);
+
+					int count=0;
+					for(int i=0;i<patch.length;++i) {
+						if(patch[i]) count++;
+					}
+					int found=0;
+					for( long run : runs ) {
+						int y  = (int)(run>>>42);
+						int x0 = (int)((run>>>21) & 0x1FFFFF);
+						int x1 = (int)(run & 0x1FFFFF);
+						for(int x=x0;x<=x1;++x) {
+							int i = y*cols+x;
+							assertTrue("cell "+i+" is not in the patch", patch[i]);
+							assertTrue("cell "+i+" filled twice", !filled[i]);
+							filled[i] = true;
+							found++;
+						}
+					}
+					assertEquals(count, found);
+				}
+
+				// every cell of this color is in exactly one patch, and no other cell is.
+				for(int i=0;i<cells.length;++i) {
+					assertEquals(cells[i]==color, filled[i]);
+					assertEquals(filled[i], Converter_ColorFloodFill.isSet(visited, i));
+				}
+			}
+		}
+	}
+
+	private boolean [] breadthFirst(byte [] cells,int cols,int rows,int seed) {
+		boolean [] patch = new boolean[cells.length];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		patch[seed] = true;
+		queue.add(seed);
+		while(!queue.isEmpty()) {
+			int i = queue.poll();
+			int x = i%cols;
+			int y = i/cols;
+			int [][] neighbors = { {x-1,y}, {x+1,y}, {x,y-1}, {x,y+1} };
+			for( int [] n : neighbors ) {
+				if(n[0]<0 || n[0]>=cols || n[1]<0 || n[1]>=rows) continue;
+				int j = n[1]*cols+n[0];
+				if(!patch[j] && cells[j]==cells[seed]) {
+					patch[j] = true;
+					queue.add(j);
+				}
+			}
+		}
+		return patch;
+	}
+}
@@ -0,0 +1,47 @@
+package com.marginallyclever.artPipeline.converters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import com.marginallyclever.artPipeline.TransformedImage;
+import com.marginallyclever.convenience.turtle.Turtle;
+import com.marginallyclever.makelangeloRobot.settings.MakelangeloRobotSettings;
+
+public class Converter_VoronoiZigZagTest {
+	// a converter on a machine of its own, without a robot.
+	private static class TestConverter extends Converter_VoronoiZigZag {
+		TestConverter(MakelangeloRobotSettings settings) {
+			machine = settings;
+		}
+	}
+
+	/**
+	 * A blank image has no cells dark enough to draw, so the tour is empty.  finish() must still work.
+	 */
+	@Test
+	public void testBlankImage() {
+		BufferedImage white = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+		for(int y=0;y<100;++y) {
+			for(int x=0;x<100;++x) white.setRGB(x, y, 0xffffff);
+		}
+
+		Converter_VoronoiZigZag converter = new TestConverter(new MakelangeloRobotSettings());
+		int cells = converter.getNumCells();
+		try {
+			converter.setNumCells(50);
+			converter.setImage(new TransformedImage(white));
+			boolean more = true;
+			for(int i=0;i<100 && more;++i) more = converter.iterate();
+			assertFalse("never finished", more);
+			converter.finish();
+			// nothing but the start of a new turtle.
+			assertEquals(new Turtle().history.size(), converter.turtle.history.size());
+		} finally {
+			converter.setNumCells(cells);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.marginallyclever.artPipeline.converters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.turtle.Turtle;
+import com.marginallyclever.convenience.turtle.TurtleMove;
+import com.marginallyclever.convenience.turtle.TurtleMoveType;
+
+public class ImageConverterTest {
+	// the least converter that can draw.
+	private static class TestConverter extends ImageConverter {
+		@Override
+		public String getName() {
+			return "test";
+		}
+	}
+
+	/**
+	 * A cancelled conversion must keep every part that was drawn, and the thread must stay interrupted.
+	 */
+	@Test
+	public void testDrawInParallelWhenInterrupted() {
+		TestConverter converter = new TestConverter();
+		converter.turtle = new Turtle();
+		List<Callable<Turtle>> parts = new ArrayList<Callable<Turtle>>();
+		for(int i=0;i<10;++i) {
+			final int y = i;
+			parts.add(()->{
+				Turtle t = new Turtle();
+				t.moveTo(0, y);
+				return t;
+			});
+		}
+
+		Thread.currentThread().interrupt();
+		try {
+			converter.drawInParallel(parts);
+			assertTrue("interrupt was lost", Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+
+		// one move from each part, in order.
+		int next=0;
+		for( TurtleMove m : converter.turtle.history ) {
+			if(m.type!=TurtleMoveType.TRAVEL) continue;
+			assertEquals(next++, m.y, 0);
+		}
+		assertEquals(10, next);
+	}
+}
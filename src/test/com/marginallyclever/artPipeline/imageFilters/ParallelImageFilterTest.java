@@ -0,0 +1,189 @@
+package com.marginallyclever.artPipeline.imageFilters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.marginallyclever.artPipeline.TransformedImage;
+import com.marginallyclever.convenience.log.Log;
+
+public class ParallelImageFilterTest {
+	private BufferedImage makeNoise(int w,int h,int type) {
+		Random r = new Random(1234);
+		BufferedImage bi = new BufferedImage(w, h, type);
+		for(int y=0;y<h;++y) {
+			for(int x=0;x<w;++x) {
+				bi.setRGB(x, y, 0xff000000 | r.nextInt(0x1000000));
+			}
+		}
+		return bi;
+	}
+
+	@Test
+	public void testGetPixelsMatchesGetRGB() {
+		int [] types = {
+			BufferedImage.TYPE_INT_ARGB,
+			BufferedImage.TYPE_INT_RGB,
+			BufferedImage.TYPE_3BYTE_BGR,
+			BufferedImage.TYPE_4BYTE_ABGR,
+			BufferedImage.TYPE_BYTE_GRAY,
+			BufferedImage.TYPE_USHORT_565_RGB,
+		};
+		for( int type : types ) {
+			BufferedImage bi = makeNoise(101,77,type);
+			int [] pixels = ParallelImageFilter.getPixels(bi);
+			for(int y=0;y<bi.getHeight();++y) {
+				for(int x=0;x<bi.getWidth();++x) {
+					assertEquals("type "+type+" at "+x+","+y, bi.getRGB(x, y), pixels[y*bi.getWidth()+x]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Radius 1 is the classic 1-2-1 kernel across and down, so one white pixel spreads out as 1-2-1, 2-4-2, 1-2-1
+	 * sixteenths.
+	 */
+	@Test
+	public void testGaussianBlurRadiusOneIs121() {
+		BufferedImage bi = new BufferedImage(5, 5, BufferedImage.TYPE_INT_RGB);
+		bi.setRGB(2, 2, 0xffffff);
+		BufferedImage after = new Filter_GaussianBlur(1).filter(new TransformedImage(bi)).getSourceImage();
+
+		int [][] sixteenths = { {1,2,1}, {2,4,2}, {1,2,1} };
+		for(int y=0;y<3;++y) {
+			for(int x=0;x<3;++x) {
+				int expected = Math.round(255f*sixteenths[y][x]/16f);
+				assertEquals("at "+x+","+y, expected, after.getRGB(x+1, y+1) & 0xff);
+			}
+		}
+		assertEquals(0, after.getRGB(0, 0) & 0xff);
+	}
+
+	@Test
+	public void testTilesMatchOnePixelAtATime() {
+		BufferedImage bi = makeNoise(257,193,BufferedImage.TYPE_3BYTE_BGR);
+		TransformedImage img = new TransformedImage(bi);
+
+		Filter_BlackAndWhite bw = new Filter_BlackAndWhite(255);
+		BufferedImage after = bw.filter(img).getSourceImage();
+		for(int y=0;y<bi.getHeight();++y) {
+			for(int x=0;x<bi.getWidth();++x) {
+				double v = Filter_PointOperations.toneControl(ImageFilter.decode32bit(bi.getRGB(x, y)));
+				int expected = ImageFilter.encode32bit((int)Math.min(255, Math.max(0, v)));
+				assertEquals(expected, after.getRGB(x, y));
+			}
+		}
+
+		after = new Filter_Invert().filter(img).getSourceImage();
+		for(int y=0;y<bi.getHeight();++y) {
+			for(int x=0;x<bi.getWidth();++x) {
+				assertEquals(bi.getRGB(x, y) ^ 0x00ffffff, after.getRGB(x, y));
+			}
+		}
+	}
+
+	/**
+	 * Each pixel depends on the one to its left and the one above and to the right, like error diffusion.
+	 * Any number of threads must give the same answer as one.
+	 */
+	@Test
+	public void testWavefrontMatchesOneThread() {
+		int w = 301, h = 97;
+		int [][] results = new int[2][];
+		int [] threads = { 1, 8 };
+		for(int t=0;t<threads.length;++t) {
+			int [] v = new int[w*h];
+			ParallelImageFilter.forEachWavefront(w, h, 1, threads[t], (y,x0,x1)->{
+				for(int x=x0;x<x1;++x) {
+					int left = x>0 ? v[y*w+x-1] : y;
+					int above = y>0 ? v[(y-1)*w+Math.min(x+1, w-1)] : x;
+					v[y*w+x] = left*31 + above;
+				}
+			});
+			results[t] = v;
+		}
+		assertArrayEquals(results[0], results[1]);
+	}
+
+	@Test
+	public void testCacheRemembersResults() {
+		TransformedImage img = new TransformedImage(makeNoise(64,48,BufferedImage.TYPE_INT_RGB));
+		TransformedImage first = new Filter_BlackAndWhite(255).filter(img);
+
+		// same settings, new scale.  the pixels are reused and only the new result has the new scale.
+		img.setScale(2, 3);
+		TransformedImage second = new Filter_BlackAndWhite(255).filter(img);
+		assertNotSame(first, second);
+		assertSame(first.getSourceImage(), second.getSourceImage());
+		assertEquals(2, second.getScaleX(), 0);
+		assertEquals(3, second.getScaleY(), 0);
+		assertEquals(1, first.getScaleX(), 0);
+		assertEquals(-1, first.getScaleY(), 0);
+
+		// different settings
+		assertNotSame(first.getSourceImage(), new Filter_BlackAndWhite(255).invert().filter(img).getSourceImage());
+
+		long max = FilterCache.getMaxBytes();
+		try {
+			FilterCache.setMaxBytes(0);
+			assertNotSame(first.getSourceImage(), new Filter_BlackAndWhite(255).filter(img).getSourceImage());
+		} finally {
+			FilterCache.setMaxBytes(max);
+		}
+	}
+
+	@Test
+	public void testCacheCountsTables() {
+		TransformedImage img = new TransformedImage(makeNoise(64,48,BufferedImage.TYPE_INT_RGB));
+		long max = FilterCache.getMaxBytes();
+		try {
+			// room for the pixels but not the summed-area table.
+			FilterCache.setMaxBytes(64*48*4 + 1000);
+			TransformedImage first = new Filter_BlackAndWhite(255).filter(img);
+			assertSame(first.getSourceImage(), new Filter_BlackAndWhite(255).filter(img).getSourceImage());
+
+			first.sample(-10, -10, 10, 10);
+			assertNotSame(first.getSourceImage(), new Filter_BlackAndWhite(255).filter(img).getSourceImage());
+		} finally {
+			FilterCache.setMaxBytes(max);
+		}
+	}
+
+	/**
+	 * Filter a 24 megapixel image with 1,2,4... threads and report the time taken.  Slow, so run it by hand.
+	 */
+	@Ignore
+	@Test
+	public void benchmarkScaling() throws Exception {
+		TransformedImage img = new TransformedImage(makeNoise(6000,4000,BufferedImage.TYPE_3BYTE_BGR));
+		Filter_BlackAndWhite bw = new Filter_BlackAndWhite(255);
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		// time the filter, not the cache.
+		long max = FilterCache.getMaxBytes();
+		try {
+			FilterCache.setMaxBytes(0);
+			for(int threads=1;threads<=cores;threads*=2) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				// once to warm up, once to time.
+				pool.submit(()->bw.filter(img)).get();
+				long start = System.nanoTime();
+				pool.submit(()->bw.filter(img)).get();
+				long ms = (System.nanoTime()-start)/1000000;
+				pool.shutdown();
+				Log.message("Filter_BlackAndWhite 24MP "+threads+" thread(s): "+ms+"ms");
+			}
+		} finally {
+			FilterCache.setMaxBytes(max);
+		}
+	}
+}
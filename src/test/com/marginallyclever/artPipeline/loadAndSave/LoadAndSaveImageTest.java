@@ -0,0 +1,48 @@
+package com.marginallyclever.artPipeline.loadAndSave;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.marginallyclever.makelangeloRobot.settings.MakelangeloRobotSettings;
+
+public class LoadAndSaveImageTest {
+	/**
+	 * 200x100mm inside the margins with a 0.8mm pen, so every pixel should cover at most 0.4mm.
+	 */
+	private MakelangeloRobotSettings getSettings() {
+		MakelangeloRobotSettings s = new MakelangeloRobotSettings();
+		s.setPaperSize(200, 100, 0, 0);
+		s.setPaperMargin(1);
+		s.setDiameter(0.8f);
+		return s;
+	}
+
+	@Test
+	public void testSubsampling() {
+		MakelangeloRobotSettings s = getSettings();
+		// small images are read whole.
+		assertEquals(1, LoadAndSaveImage.getSubsampling(10, 5, s));
+		// 0.4mm per pixel is exactly enough.
+		assertEquals(1, LoadAndSaveImage.getSubsampling(500, 250, s));
+		// just short of two pixels per 0.4mm.
+		assertEquals(1, LoadAndSaveImage.getSubsampling(999, 499, s));
+		// exactly two, then exactly eight.
+		assertEquals(2, LoadAndSaveImage.getSubsampling(1000, 500, s));
+		assertEquals(8, LoadAndSaveImage.getSubsampling(4000, 2000, s));
+		// the side that makes each pixel biggest on the paper decides: 1mm, then 0.1mm per pixel down the height.
+		assertEquals(1, LoadAndSaveImage.getSubsampling(4000, 100, s));
+		assertEquals(4, LoadAndSaveImage.getSubsampling(4000, 1000, s));
+	}
+
+	@Test
+	public void testSubsamplingWithoutPaperOrPen() {
+		MakelangeloRobotSettings s = getSettings();
+		s.setDiameter(0);
+		assertEquals(1, LoadAndSaveImage.getSubsampling(4000, 2000, s));
+
+		s = getSettings();
+		s.setPaperMargin(0);
+		assertEquals(1, LoadAndSaveImage.getSubsampling(4000, 2000, s));
+	}
+}
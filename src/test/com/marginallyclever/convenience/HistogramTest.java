@@ -0,0 +1,50 @@
+package com.marginallyclever.convenience;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+	@Test
+	public void testBandsMatchOnePixelAtATime() {
+		Random r = new Random(5678);
+		BufferedImage bi = new BufferedImage(123, 457, BufferedImage.TYPE_INT_RGB);
+		int [] red = new int[256];
+		int [] grey = new int[256];
+		for(int y=0;y<bi.getHeight();++y) {
+			for(int x=0;x<bi.getWidth();++x) {
+				int c = r.nextInt(0x1000000);
+				bi.setRGB(x, y, c);
+				red[(c>>16)&0xff]++;
+				grey[(((c>>16)&0xff) + ((c>>8)&0xff) + (c&0xff))/3]++;
+			}
+		}
+
+		Histogram h = new Histogram();
+		h.getRGBHistogramOf(bi);
+		assertArrayEquals(red, h.red);
+		h.getGreyHistogramOf(bi);
+		assertArrayEquals(grey, h.red);
+		assertEquals(123*457, h.getTotal());
+		assertEquals(1.0, h.getCumulative()[255], 1e-9);
+	}
+
+	@Test
+	public void testEqualization() {
+		// a dull image that only uses levels 100...139.
+		Histogram h = new Histogram();
+		for(int i=100;i<140;++i) h.red[i] = 10;
+
+		int [] table = h.getEqualization();
+		assertEquals(0, table[100]);
+		assertEquals(255, table[139]);
+		for(int i=1;i<256;++i) {
+			assertTrue(table[i]>=table[i-1]);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.marginallyclever.convenience;
+
+import java.util.Random;
+
+/**
+ * Sets of points for tests.  Each set is {xs,ys} and comes from a fixed seed, so a failure can be repeated.
+ *
+ * @author Dan Royer
+ */
+public class PointSets {
+	/**
+	 * @return count points spread evenly over [0,width)x[0,height).
+	 */
+	public static double [][] uniform(int count,double width,double height,long seed) {
+		Random r = new Random(seed);
+		double [] xs = new double[count];
+		double [] ys = new double[count];
+		for(int i=0;i<count;++i) {
+			xs[i] = r.nextDouble()*width;
+			ys[i] = r.nextDouble()*height;
+		}
+		return new double[][] { xs, ys };
+	}
+
+	/**
+	 * @return count points, most in 35 tight groups and a few far apart, so some cells are huge and some tiny.
+	 */
+	public static double [][] clustered(int count,double width,double height,long seed) {
+		Random r = new Random(seed);
+		double [] xs = new double[count];
+		double [] ys = new double[count];
+		double cellW = width/7;
+		double cellH = height/5;
+		double spread = Math.min(cellW, cellH)*0.075;
+		for(int i=0;i<count;++i) {
+			if(r.nextDouble()<0.98) {
+				xs[i] = (i%7+0.5)*cellW + r.nextGaussian()*spread;
+				ys[i] = (i%5+0.5)*cellH + r.nextGaussian()*spread;
+			} else {
+				xs[i] = r.nextDouble()*width;
+				ys[i] = r.nextDouble()*height;
+			}
+		}
+		return new double[][] { xs, ys };
+	}
+
+	/**
+	 * @return count points picked at random from a lattice step apart over [0,width)x[0,height).  Many are on
+	 * one line and some are on top of each other.
+	 */
+	public static double [][] snapped(int count,double width,double height,double step,long seed) {
+		Random r = new Random(seed);
+		int cols = (int)Math.round(width/step);
+		int rows = (int)Math.round(height/step);
+		double [] xs = new double[count];
+		double [] ys = new double[count];
+		for(int i=0;i<count;++i) {
+			xs[i] = r.nextInt(cols)*step;
+			ys[i] = r.nextInt(rows)*step;
+		}
+		return new double[][] { xs, ys };
+	}
+
+	/**
+	 * @return a side*side grid step apart, then the first duplicates points again on top of themselves.  Every
+	 * four neighbors are on one circle.
+	 */
+	public static double [][] gridWithDuplicates(int side,double step,int duplicates) {
+		double [] xs = new double[side*side+duplicates];
+		double [] ys = new double[xs.length];
+		for(int i=0;i<side*side;++i) {
+			xs[i] = (i%side)*step;
+			ys[i] = (i/side)*step;
+		}
+		for(int i=side*side;i<xs.length;++i) {
+			xs[i] = xs[i-side*side];
+			ys[i] = ys[i-side*side];
+		}
+		return new double[][] { xs, ys };
+	}
+}
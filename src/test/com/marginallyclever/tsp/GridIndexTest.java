@@ -0,0 +1,39 @@
+package com.marginallyclever.tsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+
+public class GridIndexTest {
+	@Test
+	public void testWalkMatchesBruteForce() {
+		int count = 2000;
+		// a long thin strip, with some points on top of each other.
+		double [][] p = PointSets.snapped(count, 300, 40, 0.1, 1234);
+		double [] xs = p[0];
+		double [] ys = p[1];
+
+		GridIndex grid = new GridIndex(xs,ys,count);
+		boolean [] visited = new boolean[count];
+		// start off the edge of the grid.
+		double x=-10, y=-10;
+		for(int k=0;k<count;++k) {
+			double best = Double.MAX_VALUE;
+			for(int i=0;i<count;++i) {
+				if(!visited[i]) best = Math.min(best, (xs[i]-x)*(xs[i]-x)+(ys[i]-y)*(ys[i]-y));
+			}
+			int s = grid.nearest(x,y);
+			assertEquals(false, visited[s]);
+			assertEquals(best, (xs[s]-x)*(xs[s]-x)+(ys[s]-y)*(ys[s]-y), 0);
+			visited[s] = true;
+			grid.remove(s);
+			grid.remove(s);
+			assertEquals(count-k-1, grid.size());
+			x = xs[s];
+			y = ys[s];
+		}
+		assertEquals(-1, grid.nearest(0,0));
+	}
+}
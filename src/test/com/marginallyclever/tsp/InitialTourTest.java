@@ -0,0 +1,22 @@
+package com.marginallyclever.tsp;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+
+public class InitialTourTest {
+	@Test
+	public void testInitialTours() {
+		int count = 20000;
+		double [][] p = PointSets.uniform(count, 100, 100, 1234);
+		int [] tour = new int[count];
+
+		for(int i=0;i<count;++i) tour[i]=i;
+		InitialTour.hilbert(p[0], p[1], tour, count);
+		Tours.assertGoodTour(p,tour,count,1.5);
+
+		for(int i=0;i<count;++i) tour[i]=i;
+		InitialTour.greedyEdge(p[0], p[1], tour, count);
+		Tours.assertGoodTour(p,tour,count,1.35);
+	}
+}
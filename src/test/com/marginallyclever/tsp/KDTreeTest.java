@@ -0,0 +1,44 @@
+package com.marginallyclever.tsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+
+public class KDTreeTest {
+	@Test
+	public void testNearestMatchesBruteForce() {
+		assertNearestMatchesBruteForce(PointSets.uniform(5000, 100, 100, 1234));
+		// ties, and sites on top of each other.
+		assertNearestMatchesBruteForce(PointSets.snapped(5000, 100, 100, 1, 1234));
+	}
+
+	private void assertNearestMatchesBruteForce(double [][] p) {
+		int count = p[0].length;
+		KDTree tree = new KDTree(p[0], p[1], count);
+		int [] neighbours = tree.neighbours(5);
+		for(int s=0;s<count;s+=37) {
+			// the 5th nearest by brute force
+			double [] best = new double[5];
+			Arrays.fill(best, Double.MAX_VALUE);
+			for(int j=0;j<count;++j) {
+				if(j==s) continue;
+				double d = Math.hypot(p[0][j]-p[0][s], p[1][j]-p[1][s]);
+				for(int k=0;k<5;++k) {
+					if(d<best[k]) {
+						System.arraycopy(best, k, best, k+1, 4-k);
+						best[k]=d;
+						break;
+					}
+				}
+			}
+			for(int k=0;k<5;++k) {
+				int j = neighbours[s*5+k];
+				assertEquals(best[k], Math.hypot(p[0][j]-p[0][s], p[1][j]-p[1][s]), 1e-12);
+			}
+		}
+	}
+}
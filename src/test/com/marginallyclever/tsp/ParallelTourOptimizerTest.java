@@ -0,0 +1,35 @@
+package com.marginallyclever.tsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+
+public class ParallelTourOptimizerTest {
+	@Test
+	public void testShortensTour() {
+		int count = 20000;
+		double [][] p = PointSets.uniform(count, 100, 100, 1234);
+		// more stretches than cores is fine, they take turns.
+		ParallelTourOptimizer optimizer = new ParallelTourOptimizer(p[0], p[1], Tours.inStrips(p,count), count, 4);
+		while(optimizer.improve(100000000L));
+
+		int [] tour = new int[count];
+		optimizer.getTour(tour);
+		assertEquals(optimizer.getLength(), Tours.assertGoodTour(p,tour,count), 1e-6);
+	}
+
+	@Test
+	public void testTinyToursAreDone() {
+		for(int count=1;count<5;++count) {
+			double [][] p = PointSets.uniform(count, 100, 100, 1234);
+			int [] order = new int[count];
+			for(int i=0;i<count;++i) order[i]=i;
+
+			ParallelTourOptimizer optimizer = new ParallelTourOptimizer(p[0], p[1], order, count, 4);
+			assertFalse(optimizer.improve(1000000L));
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.marginallyclever.tsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+import com.marginallyclever.convenience.log.Log;
+
+public class TourOptimizerTest {
+	@Test
+	public void testShortensTour() {
+		int count = 20000;
+		double [][] p = PointSets.uniform(count, 100, 100, 1234);
+		TourOptimizer optimizer = new TourOptimizer(p[0], p[1], Tours.inStrips(p,count), count);
+		double before = optimizer.getLength();
+		while(optimizer.improve(1000000000L));
+		assertTrue(optimizer.isDone());
+		assertTrue(optimizer.getLength()<before);
+
+		int [] tour = new int[count];
+		optimizer.getTour(tour);
+		assertEquals(optimizer.getLength(), Tours.assertGoodTour(p,tour,count), 1e-6);
+	}
+
+	@Test
+	public void testTinyToursAreDone() {
+		for(int count=1;count<5;++count) {
+			double [][] p = PointSets.uniform(count, 100, 100, 1234);
+			int [] order = new int[count];
+			for(int i=0;i<count;++i) order[i]=i;
+
+			TourOptimizer optimizer = new TourOptimizer(p[0], p[1], order, count);
+			assertFalse(optimizer.improve(1000000L));
+			assertTrue(optimizer.isDone());
+		}
+	}
+
+	/**
+	 * Shorten a tour of 100k random points and report the time taken.  Slow, so run it by hand.
+	 */
+	@Ignore
+	@Test
+	public void benchmarkTour() {
+		int count = 100000;
+		double [][] p = PointSets.uniform(count, 100, 100, 1234);
+		long start = System.nanoTime();
+		TourOptimizer optimizer = new TourOptimizer(p[0], p[1], Tours.inStrips(p,count), count);
+		while(optimizer.improve(1000000000L));
+		long ms = (System.nanoTime()-start)/1000000;
+		Log.message("TourOptimizer 100k points: "+ms+"ms, length "+optimizer.getLength());
+	}
+}
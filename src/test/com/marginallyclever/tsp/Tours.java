@@ -0,0 +1,56 @@
+package com.marginallyclever.tsp;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+/**
+ * Tours of points in a 100x100 square, for the tour tests.
+ *
+ * @author Dan Royer
+ */
+class Tours {
+	/**
+	 * @return a tour that goes back and forth across the square in strips, a rough start like a real seed tour.
+	 */
+	static int [] inStrips(final double [][] p,int count) {
+		final int strips = (int)Math.sqrt(count/2.0);
+		Integer [] sorted = new Integer[count];
+		for(int i=0;i<count;++i) sorted[i]=i;
+		Arrays.sort(sorted, (a,b)->{
+			int sa = (int)(p[1][a]/100*strips);
+			int sb = (int)(p[1][b]/100*strips);
+			if(sa!=sb) return sa-sb;
+			return (sa%2==0 ? 1 : -1) * Double.compare(p[0][a], p[0][b]);
+		});
+		int [] order = new int[count];
+		for(int i=0;i<count;++i) order[i]=sorted[i];
+		return order;
+	}
+
+	/**
+	 * Check every point is visited once and the tour is no longer than a good tour should be.
+	 * @return the length of the tour.
+	 */
+	static double assertGoodTour(double [][] p,int [] tour,int count) {
+		return assertGoodTour(p,tour,count,1.2);
+	}
+
+	/**
+	 * @param slack how many times longer than the best tour it may be.
+	 */
+	static double assertGoodTour(double [][] p,int [] tour,int count,double slack) {
+		boolean [] seen = new boolean[count];
+		double sum=0;
+		for(int i=0;i<count;++i) {
+			assertFalse(seen[tour[i]]);
+			seen[tour[i]]=true;
+			int a=tour[i], b=tour[(i+1)%count];
+			sum += Math.hypot(p[0][a]-p[0][b], p[1][a]-p[1][b]);
+		}
+		// the best tour of n random points in a square of area A is about 0.7124*sqrt(n*A) long.
+		assertTrue(sum < 0.7124*Math.sqrt(count*100.0*100.0)*slack);
+		return sum;
+	}
+}
@@ -0,0 +1,119 @@
+package com.marginallyclever.voronoi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+
+public class DelaunayTriangulationTest {
+	private int nearestByScan(double [] xs,double [] ys,double x,double y) {
+		int best=0;
+		double bestD = Double.MAX_VALUE;
+		for(int i=0;i<xs.length;++i) {
+			double d = (xs[i]-x)*(xs[i]-x) + (ys[i]-y)*(ys[i]-y);
+			if(d<bestD) {
+				bestD=d;
+				best=i;
+			}
+		}
+		return best;
+	}
+
+	private void assertNearest(DelaunayTriangulation d,double [] xs,double [] ys,Random r) {
+		int hint = -1;
+		for(int k=0;k<2000;++k) {
+			double x = r.nextDouble()*120-10;
+			double y = r.nextDouble()*120-10;
+			hint = d.nearest(x, y, hint);
+			int expected = nearestByScan(xs,ys,x,y);
+			// ties may go either way, the distance must match.
+			double dx = xs[hint]-x, dy = ys[hint]-y;
+			double ex = xs[expected]-x, ey = ys[expected]-y;
+			assertEquals(ex*ex+ey*ey, dx*dx+dy*dy, 1e-9);
+		}
+	}
+
+	@Test
+	public void testNearestAfterBuildAndMove() {
+		assertNearestAfterBuildAndMove(PointSets.uniform(2000, 100, 100, 1234));
+		// tiny triangles in the groups, long thin ones between them.
+		assertNearestAfterBuildAndMove(PointSets.clustered(2000, 100, 100, 1234));
+	}
+
+	private void assertNearestAfterBuildAndMove(double [][] p) {
+		Random r = new Random(5678);
+		double [] xs = p[0];
+		double [] ys = p[1];
+		int count = xs.length;
+		DelaunayTriangulation d = new DelaunayTriangulation();
+		d.build(xs, ys, count);
+		assertNearest(d,xs,ys,r);
+
+		// small moves, like one step of Lloyd relaxation.
+		for(int step=0;step<5;++step) {
+			for(int i=0;i<count;++i) {
+				xs[i] += (r.nextDouble()-0.5)*0.2;
+				ys[i] += (r.nextDouble()-0.5)*0.2;
+			}
+			d.moveSites(xs, ys);
+			assertNearest(d,xs,ys,r);
+		}
+	}
+
+	// every pair of sites that share an edge.
+	private Set<Long> neighbors(DelaunayTriangulation d) {
+		VoronoiEdgeBuffer edges = new VoronoiEdgeBuffer();
+		d.getVoronoiEdges(-1e4, 1e4, -1e4, 1e4, edges);
+		Set<Long> pairs = new HashSet<Long>();
+		for(int i=0;i<edges.size();++i) {
+			long a = Math.min(edges.site1[i], edges.site2[i]);
+			long b = Math.max(edges.site1[i], edges.site2[i]);
+			pairs.add(a<<32 | b);
+		}
+		return pairs;
+	}
+
+	/**
+	 * Moves smaller than the distance between sites must be repaired with flips, not by building again, and give
+	 * the same triangulation as building from scratch.  Some sites cross the hull and some pass close to a line
+	 * through two others.
+	 */
+	@Test
+	public void testMoveMatchesBuild() {
+		int count = 20000;
+		double [][] p = PointSets.uniform(count, 100, 100, 4321);
+		double [] xs = p[0];
+		double [] ys = p[1];
+		Random r = new Random(8765);
+		DelaunayTriangulation d = new DelaunayTriangulation();
+		d.build(xs, ys, count);
+
+		DelaunayTriangulation fresh = new DelaunayTriangulation();
+		for(int step=0;step<10;++step) {
+			for(int i=0;i<count;++i) {
+				xs[i] += (r.nextDouble()-0.5)*0.3;
+				ys[i] += (r.nextDouble()-0.5)*0.3;
+			}
+			assertTrue("step "+step+" was built again", d.moveSites(xs, ys));
+			fresh.build(xs, ys, count);
+			assertEquals("step "+step, neighbors(fresh), neighbors(d));
+		}
+	}
+
+	@Test
+	public void testGridWithDuplicates() {
+		// a grid puts many sites on one line and every four neighbors on one circle.  some sites are on top of each other.
+		double [][] p = PointSets.gridWithDuplicates(20, 5, 10);
+		double [] xs = p[0];
+		double [] ys = p[1];
+		DelaunayTriangulation d = new DelaunayTriangulation();
+		d.build(xs, ys, xs.length);
+		assertNearest(d,xs,ys,new Random(5678));
+	}
+}
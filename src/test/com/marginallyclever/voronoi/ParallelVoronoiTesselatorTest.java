@@ -0,0 +1,113 @@
+package com.marginallyclever.voronoi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+import com.marginallyclever.convenience.log.Log;
+
+public class ParallelVoronoiTesselatorTest {
+	/**
+	 * @return each edge by the pair of sites it separates, as {min x, max x, min y, max y}.
+	 */
+	private Map<Long,double[]> edgesBySites(VoronoiEdgeBuffer edges) {
+		Map<Long,double[]> map = new HashMap<Long,double[]>();
+		for(int i=0;i<edges.size();++i) {
+			long a = Math.min(edges.site1[i], edges.site2[i]);
+			long b = Math.max(edges.site1[i], edges.site2[i]);
+			double [] box = {
+				Math.min(edges.x1[i], edges.x2[i]),
+				Math.max(edges.x1[i], edges.x2[i]),
+				Math.min(edges.y1[i], edges.y2[i]),
+				Math.max(edges.y1[i], edges.y2[i]),
+			};
+			map.put((a<<32) | b, box);
+		}
+		return map;
+	}
+
+	private void assertSameAsSerial(double [][] sites,int strips) {
+		int count = sites[0].length;
+
+		VoronoiTesselator serial = new VoronoiTesselator();
+		serial.Init(0.5);
+		VoronoiEdgeBuffer expected = new VoronoiEdgeBuffer();
+		serial.generateVoronoi(sites[0], sites[1], count, 0, 300, 0, 200, expected);
+
+		ParallelVoronoiTesselator parallel = new ParallelVoronoiTesselator(strips);
+		parallel.Init(0.5);
+		VoronoiEdgeBuffer actual = new VoronoiEdgeBuffer();
+		// twice, so the second call starts from the margins of the first.
+		for(int pass=0;pass<2;++pass) {
+			parallel.generateVoronoi(sites[0], sites[1], count, 0, 300, 0, 200, actual);
+
+			assertEquals(expected.size(), actual.size());
+			Map<Long,double[]> a = edgesBySites(expected);
+			Map<Long,double[]> b = edgesBySites(actual);
+			assertEquals(a.size(), b.size());
+			for(Long key : a.keySet()) {
+				double [] boxA = a.get(key);
+				double [] boxB = b.get(key);
+				assertNotNull(boxB);
+				for(int i=0;i<4;++i) {
+					assertEquals(boxA[i], boxB[i], 1e-9);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesSerial() {
+		assertSameAsSerial(PointSets.uniform(40000, 300, 200, 1234),8);
+	}
+
+	@Test
+	public void testMatchesSerialWithBigCells() {
+		assertSameAsSerial(PointSets.clustered(40000, 300, 200, 1234),8);
+	}
+
+	@Test
+	public void testMatchesSerialOnALattice() {
+		// sites in rows and columns cross the strip edges together, and some are on top of each other.
+		assertSameAsSerial(PointSets.snapped(40000, 300, 200, 1, 1234),8);
+	}
+
+	/**
+	 * Tesselate 500k sites with 1,2,4... threads and report the time taken.  Slow, so run it by hand.
+	 */
+	@Ignore
+	@Test
+	public void benchmarkScaling() throws Exception {
+		int count = 500000;
+		double [][] sites = PointSets.uniform(count, 300, 200, 1234);
+		VoronoiEdgeBuffer out = new VoronoiEdgeBuffer();
+
+		VoronoiTesselator serial = new VoronoiTesselator();
+		serial.Init(0.5);
+		serial.generateVoronoi(sites[0], sites[1], count, 0, 300, 0, 200, out);
+		long start = System.nanoTime();
+		serial.generateVoronoi(sites[0], sites[1], count, 0, 300, 0, 200, out);
+		Log.message("VoronoiTesselator 500k sites: "+(System.nanoTime()-start)/1000000+"ms");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for(int threads=1;threads<=cores;threads*=2) {
+			ParallelVoronoiTesselator parallel = new ParallelVoronoiTesselator(threads);
+			parallel.Init(0.5);
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			// once to warm up, once to time.
+			pool.submit(()->parallel.generateVoronoi(sites[0], sites[1], count, 0, 300, 0, 200, out)).get();
+			start = System.nanoTime();
+			pool.submit(()->parallel.generateVoronoi(sites[0], sites[1], count, 0, 300, 0, 200, out)).get();
+			long ms = (System.nanoTime()-start)/1000000;
+			pool.shutdown();
+			Log.message("ParallelVoronoiTesselator 500k sites "+threads+" thread(s): "+ms+"ms");
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.marginallyclever.voronoi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.marginallyclever.convenience.PointSets;
+
+public class VoronoiTesselatorTest {
+	/**
+	 * @return the length of each edge, by the pair of sites it separates.  Edges of no length are left out.
+	 */
+	private Map<Long,Double> lengthBySites(VoronoiEdgeBuffer edges) {
+		Map<Long,Double> map = new HashMap<Long,Double>();
+		for(int i=0;i<edges.size();++i) {
+			double len = Math.hypot(edges.x2[i]-edges.x1[i], edges.y2[i]-edges.y1[i]);
+			if(len<1e-6) continue;
+			long a = Math.min(edges.site1[i], edges.site2[i]);
+			long b = Math.max(edges.site1[i], edges.site2[i]);
+			map.put((a<<32) | b, len);
+		}
+		return map;
+	}
+
+	@Test
+	public void testMatchesDelaunayDual() {
+		assertMatchesDelaunayDual(PointSets.uniform(3000, 300, 200, 1234));
+	}
+
+	@Test
+	public void testMatchesDelaunayDualWithBigCells() {
+		assertMatchesDelaunayDual(PointSets.clustered(3000, 300, 200, 1234));
+	}
+
+	@Test
+	public void testMatchesDelaunayDualOnALattice() {
+		// many sites in a row, four on one circle and some on top of each other.
+		assertMatchesDelaunayDual(PointSets.snapped(3000, 300, 200, 2.5, 1234));
+	}
+
+	private void assertMatchesDelaunayDual(double [][] p) {
+		double [] xs = p[0];
+		double [] ys = p[1];
+		int count = xs.length;
+
+		VoronoiTesselator tesselator = new VoronoiTesselator();
+		tesselator.Init(0);
+		VoronoiEdgeBuffer fortune = new VoronoiEdgeBuffer();
+		tesselator.generateVoronoi(xs, ys, count, 0, 300, 0, 200, fortune);
+
+		DelaunayTriangulation triangulation = new DelaunayTriangulation();
+		triangulation.build(xs, ys, count);
+		VoronoiEdgeBuffer dual = new VoronoiEdgeBuffer();
+		triangulation.getVoronoiEdges(0, 300, 0, 200, dual);
+
+		Map<Long,Double> a = lengthBySites(fortune);
+		Map<Long,Double> b = lengthBySites(dual);
+		assertEquals(b.keySet(), a.keySet());
+		for(Long key : a.keySet()) {
+			assertEquals(b.get(key), a.get(key), 1e-6);
+		}
+
+		// the same tesselator again gives the same answer.
+		VoronoiEdgeBuffer again = new VoronoiEdgeBuffer();
+		tesselator.generateVoronoi(xs, ys, count, 0, 300, 0, 200, again);
+		assertEquals(fortune.size(), again.size());
+		for(int i=0;i<fortune.size();++i) {
+			assertEquals(fortune.x1[i], again.x1[i], 0);
+			assertEquals(fortune.y2[i], again.y2[i], 0);
+			assertEquals(fortune.site1[i], again.site1[i]);
+			assertEquals(fortune.site2[i], again.site2[i]);
+		}
+	}
+}